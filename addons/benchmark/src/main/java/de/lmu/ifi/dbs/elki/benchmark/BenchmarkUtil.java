@@ -0,0 +1,97 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+
+/**
+ * Shared data generation for the microbenchmarks.
+ *
+ * All data is generated from a fixed seed, so that different runs (and
+ * different versions of ELKI) are benchmarked on identical inputs.
+ *
+ * @author Erich Schubert
+ */
+public final class BenchmarkUtil {
+  /**
+   * Default random seed.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkUtil() {
+    // Static methods only.
+  }
+
+  /**
+   * Generate a uniform random data set in [0;1]^dim.
+   *
+   * @param size Number of points
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data array
+   */
+  public static double[][] randomData(int size, int dim, long seed) {
+    Random r = new Random(seed);
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < dim; d++) {
+        row[d] = r.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Build an in-memory database from a data array.
+   *
+   * @param data Data
+   * @param indexes Index factories to use
+   * @return Initialized database
+   */
+  public static Database makeDatabase(double[][] data, IndexFactory<?>... indexes) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), new ArrayList<>(Arrays.asList(indexes)));
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Get the vector relation of a database.
+   *
+   * @param db Database
+   * @return Vector relation
+   */
+  public static Relation<NumberVector> getRelation(Database db) {
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+}
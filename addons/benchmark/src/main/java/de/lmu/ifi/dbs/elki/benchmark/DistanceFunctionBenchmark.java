@@ -0,0 +1,136 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries.DTWDistanceFunction;
+
+/**
+ * Microbenchmark of common distance functions.
+ *
+ * Each invocation computes the distances of all pairs of a small block of
+ * vectors, so that the per-call overhead of the harness is negligible.
+ *
+ * @author Erich Schubert
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceFunctionBenchmark {
+  /**
+   * Dimensionality of the vectors.
+   */
+  @Param({ "2", "10", "100", "1000" })
+  public int dim;
+
+  /**
+   * Number of vectors in the block.
+   */
+  @Param({ "64" })
+  public int size;
+
+  /**
+   * Vectors to compare.
+   */
+  NumberVector[] vecs;
+
+  /**
+   * Minkowski norm with a non-special exponent.
+   */
+  LPNormDistanceFunction lp = new LPNormDistanceFunction(3.);
+
+  /**
+   * Dynamic time warping, with a band of 10%.
+   */
+  DTWDistanceFunction dtw = new DTWDistanceFunction(.1);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    double[][] data = BenchmarkUtil.randomData(size, dim, BenchmarkUtil.SEED);
+    vecs = new NumberVector[size];
+    for(int i = 0; i < size; i++) {
+      vecs[i] = DoubleVector.wrap(data[i]);
+    }
+  }
+
+  @Benchmark
+  public void squaredEuclidean(Blackhole bh) {
+    final SquaredEuclideanDistanceFunction df = SquaredEuclideanDistanceFunction.STATIC;
+    for(int i = 0; i < size; i++) {
+      for(int j = 0; j < size; j++) {
+        bh.consume(df.distance(vecs[i], vecs[j]));
+      }
+    }
+  }
+
+  @Benchmark
+  public void lpNorm(Blackhole bh) {
+    for(int i = 0; i < size; i++) {
+      for(int j = 0; j < size; j++) {
+        bh.consume(lp.distance(vecs[i], vecs[j]));
+      }
+    }
+  }
+
+  @Benchmark
+  public void cosine(Blackhole bh) {
+    final CosineDistanceFunction df = CosineDistanceFunction.STATIC;
+    for(int i = 0; i < size; i++) {
+      for(int j = 0; j < size; j++) {
+        bh.consume(df.distance(vecs[i], vecs[j]));
+      }
+    }
+  }
+
+  @Benchmark
+  public void dtw(Blackhole bh) {
+    for(int i = 0; i < size; i++) {
+      for(int j = 0; j < size; j++) {
+        bh.consume(dtw.distance(vecs[i], vecs[j]));
+      }
+    }
+  }
+}
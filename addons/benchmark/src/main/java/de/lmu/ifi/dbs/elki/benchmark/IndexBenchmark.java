@@ -0,0 +1,177 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Microbenchmark of index construction and kNN queries on in-memory indexes.
+ *
+ * @author Erich Schubert
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+  /**
+   * Index to benchmark.
+   */
+  @Param({ "rstar", "covertree", "kdtree", "smallkdtree" })
+  public String index;
+
+  /**
+   * Dimensionality of the data.
+   */
+  @Param({ "2", "10" })
+  public int dim;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  public int size;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Number of queries per invocation.
+   */
+  @Param({ "1000" })
+  public int queries;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Index factory.
+   */
+  IndexFactory<NumberVector> factory;
+
+  /**
+   * Distance query.
+   */
+  DistanceQuery<NumberVector> distq;
+
+  /**
+   * kNN query on the prebuilt index.
+   */
+  KNNQuery<NumberVector> knnq;
+
+  /**
+   * Generate the data, and build the index used for querying.
+   */
+  @Setup
+  public void setup() {
+    relation = BenchmarkUtil.getRelation(BenchmarkUtil.makeDatabase(BenchmarkUtil.randomData(size, dim, BenchmarkUtil.SEED)));
+    factory = makeFactory(index);
+    distq = EuclideanDistanceFunction.STATIC.instantiate(relation);
+    knnq = buildIndex().getKNNQuery(distq, k);
+    if(knnq == null) {
+      throw new AbortException("Index " + index + " did not provide a kNN query.");
+    }
+  }
+
+  /**
+   * Instantiate the index factory.
+   *
+   * @param name Index name
+   * @return Factory
+   */
+  private static IndexFactory<NumberVector> makeFactory(String name) {
+    switch(name){
+    case "rstar":
+      return new ELKIBuilder<RStarTreeFactory<NumberVector>>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4096) //
+          .build();
+    case "covertree":
+      return new CoverTree.Factory<>(EuclideanDistanceFunction.STATIC, 1.3, 10);
+    case "kdtree":
+      return new MinimalisticMemoryKDTree.Factory<>();
+    case "smallkdtree":
+      return new SmallMemoryKDTree.Factory<>();
+    default:
+      throw new AbortException("Unknown index: " + name);
+    }
+  }
+
+  /**
+   * Build a new index instance.
+   *
+   * @return Index
+   */
+  @SuppressWarnings("unchecked")
+  private KNNIndex<NumberVector> buildIndex() {
+    KNNIndex<NumberVector> idx = (KNNIndex<NumberVector>) factory.instantiate(relation);
+    idx.initialize();
+    return idx;
+  }
+
+  @Benchmark
+  public KNNIndex<NumberVector> build() {
+    return buildIndex();
+  }
+
+  @Benchmark
+  public void query(Blackhole bh) {
+    int i = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid() && i < queries; it.advance(), i++) {
+      bh.consume(knnq.getKNNForDBID(it, k));
+    }
+  }
+}
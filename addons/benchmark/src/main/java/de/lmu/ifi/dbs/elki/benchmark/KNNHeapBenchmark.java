@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Microbenchmark of the kNN heap, which is at the core of every kNN query.
+ *
+ * @author Erich Schubert
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KNNHeapBenchmark {
+  /**
+   * Number of neighbors to keep.
+   */
+  @Param({ "1", "10", "100" })
+  public int k;
+
+  /**
+   * Number of candidates offered to the heap.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Candidate distances.
+   */
+  double[] dists;
+
+  /**
+   * Candidate ids.
+   */
+  ArrayModifiableDBIDs ids;
+
+  /**
+   * Generate the candidates.
+   */
+  @Setup
+  public void setup() {
+    Random r = new Random(BenchmarkUtil.SEED);
+    dists = new double[size];
+    for(int i = 0; i < size; i++) {
+      dists[i] = r.nextDouble();
+    }
+    ids = DBIDUtil.newArray(DBIDUtil.generateStaticDBIDRange(size));
+  }
+
+  @Benchmark
+  public KNNList insert() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    double kdist = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      // Same pruning pattern as in the linear scan queries:
+      if(dists[i] <= kdist) {
+        kdist = heap.insert(dists[i], it);
+      }
+    }
+    return heap.toKNNList();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+
+/**
+ * Microbenchmark of the linear scan kNN queries, i.e., without an index.
+ *
+ * @author Erich Schubert
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinearScanKNNQueryBenchmark {
+  /**
+   * Dimensionality of the data.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "1000", "10000" })
+  public int size;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Number of queries per invocation.
+   */
+  @Param({ "100" })
+  public int queries;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Euclidean kNN query (uses the specialized Euclidean scan).
+   */
+  KNNQuery<NumberVector> euclidean;
+
+  /**
+   * Manhattan kNN query (uses the generic primitive distance scan).
+   */
+  KNNQuery<NumberVector> manhattan;
+
+  /**
+   * Generate the data and queries.
+   */
+  @Setup
+  public void setup() {
+    Database db = BenchmarkUtil.makeDatabase(BenchmarkUtil.randomData(size, dim, BenchmarkUtil.SEED));
+    relation = BenchmarkUtil.getRelation(db);
+    euclidean = QueryUtil.getKNNQuery(relation, EuclideanDistanceFunction.STATIC, k);
+    manhattan = QueryUtil.getKNNQuery(relation, ManhattanDistanceFunction.STATIC, k);
+  }
+
+  @Benchmark
+  public void euclidean(Blackhole bh) {
+    run(euclidean, bh);
+  }
+
+  @Benchmark
+  public void manhattan(Blackhole bh) {
+    run(manhattan, bh);
+  }
+
+  /**
+   * Query the first objects of the data set.
+   *
+   * @param q Query
+   * @param bh Blackhole
+   */
+  private void run(KNNQuery<NumberVector> q, Blackhole bh) {
+    int i = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid() && i < queries; it.advance(), i++) {
+      bh.consume(q.getKNNForDBID(it, k));
+    }
+  }
+}
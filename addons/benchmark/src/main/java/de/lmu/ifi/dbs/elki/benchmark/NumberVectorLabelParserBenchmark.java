@@ -0,0 +1,111 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource.Event;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+
+/**
+ * Microbenchmark of parsing numerical CSV data, as used by the file based
+ * database connection.
+ *
+ * @author Erich Schubert
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumberVectorLabelParserBenchmark {
+  /**
+   * Number of columns.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Number of rows.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Whether to append a class label column.
+   */
+  @Param({ "false", "true" })
+  public boolean labels;
+
+  /**
+   * Serialized input data.
+   */
+  byte[] input;
+
+  /**
+   * Generate the input file contents.
+   */
+  @Setup
+  public void setup() {
+    Random r = new Random(BenchmarkUtil.SEED);
+    StringBuilder buf = new StringBuilder(size * dim * 20);
+    for(int i = 0; i < size; i++) {
+      for(int d = 0; d < dim; d++) {
+        buf.append(d > 0 ? " " : "").append(r.nextDouble());
+      }
+      if(labels) {
+        buf.append(" class").append(i % 10);
+      }
+      buf.append('\n');
+    }
+    input = buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    parser.initStream(new ByteArrayInputStream(input));
+    for(Event ev = parser.nextEvent(); ev != Event.END_OF_STREAM; ev = parser.nextEvent()) {
+      if(ev == Event.NEXT_OBJECT) {
+        bh.consume(parser.data(0));
+      }
+    }
+    parser.cleanup();
+  }
+}
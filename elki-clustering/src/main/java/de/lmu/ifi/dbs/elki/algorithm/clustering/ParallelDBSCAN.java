@@ -0,0 +1,342 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentQuickUnionRangeDBIDs;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
+
+/**
+ * Multi-threaded version of {@link DBSCAN}.
+ *
+ * Instead of expanding one cluster at a time, this version first determines
+ * the core points with parallel range queries, then connects neighboring core
+ * points in a concurrent union-find data structure (again using parallel range
+ * queries, but only for the core points), and finally assigns border points.
+ *
+ * The result is identical to {@link DBSCAN}: the union-find uses the smallest
+ * object as component root, which is the object that starts the cluster in
+ * the sequential version; and each border point is assigned to the first such
+ * cluster among its neighbors, as in the sequential expansion. Clusters are
+ * output in the same order, only the order of objects within a cluster
+ * differs. The neighbors of non-core points are kept (there are less than
+ * minPts each), so no additional range queries are needed for them. Core
+ * points are queried twice, so on a single core this is slower than
+ * {@link DBSCAN}.
+ *
+ * The range query must support concurrent use. This version requires a static
+ * database (with a {@link DBIDRange}).
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses ConcurrentQuickUnionRangeDBIDs
+ *
+ * @param <O> the type of Object the algorithm is applied to
+ */
+public class ParallelDBSCAN<O> extends DBSCAN<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelDBSCAN.class);
+
+  /**
+   * Minimum number of objects per parallel task.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public ParallelDBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  protected void runDBSCAN(Relation<O> relation, RangeQuery<O> rangeQuery) {
+    new Instance(DBIDUtil.assertRange(relation.getDBIDs()), rangeQuery).run();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Instance {
+    /**
+     * Objects to cluster.
+     */
+    private DBIDRange ids;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Core point flags.
+     */
+    private boolean[] core;
+
+    /**
+     * Neighbors of non-core points (offsets).
+     */
+    private int[][] border;
+
+    /**
+     * Union-find of the core points.
+     */
+    private ConcurrentQuickUnionRangeDBIDs uf;
+
+    /**
+     * Number of neighbors found.
+     */
+    private LongAdder neighbors = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param ids Objects to cluster
+     * @param rangeQuery Range query
+     */
+    Instance(DBIDRange ids, RangeQuery<O> rangeQuery) {
+      this.ids = ids;
+      this.rangeQuery = rangeQuery;
+    }
+
+    /**
+     * Run DBSCAN.
+     */
+    void run() {
+      final int size = ids.size();
+      core = new boolean[size];
+      border = new int[size][];
+      uf = UnionFindUtil.makeConcurrent(ids);
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding core points", size, LOG) : null;
+      process(false, prog);
+      LOG.ensureCompleted(prog);
+      ncounter = neighbors.sum();
+      prog = LOG.isVerbose() ? new FiniteProgress("Connecting core points", size, LOG) : null;
+      process(true, prog);
+      LOG.ensureCompleted(prog);
+      collectClusters();
+    }
+
+    /**
+     * Process all objects, in parallel if possible.
+     *
+     * @param connect {@code false} to find core points, {@code true} to
+     *        connect them.
+     * @param prog Progress, may be {@code null}
+     */
+    private void process(boolean connect, FiniteProgress prog) {
+      if(ids.size() >= (BLOCKSIZE << 1) && ParallelCore.getCore().getParallelism() > 1) {
+        ParallelCore.getCore().invoke(new Task(connect, 0, ids.size(), prog));
+      }
+      else {
+        processRange(connect, 0, ids.size(), prog);
+      }
+    }
+
+    /**
+     * Process a range of objects.
+     *
+     * @param connect {@code false} to find core points, {@code true} to
+     *        connect them.
+     * @param start First object
+     * @param end End (exclusive)
+     * @param prog Progress, may be {@code null}
+     */
+    private void processRange(boolean connect, int start, int end, FiniteProgress prog) {
+      final DBIDArrayIter it = ids.iter();
+      final ModifiableDoubleDBIDList nlist = DBIDUtil.newDistanceDBIDList();
+      long count = 0;
+      for(it.seek(start); it.getOffset() < end; it.advance()) {
+        final int i = it.getOffset();
+        if(!connect || core[i]) {
+          nlist.clear();
+          rangeQuery.getRangeForDBID(it, epsilon, nlist);
+          if(connect) {
+            for(DoubleDBIDListIter n = nlist.iter(); n.valid(); n.advance()) {
+              final int j = ids.getOffset(n);
+              if(j < i && core[j]) {
+                uf.union(i, j);
+              }
+            }
+          }
+          else {
+            count += nlist.size();
+            if(nlist.size() >= minpts) {
+              core[i] = true;
+            }
+            else {
+              // Remember the few neighbors, to find the cluster later.
+              final int[] nn = new int[nlist.size()];
+              int k = 0;
+              for(DoubleDBIDListIter n = nlist.iter(); n.valid(); n.advance()) {
+                nn[k++] = ids.getOffset(n);
+              }
+              border[i] = nn;
+            }
+          }
+        }
+        if(prog != null) {
+          prog.incrementProcessed(LOG);
+        }
+      }
+      neighbors.add(count);
+    }
+
+    /**
+     * Collect the clusters, in the same order as sequential DBSCAN.
+     */
+    private void collectClusters() {
+      final int size = ids.size();
+      // Cluster number of each root.
+      int[] cnum = new int[size];
+      // Roots have the smallest offset, and thus are seen first:
+      for(int i = 0; i < size; i++) {
+        if(core[i]) {
+          final int root = uf.find(i);
+          if(root == i) {
+            cnum[i] = resultList.size();
+            resultList.add(DBIDUtil.newArray());
+          }
+        }
+      }
+      DBIDArrayIter it = ids.iter();
+      for(; it.valid(); it.advance()) {
+        final int i = it.getOffset();
+        if(core[i]) {
+          resultList.get(cnum[uf.find(i)]).add(it);
+          continue;
+        }
+        // Border points go to the first cluster reaching them:
+        int best = size;
+        for(int j : border[i]) {
+          if(core[j]) {
+            final int root = uf.find(j);
+            best = root < best ? root : best;
+          }
+        }
+        if(best < size) {
+          resultList.get(cnum[best]).add(it);
+        }
+        else {
+          noise.add(it);
+        }
+      }
+      border = null;
+    }
+
+    /**
+     * Task to process objects in parallel.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Task extends RecursiveAction {
+      /**
+       * Serial version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Mode.
+       */
+      private boolean connect;
+
+      /**
+       * Object range.
+       */
+      private int start, end;
+
+      /**
+       * Progress, may be {@code null}.
+       */
+      private FiniteProgress prog;
+
+      /**
+       * Constructor.
+       *
+       * @param connect {@code false} to find core points, {@code true} to
+       *        connect them.
+       * @param start First object
+       * @param end End (exclusive)
+       * @param prog Progress, may be {@code null}
+       */
+      Task(boolean connect, int start, int end, FiniteProgress prog) {
+        this.connect = connect;
+        this.start = start;
+        this.end = end;
+        this.prog = prog;
+      }
+
+      @Override
+      protected void compute() {
+        if(end - start <= BLOCKSIZE) {
+          processRange(connect, start, end, prog);
+          return;
+        }
+        final int mid = (start + end) >>> 1;
+        invokeAll(new Task(connect, start, mid, prog), new Task(connect, mid, end, prog));
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends DBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelDBSCAN<O> makeInstance() {
+      return new ParallelDBSCAN<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
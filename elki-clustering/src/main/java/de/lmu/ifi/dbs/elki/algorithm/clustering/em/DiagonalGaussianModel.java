@@ -98,7 +98,7 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.nmea = new double[dim];
     if(variances == null) {
       this.variances = new double[dim];
-      Arrays.fill(variances, 1.);
+      Arrays.fill(this.variances, 1.);
     }
     else {
       this.variances = variances;
@@ -136,6 +136,40 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsParallel() {
+    return true;
+  }
+
+  @Override
+  public DiagonalGaussianModel newPartialE() {
+    DiagonalGaussianModel m = new DiagonalGaussianModel(1., new double[mean.length]);
+    m.beginEStep();
+    return m;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<?> other) {
+    final DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    if(!(o.wsum > 0)) {
+      return;
+    }
+    if(!(wsum > 0)) {
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      System.arraycopy(o.variances, 0, variances, 0, variances.length);
+      wsum = o.wsum;
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, c = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += o.variances[i] + delta * delta * c;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
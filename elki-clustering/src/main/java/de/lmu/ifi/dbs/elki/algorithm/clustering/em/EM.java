@@ -24,6 +24,8 @@ import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.argmax;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
@@ -39,7 +41,9 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
@@ -48,6 +52,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -149,6 +154,11 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    */
   private static final double MIN_LOGLIKELIHOOD = -100000;
 
+  /**
+   * Block size for parallel processing of the E and M steps.
+   */
+  private static final int BLOCKSIZE = 1 << 12;
+
   /**
    * Soft assignment result type.
    */
@@ -302,16 +312,27 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
         m.finalizeFirstPassE();
       }
     }
-    double[] wsum = new double[k];
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      double[] clusterProbabilities = probClusterIGivenX.get(iditer);
-      NumberVector instance = relation.get(iditer);
-      for(int i = 0; i < clusterProbabilities.length; i++) {
-        final double prob = clusterProbabilities[i];
-        if(prob > 1e-10) {
-          models.get(i).updateE(instance, prob);
+    final double[] wsum;
+    if(!needsTwoPass && useParallel(relation, models)) {
+      MStepTask task = new MStepTask(relation, probClusterIGivenX, models, (DBIDRange) relation.getDBIDs(), 0, relation.size());
+      ParallelCore.getCore().invoke(task);
+      for(int i = 0; i < k; i++) {
+        models.get(i).mergeE(task.partial[i]);
+      }
+      wsum = task.wsum;
+    }
+    else {
+      wsum = new double[k];
+      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+        double[] clusterProbabilities = probClusterIGivenX.get(iditer);
+        NumberVector instance = relation.get(iditer);
+        for(int i = 0; i < clusterProbabilities.length; i++) {
+          final double prob = clusterProbabilities[i];
+          if(prob > 1e-10) {
+            models.get(i).updateE(instance, prob);
+          }
+          wsum[i] += prob;
         }
-        wsum[i] += prob;
       }
     }
     for(int i = 0; i < models.size(); i++) {
@@ -329,32 +350,71 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    * Computed as the sum of the logarithms of the prior probability of each
    * instance.
    * 
+   * On large static databases, this runs in parallel if all models support
+   * this; the output storage then must support concurrent writes for different
+   * objects.
+   * 
    * @param relation the database used for assignment to instances
    * @param models Cluster models
    * @param probClusterIGivenX Output storage for cluster probabilities
    * @return the expectation value of the current mixture of distributions
    */
   public static double assignProbabilitiesToInstances(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX) {
-    final int k = models.size();
+    if(useParallel(relation, models)) {
+      EStepTask task = new EStepTask(relation, models, probClusterIGivenX, (DBIDRange) relation.getDBIDs(), 0, relation.size());
+      return ParallelCore.getCore().invoke(task) / relation.size();
+    }
     double emSum = 0.;
-
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
-      double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
-      }
-      probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
+      emSum += assignProbabilities(relation.get(iditer), models, probClusterIGivenX, iditer);
     }
     return emSum / relation.size();
   }
 
+  /**
+   * Assign the probabilities of a single instance.
+   *
+   * @param vec Instance
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @param id Object id
+   * @return Log likelihood of the instance
+   */
+  private static double assignProbabilities(NumberVector vec, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX, DBIDIter id) {
+    final int k = models.size();
+    double[] probs = new double[k];
+    for(int i = 0; i < k; i++) {
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs);
+    for(int i = 0; i < k; i++) {
+      probs[i] = FastMath.exp(probs[i] - logP);
+    }
+    probClusterIGivenX.put(id, probs);
+    return logP;
+  }
+
+  /**
+   * Test whether to process the data in parallel: the data set must be large,
+   * use a range of DBIDs, and all models must support parallel processing.
+   *
+   * @param relation Vector data
+   * @param models Cluster models
+   * @return {@code true} to use parallel processing
+   */
+  private static boolean useParallel(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models) {
+    if(relation.size() <= BLOCKSIZE || !(relation.getDBIDs() instanceof DBIDRange)) {
+      return false;
+    }
+    for(EMClusterModel<?> m : models) {
+      if(!m.supportsParallel()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Compute log(sum(exp(x_i)), with attention to numerical issues.
    * 
@@ -402,6 +462,188 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     this.soft = soft;
   }
 
+  /**
+   * Parallel E step: compute the cluster probabilities of a block of objects.
+   *
+   * Blocks are split by size only, so the summation order of the log
+   * likelihoods does not depend on the number of threads.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class EStepTask extends RecursiveTask<Double> {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Vector data.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<?>> models;
+
+    /**
+     * Output storage for cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Object ids.
+     */
+    private DBIDRange ids;
+
+    /**
+     * Object range.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Vector data
+     * @param models Cluster models
+     * @param probClusterIGivenX Output storage for cluster probabilities
+     * @param ids Object ids
+     * @param start First object
+     * @param end End (exclusive)
+     */
+    EStepTask(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX, DBIDRange ids, int start, int end) {
+      this.relation = relation;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected Double compute() {
+      if(end - start <= BLOCKSIZE) {
+        double emSum = 0.;
+        DBIDArrayIter it = ids.iter();
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          emSum += assignProbabilities(relation.get(it), models, probClusterIGivenX, it);
+        }
+        return emSum;
+      }
+      final int mid = (start + end) >>> 1;
+      EStepTask left = new EStepTask(relation, models, probClusterIGivenX, ids, start, mid);
+      left.fork();
+      final double right = new EStepTask(relation, models, probClusterIGivenX, ids, mid, end).compute();
+      return left.join() + right;
+    }
+  }
+
+  /**
+   * Parallel M step: collect partial statistics for each block of objects, and
+   * merge them pairwise.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class MStepTask extends RecursiveAction {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Vector data.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Object probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Cluster models, used as factories for the partial models.
+     */
+    private List<? extends EMClusterModel<?>> models;
+
+    /**
+     * Object ids.
+     */
+    private DBIDRange ids;
+
+    /**
+     * Object range.
+     */
+    private int start, end;
+
+    /**
+     * Partial models (result).
+     */
+    EMClusterModel<?>[] partial;
+
+    /**
+     * Sum of weights (result).
+     */
+    double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Vector data
+     * @param probClusterIGivenX Object probabilities
+     * @param models Cluster models
+     * @param ids Object ids
+     * @param start First object
+     * @param end End (exclusive)
+     */
+    MStepTask(Relation<? extends NumberVector> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<?>> models, DBIDRange ids, int start, int end) {
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.models = models;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      final int k = models.size();
+      if(end - start <= BLOCKSIZE) {
+        partial = new EMClusterModel<?>[k];
+        for(int i = 0; i < k; i++) {
+          partial[i] = models.get(i).newPartialE();
+        }
+        wsum = new double[k];
+        DBIDArrayIter it = ids.iter();
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          double[] clusterProbabilities = probClusterIGivenX.get(it);
+          NumberVector instance = relation.get(it);
+          for(int i = 0; i < k; i++) {
+            final double prob = clusterProbabilities[i];
+            if(prob > 1e-10) {
+              partial[i].updateE(instance, prob);
+            }
+            wsum[i] += prob;
+          }
+        }
+        return;
+      }
+      final int mid = (start + end) >>> 1;
+      MStepTask left = new MStepTask(relation, probClusterIGivenX, models, ids, start, mid);
+      MStepTask right = new MStepTask(relation, probClusterIGivenX, models, ids, mid, end);
+      invokeAll(left, right);
+      partial = left.partial;
+      wsum = left.wsum;
+      for(int i = 0; i < k; i++) {
+        partial[i].mergeE(right.partial[i]);
+        wsum[i] += right.wsum[i];
+      }
+    }
+  }
+
   /**
    * Parameterization class.
    * 
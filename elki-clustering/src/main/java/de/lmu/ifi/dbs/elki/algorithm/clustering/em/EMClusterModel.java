@@ -73,6 +73,40 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void updateE(NumberVector vec, double weight);
 
+  /**
+   * Whether the model supports parallel processing: {@link #newPartialE} and
+   * {@link #mergeE} must be implemented, and {@link #estimateLogDensity} must
+   * be safe to call concurrently.
+   *
+   * @return {@code true} if parallel processing is supported
+   */
+  default boolean supportsParallel() {
+    return false;
+  }
+
+  /**
+   * Create an empty model to collect the E step statistics of a subset of the
+   * data, for parallel processing. The partial results are combined using
+   * {@link #mergeE}.
+   *
+   * By default, this is not supported (c.f. {@link #supportsParallel()}.
+   *
+   * @return Empty partial model
+   */
+  default EMClusterModel<M> newPartialE() {
+    throw new UnsupportedOperationException("Partial E steps are not supported by " + getClass().getSimpleName());
+  }
+
+  /**
+   * Merge the statistics of a partial model (from {@link #newPartialE}) into
+   * this model, instead of calling {@link #updateE} for each data point.
+   *
+   * @param other Partial model
+   */
+  default void mergeE(EMClusterModel<?> other) {
+    throw new UnsupportedOperationException("Partial E steps are not supported by " + getClass().getSimpleName());
+  }
+
   /**
    * Finalize the E step.
    * 
@@ -155,6 +155,50 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsParallel() {
+    return true;
+  }
+
+  @Override
+  public MultivariateGaussianModel newPartialE() {
+    MultivariateGaussianModel m = new MultivariateGaussianModel(1., new double[mean.length]);
+    m.beginEStep();
+    return m;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<?> other) {
+    final MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    if(!(o.wsum > 0)) {
+      return;
+    }
+    if(!(wsum > 0)) {
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      for(int i = 0; i < mean.length; i++) {
+        System.arraycopy(o.covariance[i], 0, covariance[i], 0, i + 1);
+      }
+      wsum = o.wsum;
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, c = wsum * f;
+    // Combine covariance matrixes (lower half only), then the means:
+    for(int i = 0; i < dim; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    for(int i = 0; i < dim; i++) {
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      final double delta_i = nmea[i] * c;
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * nmea[j];
+      }
+      mean[i] += nmea[i] * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
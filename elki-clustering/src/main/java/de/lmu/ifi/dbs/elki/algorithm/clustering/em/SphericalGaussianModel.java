@@ -122,6 +122,42 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public boolean supportsParallel() {
+    return true;
+  }
+
+  @Override
+  public SphericalGaussianModel newPartialE() {
+    SphericalGaussianModel m = new SphericalGaussianModel(1., new double[mean.length]);
+    m.beginEStep();
+    return m;
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<?> other) {
+    final SphericalGaussianModel o = (SphericalGaussianModel) other;
+    if(!(o.wsum > 0)) {
+      return;
+    }
+    if(!(wsum > 0)) {
+      System.arraycopy(o.mean, 0, mean, 0, mean.length);
+      variance = o.variance;
+      wsum = o.wsum;
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, c = wsum * f;
+    double v = o.variance;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      v += delta * delta * c;
+      mean[i] += delta * f;
+    }
+    variance += v;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
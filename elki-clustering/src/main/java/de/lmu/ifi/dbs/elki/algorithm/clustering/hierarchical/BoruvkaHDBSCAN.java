@@ -0,0 +1,758 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * HDBSCAN* using Boruvka's algorithm for the minimum spanning tree of the
+ * mutual reachability graph.
+ *
+ * In contrast to {@link HDBSCANLinearMemory}, which needs a quadratic number of
+ * distance computations for Prim's algorithm, this implementation builds a
+ * k-d-tree over the data. The tree is first used to find the core distances,
+ * then in every round of Boruvka's algorithm to find the nearest neighbor in
+ * mutual reachability distance outside of each point's component. Subtrees
+ * are pruned using their bounding box, their minimum core distance, and
+ * whether all their points are already in the same component. Both phases are
+ * processed in parallel, and each component then chooses the cheapest edge
+ * found by any of its members.
+ *
+ * The output is the same pointer representation as produced by the other
+ * HDBSCAN* variants, and can be processed by the same extraction methods.
+ *
+ * Reference:
+ * <p>
+ * L. McInnes and J. Healy<br />
+ * Accelerated Hierarchical Density Based Clustering<br />
+ * IEEE International Conference on Data Mining Workshops (ICDMW)
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @param <O> Vector type
+ *
+ * @apiviz.has PointerDensityHierarchyRepresentationResult
+ */
+@Title("HDBSCAN*: Hierarchical Density-Based Spatial Clustering of Applications with Noise, using Boruvka's algorithm")
+@Description("Density-Based Clustering Based on Hierarchical Density Estimates, using a k-d-tree accelerated Boruvka minimum spanning tree.")
+@Reference(authors = "L. McInnes and J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE International Conference on Data Mining Workshops (ICDMW)", //
+    url = "http://dx.doi.org/10.1109/ICDMW.2017.12")
+public class BoruvkaHDBSCAN<O extends NumberVector> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(BoruvkaHDBSCAN.class);
+
+  /**
+   * Maximum number of points in a k-d-tree leaf.
+   */
+  private static final int LEAFSIZE = 16;
+
+  /**
+   * Minimum number of points per parallel task.
+   */
+  private static final int BLOCKSIZE = 1 << 10;
+
+  /**
+   * Spatial distance function.
+   */
+  private SpatialPrimitiveDistanceFunction<? super O> distance;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public BoruvkaHDBSCAN(SpatialPrimitiveDistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+    this.distance = distanceFunction;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    return run(relation, ParallelCore.getCore().getParallelism() > 1);
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation Relation
+   * @param parallel Allow processing large phases in parallel
+   * @return Clustering hierarchy
+   */
+  PointerDensityHierarchyRepresentationResult run(Relation<O> relation, boolean parallel) {
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    Instance inst = new Instance(relation, ids, parallel);
+    Duration dur = LOG.isStatistics() ? LOG.newDuration(getClass().getName() + ".kdtree.time").begin() : null;
+    inst.buildTree();
+    if(dur != null) {
+      LOG.statistics(dur.end());
+      LOG.statistics(new LongStatistic(getClass().getName() + ".kdtree.nodes", inst.numnodes));
+    }
+    // 1. Compute the core distances
+    final WritableDoubleDataStore coredists = inst.computeCoreDists();
+    // 2. Build spanning tree.
+    DoubleLongHeap heap = inst.computeMST();
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distance.isSquared(), coredists);
+  }
+
+  /**
+   * Processing phases.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private enum Phase {
+    /** Core distances */
+    CORE,
+    /** Nearest neighbors outside of the component */
+    NEAREST,
+  }
+
+  /**
+   * Instance for a single run, holding the k-d-tree and the intermediate data.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Instance implements QuickSelect.Adapter<int[]> {
+    /**
+     * Objects processed.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Data vectors, in tree order.
+     */
+    private ArrayList<O> data;
+
+    /**
+     * Offsets of the objects, in tree order. All other arrays are indexed by
+     * the position in the tree, so that leaves are contiguous in memory.
+     */
+    private int[] perm;
+
+    /**
+     * Number of nodes in the tree.
+     */
+    private int numnodes;
+
+    /**
+     * Node ranges in {@link #perm}.
+     */
+    private int[] nstart, nend;
+
+    /**
+     * Right child of each node (0 for leaves); the left child always
+     * immediately follows its parent.
+     */
+    private int[] nright;
+
+    /**
+     * Bounding boxes of the nodes.
+     */
+    private HyperBoundingBox[] nbox;
+
+    /**
+     * Minimum core distance in each node.
+     */
+    private double[] ncore;
+
+    /**
+     * Component of each node, -1 if mixed.
+     */
+    private int[] ncomp;
+
+    /**
+     * Current split dimension, for quickselect.
+     */
+    private int splitdim;
+
+    /**
+     * Core distances.
+     */
+    private double[] core;
+
+    /**
+     * Union-find parent pointers, and current component labels.
+     */
+    private int[] parent, comp;
+
+    /**
+     * Nearest neighbor outside of the component for each point.
+     */
+    private int[] bestj;
+
+    /**
+     * Mutual reachability distance to this neighbor.
+     */
+    private double[] bestd;
+
+    /**
+     * Upper bound for the cheapest edge of each component, from the neighbors
+     * found in previous rounds that are still valid.
+     */
+    private double[] ubound;
+
+    /**
+     * Allow parallel processing of large phases.
+     */
+    private boolean parallel;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param parallel Allow parallel processing
+     */
+    Instance(Relation<O> relation, ArrayDBIDs ids, boolean parallel) {
+      this.ids = ids;
+      this.parallel = parallel;
+      final int size = ids.size();
+      data = new ArrayList<>(size);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        data.add(relation.get(it));
+      }
+    }
+
+    /**
+     * Build the k-d-tree.
+     */
+    void buildTree() {
+      final int size = ids.size();
+      perm = new int[size];
+      for(int i = 0; i < size; i++) {
+        perm[i] = i;
+      }
+      final int cap = 4 * ((size + LEAFSIZE - 1) / LEAFSIZE) + 1;
+      nstart = new int[cap];
+      nend = new int[cap];
+      nright = new int[cap];
+      nbox = new HyperBoundingBox[cap];
+      numnodes = 0;
+      if(size > 0) {
+        buildTree(0, size);
+      }
+      ArrayList<O> sorted = new ArrayList<>(size);
+      for(int i = 0; i < size; i++) {
+        sorted.add(data.get(perm[i]));
+      }
+      data = sorted;
+      ncore = new double[numnodes];
+      ncomp = new int[numnodes];
+    }
+
+    /**
+     * Build a subtree.
+     *
+     * @param start First object
+     * @param end End (exclusive)
+     * @return Node number
+     */
+    private int buildTree(int start, int end) {
+      final int node = numnodes++;
+      if(node >= nstart.length) {
+        final int cap = nstart.length << 1;
+        nstart = Arrays.copyOf(nstart, cap);
+        nend = Arrays.copyOf(nend, cap);
+        nright = Arrays.copyOf(nright, cap);
+        nbox = Arrays.copyOf(nbox, cap);
+      }
+      nstart[node] = start;
+      nend[node] = end;
+      // Compute the bounding box:
+      final int dim = data.get(perm[start]).getDimensionality();
+      double[] min = new double[dim], max = new double[dim];
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for(int i = start; i < end; i++) {
+        final O v = data.get(perm[i]);
+        for(int d = 0; d < dim; d++) {
+          final double x = v.doubleValue(d);
+          min[d] = x < min[d] ? x : min[d];
+          max[d] = x > max[d] ? x : max[d];
+        }
+      }
+      nbox[node] = new HyperBoundingBox(min, max);
+      // Split on the widest dimension:
+      int best = 0;
+      for(int d = 1; d < dim; d++) {
+        best = (max[d] - min[d] > max[best] - min[best]) ? d : best;
+      }
+      if(end - start <= LEAFSIZE || !(max[best] > min[best])) {
+        return node;
+      }
+      final int mid = (start + end) >>> 1;
+      splitdim = best;
+      QuickSelect.quickSelect(perm, this, start, end, mid);
+      buildTree(start, mid);
+      // Note: the recursion may reallocate the arrays.
+      final int right = buildTree(mid, end);
+      nright[node] = right;
+      return node;
+    }
+
+    @Override
+    public void swap(int[] data, int i, int j) {
+      final int tmp = data[i];
+      data[i] = data[j];
+      data[j] = tmp;
+    }
+
+    @Override
+    public boolean compareGreater(int[] data, int i, int j) {
+      return this.data.get(data[i]).doubleValue(splitdim) > this.data.get(data[j]).doubleValue(splitdim);
+    }
+
+    /**
+     * Compute the core distances for all objects.
+     *
+     * @return Data store with core distances
+     */
+    WritableDoubleDataStore computeCoreDists() {
+      final int size = ids.size();
+      core = new double[size];
+      run(Phase.CORE, size);
+      for(int node = numnodes - 1; node >= 0; node--) {
+        double m = Double.POSITIVE_INFINITY;
+        if(nright[node] > 0) {
+          m = Math.min(ncore[node + 1], ncore[nright[node]]);
+        }
+        else {
+          for(int i = nstart[node]; i < nend[node]; i++) {
+            m = core[i] < m ? core[i] : m;
+          }
+        }
+        ncore[node] = m;
+      }
+      final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < size; i++) {
+        coredists.putDouble(it.seek(perm[i]), core[i]);
+      }
+      return coredists;
+    }
+
+    /**
+     * Compute the minimum spanning tree with Boruvka's algorithm.
+     *
+     * @return Heap of minimum spanning tree edges
+     */
+    DoubleLongHeap computeMST() {
+      final int size = ids.size(), numedges = size > 0 ? size - 1 : 0;
+      DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+      FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+      parent = new int[size];
+      comp = new int[size];
+      bestj = new int[size];
+      bestd = new double[size];
+      ubound = new double[size];
+      for(int i = 0; i < size; i++) {
+        parent[i] = i;
+      }
+      Arrays.fill(bestj, -1);
+      double[] cd = new double[size];
+      int[] ca = new int[size];
+      int rounds = 0;
+      while(heap.size() < numedges) {
+        ++rounds;
+        for(int i = 0; i < size; i++) {
+          comp[i] = find(i);
+        }
+        updateComponents(0);
+        Arrays.fill(ubound, Double.POSITIVE_INFINITY);
+        for(int i = 0; i < size; i++) {
+          final int c = comp[i];
+          if(bestj[i] >= 0 && comp[bestj[i]] != c && bestd[i] < ubound[c]) {
+            ubound[c] = bestd[i];
+          }
+        }
+        run(Phase.NEAREST, size);
+        // Choose the cheapest edge for each component:
+        Arrays.fill(ca, -1);
+        for(int i = 0; i < size; i++) {
+          final int c = comp[i];
+          if(bestj[i] >= 0 && (ca[c] < 0 || bestd[i] < cd[c])) {
+            cd[c] = bestd[i];
+            ca[c] = i;
+          }
+        }
+        final int before = heap.size();
+        for(int c = 0; c < size; c++) {
+          final int a = ca[c];
+          if(a < 0) {
+            continue;
+          }
+          final int b = bestj[a], ra = find(a), rb = find(b);
+          if(ra == rb) {
+            continue; // Already joined in this round.
+          }
+          parent[ra] = rb;
+          // Note: the second offset is a unique key.
+          heap.add(cd[c], (((long) perm[a]) << 31) | perm[b]);
+          LOG.incrementProcessed(mprog);
+        }
+        if(heap.size() == before) {
+          break; // Should not happen.
+        }
+      }
+      LOG.ensureCompleted(mprog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(BoruvkaHDBSCAN.class.getName() + ".boruvka.rounds", rounds));
+      }
+      return heap;
+    }
+
+    /**
+     * Find the component root, with path halving.
+     *
+     * @param i Object
+     * @return Root
+     */
+    private int find(int i) {
+      while(parent[i] != i) {
+        i = parent[i] = parent[parent[i]];
+      }
+      return i;
+    }
+
+    /**
+     * Update the component labels of the tree nodes.
+     *
+     * @param node Node
+     * @return Component, or -1
+     */
+    private int updateComponents(int node) {
+      int c;
+      if(nright[node] > 0) {
+        final int l = updateComponents(node + 1), r = updateComponents(nright[node]);
+        c = l == r ? l : -1;
+      }
+      else {
+        c = comp[nstart[node]];
+        for(int i = nstart[node] + 1; i < nend[node] && c >= 0; i++) {
+          c = comp[i] == c ? c : -1;
+        }
+      }
+      return ncomp[node] = c;
+    }
+
+    /**
+     * Run a phase, sequentially or in parallel.
+     *
+     * @param phase Phase
+     * @param size Number of objects
+     */
+    private void run(Phase phase, int size) {
+      if(parallel && size >= (BLOCKSIZE << 1)) {
+        ParallelCore.getCore().invoke(new Task(phase, 0, size));
+        return;
+      }
+      process(phase, 0, size);
+    }
+
+    /**
+     * Process a range of objects.
+     *
+     * @param phase Phase
+     * @param start First object
+     * @param end End (exclusive)
+     */
+    void process(Phase phase, int start, int end) {
+      switch(phase){
+      case CORE: {
+        DoubleMaxHeap heap = new DoubleMaxHeap(minPts);
+        for(int i = start; i < end; i++) {
+          heap.clear();
+          knnSearch(0, data.get(i), heap);
+          core[i] = heap.size() < minPts ? Double.POSITIVE_INFINITY : heap.peek();
+        }
+        break;
+      }
+      case NEAREST:
+        for(int i = start; i < end; i++) {
+          // The previous nearest neighbor remains the nearest, if it is still
+          // in a different component.
+          if(bestj[i] >= 0 && comp[bestj[i]] != comp[i]) {
+            continue;
+          }
+          // Only search for edges not worse than the component bound:
+          bestj[i] = -1;
+          bestd[i] = ubound[comp[i]];
+          if(improves(i, core[i])) {
+            nearestSearch(0, i, data.get(i));
+          }
+        }
+        break;
+      }
+    }
+
+    /**
+     * kNN search for the core distances.
+     *
+     * @param node Node
+     * @param v Query vector
+     * @param heap Distance heap
+     */
+    private void knnSearch(int node, O v, DoubleMaxHeap heap) {
+      if(nright[node] == 0) {
+        for(int i = nstart[node]; i < nend[node]; i++) {
+          heap.add(distance.distance(v, data.get(i)), minPts);
+        }
+        return;
+      }
+      final int l = node + 1, r = nright[node];
+      final double dl = distance.minDist(v, nbox[l]), dr = distance.minDist(v, nbox[r]);
+      final int first = dl <= dr ? l : r, second = dl <= dr ? r : l;
+      final double d2 = dl <= dr ? dr : dl;
+      knnSearch(first, v, heap);
+      if(heap.size() < minPts || d2 < heap.peek()) {
+        knnSearch(second, v, heap);
+      }
+    }
+
+    /**
+     * Search the nearest neighbor outside of the component, in mutual
+     * reachability distance.
+     *
+     * @param node Node
+     * @param i Query object
+     * @param v Query vector
+     */
+    private void nearestSearch(int node, int i, O v) {
+      final int c = comp[i];
+      final double ci = core[i];
+      if(nright[node] == 0) {
+        for(int j = nstart[node]; j < nend[node]; j++) {
+          if(comp[j] == c) {
+            continue;
+          }
+          final double cij = core[j] > ci ? core[j] : ci;
+          if(!improves(i, cij)) {
+            continue;
+          }
+          final double d = distance.distance(v, data.get(j));
+          final double m = d > cij ? d : cij;
+          if(improves(i, m)) {
+            bestd[i] = m;
+            bestj[i] = j;
+          }
+        }
+        return;
+      }
+      final int l = node + 1, r = nright[node];
+      final double bl = bound(l, c, ci, v), br = bound(r, c, ci, v);
+      final int first = bl <= br ? l : r, second = bl <= br ? r : l;
+      final double b1 = bl <= br ? bl : br, b2 = bl <= br ? br : bl;
+      if(improves(i, b1)) {
+        nearestSearch(first, i, v);
+      }
+      if(improves(i, b2)) {
+        nearestSearch(second, i, v);
+      }
+    }
+
+    /**
+     * Test whether an edge (or a lower bound) may improve the current best
+     * edge of an object. As long as no edge was found, ties with the
+     * component bound are accepted; this also allows infinite distances.
+     *
+     * @param i Object
+     * @param d Distance or lower bound, NaN to prune
+     * @return {@code true} if the distance is small enough
+     */
+    private boolean improves(int i, double d) {
+      return bestj[i] >= 0 ? d < bestd[i] : d <= bestd[i];
+    }
+
+    /**
+     * Lower bound of the mutual reachability distance to the points of a node
+     * outside of the query component.
+     *
+     * @param node Node
+     * @param c Query component
+     * @param ci Query core distance
+     * @param v Query vector
+     * @return Lower bound, NaN if the node is in the query component
+     */
+    private double bound(int node, int c, double ci, O v) {
+      if(ncomp[node] == c) {
+        return Double.NaN;
+      }
+      final double b = ncore[node] > ci ? ncore[node] : ci;
+      final double d = distance.minDist(v, nbox[node]);
+      return d > b ? d : b;
+    }
+
+    /**
+     * Task for parallel processing of a range of objects.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Task extends RecursiveAction {
+      /**
+       * Serial version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Phase.
+       */
+      private Phase phase;
+
+      /**
+       * Object range.
+       */
+      private int start, end;
+
+      /**
+       * Constructor.
+       *
+       * @param phase Phase
+       * @param start First object
+       * @param end End (exclusive)
+       */
+      Task(Phase phase, int start, int end) {
+        this.phase = phase;
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      protected void compute() {
+        if(end - start <= BLOCKSIZE) {
+          process(phase, start, end);
+          return;
+        }
+        final int mid = (start + end) >>> 1;
+        invokeAll(new Task(phase, start, mid), new Task(phase, mid, end));
+      }
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type
+   */
+  public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Spatial distance function.
+     */
+    protected SpatialPrimitiveDistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Minimum size of core.
+     */
+    protected int minPts;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<SpatialPrimitiveDistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DistanceBasedAlgorithm.DISTANCE_FUNCTION_ID, SpatialPrimitiveDistanceFunction.class, EuclideanDistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      IntParameter minptsP = new IntParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(minptsP)) {
+        minPts = minptsP.getValue();
+      }
+    }
+
+    @Override
+    protected BoruvkaHDBSCAN<O> makeInstance() {
+      return new BoruvkaHDBSCAN<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Matrix storage in main memory, using single precision (float).
+ *
+ * This halves the memory requirements, at the cost of precision; merges of
+ * clusters with almost identical distances may happen in a different order.
+ *
+ * Large matrixes are split into segments, to not be limited by the maximum
+ * array size of Java.
+ *
+ * @author Erich Schubert
+ */
+public class FloatArrayMatrixStorage implements MatrixStorage {
+  /**
+   * Segment size (in bits) for large matrixes.
+   */
+  private static final int SEGMENT_BITS = 27;
+
+  /**
+   * Data segments.
+   */
+  private final float[][] data;
+
+  /**
+   * Segment addressing.
+   */
+  private final int shift;
+
+  /**
+   * Segment addressing.
+   */
+  private final long mask;
+
+  /**
+   * Number of entries.
+   */
+  private final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  public FloatArrayMatrixStorage(long size) {
+    this.size = size;
+    if(size <= Integer.MAX_VALUE - 8) {
+      this.data = new float[][] { new float[(int) size] };
+      this.shift = 31;
+    }
+    else {
+      final int nseg = (int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+      this.data = new float[nseg][];
+      for(int i = 0; i < nseg - 1; i++) {
+        data[i] = new float[1 << SEGMENT_BITS];
+      }
+      data[nseg - 1] = new float[(int) (size - ((long) (nseg - 1) << SEGMENT_BITS))];
+      this.shift = SEGMENT_BITS;
+    }
+    this.mask = (1L << shift) - 1;
+  }
+
+  @Override
+  public double get(long pos) {
+    return data[(int) (pos >>> shift)][(int) (pos & mask)];
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    data[(int) (pos >>> shift)][(int) (pos & mask)] = (float) value;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has FloatArrayMatrixStorage
+   */
+  public static class Factory implements MatrixStorage.Factory {
+    /**
+     * Static instance.
+     */
+    public static final Factory STATIC = new Factory();
+
+    @Override
+    public FloatArrayMatrixStorage newStorage(long size) {
+      return new FloatArrayMatrixStorage(size);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected Factory makeInstance() {
+        return STATIC;
+      }
+    }
+  }
+}
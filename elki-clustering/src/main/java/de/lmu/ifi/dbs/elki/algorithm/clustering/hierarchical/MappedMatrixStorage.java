@@ -0,0 +1,246 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Matrix storage in a memory-mapped file.
+ *
+ * This allows matrixes larger than the Java heap (and than main memory), at
+ * the cost of disk accesses by the operating system. The file is mapped in
+ * segments of 1 GB each.
+ *
+ * @author Erich Schubert
+ */
+public class MappedMatrixStorage implements MatrixStorage {
+  /**
+   * Segment size in bytes (in bits).
+   */
+  private static final int SEGMENT_BITS = 30;
+
+  /**
+   * File storing the data.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * File name, if to be deleted on close.
+   */
+  private final File temporary;
+
+  /**
+   * Mapped segments.
+   */
+  private final MappedByteBuffer[] segments;
+
+  /**
+   * Use single precision.
+   */
+  private final boolean single;
+
+  /**
+   * Entry addressing: bits of the entry width.
+   */
+  private final int wbits;
+
+  /**
+   * Segment addressing.
+   */
+  private final int shift;
+
+  /**
+   * Segment addressing.
+   */
+  private final long mask;
+
+  /**
+   * Number of entries.
+   */
+  private final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param filename File name, {@code null} for a temporary file
+   * @param size Number of entries
+   * @param single Use single precision
+   */
+  public MappedMatrixStorage(File filename, long size, boolean single) {
+    this.size = size;
+    this.single = single;
+    this.wbits = single ? 2 : 3;
+    this.shift = SEGMENT_BITS - wbits;
+    this.mask = (1L << shift) - 1;
+    try {
+      if(filename == null) {
+        temporary = filename = File.createTempFile("elki-matrix", ".bin");
+        temporary.deleteOnExit();
+      }
+      else {
+        temporary = null;
+      }
+      file = new RandomAccessFile(filename, "rw");
+      final long bytes = size << wbits;
+      file.setLength(bytes);
+      final int nseg = (int) ((bytes + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+      segments = new MappedByteBuffer[nseg];
+      final FileChannel channel = file.getChannel();
+      for(int i = 0; i < nseg; i++) {
+        final long start = ((long) i) << SEGMENT_BITS;
+        segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(bytes - start, 1L << SEGMENT_BITS));
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map the matrix file.", e);
+    }
+  }
+
+  @Override
+  public double get(long pos) {
+    final MappedByteBuffer seg = segments[(int) (pos >>> shift)];
+    final int off = ((int) (pos & mask)) << wbits;
+    return single ? seg.getFloat(off) : seg.getDouble(off);
+  }
+
+  @Override
+  public void set(long pos, double value) {
+    final MappedByteBuffer seg = segments[(int) (pos >>> shift)];
+    final int off = ((int) (pos & mask)) << wbits;
+    if(single) {
+      seg.putFloat(off, (float) value);
+    }
+    else {
+      seg.putDouble(off, value);
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void close() {
+    try {
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not close the matrix file.", e);
+    }
+    if(temporary != null) {
+      temporary.delete();
+    }
+  }
+
+  /**
+   * Factory class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has MappedMatrixStorage
+   */
+  public static class Factory implements MatrixStorage.Factory {
+    /**
+     * File name, may be {@code null}.
+     */
+    private File filename;
+
+    /**
+     * Use single precision.
+     */
+    private boolean single;
+
+    /**
+     * Constructor.
+     *
+     * @param filename File name, {@code null} for a temporary file
+     * @param single Use single precision
+     */
+    public Factory(File filename, boolean single) {
+      this.filename = filename;
+      this.single = single;
+    }
+
+    @Override
+    public MappedMatrixStorage newStorage(long size) {
+      return new MappedMatrixStorage(filename, size, single);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      /**
+       * File to store the matrix in.
+       */
+      public static final OptionID FILE_ID = new OptionID("hierarchical.matrix.file", "File to store the matrix in. If not given, a temporary file is used.");
+
+      /**
+       * Flag to use single precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("hierarchical.matrix.float", "Store the matrix in single precision, to halve the size.");
+
+      /**
+       * File name, may be {@code null}.
+       */
+      private File filename;
+
+      /**
+       * Use single precision.
+       */
+      private boolean single;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+        if(config.grab(fileP)) {
+          filename = fileP.getValue();
+        }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          single = floatF.isTrue();
+        }
+      }
+
+      @Override
+      protected Factory makeInstance() {
+        return new Factory(filename, single);
+      }
+    }
+  }
+}
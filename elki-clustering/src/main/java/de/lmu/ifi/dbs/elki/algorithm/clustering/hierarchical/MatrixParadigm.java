@@ -20,11 +20,15 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import java.util.function.DoubleUnaryOperator;
+
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangleMatrixPrecomputer;
+import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
@@ -38,7 +42,14 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * While this will usually store (merge-) distances when clustering, it can
  * store arbitrary doubles.
  *
+ * The matrix is kept in a {@link MatrixStorage}, addressed by <tt>long</tt>
+ * positions (see {@link #triangleSizeLong}). For compatibility, the default
+ * constructor also exposes the plain array in {@link #matrix}.
+ *
  * @author Erich Schubert
+ *
+ * @apiviz.composedOf MatrixStorage
+ * @apiviz.uses TriangleMatrixPrecomputer
  */
 public class MatrixParadigm {
   /**
@@ -47,17 +58,28 @@ public class MatrixParadigm {
   public final DBIDArrayIter ix, iy;
 
   /**
-   * Distance matrix (<b>modifiable</b>).
+   * Distance matrix (<b>modifiable</b>), {@code null} unless constructed with
+   * {@link #MatrixParadigm(DBIDs)}.
    */
   public final double[] matrix;
 
+  /**
+   * Matrix storage (<b>modifiable</b>).
+   */
+  public final MatrixStorage storage;
+
   /**
    * Number of rows/columns.
    */
   public final int size;
 
   /**
-   * Constructor.
+   * Objects.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Constructor, using a single double array.
    *
    * @param ids Database ids.
    */
@@ -68,10 +90,26 @@ public class MatrixParadigm {
           0x10000 // = 65535
           + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
     matrix = new double[triangleSize(size)];
+    storage = new DoubleArrayMatrixStorage(matrix);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param factory Storage factory
+   */
+  public MatrixParadigm(DBIDs ids, MatrixStorage.Factory factory) {
+    size = ids.size();
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
+    matrix = null;
+    storage = factory.newStorage(triangleSizeLong(size));
   }
 
   /**
@@ -84,6 +122,17 @@ public class MatrixParadigm {
     return (x * (x - 1)) >>> 1;
   }
 
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal), for
+   * addressing a {@link MatrixStorage}.
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSizeLong(int x) {
+    return (((long) x) * (x - 1)) >>> 1;
+  }
+
   /**
    * Get a value from the (upper triangular) distance matrix.
    *
@@ -96,8 +145,8 @@ public class MatrixParadigm {
    */
   public double get(int x, int y) {
     return (x == y) ? 0 : (x < y) //
-        ? matrix[MatrixParadigm.triangleSize(y) + x] //
-        : matrix[MatrixParadigm.triangleSize(x) + y];
+        ? storage.get(triangleSizeLong(y) + x) //
+        : storage.get(triangleSizeLong(x) + y);
   }
 
   /**
@@ -107,16 +156,35 @@ public class MatrixParadigm {
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+    return initializeWithDistances(dq, null, null);
+  }
+
+  /**
+   * Initialize a distance matrix, in parallel if possible.
+   *
+   * @param dq Distance query
+   * @param init Transformation of the distances, may be {@code null}
+   * @param log Logger for progress, may be {@code null}
+   * @return this
+   */
+  public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq, DoubleUnaryOperator init, Logging log) {
+    final MatrixStorage storage = this.storage;
+    new TriangleMatrixPrecomputer(ids, false, false).run((a, b) -> {
+      final double d = dq.distance(a, b);
+      return init != null ? init.applyAsDouble(d) : d;
+    }, (x, y, values, len) -> {
+      final long pos = triangleSizeLong(x) + y;
+      for(int i = 0; i < len; i++) {
+        storage.set(pos + i, values[i]);
       }
-    }
+    }, "Distance matrix computation", log);
     return this;
   }
+
+  /**
+   * Release the matrix storage.
+   */
+  public void close() {
+    storage.close();
+  }
 }
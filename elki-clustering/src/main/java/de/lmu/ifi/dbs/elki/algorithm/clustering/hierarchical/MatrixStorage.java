@@ -0,0 +1,79 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/**
+ * Storage backend for the triangular matrixes used by {@link MatrixParadigm}.
+ *
+ * Positions are <tt>long</tt>, so that backends can go beyond the maximum
+ * array size of Java. Concurrent writes to different positions must be safe,
+ * as the initial matrix is filled in parallel.
+ *
+ * @author Erich Schubert
+ */
+public interface MatrixStorage {
+  /**
+   * Get the value at a position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  double get(long pos);
+
+  /**
+   * Set the value at a position.
+   *
+   * @param pos Position
+   * @param value New value
+   */
+  void set(long pos, double value);
+
+  /**
+   * Number of entries.
+   *
+   * @return Size
+   */
+  long size();
+
+  /**
+   * Release the storage, e.g. temporary files.
+   */
+  default void close() {
+    // Nothing to do by default.
+  }
+
+  /**
+   * Factory for matrix storage.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has MatrixStorage
+   */
+  interface Factory {
+    /**
+     * Allocate a new storage.
+     *
+     * @param size Number of entries
+     * @return Storage
+     */
+    MatrixStorage newStorage(long size);
+  }
+}
@@ -80,6 +80,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distanceFunction, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Storage for the distance matrix
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, Linkage linkage, MatrixStorage.Factory storage) {
+    super(distanceFunction, linkage, storage);
+  }
+
   /**
    * Run the algorithm
    * 
@@ -93,16 +104,20 @@ public class NNChain<O> extends AGNES<O> {
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
-
-    // Compute the initial (lower triangular) distance matrix.
-    initializeDistanceMatrix(mat, dq, linkage);
+    MatrixParadigm mat = new MatrixParadigm(ids, storage);
+    try {
+      // Compute the initial (lower triangular) distance matrix.
+      initializeDistanceMatrix(mat, dq, linkage);
 
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
 
-    nnChainCore(mat, builder);
-    return builder.complete();
+      nnChainCore(mat, builder);
+      return builder.complete();
+    }
+    finally {
+      mat.close();
+    }
   }
 
   /**
@@ -114,7 +129,7 @@ public class NNChain<O> extends AGNES<O> {
    */
   private void nnChainCore(MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final MatrixStorage distances = mat.storage;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -149,10 +164,10 @@ public class NNChain<O> extends AGNES<O> {
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSizeLong(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -161,7 +176,7 @@ public class NNChain<O> extends AGNES<O> {
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSizeLong(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -227,7 +242,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
     @Override
     protected NNChain<O> makeInstance() {
-      return new NNChain<>(distanceFunction, linkage);
+      return new NNChain<>(distanceFunction, linkage, storage);
     }
   }
 }
@@ -0,0 +1,326 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.plusEquals;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Abstract base class for parallel k-means variants that maintain bounds to
+ * avoid distance computations, such as Hamerly's and Elkan's algorithms.
+ * <p>
+ * The bound data stores are shared, but every thread only accesses the
+ * entries of its own block of objects. Each instance accumulates the changes
+ * to the cluster sums and sizes, which are merged in {@link #cleanup}. The
+ * bound updates caused by moving centers are deferred to the next assignment
+ * pass, to avoid an additional pass over the data.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractKMeansBoundsProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Assignment storage.
+   */
+  WritableIntegerDataStore assignment;
+
+  /**
+   * Upper bounds.
+   */
+  WritableDoubleDataStore upper;
+
+  /**
+   * Current mean vectors.
+   */
+  double[][] means;
+
+  /**
+   * Running sums of the cluster members.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Distance moved by each center in the last iteration, {@code null} in the
+   * first iteration.
+   */
+  double[] move;
+
+  /**
+   * Number of reassigned objects in the current iteration.
+   */
+  int changed;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param means Initial means
+   */
+  public AbstractKMeansBoundsProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, double[][] means) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.assignment = assignment;
+    this.upper = upper;
+    this.means = means;
+    final int k = means.length, dim = means[0].length;
+    this.sums = new double[k][dim];
+    this.sizes = new int[k];
+  }
+
+  /**
+   * Initialize for a new iteration.
+   */
+  public void nextIteration() {
+    changed = 0;
+  }
+
+  /**
+   * Get the number of reassigned objects.
+   *
+   * @return Number of changes
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Get the cluster sizes.
+   *
+   * @return Cluster sizes
+   */
+  public int[] getSizes() {
+    return sizes;
+  }
+
+  /**
+   * Get the current means.
+   *
+   * @return Means
+   */
+  public double[][] getMeans() {
+    return means;
+  }
+
+  /**
+   * Update the means from the cluster sums, and compute the distances moved.
+   *
+   * @return Maximum distance moved
+   */
+  public double updateMeans() {
+    final int k = means.length, dim = means[0].length;
+    final boolean issquared = distance.isSquared();
+    if(move == null) {
+      move = new double[k];
+    }
+    double max = 0.;
+    for(int i = 0; i < k; i++) {
+      if(sizes[i] == 0) {
+        move[i] = 0.;
+        continue; // Keep old mean.
+      }
+      double[] newmean = new double[dim];
+      final double[] sum = sums[i];
+      final double f = 1. / sizes[i];
+      for(int d = 0; d < dim; d++) {
+        newmean[d] = sum[d] * f;
+      }
+      double d = distance.distance(DoubleVector.wrap(means[i]), DoubleVector.wrap(newmean));
+      d = issquared ? FastMath.sqrt(d) : d;
+      move[i] = d;
+      max = (d > max) ? d : max;
+      means[i] = newmean;
+    }
+    return max;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sums.length; i++) {
+        if(instance.touched[i]) {
+          plusEquals(sums[i], instance.sums[i]);
+          sizes[i] += instance.sizes[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Upper bounds.
+     */
+    protected WritableDoubleDataStore upper;
+
+    /**
+     * Current mean vectors, wrapped as vectors.
+     */
+    protected DoubleVector[] means;
+
+    /**
+     * Distance moved by each center, {@code null} in the first iteration.
+     */
+    protected double[] move;
+
+    /**
+     * Distance is squared Euclidean.
+     */
+    protected boolean issquared;
+
+    /**
+     * Changes to the cluster sums.
+     */
+    private double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    private int[] sizes;
+
+    /**
+     * Flag whether a cluster was modified by this instance.
+     */
+    private boolean[] touched;
+
+    /**
+     * Number of reassigned objects.
+     */
+    private int changed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(AbstractKMeansBoundsProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.distance = parent.distance;
+      this.assignment = parent.assignment;
+      this.upper = parent.upper;
+      this.move = parent.move;
+      this.issquared = distance.isSquared();
+      final int k = parent.means.length, dim = parent.means[0].length;
+      this.means = new DoubleVector[k];
+      for(int i = 0; i < k; i++) {
+        this.means[i] = DoubleVector.wrap(parent.means[i]);
+      }
+      this.sums = new double[k][dim];
+      this.sizes = new int[k];
+      this.touched = new boolean[k];
+    }
+
+    /**
+     * Compute the distance of a vector to a mean, as metric distance.
+     *
+     * @param fv Vector
+     * @param i Mean index
+     * @return Distance
+     */
+    protected double distance(V fv, int i) {
+      final double d = distance.distance(fv, means[i]);
+      return issquared ? FastMath.sqrt(d) : d;
+    }
+
+    /**
+     * Record the (re-) assignment of an object.
+     *
+     * @param fv Vector
+     * @param from Previous cluster, or -1
+     * @param to New cluster
+     */
+    protected void reassign(V fv, int from, int to) {
+      final double[] newsum = sums[to];
+      touched[to] = true;
+      ++sizes[to];
+      if(from < 0) {
+        for(int d = 0; d < newsum.length; d++) {
+          newsum[d] += fv.doubleValue(d);
+        }
+      }
+      else {
+        final double[] oldsum = sums[from];
+        touched[from] = true;
+        --sizes[from];
+        for(int d = 0; d < newsum.length; d++) {
+          final double v = fv.doubleValue(d);
+          newsum[d] += v;
+          oldsum[d] -= v;
+        }
+      }
+      ++changed;
+    }
+  }
+}
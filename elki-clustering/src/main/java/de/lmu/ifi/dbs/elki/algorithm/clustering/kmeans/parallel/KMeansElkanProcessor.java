@@ -0,0 +1,222 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import net.jafama.FastMath;
+
+/**
+ * Parallel processor for Elkan's k-means.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansElkanProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Lower bounds, one per cluster.
+   */
+  WritableDataStore<double[]> lower;
+
+  /**
+   * Separation of means.
+   */
+  double[] sep;
+
+  /**
+   * Half of the center-to-center distances.
+   */
+  double[][] cdist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param means Initial means
+   */
+  public KMeansElkanProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[][] means) {
+    super(relation, distance, assignment, upper, means);
+    this.lower = lower;
+    final int k = means.length;
+    this.sep = new double[k];
+    this.cdist = new double[k][k];
+  }
+
+  @Override
+  public void nextIteration() {
+    super.nextIteration();
+    if(move != null) {
+      recomputeSeperation();
+    }
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   */
+  private void recomputeSeperation() {
+    final int k = means.length;
+    final boolean issquared = distance.isSquared();
+    Arrays.fill(sep, Double.POSITIVE_INFINITY);
+    for(int i = 1; i < k; i++) {
+      DoubleVector mi = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distance.distance(mi, DoubleVector.wrap(means[j]));
+        d = issquared ? FastMath.sqrt(d) : d;
+        d *= .5;
+        cdist[i][j] = d;
+        cdist[j][i] = d;
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Half of the center-to-center distances.
+     */
+    private double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(KMeansElkanProcessor<V> parent) {
+      super(parent);
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.cdist = parent.cdist;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int k = means.length;
+      final double[] l = lower.get(id);
+      if(move == null) {
+        initialAssign(id, l);
+        return;
+      }
+      final int orig = assignment.intValue(id);
+      // Apply the deferred bound updates:
+      for(int i = 0; i < k; i++) {
+        l[i] -= move[i];
+      }
+      double u = upper.doubleValue(id) + move[orig];
+      upper.putDouble(id, u);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(id);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, cur);
+          upper.putDouble(id, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        final double dist = distance(fv, j);
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(id, u); // Remember bound.
+        assignment.putInt(id, cur);
+        reassign(fv, orig, cur);
+      }
+    }
+
+    /**
+     * Initial assignment of an object.
+     *
+     * @param id Object
+     * @param l Lower bounds
+     */
+    private void initialAssign(DBIDRef id, double[] l) {
+      V fv = relation.get(id);
+      // Check all (other) means:
+      double best = Double.POSITIVE_INFINITY;
+      int cur = -1;
+      for(int j = 0; j < means.length; j++) {
+        final double dist = distance(fv, j);
+        l[j] = dist;
+        if(dist < best) {
+          cur = j;
+          best = dist;
+        }
+      }
+      assignment.putInt(id, cur);
+      reassign(fv, -1, cur);
+      upper.putDouble(id, best);
+    }
+  }
+}
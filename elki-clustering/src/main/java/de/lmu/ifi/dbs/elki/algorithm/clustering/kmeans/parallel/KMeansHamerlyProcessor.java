@@ -0,0 +1,225 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import net.jafama.FastMath;
+
+/**
+ * Parallel processor for Hamerly's k-means.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansHamerlyProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Lower bounds.
+   */
+  WritableDoubleDataStore lower;
+
+  /**
+   * Separation of means.
+   */
+  double[] sep;
+
+  /**
+   * Maximum distance moved.
+   */
+  double delta;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param means Initial means
+   */
+  public KMeansHamerlyProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[][] means) {
+    super(relation, distance, assignment, upper, means);
+    this.lower = lower;
+    this.sep = new double[means.length];
+  }
+
+  @Override
+  public void nextIteration() {
+    super.nextIteration();
+    if(move != null) {
+      recomputeSeperation();
+    }
+  }
+
+  @Override
+  public double updateMeans() {
+    return delta = super.updateMeans();
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   */
+  private void recomputeSeperation() {
+    final int k = means.length;
+    final boolean issquared = distance.isSquared();
+    Arrays.fill(sep, Double.POSITIVE_INFINITY);
+    for(int i = 1; i < k; i++) {
+      DoubleVector m1 = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distance.distance(m1, DoubleVector.wrap(means[j]));
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+    // We need half the Euclidean distance
+    for(int i = 0; i < k; i++) {
+      sep[i] = issquared ? FastMath.sqrt(sep[i]) : sep[i];
+      sep[i] *= .5;
+    }
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Lower bounds.
+     */
+    private WritableDoubleDataStore lower;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Maximum distance moved.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(KMeansHamerlyProcessor<V> parent) {
+      super(parent);
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.delta = parent.delta;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      if(move == null) {
+        initialAssign(id);
+        return;
+      }
+      final int cur = assignment.intValue(id);
+      // Apply the deferred bound updates:
+      double u = upper.doubleValue(id) + move[cur];
+      final double z = lower.doubleValue(id) - delta;
+      final double sa = sep[cur];
+      if(u <= z || u <= sa) {
+        upper.putDouble(id, u);
+        lower.putDouble(id, z);
+        return;
+      }
+      // Update the upper bound
+      V fv = relation.get(id);
+      u = distance(fv, cur);
+      if(u <= z || u <= sa) {
+        upper.putDouble(id, u);
+        lower.putDouble(id, z);
+        return;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance(fv, i);
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        assignment.putInt(id, minIndex);
+        reassign(fv, cur, minIndex);
+        u = min1;
+      }
+      upper.putDouble(id, u);
+      lower.putDouble(id, min2);
+    }
+
+    /**
+     * Initial assignment of an object.
+     *
+     * @param id Object
+     */
+    private void initialAssign(DBIDRef id) {
+      V fv = relation.get(id);
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance(fv, i);
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      assignment.putInt(id, minIndex);
+      reassign(fv, -1, minIndex);
+      upper.putDouble(id, min1);
+      lower.putDouble(id, min2);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -137,7 +138,7 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
       processedIDs = DBIDUtil.newHashSet(ids.size());
       clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
-      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction(), DatabaseQuery.HINT_HEAVY_USE);
       rangeQuery = db.getRangeQuery(dq, epsilon);
       heap = new UpdatableHeap<>();
     }
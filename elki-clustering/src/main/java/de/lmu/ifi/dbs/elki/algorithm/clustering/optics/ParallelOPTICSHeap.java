@@ -0,0 +1,497 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * The OPTICS algorithm for density-based hierarchical clustering.
+ *
+ * This version of {@link OPTICSHeap} speculatively computes the
+ * ε-neighborhoods of the next candidates in the heap on the worker threads,
+ * while the main thread processes the current object. Since the range query
+ * results do not depend on the order of processing, the resulting cluster
+ * order is the same as with {@link OPTICSHeap}.
+ *
+ * Candidates are kept in a primitive heap of (reachability, offset) pairs,
+ * with ties broken as in {@link OPTICSHeapEntry}, so no objects are allocated
+ * for heap entries. This version requires a static database (with a
+ * {@link DBIDRange}), and the range query must support concurrent use.
+ *
+ * Reference:
+ * <p>
+ * M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander:<br />
+ * OPTICS: Ordering Points to Identify the Clustering Structure. <br/>
+ * In: Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99).
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.composedOf Instance
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering")
+@Description("Algorithm to find density-connected sets in a database based on the parameters 'minPts' and 'epsilon' (specifying a volume). These two parameters determine a density threshold for clustering.")
+@Reference(authors = "M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander", //
+title = "OPTICS: Ordering Points to Identify the Clustering Structure", //
+booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", //
+url = "http://dx.doi.org/10.1145/304181.304187")
+public class ParallelOPTICSHeap<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICSHeap.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICSHeap(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    return new Instance(db, relation).run();
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * IDs to process.
+     */
+    private DBIDRange ids;
+
+    /**
+     * Flags for processed objects.
+     */
+    private boolean[] processed;
+
+    /**
+     * Predecessor of each candidate (offset), -1 for none.
+     */
+    private int[] predecessor;
+
+    /**
+     * Heap of candidates.
+     */
+    private CandidateHeap heap;
+
+    /**
+     * Neighborhoods currently being prefetched, by offset.
+     */
+    private Int2ObjectOpenHashMap<Future<ModifiableDoubleDBIDList>> pending;
+
+    /**
+     * Maximum number of pending prefetches, 0 to disable.
+     */
+    private int maxpending;
+
+    /**
+     * Number of prefetched neighborhoods used.
+     */
+    private long prefetchhits;
+
+    /**
+     * Output cluster order.
+     */
+    private ClusterOrder clusterOrder;
+
+    /**
+     * Progress for logging.
+     */
+    private FiniteProgress progress;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     */
+    public Instance(Database db, Relation<O> relation) {
+      ids = DBIDUtil.assertRange(relation.getDBIDs());
+      processed = new boolean[ids.size()];
+      predecessor = new int[ids.size()];
+      heap = new CandidateHeap(ids.size());
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction(), DatabaseQuery.HINT_HEAVY_USE);
+      rangeQuery = db.getRangeQuery(dq, epsilon);
+      final int parallelism = ParallelCore.getCore().getParallelism();
+      maxpending = parallelism > 1 ? parallelism << 2 : 0;
+      pending = new Int2ObjectOpenHashMap<>();
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      ParallelCore core = ParallelCore.getCore();
+      if(maxpending > 0) {
+        core.connect();
+      }
+      try {
+        DBIDArrayIter cur = ids.iter(), pre = ids.iter();
+        ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+        for(int i = 0; i < processed.length; i++) {
+          if(!processed[i]) {
+            assert (heap.isEmpty());
+            predecessor[i] = -1;
+            heap.offer(Double.POSITIVE_INFINITY, i);
+            expandClusterOrder(cur, pre, neighbors);
+          }
+        }
+      }
+      finally {
+        if(maxpending > 0) {
+          for(Future<?> f : pending.values()) {
+            f.cancel(false);
+          }
+          core.disconnect();
+        }
+      }
+      LOG.ensureCompleted(progress);
+      if(maxpending > 0) {
+        LOG.statistics(new LongStatistic(ParallelOPTICSHeap.class.getName() + ".prefetched", prefetchhits));
+      }
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     *
+     * @param cur Iterator for the current object
+     * @param pre Iterator for the predecessor
+     * @param buf Buffer for neighbors, if not prefetched
+     */
+    protected void expandClusterOrder(DBIDArrayIter cur, DBIDArrayIter pre, ModifiableDoubleDBIDList buf) {
+      while(!heap.isEmpty()) {
+        final double reachability = heap.peekKey();
+        final int c = heap.peekValue();
+        heap.poll();
+        processed[c] = true;
+        cur.seek(c);
+        clusterOrder.add(cur, reachability, predecessor[c] >= 0 ? pre.seek(predecessor[c]) : null);
+        prefetch();
+
+        ModifiableDoubleDBIDList neighbors = getNeighbors(c, cur, buf);
+        if(neighbors.size() >= minpts) {
+          neighbors.sort();
+          DoubleDBIDListIter neighbor = neighbors.iter();
+          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+
+          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+            final int n = ids.getOffset(neighbor);
+            if(processed[n]) {
+              continue;
+            }
+            if(heap.offer(MathUtil.max(neighbor.doubleValue(), coreDistance), n)) {
+              predecessor[n] = c;
+            }
+          }
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Get the neighbors of the current object, either prefetched or computed
+     * now.
+     *
+     * @param c Offset of the current object
+     * @param cur Current object
+     * @param buf Buffer to use if not prefetched
+     * @return Neighbors
+     */
+    private ModifiableDoubleDBIDList getNeighbors(int c, DBIDArrayIter cur, ModifiableDoubleDBIDList buf) {
+      Future<ModifiableDoubleDBIDList> f = maxpending > 0 ? pending.remove(c) : null;
+      if(f != null) {
+        try {
+          ++prefetchhits;
+          return f.get();
+        }
+        catch(ExecutionException e) {
+          throw new RuntimeException("Range query failed.", e);
+        }
+        catch(InterruptedException e) {
+          throw new RuntimeException("Parallel execution interrupted.");
+        }
+      }
+      buf.clear();
+      rangeQuery.getRangeForDBID(cur, epsilon, buf);
+      return buf;
+    }
+
+    /**
+     * Start computing the neighborhoods of the best candidates.
+     *
+     * The first entries of the heap array are not exactly the next objects to
+     * be processed, but they are good guesses. Prefetched neighborhoods stay
+     * valid until used.
+     */
+    private void prefetch() {
+      final ParallelCore core = ParallelCore.getCore();
+      final DBIDArrayIter it = ids.iter();
+      for(int i = 0, e = Math.min(heap.size(), maxpending << 1); i < e && pending.size() < maxpending; i++) {
+        final int c = heap.valueAt(i);
+        if(pending.containsKey(c)) {
+          continue;
+        }
+        final DBID id = DBIDUtil.deref(it.seek(c));
+        pending.put(c, core.submit(() -> {
+          ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
+          rangeQuery.getRangeForDBID(id, epsilon, result);
+          return result;
+        }));
+      }
+    }
+  }
+
+  /**
+   * Primitive heap of candidates, with (reachability, offset) entries.
+   *
+   * Ordered by ascending reachability, ties by descending offset, as
+   * {@link OPTICSHeapEntry}. Each offset can be in the heap at most once, and
+   * will only be updated to smaller reachabilities.
+   *
+   * @author Erich Schubert
+   */
+  private static class CandidateHeap {
+    /**
+     * Reachabilities.
+     */
+    private double[] keys;
+
+    /**
+     * Object offsets.
+     */
+    private int[] values;
+
+    /**
+     * Heap position of each offset, -1 when not in the heap.
+     */
+    private int[] pos;
+
+    /**
+     * Current size.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param n Number of objects
+     */
+    CandidateHeap(int n) {
+      keys = new double[n];
+      values = new int[n];
+      pos = new int[n];
+      Arrays.fill(pos, -1);
+    }
+
+    /**
+     * Add an object, or update its reachability.
+     *
+     * @param key Reachability
+     * @param val Object offset
+     * @return {@code true} if the heap was modified
+     */
+    boolean offer(double key, int val) {
+      int p = pos[val];
+      if(p < 0) {
+        p = size++;
+      }
+      else if(!(key < keys[p])) {
+        return false;
+      }
+      heapifyUp(p, key, val);
+      return true;
+    }
+
+    /**
+     * Remove the top element.
+     */
+    void poll() {
+      pos[values[0]] = -1;
+      if(--size > 0) {
+        heapifyDown(keys[size], values[size]);
+      }
+    }
+
+    /**
+     * Heap order.
+     *
+     * @param k1 First key
+     * @param v1 First value
+     * @param k2 Second key
+     * @param v2 Second value
+     * @return {@code true} if the first comes before the second
+     */
+    private static boolean before(double k1, int v1, double k2, int v2) {
+      return k1 < k2 || (k1 == k2 && v1 > v2);
+    }
+
+    /**
+     * Move an entry up.
+     *
+     * @param p Starting position
+     * @param key Key
+     * @param val Value
+     */
+    private void heapifyUp(int p, double key, int val) {
+      while(p > 0) {
+        final int parent = (p - 1) >>> 1;
+        if(!before(key, val, keys[parent], values[parent])) {
+          break;
+        }
+        keys[p] = keys[parent];
+        pos[values[p] = values[parent]] = p;
+        p = parent;
+      }
+      keys[p] = key;
+      pos[values[p] = val] = p;
+    }
+
+    /**
+     * Reinsert an entry at the top.
+     *
+     * @param key Key
+     * @param val Value
+     */
+    private void heapifyDown(double key, int val) {
+      final int stop = size >>> 1;
+      int p = 0;
+      while(p < stop) {
+        int child = (p << 1) + 1;
+        final int right = child + 1;
+        if(right < size && before(keys[right], values[right], keys[child], values[child])) {
+          child = right;
+        }
+        if(!before(keys[child], values[child], key, val)) {
+          break;
+        }
+        keys[p] = keys[child];
+        pos[values[p] = values[child]] = p;
+        p = child;
+      }
+      keys[p] = key;
+      pos[values[p] = val] = p;
+    }
+
+    /**
+     * @return Key of the top element
+     */
+    double peekKey() {
+      return keys[0];
+    }
+
+    /**
+     * @return Value of the top element
+     */
+    int peekValue() {
+      return values[0];
+    }
+
+    /**
+     * Get the value at a heap position.
+     *
+     * @param i Position
+     * @return Value
+     */
+    int valueAt(int i) {
+      return values[i];
+    }
+
+    /**
+     * @return Heap size
+     */
+    int size() {
+      return size;
+    }
+
+    /**
+     * @return {@code true} if empty
+     */
+    boolean isEmpty() {
+      return size == 0;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    @Override
+    protected ParallelOPTICSHeap<O> makeInstance() {
+      return new ParallelOPTICSHeap<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+
+/**
+ * Test merging partial E step statistics, as used by the parallel M step of
+ * {@link EM}.
+ *
+ * @author Erich Schubert
+ */
+public class EMClusterModelMergeTest {
+  @Test
+  public void testMultivariate() {
+    testMerge(new MultivariateGaussianModel(1., new double[3]), new MultivariateGaussianModel(1., new double[3]));
+  }
+
+  @Test
+  public void testDiagonal() {
+    testMerge(new DiagonalGaussianModel(1., new double[3]), new DiagonalGaussianModel(1., new double[3]));
+  }
+
+  @Test
+  public void testSpherical() {
+    testMerge(new SphericalGaussianModel(1., new double[3]), new SphericalGaussianModel(1., new double[3]));
+  }
+
+  /**
+   * Compare updating a model sequentially with merging partial models.
+   *
+   * @param seq Model to update sequentially
+   * @param merged Model to merge into
+   */
+  private void testMerge(EMClusterModel<?> seq, EMClusterModel<?> merged) {
+    Random r = new Random(0L);
+    DoubleVector[] data = new DoubleVector[100];
+    double[] weights = new double[data.length];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = DoubleVector.wrap(new double[] { r.nextGaussian(), r.nextGaussian() * 2 + i * .1, r.nextDouble() * 5 });
+      weights[i] = r.nextDouble();
+    }
+    seq.beginEStep();
+    merged.beginEStep();
+    // Block sizes include an empty block.
+    int[] splits = { 0, 0, 17, 60, 100 };
+    for(int b = 1; b < splits.length; b++) {
+      EMClusterModel<?> partial = merged.newPartialE();
+      for(int i = splits[b - 1]; i < splits[b]; i++) {
+        seq.updateE(data[i], weights[i]);
+        partial.updateE(data[i], weights[i]);
+      }
+      merged.mergeE(partial);
+    }
+    seq.finalizeEStep(1., 0.);
+    merged.finalizeEStep(1., 0.);
+    for(DoubleVector v : data) {
+      assertEquals("Log density differs.", seq.estimateLogDensity(v), merged.estimateLogDensity(v), 1e-10);
+    }
+  }
+}
@@ -20,13 +20,28 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.FirstKInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
 /**
@@ -162,4 +177,36 @@ public class EMTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, result, 0.9357286);
     testClusterSizes(result, new int[] { 103, 104, 208, 295 });
   }
+
+  /**
+   * Compare the parallel E and M steps on a large data set with the
+   * sequential implementation (used for non-range DBIDs).
+   */
+  @Test
+  public void testParallel() {
+    Random r = new Random(0L);
+    double[][] data = new double[10000][];
+    for(int i = 0; i < data.length; i++) {
+      final int c = r.nextInt(3);
+      data[i] = new double[] { c + r.nextGaussian() * .4, (c & 1) + r.nextGaussian() * (c + 1) * .2 };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    Relation<DoubleVector> seqrel = new ProxyView<>(DBIDUtil.newArray(rel.getDBIDs()), rel);
+    for(Class<?> factory : new Class<?>[] { MultivariateGaussianModelFactory.class, DiagonalGaussianModelFactory.class, SphericalGaussianModelFactory.class }) {
+      EM<DoubleVector, ?> em = new ELKIBuilder<EM<DoubleVector, ?>>(EM.class) //
+          .with(AbstractEMModelFactory.Parameterizer.INIT_ID, FirstKInitialMeans.class) //
+          .with(EM.Parameterizer.K_ID, 3) //
+          .with(EM.Parameterizer.INIT_ID, factory) //
+          .build();
+      List<? extends Cluster<?>> par = em.run(db, rel).getAllClusters();
+      List<? extends Cluster<?>> seq = em.run(db, seqrel).getAllClusters();
+      assertEquals("Number of clusters", seq.size(), par.size());
+      for(int i = 0; i < seq.size(); i++) {
+        assertEquals("Cluster size", seq.get(i).size(), par.get(i).size());
+        assertArrayEquals("Cluster mean", ((MeanModel) seq.get(i).getModel()).getMean(), ((MeanModel) par.get(i).getModel()).getMean(), 1e-10);
+      }
+    }
+  }
 }
@@ -0,0 +1,205 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2018
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Perform Boruvka HDBSCAN unit test
+ *
+ * @author Erich Schubert
+ */
+public class BoruvkaHDBSCANTest extends AbstractClusterAlgorithmTest {
+  // TODO: add more data sets.
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testHDBSCAN() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, BoruvkaHDBSCAN.class) //
+        .with(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.686953412);
+    testClusterSizes(clustering, new int[] { 1, 200, 437 });
+  }
+
+  /**
+   * Regression test against github #46O
+   */
+  @Test
+  public void testHDBSCANCornerCase() {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 1, 0 }, { 0, 1 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, BoruvkaHDBSCAN.class) //
+        .with(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+    db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 0 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, BoruvkaHDBSCAN.class) //
+        .with(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+  }
+
+  /**
+   * Compare the serial and the parallel code path to the linear memory
+   * implementation, on a data set large enough to be split into blocks.
+   */
+  @Test
+  public void testParallel() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[3000][];
+    for(int i = 0; i < data.length; i++) {
+      // Five clusters, and some uniform noise.
+      final int c = i % 6;
+      data[i] = c == 5 ? new double[] { rnd.nextDouble() * 10, rnd.nextDouble() * 10 } : //
+          new double[] { 1 + c * 2 + rnd.nextGaussian() * .3, 1 + c * 2 * rnd.nextDouble() + rnd.nextGaussian() * .3 };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    BoruvkaHDBSCAN<NumberVector> boruvka = new ELKIBuilder<BoruvkaHDBSCAN<NumberVector>>(BoruvkaHDBSCAN.class) //
+        .with(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20) //
+        .build();
+    HDBSCANLinearMemory<NumberVector> linear = new ELKIBuilder<HDBSCANLinearMemory<NumberVector>>(HDBSCANLinearMemory.class) //
+        .with(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20) //
+        .build();
+    PointerDensityHierarchyRepresentationResult serial = boruvka.run(rel, false);
+    PointerDensityHierarchyRepresentationResult parallel = boruvka.run(rel, true);
+    PointerDensityHierarchyRepresentationResult reference = linear.run(db, rel);
+
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    // The parallel run must produce exactly the serial dendrogram:
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      assertTrue("Parents differ.", DBIDUtil.equal(serial.getParentStore().assignVar(it, p1), parallel.getParentStore().assignVar(it, p2)));
+      assertEquals("Heights differ.", serial.getParentDistanceStore().doubleValue(it), parallel.getParentDistanceStore().doubleValue(it), 0.);
+      assertEquals("Core distances differ.", serial.getCoreDistanceStore().doubleValue(it), parallel.getCoreDistanceStore().doubleValue(it), 0.);
+    }
+    // With ties in the mutual reachability distance, the parent pointers may
+    // differ from the reference, but core distances and merge heights may not.
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      assertEquals("Core distances differ.", reference.getCoreDistanceStore().doubleValue(it), parallel.getCoreDistanceStore().doubleValue(it), 1e-12);
+    }
+    double[] heights = heights(ids, reference.getParentDistanceStore());
+    assertArrayEquals("Merge heights differ.", heights, heights(ids, parallel.getParentDistanceStore()), 1e-12);
+    // Neither may the clusters at any height.
+    for(int pos : new int[] { 100, ids.size() >> 1, ids.size() - 20, ids.size() - 6, ids.size() - 2 }) {
+      final double h = heights[pos];
+      assertArrayEquals("Clusters differ at height " + h, cut(ids, reference, h), cut(ids, parallel, h));
+    }
+  }
+
+  /**
+   * Sorted merge heights of a dendrogram.
+   *
+   * @param ids Object ids
+   * @param lambda Merge heights
+   * @return Sorted heights
+   */
+  private static double[] heights(ArrayDBIDs ids, DoubleDataStore lambda) {
+    double[] h = new double[ids.size()];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      h[it.getOffset()] = lambda.doubleValue(it);
+    }
+    Arrays.sort(h);
+    return h;
+  }
+
+  /**
+   * Cut a dendrogram at a given height, and number the clusters in the order
+   * of their first object.
+   *
+   * @param ids Object ids
+   * @param pointer Pointer representation
+   * @param h Cut height
+   * @return Cluster numbers
+   */
+  private static int[] cut(ArrayDBIDs ids, PointerHierarchyRepresentationResult pointer, double h) {
+    final DBIDDataStore pi = pointer.getParentStore();
+    final DoubleDataStore lambda = pointer.getParentDistanceStore();
+    int[] uf = new int[ids.size()];
+    for(int i = 0; i < uf.length; i++) {
+      uf[i] = i;
+    }
+    DBIDVar p = DBIDUtil.newVar();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      if(lambda.doubleValue(it) <= h) {
+        int a = find(uf, it.getOffset()), b = find(uf, ids.binarySearch(pi.assignVar(it, p)));
+        uf[Math.max(a, b)] = Math.min(a, b);
+      }
+    }
+    int[] labels = new int[uf.length];
+    int next = 0;
+    for(int i = 0; i < uf.length; i++) {
+      final int r = find(uf, i);
+      labels[i] = r == i ? next++ : labels[r];
+    }
+    return labels;
+  }
+
+  /**
+   * Union-find root lookup with path halving.
+   *
+   * @param uf Parent array
+   * @param i Element
+   * @return Root
+   */
+  private static int find(int[] uf, int i) {
+    while(uf[i] != i) {
+      i = uf[i] = uf[uf[i]];
+    }
+    return i;
+  }
+}
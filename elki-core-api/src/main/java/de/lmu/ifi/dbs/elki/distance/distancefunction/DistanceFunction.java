@@ -66,6 +66,16 @@ public interface DistanceFunction<O> {
     return false;
   }
 
+  /**
+   * Is this distance function expensive to compute (e.g. quadratic in the
+   * object size), such that caching computed distances is worthwhile?
+   * 
+   * @return {@code true} when expensive.
+   */
+  default boolean isExpensive() {
+    return false;
+  }
+
   /**
    * Get the input data type of the function.
    * 
@@ -0,0 +1,248 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Vector type storing values in the "bfloat16" format, i.e., the upper 16 bits
+ * of a {@code float}. This needs a quarter of the memory of
+ * {@link DoubleVector}, but keeps only about 3 significant decimal digits,
+ * with the full exponent range of {@code float}.
+ * <p>
+ * Values are rounded to the nearest representable value when the vector is
+ * created.
+ *
+ * @author Erich Schubert
+ */
+public class BFloat16Vector implements NumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final BFloat16Vector.Factory FACTORY = new BFloat16Vector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<BFloat16Vector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Keeps the values in bfloat16 encoding.
+   */
+  private final short[] values;
+
+  /**
+   * Private constructor. NOT for public use.
+   *
+   * @param values Data values, in bfloat16 encoding
+   * @param nocopy Flag to re-use the values array
+   */
+  private BFloat16Vector(short[] values, boolean nocopy) {
+    this.values = nocopy ? values : values.clone();
+  }
+
+  /**
+   * Create a vector consisting of the given float values.
+   *
+   * @param values the values to be set as values of the vector
+   */
+  public BFloat16Vector(float[] values) {
+    this.values = new short[values.length];
+    for(int i = 0; i < values.length; i++) {
+      this.values[i] = toBFloat16(values[i]);
+    }
+  }
+
+  /**
+   * Convert a float value to bfloat16, rounding to nearest even.
+   *
+   * @param f Value
+   * @return bfloat16 encoded value
+   */
+  public static short toBFloat16(float f) {
+    final int bits = Float.floatToRawIntBits(f);
+    if((bits & 0x7FFFFFFF) > 0x7F800000) {
+      return (short) ((bits >>> 16) | 0x40); // Keep NaN a (quiet) NaN.
+    }
+    return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+  }
+
+  /**
+   * Convert a bfloat16 value to float.
+   *
+   * @param v bfloat16 encoded value
+   * @return Value
+   */
+  public static float toFloat(short v) {
+    return Float.intBitsToFloat(v << 16);
+  }
+
+  @Override
+  public int getDimensionality() {
+    return values.length;
+  }
+
+  @Deprecated
+  @Override
+  public Float getValue(int dimension) {
+    return toFloat(values[dimension]);
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return toFloat(values[dimension]);
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    return toFloat(values[dimension]);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) toFloat(values[dimension]);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] data = new double[values.length];
+    for(int i = 0; i < values.length; i++) {
+      data[i] = toFloat(values[i]);
+    }
+    return data;
+  }
+
+  /**
+   * Get the internal values array in bfloat16 encoding, e.g. for specialized
+   * distance kernels. Do not modify!
+   *
+   * @return Values array
+   */
+  public short[] getValues() {
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder(values.length << 3);
+    for(int i = 0; i < values.length; i++) {
+      featureLine.append(toFloat(values[i]));
+      if(i + 1 < values.length) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for bfloat16 vectors.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has BFloat16Vector
+   */
+  public static class Factory implements NumberVector.Factory<BFloat16Vector> {
+    @Override
+    public <A> BFloat16Vector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      int dim = adapter.size(array);
+      short[] values = new short[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = toBFloat16(adapter.get(array, i).floatValue());
+      }
+      return new BFloat16Vector(values, true);
+    }
+
+    @Override
+    public <A> BFloat16Vector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      int dim = adapter.size(array);
+      short[] values = new short[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = toBFloat16(adapter.getFloat(array, i));
+      }
+      return new BFloat16Vector(values, true);
+    }
+
+    @Override
+    public ByteBufferSerializer<BFloat16Vector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super BFloat16Vector> getRestrictionClass() {
+      return BFloat16Vector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected BFloat16Vector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class for variable dimensionality by using VarInt encoding.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses BFloat16Vector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<BFloat16Vector> {
+    @Override
+    public BFloat16Vector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_SHORT * dimensionality);
+      final short[] values = new short[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getShort();
+      }
+      return new BFloat16Vector(values, true);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, BFloat16Vector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_SHORT * vec.values.length);
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.values.length);
+      for(int i = 0; i < vec.values.length; i++) {
+        buffer.putShort(vec.values[i]);
+      }
+    }
+
+    @Override
+    public int getByteSize(BFloat16Vector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.values.length) + ByteArrayUtil.SIZE_SHORT * vec.values.length;
+    }
+  }
+}
@@ -116,6 +116,16 @@ public class FloatVector implements NumberVector {
     return data;
   }
 
+  /**
+   * Get the internal values array, e.g. for specialized distance kernels.
+   * Do not modify!
+   *
+   * @return Values array
+   */
+  public float[] getValues() {
+    return values;
+  }
+
   @Override
   public String toString() {
     StringBuilder featureLine = new StringBuilder();
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction;
 
+import de.lmu.ifi.dbs.elki.data.BFloat16Vector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -75,7 +77,11 @@ public class CosineDistanceFunction implements SpatialPrimitiveDistanceFunction<
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.cosAngle(v1, v2);
+    double d = v1 instanceof FloatVector && v2 instanceof FloatVector ? //
+        ReducedPrecisionKernels.cosAngle(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues()) : //
+        v1 instanceof BFloat16Vector && v2 instanceof BFloat16Vector ? //
+            ReducedPrecisionKernels.cosAngle(((BFloat16Vector) v1).getValues(), ((BFloat16Vector) v2).getValues()) : //
+            VectorUtil.cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
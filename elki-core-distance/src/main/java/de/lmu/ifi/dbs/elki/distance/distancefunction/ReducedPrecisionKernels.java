@@ -0,0 +1,224 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import de.lmu.ifi.dbs.elki.data.BFloat16Vector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import net.jafama.FastMath;
+
+/**
+ * Distance kernels working directly on the arrays of reduced precision
+ * vectors ({@link FloatVector} and {@link BFloat16Vector}).
+ * <p>
+ * These avoid the virtual {@code doubleValue} calls of the generic
+ * implementations, and use simple counted loops over primitive arrays, that
+ * the JIT compiler can unroll and vectorize. The values are widened to
+ * {@code double} and aggregated in the same order as in the generic
+ * implementations, so the results are identical.
+ * <p>
+ * Vectors of different length are treated as if padded with zeros, as in the
+ * generic implementations.
+ *
+ * @author Erich Schubert
+ */
+public final class ReducedPrecisionKernels {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private ReducedPrecisionKernels() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Squared Euclidean distance of two float arrays.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(float[] a, float[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      final double delta = (double) a[d] - (double) b[d];
+      agg += delta * delta;
+    }
+    double tail = 0.;
+    for(int d = mindim; d < a.length; d++) {
+      final double xd = a[d];
+      tail += xd * xd;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double yd = b[d];
+      tail += yd * yd;
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Squared Euclidean distance of two bfloat16 arrays.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(short[] a, short[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      final double delta = (double) BFloat16Vector.toFloat(a[d]) - (double) BFloat16Vector.toFloat(b[d]);
+      agg += delta * delta;
+    }
+    double tail = 0.;
+    for(int d = mindim; d < a.length; d++) {
+      final double xd = BFloat16Vector.toFloat(a[d]);
+      tail += xd * xd;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double yd = BFloat16Vector.toFloat(b[d]);
+      tail += yd * yd;
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Manhattan distance of two float arrays.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(float[] a, float[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      final double xd = a[d], yd = b[d];
+      agg += (xd >= yd) ? xd - yd : yd - xd;
+    }
+    double tail = 0.;
+    for(int d = mindim; d < a.length; d++) {
+      final double xd = a[d];
+      tail += (xd >= 0.) ? xd : -xd;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double yd = b[d];
+      tail += (yd >= 0.) ? yd : -yd;
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Manhattan distance of two bfloat16 arrays.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(short[] a, short[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      final double xd = BFloat16Vector.toFloat(a[d]), yd = BFloat16Vector.toFloat(b[d]);
+      agg += (xd >= yd) ? xd - yd : yd - xd;
+    }
+    double tail = 0.;
+    for(int d = mindim; d < a.length; d++) {
+      final double xd = BFloat16Vector.toFloat(a[d]);
+      tail += (xd >= 0.) ? xd : -xd;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double yd = BFloat16Vector.toFloat(b[d]);
+      tail += (yd >= 0.) ? yd : -yd;
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Cosine of the angle of two float arrays, as in
+   * {@link de.lmu.ifi.dbs.elki.data.VectorUtil#cosAngle}.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Cosine similarity
+   */
+  public static double cosAngle(float[] a, float[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < mindim; k++) {
+      final double r1 = a[k], r2 = b[k];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(int k = mindim; k < a.length; k++) {
+      final double r1 = a[k];
+      l1 += r1 * r1;
+    }
+    for(int k = mindim; k < b.length; k++) {
+      final double r2 = b[k];
+      l2 += r2 * r2;
+    }
+    return cosAngle(cross, l1, l2);
+  }
+
+  /**
+   * Cosine of the angle of two bfloat16 arrays, as in
+   * {@link de.lmu.ifi.dbs.elki.data.VectorUtil#cosAngle}.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Cosine similarity
+   */
+  public static double cosAngle(short[] a, short[] b) {
+    final int mindim = a.length < b.length ? a.length : b.length;
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < mindim; k++) {
+      final double r1 = BFloat16Vector.toFloat(a[k]), r2 = BFloat16Vector.toFloat(b[k]);
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(int k = mindim; k < a.length; k++) {
+      final double r1 = BFloat16Vector.toFloat(a[k]);
+      l1 += r1 * r1;
+    }
+    for(int k = mindim; k < b.length; k++) {
+      final double r2 = BFloat16Vector.toFloat(b[k]);
+      l2 += r2 * r2;
+    }
+    return cosAngle(cross, l1, l2);
+  }
+
+  /**
+   * Compute the cosine from the aggregates.
+   *
+   * @param cross Dot product
+   * @param l1 Squared length of the first vector
+   * @param l2 Squared length of the second vector
+   * @return Cosine, at most 1
+   */
+  private static double cosAngle(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+}
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
+import de.lmu.ifi.dbs.elki.data.BFloat16Vector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -131,6 +133,12 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+      return ReducedPrecisionKernels.squaredEuclidean(((FloatVector) v1).getValues(), ((FloatVector) v2).getValues());
+    }
+    if(v1 instanceof BFloat16Vector && v2 instanceof BFloat16Vector) {
+      return ReducedPrecisionKernels.squaredEuclidean(((BFloat16Vector) v1).getValues(), ((BFloat16Vector) v2).getValues());
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -188,6 +188,11 @@ public class LevenshteinDistanceFunction implements PrimitiveDistanceFunction<St
     return true;
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return obj == this || (obj != null && this.getClass().equals(obj.getClass()));
@@ -76,6 +76,11 @@ public class NormalizedLevenshteinDistanceFunction implements PrimitiveDistanceF
     return LevenshteinDistanceFunction.TYPE;
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return obj == this || (obj != null && this.getClass().equals(obj.getClass()));
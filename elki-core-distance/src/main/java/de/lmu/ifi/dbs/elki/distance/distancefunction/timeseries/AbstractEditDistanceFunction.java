@@ -74,6 +74,11 @@ public abstract class AbstractEditDistanceFunction extends AbstractNumberVectorD
     return NumberVector.VARIABLE_LENGTH;
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return this == obj || (obj != null && this.getClass().equals(obj.getClass()) //
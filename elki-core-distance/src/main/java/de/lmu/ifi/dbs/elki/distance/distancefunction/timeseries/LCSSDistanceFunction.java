@@ -158,6 +158,11 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
     return NumberVector.VARIABLE_LENGTH;
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return obj == this || (obj != null && this.getClass().equals(obj.getClass()) //
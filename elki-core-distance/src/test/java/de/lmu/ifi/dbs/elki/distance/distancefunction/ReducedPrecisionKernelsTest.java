@@ -0,0 +1,108 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.BFloat16Vector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Verify that the reduced precision kernels yield exactly the same results as
+ * the generic implementations.
+ *
+ * @author Erich Schubert
+ */
+public class ReducedPrecisionKernelsTest {
+  @Test
+  public void testBFloat16Rounding() {
+    assertEquals(1.f, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(1.f)), 0.);
+    assertEquals(-2.5f, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(-2.5f)), 0.);
+    // 1 + 2^-8 is exactly halfway, and rounds to even.
+    assertEquals(1.f, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(1.f + 0x1p-8f)), 0.);
+    assertEquals(1.f + 0x1p-7f, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(1.f + 0x1p-7f)), 0.);
+    assertEquals(1.f + 0x1p-7f, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(1.f + 0x1.8p-8f)), 0.);
+    assertEquals(Float.POSITIVE_INFINITY, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(Float.POSITIVE_INFINITY)), 0.);
+    assertEquals(Float.NaN, BFloat16Vector.toFloat(BFloat16Vector.toBFloat16(Float.NaN)), 0.);
+  }
+
+  @Test
+  public void testFloatVectors() {
+    Random r = new Random(0L);
+    for(int i = 0; i < 100; i++) {
+      FloatVector a = new FloatVector(randomFloats(r, 1 + r.nextInt(20)));
+      FloatVector b = new FloatVector(randomFloats(r, 1 + r.nextInt(20)));
+      assertSameDistances(a, b, DoubleVector.wrap(a.toArray()), DoubleVector.wrap(b.toArray()));
+    }
+  }
+
+  @Test
+  public void testBFloat16Vectors() {
+    Random r = new Random(0L);
+    for(int i = 0; i < 100; i++) {
+      BFloat16Vector a = new BFloat16Vector(randomFloats(r, 1 + r.nextInt(20)));
+      BFloat16Vector b = new BFloat16Vector(randomFloats(r, 1 + r.nextInt(20)));
+      assertSameDistances(a, b, DoubleVector.wrap(a.toArray()), DoubleVector.wrap(b.toArray()));
+    }
+  }
+
+  /**
+   * Compare the fast paths to the generic implementations.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param da First vector, as double
+   * @param db Second vector, as double
+   */
+  private static void assertSameDistances(NumberVector a, NumberVector b, NumberVector da, NumberVector db) {
+    PrimitiveDistanceFunction<?>[] dfs = { SquaredEuclideanDistanceFunction.STATIC, EuclideanDistanceFunction.STATIC, ManhattanDistanceFunction.STATIC, CosineDistanceFunction.STATIC };
+    for(PrimitiveDistanceFunction<?> df : dfs) {
+      @SuppressWarnings("unchecked")
+      PrimitiveDistanceFunction<NumberVector> ndf = (PrimitiveDistanceFunction<NumberVector>) df;
+      assertEquals(df.getClass().getSimpleName(), ndf.distance(da, db), ndf.distance(a, b), 0.);
+      assertEquals(df.getClass().getSimpleName(), ndf.distance(db, da), ndf.distance(b, a), 0.);
+    }
+  }
+
+  /**
+   * Generate a random float array.
+   *
+   * @param r Random generator
+   * @param dim Dimensionality
+   * @return Array
+   */
+  private static float[] randomFloats(Random r, int dim) {
+    float[] f = new float[dim];
+    for(int d = 0; d < dim; d++) {
+      f[d] = (float) (r.nextGaussian() * 10.);
+    }
+    return f;
+  }
+}
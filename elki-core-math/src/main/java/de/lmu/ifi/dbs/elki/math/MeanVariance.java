@@ -164,6 +164,15 @@ public class MeanVariance extends Mean {
     }
     final MeanVariance mvo = (MeanVariance) other;
     final double on = mvo.n, osum = mvo.sum;
+    if(on <= 0) {
+      return;
+    }
+    if(n <= 0) {
+      n = on;
+      sum = osum;
+      m2 = mvo.m2;
+      return;
+    }
     final double tmp = n * osum - sum * on;
     final double oldn = n; // tmp copy
     n += on;
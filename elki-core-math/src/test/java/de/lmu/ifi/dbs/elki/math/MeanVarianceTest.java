@@ -142,6 +142,12 @@ public class MeanVarianceTest {
     assertEquals("Fourth mean", 3.0, m2.getMean(), 0);
     assertEquals("Fourth weight", 11, m2.getCount(), 0);
     assertEquals("Fourth stddev", 4.8, m2.getSampleVariance(), 0);
+    // Combining with empty instances:
+    MeanVariance m4 = new MeanVariance();
+    m4.put(m1);
+    m4.put(new MeanVariance());
+    assertEquals("Empty combined mean", 2, m4.getMean(), 0.);
+    assertEquals("Empty combined std", 1, m4.getSampleStddev(), 0.);
   }
 
   @Test(expected = ArithmeticException.class)
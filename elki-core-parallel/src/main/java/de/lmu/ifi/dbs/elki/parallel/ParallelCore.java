@@ -21,6 +21,8 @@
 package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -29,6 +31,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * <p>
+ * Optionally, a work-stealing {@link ForkJoinPool} can be used instead, which
+ * allows the executor to split blocks adaptively. This is beneficial when the
+ * cost per object is skewed (e.g. kNN queries in regions of varying density).
+ * It can be enabled with the system property {@code elki.parallel.workstealing}
+ * or via {@link #setWorkStealing(boolean)}.
  * 
  * TODO: make configurable how many threads are used.
  * 
@@ -51,6 +59,16 @@ public class ParallelCore {
    */
   ThreadPoolExecutor executor;
 
+  /**
+   * Work-stealing pool, when enabled.
+   */
+  private ForkJoinPool forkjoin;
+
+  /**
+   * Use a work-stealing fork-join pool.
+   */
+  private boolean workstealing;
+
   /**
    * Number of connected submitters.
    */
@@ -67,6 +85,7 @@ public class ParallelCore {
   protected ParallelCore(int processors) {
     super();
     this.processors = processors;
+    this.workstealing = Boolean.parseBoolean(System.getProperty("elki.parallel.workstealing"));
   }
 
   /**
@@ -87,6 +106,41 @@ public class ParallelCore {
     return executor != null ? executor.getMaximumPoolSize() : processors;
   }
 
+  /**
+   * Test whether the work-stealing fork-join pool is used.
+   * 
+   * @return {@code true} when work stealing is enabled
+   */
+  public boolean isWorkStealing() {
+    return workstealing;
+  }
+
+  /**
+   * Enable or disable the use of the work-stealing fork-join pool.
+   * 
+   * @param workstealing {@code true} to use adaptive, work-stealing blocks
+   */
+  public void setWorkStealing(boolean workstealing) {
+    this.workstealing = workstealing;
+  }
+
+  /**
+   * Run a fork-join task in the work-stealing pool, and wait for completion.
+   * 
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    if(forkjoin == null) {
+      synchronized(this) {
+        if(forkjoin == null) {
+          forkjoin = new ForkJoinPool(processors);
+        }
+      }
+    }
+    return forkjoin.invoke(task);
+  }
+
   /**
    * Submit a task to the executor core.
    * 
@@ -26,17 +26,30 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MeanVarianceMinMax;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 
 /**
  * Class to run processors in parallel, on all available cores.
+ * <p>
+ * By default, the data is cut into a fixed number of equal blocks. If the
+ * {@link ParallelCore} is configured to use work stealing, blocks are instead
+ * split adaptively in a fork-join pool, as long as other workers run out of
+ * work. This is much more robust when the cost per object is skewed.
+ * <p>
+ * At statistics logging level, the block timings are reported, which makes
+ * load imbalance visible.
  *
  * TODO: add progress
  *
@@ -44,9 +57,21 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  * @since 0.7.0
  *
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has BlockSplittingTask
+ * @apiviz.has BlockTimings
  * @apiviz.uses ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExecutor.class);
+
+  /**
+   * Minimum block size for adaptive splitting.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -62,10 +87,30 @@ public final class ParallelExecutor {
    */
   public static void run(DBIDs ids, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
+    BlockTimings timing = LOG.isStatistics() ? new BlockTimings() : null;
+    if(core.isWorkStealing()) {
+      runWorkStealing(core, DBIDUtil.ensureArray(ids), procs, timing);
+    }
+    else {
+      runBlocks(core, DBIDUtil.ensureArray(ids), procs, timing);
+    }
+    if(timing != null) {
+      timing.report(LOG);
+    }
+  }
+
+  /**
+   * Run with a fixed number of blocks on the thread pool.
+   *
+   * @param core Parallel core
+   * @param aids IDs to process
+   * @param procs Processors to run
+   * @param timing Block timing statistics, may be {@code null}
+   */
+  private static void runBlocks(ParallelCore core, ArrayDBIDs aids, Processor[] procs, BlockTimings timing) {
     core.connect();
     try {
       // TODO: try different strategies anyway!
-      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
       int numparts = core.getParallelism();
       // TODO: are there better heuristics for choosing this?
@@ -76,7 +121,7 @@ public final class ParallelExecutor {
       for(int i = 0; i < numparts; i++) {
         final int start = i * blocksize;
         final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
+        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs, timing);
         parts.add(core.submit(run));
       }
 
@@ -95,6 +140,21 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Run with adaptive block splitting on the work-stealing pool.
+   *
+   * @param core Parallel core
+   * @param aids IDs to process
+   * @param procs Processors to run
+   * @param timing Block timing statistics, may be {@code null}
+   */
+  private static void runWorkStealing(ParallelCore core, ArrayDBIDs aids, Processor[] procs, BlockTimings timing) {
+    final int size = aids.size();
+    // Do not split below a minimum size, to bound the instantiation overhead.
+    final int minsize = Math.max(MIN_BLOCKSIZE, size / (core.getParallelism() << 6));
+    core.invoke(new BlockSplittingTask(aids, 0, size, minsize, procs, timing));
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -128,6 +188,11 @@ public final class ParallelExecutor {
      */
     private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
 
+    /**
+     * Block timing statistics, may be {@code null}.
+     */
+    private BlockTimings timing;
+
     /**
      * Constructor.
      *
@@ -135,17 +200,20 @@ public final class ParallelExecutor {
      * @param start Starting position
      * @param end End position
      * @param procs Processors to run
+     * @param timing Block timing statistics, may be {@code null}
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs, BlockTimings timing) {
       super();
       this.ids = ids;
       this.start = start;
       this.end = end;
       this.procs = procs;
+      this.timing = timing;
     }
 
     @Override
     public ArrayDBIDs call() {
+      final long begin = timing != null ? System.nanoTime() : 0L;
       Processor.Instance[] instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
@@ -158,6 +226,9 @@ public final class ParallelExecutor {
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
+      if(timing != null) {
+        timing.add(start, end, System.nanoTime() - begin);
+      }
       return ids;
     }
 
@@ -172,4 +243,147 @@ public final class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Fork-join task that splits its range while other workers are idle.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses BlockArrayRunner
+   */
+  protected static class BlockSplittingTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Minimum block size
+     */
+    private int minsize;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Block timing statistics, may be {@code null}.
+     */
+    private BlockTimings timing;
+
+    /**
+     * Next forked sibling, for joining.
+     */
+    private BlockSplittingTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param minsize Minimum block size
+     * @param procs Processors to run
+     * @param timing Block timing statistics, may be {@code null}
+     */
+    protected BlockSplittingTask(ArrayDBIDs ids, int start, int end, int minsize, Processor[] procs, BlockTimings timing) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.minsize = minsize;
+      this.procs = procs;
+      this.timing = timing;
+    }
+
+    @Override
+    protected void compute() {
+      int hi = end;
+      BlockSplittingTask forked = null;
+      // Split off the upper half, as long as there are few queued tasks:
+      while(hi - start > minsize && getSurplusQueuedTaskCount() <= 2) {
+        final int mid = (start + hi) >>> 1;
+        BlockSplittingTask right = new BlockSplittingTask(ids, mid, hi, minsize, procs, timing);
+        right.next = forked;
+        forked = right;
+        right.fork();
+        hi = mid;
+      }
+      new BlockArrayRunner(ids, start, hi, procs, timing).call();
+      // Join in reverse order, so we can process unstolen tasks ourselves.
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
+
+  /**
+   * Collect the run times of the individual blocks.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BlockTimings {
+    /**
+     * Statistics of the block durations, in milliseconds.
+     */
+    private MeanVarianceMinMax times = new MeanVarianceMinMax();
+
+    /**
+     * Smallest and largest block size.
+     */
+    private int minsize = Integer.MAX_VALUE, maxsize = 0;
+
+    /**
+     * Record a finished block.
+     *
+     * @param start Block start
+     * @param end Block end
+     * @param nanos Duration in nanoseconds
+     */
+    protected synchronized void add(int start, int end, long nanos) {
+      final double millis = nanos * 1e-6;
+      times.put(millis);
+      minsize = Math.min(minsize, end - start);
+      maxsize = Math.max(maxsize, end - start);
+      if(LOG.isDebuggingFiner()) {
+        LOG.debugFiner("Block [" + start + ", " + end + "): " + millis + " ms on " + Thread.currentThread().getName());
+      }
+    }
+
+    /**
+     * Report the block statistics.
+     *
+     * @param log Logger to report to
+     */
+    protected synchronized void report(Logging log) {
+      final String key = ParallelExecutor.class.getName();
+      log.statistics(new LongStatistic(key + ".blocks", (long) times.getCount()));
+      if(times.getCount() == 0) {
+        return;
+      }
+      log.statistics(new LongStatistic(key + ".blocksize.min", minsize));
+      log.statistics(new LongStatistic(key + ".blocksize.max", maxsize));
+      log.statistics(new DoubleStatistic(key + ".blocktime.min-ms", times.getMin()));
+      log.statistics(new DoubleStatistic(key + ".blocktime.mean-ms", times.getMean()));
+      log.statistics(new DoubleStatistic(key + ".blocktime.max-ms", times.getMax()));
+      // Ratio of the slowest block to the average block.
+      log.statistics(new DoubleStatistic(key + ".blocktime.imbalance", times.getMean() > 0 ? times.getMax() / times.getMean() : 1.));
+    }
+  }
 }
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.database;
 
+import java.io.File;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
@@ -38,6 +39,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.PersistentKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
@@ -193,9 +195,19 @@ public final class DatabaseUtil {
     if(knnq instanceof PreprocessorKNNQuery) {
       return knnq;
     }
-    MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
+    DistanceFunction<? super O> distf = dq.getDistanceFunction();
+    File cache = database instanceof StaticArrayDatabase ? ((StaticArrayDatabase) database).getKNNCache() : null;
+    MaterializeKNNPreprocessor<O> preproc = cache == null ? //
+        new MaterializeKNNPreprocessor<>(relation, distf, k) : //
+        new PersistentKNNPreprocessor<>(relation, distf, k, //
+            new File(cache.getPath() + "." + distf.getClass().getSimpleName() + "-" + //
+                Long.toHexString(PersistentKNNPreprocessor.fingerprint(distf)) + ".knn"));
     preproc.initialize();
-    // TODO: attach weakly persistent to the relation?
+    // Attach to the relation, so that later calls with the same distance
+    // and a k not larger than this can reuse the kNN graph.
+    if(relation.getHierarchy() != null) {
+      relation.getHierarchy().add(relation, preproc);
+    }
     return preproc.getKNNQuery(dq, k);
   }
 
@@ -209,17 +221,7 @@ public final class DatabaseUtil {
    * @return KNNQuery for the given relation, that is precomputed.
    */
   public static <O> KNNQuery<O> precomputedKNNQuery(Database database, Relation<O> relation, DistanceFunction<? super O> distf, int k) {
-    DistanceQuery<O> dq = database.getDistanceQuery(relation, distf);
-    // "HEAVY" flag for knn query since it is used more than once
-    KNNQuery<O> knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_OPTIMIZED_ONLY);
-    // No optimized kNN query - use a preprocessor!
-    if(knnq instanceof PreprocessorKNNQuery) {
-      return knnq;
-    }
-    MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
-    preproc.initialize();
-    // TODO: attach weakly persistent to the relation?
-    return preproc.getKNNQuery(dq, k);
+    return precomputedKNNQuery(database, relation, database.getDistanceQuery(relation, distf), k);
   }
 
   /**
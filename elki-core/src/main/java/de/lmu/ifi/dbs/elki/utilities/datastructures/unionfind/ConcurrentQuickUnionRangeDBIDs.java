@@ -0,0 +1,141 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Thread-safe union-find for {@link DBIDRange} only.
+ *
+ * To instantiate, use {@link UnionFindUtil#makeConcurrent}. In contrast to
+ * {@link WeightedQuickUnionRangeDBIDs}, this version can be modified by
+ * multiple threads at the same time: the parent pointers are updated with
+ * compare-and-set operations only. Instead of the component weight, the root
+ * with the larger offset is always linked to the smaller one; so the root of a
+ * component is always its element with the smallest offset, independent of
+ * the order of operations. Finding uses path-halving.
+ *
+ * @author Erich Schubert
+ */
+public class ConcurrentQuickUnionRangeDBIDs implements UnionFind {
+  /**
+   * Object ID range.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Parent element
+   */
+  private AtomicIntegerArray parent;
+
+  /**
+   * Constructor (package private, use {@link UnionFindUtil#makeConcurrent}).
+   *
+   * @param ids Range to use
+   */
+  ConcurrentQuickUnionRangeDBIDs(DBIDRange ids) {
+    this.ids = ids;
+    parent = new AtomicIntegerArray(ids.size());
+    for(int i = 0; i < ids.size(); i++) {
+      parent.set(i, i);
+    }
+  }
+
+  @Override
+  public int find(DBIDRef element) {
+    return find(ids.getOffset(element));
+  }
+
+  /**
+   * Find the component ID of an element.
+   *
+   * @param cur Element offset
+   * @return Component id (smallest offset in the component)
+   */
+  public int find(int cur) {
+    assert (cur >= 0 && cur < ids.size());
+    int p = parent.get(cur);
+    while(cur != p) {
+      final int gp = parent.get(p);
+      if(gp != p) {
+        // Path halving; may fail if another thread was faster.
+        parent.compareAndSet(cur, p, gp);
+      }
+      cur = gp;
+      p = parent.get(cur);
+    }
+    return cur;
+  }
+
+  @Override
+  public int union(DBIDRef first, DBIDRef second) {
+    return union(ids.getOffset(first), ids.getOffset(second));
+  }
+
+  /**
+   * Join the components of two elements.
+   *
+   * @param first First element offset
+   * @param second Second element offset
+   * @return Component id.
+   */
+  public int union(int first, int second) {
+    while(true) {
+      int c1 = find(first), c2 = find(second);
+      if(c1 == c2) {
+        return c1;
+      }
+      if(c1 < c2) {
+        final int tmp = c1;
+        c1 = c2;
+        c2 = tmp;
+      }
+      // Link the larger root to the smaller, if it still is a root.
+      if(parent.compareAndSet(c1, c1, c2)) {
+        return c2;
+      }
+    }
+  }
+
+  @Override
+  public boolean isConnected(DBIDRef first, DBIDRef second) {
+    return find(first) == find(second);
+  }
+
+  @Override
+  public DBIDs getRoots() {
+    ArrayModifiableDBIDs roots = DBIDUtil.newArray();
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      // roots or one element in component
+      if(parent.get(iter.getOffset()) == iter.getOffset()) {
+        roots.add(iter);
+      }
+    }
+    return roots;
+  }
+}
@@ -49,4 +49,14 @@ public final class UnionFindUtil {
     }
     return new WeightedQuickUnionStaticDBIDs(ids);
   }
+
+  /**
+   * Make a new thread-safe instance.
+   *
+   * @param ids ID range
+   * @return Union find algorithm
+   */
+  public static ConcurrentQuickUnionRangeDBIDs makeConcurrent(DBIDRange ids) {
+    return new ConcurrentQuickUnionRangeDBIDs(ids);
+  }
 }
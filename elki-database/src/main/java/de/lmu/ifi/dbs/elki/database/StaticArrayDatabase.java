@@ -20,28 +20,39 @@
  */
 package de.lmu.ifi.dbs.elki.database;
 
+import java.io.File;
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.ColumnarNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.MappedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +91,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store number vectors in a contiguous column store.
+   */
+  protected boolean columnar = false;
+
+  /**
+   * File name prefix for persistent kNN graphs, may be {@code null}.
+   */
+  protected File knnCache = null;
+
   /**
    * Constructor.
    *
@@ -87,8 +108,34 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param columnar Store fixed-dimensional number vectors in a column store
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories, boolean columnar) {
+    this(databaseConnection, indexFactories, columnar, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param columnar Store fixed-dimensional number vectors in a column store
+   * @param knnCache File name prefix for persistent kNN graphs, may be
+   *        {@code null}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories, boolean columnar, File knnCache) {
     super();
     this.databaseConnection = databaseConnection;
+    this.columnar = columnar;
+    this.knnCache = knnCache;
     this.ids = null;
     this.idrep = null;
 
@@ -145,17 +192,27 @@ public class StaticArrayDatabase extends AbstractDatabase {
         SimpleTypeInformation<?> meta = bundle.meta(i);
         @SuppressWarnings("unchecked")
         SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        Relation<?> relation = null;
+        if(ids instanceof DBIDRange && bundle.getColumn(i) instanceof MappedNumberVectorColumn) {
+          // Use the memory-mapped vectors directly, without copying.
+          relation = new MappedNumberVectorRelation((DBIDRange) ids, (MappedNumberVectorColumn) bundle.getColumn(i), (VectorFieldTypeInformation<?>) meta);
+        }
+        else if(columnar) {
+          relation = makeColumnar(bundle, i);
+        }
+        if(relation == null) {
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
         for(IndexFactory<?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          if(factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object> ofact = (IndexFactory<Object>) factory;
             @SuppressWarnings("unchecked")
@@ -176,11 +233,48 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Build a column store relation for a bundle column, if possible.
+   *
+   * @param bundle Bundle
+   * @param col Column number
+   * @return Relation, or {@code null} if the column is not supported
+   */
+  private Relation<?> makeColumnar(MultipleObjectsBundle bundle, int col) {
+    SimpleTypeInformation<?> meta = bundle.meta(col);
+    if(!(ids instanceof DBIDRange) || !TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta)) {
+      return null;
+    }
+    final DBIDRange range = (DBIDRange) ids;
+    final int dim = ((VectorFieldTypeInformation<?>) meta).getDimensionality();
+    if(!ColumnarNumberVectorRelation.canStore(range.size(), dim)) {
+      LOG.warning("Data set too large for a single column store, using individual vectors.");
+      return null;
+    }
+    double[] data = new double[range.size() * dim];
+    for(int j = 0, off = 0; j < range.size(); j++) {
+      final NumberVector vec = (NumberVector) bundle.data(j, col);
+      for(int d = 0; d < dim; d++, off++) {
+        data[off] = vec.doubleValue(d);
+      }
+    }
+    return new ColumnarNumberVectorRelation(range, dim, data, ColumnarNumberVectorRelation.getLabels((VectorFieldTypeInformation<?>) meta, dim), null);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
   }
 
+  /**
+   * Get the file name prefix for persistent kNN graphs.
+   *
+   * @return Prefix, or {@code null} if kNN graphs are not to be stored.
+   */
+  public File getKNNCache() {
+    return knnCache;
+  }
+
   /**
    * Parameterization class.
    *
@@ -189,6 +283,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Flag to store number vectors in a single contiguous array.
+     */
+    public static final OptionID COLUMNAR_ID = new OptionID("db.columnar", "Store fixed-dimensional number vectors in a single contiguous array, to reduce memory usage. Algorithms that need a particular vector type (e.g. DoubleVector) will then not find a matching relation.");
+
+    /**
+     * File name prefix for persistent kNN graphs.
+     */
+    public static final OptionID KNN_CACHE_ID = new OptionID("db.knncache", "File name prefix (e.g., the input file name) to store precomputed kNN graphs in. Later runs on the same data load them instead of recomputing the neighbors.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -199,6 +303,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?>> indexFactories;
 
+    /**
+     * Store number vectors in a column store.
+     */
+    protected boolean columnar = false;
+
+    /**
+     * File name prefix for persistent kNN graphs.
+     */
+    protected File knnCache = null;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -212,11 +326,19 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      Flag columnarF = new Flag(COLUMNAR_ID);
+      if(config.grab(columnarF)) {
+        columnar = columnarF.isTrue();
+      }
+      FileParameter knnCacheP = new FileParameter(KNN_CACHE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+      if(config.grab(knnCacheP)) {
+        knnCache = knnCacheP.getValue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, columnar, knnCache);
     }
   }
 }
@@ -0,0 +1,334 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.relation.ColumnarNumberVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Blocked ("tiled") batch kNN search for squared Euclidean distance.
+ * <p>
+ * Candidates are copied in chunks into a contiguous {@code double[]}, and the
+ * queries are processed in blocks of {@link #QUERY_BLOCK} objects in parallel.
+ * Within each tile, two queries are compared to two candidates at a time, so
+ * that every value loaded is used for two distances. The exact distances are
+ * computed in the same order as a naive linear scan, so the results are
+ * identical (including the tie-breaking by scan order).
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses KNNHeap
+ * @apiviz.uses ParallelCore
+ */
+public final class EuclideanBlockedBatchKNN {
+  /**
+   * Number of queries per tile.
+   */
+  private static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of candidates per tile.
+   */
+  private static final int CANDIDATE_BLOCK = 256;
+
+  /**
+   * Maximum number of candidate values (objects times dimensionality) to
+   * copy at a time, to bound the memory overhead.
+   */
+  private static final int CHUNK_VALUES = 1 << 22;
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private EuclideanBlockedBatchKNN() {
+    // Do not use.
+  }
+
+  /**
+   * Test whether the blocked search can be used for this relation, i.e.
+   * whether it has a fixed dimensionality.
+   *
+   * @param relation Data relation
+   * @return {@code true} if supported
+   */
+  public static boolean isApplicable(Relation<? extends NumberVector> relation) {
+    return TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation()) && RelationUtil.dimensionality(relation) > 0;
+  }
+
+  /**
+   * Perform a batch kNN search, with squared Euclidean distances.
+   *
+   * @param relation Data relation
+   * @param ids Query objects
+   * @param k Number of neighbors
+   * @return kNN heaps, in the order of the queries
+   */
+  public static List<KNNHeap> batchKNN(Relation<? extends NumberVector> relation, ArrayDBIDs ids, int k) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final int size = ids.size();
+    final KNNHeap[] heaps = new KNNHeap[size];
+    for(int i = 0; i < size; i++) {
+      heaps[i] = DBIDUtil.newHeap(k);
+    }
+    final ArrayDBIDs cids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int csize = cids.size();
+    final int chunksize = Math.max(CANDIDATE_BLOCK, (CHUNK_VALUES / (dim * CANDIDATE_BLOCK)) * CANDIDATE_BLOCK);
+    final double[] cdata = new double[Math.min(chunksize, csize) * dim];
+    ParallelCore core = ParallelCore.getCore();
+    for(int cstart = 0; cstart < csize; cstart += chunksize) {
+      final int cend = Math.min(cstart + chunksize, csize);
+      pack(relation, cids, cstart, cend, dim, cdata);
+      core.invoke(new QueryBlockTask(relation, ids, 0, size, dim, heaps, cids, cstart, cend, cdata));
+    }
+    List<KNNHeap> result = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      result.add(heaps[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Copy vectors into a contiguous array.
+   *
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param start First offset
+   * @param end End offset (exclusive)
+   * @param dim Dimensionality
+   * @param data Output data array
+   */
+  private static void pack(Relation<? extends NumberVector> relation, ArrayDBIDs ids, int start, int end, int dim, double[] data) {
+    DBIDArrayIter it = ids.iter().seek(start);
+    if(relation instanceof ColumnarNumberVectorRelation) {
+      // Column store: copy the raw rows without materializing vectors.
+      final ColumnarNumberVectorRelation col = (ColumnarNumberVectorRelation) relation;
+      final double[] raw = col.getData();
+      for(int i = 0, off = 0; i < end - start; i++, it.advance(), off += dim) {
+        System.arraycopy(raw, col.getOffset(it), data, off, dim);
+      }
+      return;
+    }
+    for(int i = 0, off = 0; i < end - start; i++, it.advance()) {
+      final NumberVector vec = relation.get(it);
+      for(int d = 0; d < dim; d++, off++) {
+        data[off] = vec.doubleValue(d);
+      }
+    }
+  }
+
+  /**
+   * Process a range of queries against the current candidate chunk, splitting
+   * into blocks of {@link #QUERY_BLOCK} queries.
+   *
+   * @author Erich Schubert
+   */
+  private static class QueryBlockTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data relation.
+     */
+    private final Relation<? extends NumberVector> relation;
+
+    /**
+     * Query ids.
+     */
+    private final ArrayDBIDs qids;
+
+    /**
+     * Query range.
+     */
+    private final int qstart, qend;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Output heaps.
+     */
+    private final KNNHeap[] heaps;
+
+    /**
+     * Candidate ids.
+     */
+    private final ArrayDBIDs cids;
+
+    /**
+     * Offset range of the current candidate chunk.
+     */
+    private final int cstart, cend;
+
+    /**
+     * Packed candidate data.
+     */
+    private final double[] cdata;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param qids Query ids
+     * @param qstart Query range start
+     * @param qend Query range end
+     * @param dim Dimensionality
+     * @param heaps Output heaps
+     * @param cids Candidate ids
+     * @param cstart Candidate chunk start
+     * @param cend Candidate chunk end
+     * @param cdata Packed candidate data
+     */
+    QueryBlockTask(Relation<? extends NumberVector> relation, ArrayDBIDs qids, int qstart, int qend, int dim, KNNHeap[] heaps, ArrayDBIDs cids, int cstart, int cend, double[] cdata) {
+      super();
+      this.relation = relation;
+      this.qids = qids;
+      this.qstart = qstart;
+      this.qend = qend;
+      this.dim = dim;
+      this.heaps = heaps;
+      this.cids = cids;
+      this.cstart = cstart;
+      this.cend = cend;
+      this.cdata = cdata;
+    }
+
+    @Override
+    protected void compute() {
+      if(qend - qstart > QUERY_BLOCK) {
+        // Split at a block boundary:
+        final int mid = qstart + (((qend - qstart - 1) / QUERY_BLOCK + 1) >>> 1) * QUERY_BLOCK;
+        invokeAll(new QueryBlockTask(relation, qids, qstart, mid, dim, heaps, cids, cstart, cend, cdata), //
+            new QueryBlockTask(relation, qids, mid, qend, dim, heaps, cids, cstart, cend, cdata));
+        return;
+      }
+      final int qsize = qend - qstart;
+      final double[] qdata = new double[qsize * dim];
+      pack(relation, qids, qstart, qend, dim, qdata);
+      final int csize = cend - cstart;
+      DBIDArrayIter cit = cids.iter();
+      for(int cb = 0; cb < csize; cb += CANDIDATE_BLOCK) {
+        tile(qdata, qsize, cb, Math.min(cb + CANDIDATE_BLOCK, csize), cit);
+      }
+    }
+
+    /**
+     * Process a single tile of queries and candidates.
+     *
+     * Pairs of queries are compared to pairs of candidates, with the remaining
+     * odd query or candidate processed individually. Each heap still receives
+     * the candidates in scan order.
+     *
+     * @param qdata Packed query data
+     * @param qsize Number of queries
+     * @param cb Candidate block start (relative to chunk)
+     * @param ce Candidate block end (relative to chunk)
+     * @param cit Candidate iterator
+     */
+    private void tile(double[] qdata, int qsize, int cb, int ce, DBIDArrayIter cit) {
+      final int dim = this.dim;
+      final double[] cdata = this.cdata;
+      int i = 0;
+      for(; i + 1 < qsize; i += 2) {
+        final KNNHeap h0 = heaps[qstart + i], h1 = heaps[qstart + i + 1];
+        final int q0 = i * dim, q1 = q0 + dim;
+        int j = cb;
+        for(; j + 1 < ce; j += 2) {
+          final int c0 = j * dim, c1 = c0 + dim;
+          double d00 = 0., d01 = 0., d10 = 0., d11 = 0.;
+          for(int d = 0; d < dim; d++) {
+            final double x0 = qdata[q0 + d], x1 = qdata[q1 + d];
+            final double y0 = cdata[c0 + d], y1 = cdata[c1 + d];
+            final double e00 = x0 - y0, e01 = x0 - y1;
+            final double e10 = x1 - y0, e11 = x1 - y1;
+            d00 += e00 * e00;
+            d01 += e01 * e01;
+            d10 += e10 * e10;
+            d11 += e11 * e11;
+          }
+          insert(h0, d00, cit, j);
+          insert(h0, d01, cit, j + 1);
+          insert(h1, d10, cit, j);
+          insert(h1, d11, cit, j + 1);
+        }
+        if(j < ce) {
+          insert(h0, distance(qdata, q0, cdata, j * dim, dim), cit, j);
+          insert(h1, distance(qdata, q1, cdata, j * dim, dim), cit, j);
+        }
+      }
+      if(i < qsize) {
+        final KNNHeap h0 = heaps[qstart + i];
+        final int q0 = i * dim;
+        for(int j = cb; j < ce; j++) {
+          insert(h0, distance(qdata, q0, cdata, j * dim, dim), cit, j);
+        }
+      }
+    }
+
+    /**
+     * Insert a candidate into a heap, if it is close enough.
+     *
+     * @param heap Heap
+     * @param dist Squared distance
+     * @param cit Candidate iterator
+     * @param j Candidate offset (relative to chunk)
+     */
+    private void insert(KNNHeap heap, double dist, DBIDArrayIter cit, int j) {
+      if(dist <= heap.getKNNDistance()) {
+        heap.insert(dist, cit.seek(cstart + j));
+      }
+    }
+  }
+
+  /**
+   * Squared Euclidean distance of two packed vectors.
+   *
+   * @param x First data array
+   * @param xoff Offset of the first vector
+   * @param y Second data array
+   * @param yoff Offset of the second vector
+   * @param dim Dimensionality
+   * @return Squared distance
+   */
+  private static double distance(double[] x, int xoff, double[] y, int yoff, int dim) {
+    double dist = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = x[xoff + d] - y[yoff + d];
+      dist += delta * delta;
+    }
+    return dist;
+  }
+}
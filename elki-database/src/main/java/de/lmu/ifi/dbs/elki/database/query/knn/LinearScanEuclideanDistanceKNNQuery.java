@@ -48,6 +48,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses EuclideanDistanceFunction
  * @apiviz.uses SquaredEuclideanDistanceFunction
+ * @apiviz.uses EuclideanBlockedBatchKNN
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
   /**
@@ -98,13 +99,19 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final Relation<? extends O> relation = getRelation();
     final int size = ids.size();
-    final List<KNNHeap> heaps = new ArrayList<>(size);
-    List<O> objs = new ArrayList<>(size);
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      heaps.add(DBIDUtil.newHeap(k));
-      objs.add(relation.get(iter));
+    final List<KNNHeap> heaps;
+    if(EuclideanBlockedBatchKNN.isApplicable(relation)) {
+      heaps = EuclideanBlockedBatchKNN.batchKNN(relation, ids, k);
+    }
+    else {
+      heaps = new ArrayList<>(size);
+      List<O> objs = new ArrayList<>(size);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        heaps.add(DBIDUtil.newHeap(k));
+        objs.add(relation.get(iter));
+      }
+      linearScanBatchKNN(objs, heaps);
     }
-    linearScanBatchKNN(objs, heaps);
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -38,6 +38,7 @@ import de.lmu.ifi.dbs.elki.index.RKNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.index.SimilarityIndex;
 import de.lmu.ifi.dbs.elki.index.SimilarityRangeIndex;
+import de.lmu.ifi.dbs.elki.index.distancematrix.DistanceCacheIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.result.AbstractHierarchicalResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
@@ -73,10 +74,23 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
         return q;
       }
     }
+    boolean heavy = false, nocache = false;
     for(Object o : hints) {
       if(o == DatabaseQuery.HINT_OPTIMIZED_ONLY && !(distanceFunction instanceof DBIDDistanceFunction)) {
         return null; // Linear scan is not desirable.
       }
+      heavy |= o == DatabaseQuery.HINT_HEAVY_USE;
+      nocache |= o == DatabaseQuery.HINT_NO_CACHE;
+    }
+    if(heavy && !nocache && distanceFunction.isExpensive() && size() > 1) {
+      // Attach a distance cache, which will be reused by later queries.
+      DistanceCacheIndex<O> cache = new DistanceCacheIndex<>(this, distanceFunction, DistanceCacheIndex.DEFAULT_CAPACITY);
+      cache.initialize();
+      addChildResult(cache);
+      if(getLogger().isVerbose()) {
+        getLogger().verbose("Caching distances of " + distanceFunction.getClass().getSimpleName());
+      }
+      return cache.getDistanceQuery(distanceFunction, hints);
     }
     return distanceFunction.instantiate(this);
   }
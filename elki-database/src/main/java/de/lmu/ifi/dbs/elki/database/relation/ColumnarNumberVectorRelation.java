@@ -0,0 +1,347 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Relation storing fixed-dimensional number vectors in a single contiguous
+ * {@code double[]} (row-major), indexed by the offset in a {@link DBIDRange}.
+ * <p>
+ * This avoids the object header and pointer overhead of storing one vector
+ * object per data point. {@link #get} returns lightweight views onto the
+ * shared array, that do not copy the data. Performance critical code can
+ * use {@link #getData()} and {@link #getOffset(DBIDRef)} to access the values
+ * directly, without any allocation.
+ * <p>
+ * The values are not copied when handing out views, so this relation is not
+ * modifiable. Because the relation type is {@link NumberVector}, algorithms
+ * that require a particular vector class (e.g. {@link DoubleVector}) cannot
+ * be used with this relation.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has View
+ */
+public class ColumnarNumberVectorRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ColumnarNumberVectorRelation.class);
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Vector data, row-major.
+   */
+  private final double[] data;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param dim Dimensionality
+   * @param data Data array, of size {@code ids.size() * dim}
+   * @param labels Column labels, may be {@code null}
+   * @param name Relation name, may be {@code null}
+   */
+  public ColumnarNumberVectorRelation(DBIDRange ids, int dim, double[] data, String[] labels, String name) {
+    super();
+    assert (data.length == ids.size() * (long) dim) : "Data array has the wrong size.";
+    this.ids = ids;
+    this.dim = dim;
+    this.data = data;
+    this.name = name;
+    this.type = new VectorFieldTypeInformation<>(FACTORY, dim, labels, FACTORY.getDefaultSerializer());
+  }
+
+  /**
+   * Test whether a column store can hold the given number of vectors.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @return {@code true} when the data fits into a single array
+   */
+  public static boolean canStore(int size, int dim) {
+    return dim > 0 && size * (long) dim <= Integer.MAX_VALUE - 8;
+  }
+
+  /**
+   * Copy the contents of a number vector relation into a column store.
+   *
+   * @param ids IDs
+   * @param relation Relation to copy
+   * @param dim Dimensionality
+   * @return Column store relation
+   */
+  public static ColumnarNumberVectorRelation copyOf(DBIDRange ids, Relation<? extends NumberVector> relation, int dim) {
+    double[] data = new double[ids.size() * dim];
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final NumberVector vec = relation.get(it);
+      assert (vec.getDimensionality() == dim) : "Vector has the wrong dimensionality.";
+      for(int d = 0, off = ids.getOffset(it) * dim; d < dim; d++, off++) {
+        data[off] = vec.doubleValue(d);
+      }
+    }
+    VectorFieldTypeInformation<?> otype = (VectorFieldTypeInformation<?>) relation.getDataTypeInformation();
+    return new ColumnarNumberVectorRelation(ids, dim, data, getLabels(otype, dim), relation.getLongName());
+  }
+
+  /**
+   * Get the column labels of a vector field type.
+   *
+   * @param type Vector type
+   * @param dim Dimensionality
+   * @return Labels, or {@code null}
+   */
+  public static String[] getLabels(VectorFieldTypeInformation<?> type, int dim) {
+    if(type.getLabel(0) == null) {
+      return null;
+    }
+    String[] labels = new String[dim];
+    for(int d = 0; d < dim; d++) {
+      labels[d] = type.getLabel(d);
+    }
+    return labels;
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return new View(data, ids.getOffset(id) * dim, dim);
+  }
+
+  /**
+   * Get the raw data array. Do not modify!
+   *
+   * @return Data array, row-major
+   */
+  public double[] getData() {
+    return data;
+  }
+
+  /**
+   * Get the position of the first value of an object in the data array.
+   *
+   * @param id Object
+   * @return Offset in {@link #getData()}
+   */
+  public int getOffset(DBIDRef id) {
+    return ids.getOffset(id) * dim;
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Lightweight view of a vector stored in a column store.
+   *
+   * @author Erich Schubert
+   */
+  public static class View implements NumberVector {
+    /**
+     * Shared data array.
+     */
+    private final double[] data;
+
+    /**
+     * Offset of the first value.
+     */
+    private final int offset;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param data Data array
+     * @param offset Offset of the first value
+     * @param dim Dimensionality
+     */
+    public View(double[] data, int offset, int dim) {
+      super();
+      this.data = data;
+      this.offset = offset;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return data[offset + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] values = new double[dim];
+      System.arraycopy(data, offset, values, 0, dim);
+      return values;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int i = 0; i < dim; i++) {
+        featureLine.append(data[offset + i]);
+        if(i + 1 < dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * Factory instance for the relation type. New vectors are created as
+   * {@link DoubleVector}s.
+   */
+  public static final NumberVector.Factory<NumberVector> FACTORY = new NumberVector.Factory<NumberVector>() {
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return DoubleVector.FACTORY.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return DoubleVector.FACTORY.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return SERIALIZER;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  };
+
+  /**
+   * Serializer, compatible with {@link DoubleVector#VARIABLE_SERIALIZER}.
+   */
+  public static final ByteBufferSerializer<NumberVector> SERIALIZER = new ByteBufferSerializer<NumberVector>() {
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return DoubleVector.VARIABLE_SERIALIZER.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      ByteArrayUtil.writeUnsignedVarint(buffer, dim);
+      for(int i = 0; i < dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      return ByteArrayUtil.getUnsignedVarintSize(dim) + ByteArrayUtil.SIZE_DOUBLE * dim;
+    }
+  };
+}
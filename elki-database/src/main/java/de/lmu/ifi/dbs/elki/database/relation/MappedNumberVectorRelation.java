@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Relation of fixed-dimensional number vectors, that are read on demand from a
+ * memory-mapped bundle file, indexed by the offset in a {@link DBIDRange}.
+ * <p>
+ * As with {@link ColumnarNumberVectorRelation}, {@link #get} returns
+ * lightweight views, the relation is not modifiable, and algorithms that
+ * require a particular vector class cannot be used with this relation.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.composedOf MappedNumberVectorColumn
+ */
+public class MappedNumberVectorRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedNumberVectorRelation.class);
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Mapped vector data.
+   */
+  private final MappedNumberVectorColumn data;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param data Mapped data, of size {@code ids.size()}
+   * @param labels Column labels, may be {@code null}
+   * @param name Relation name, may be {@code null}
+   */
+  public MappedNumberVectorRelation(DBIDRange ids, MappedNumberVectorColumn data, String[] labels, String name) {
+    super();
+    assert (data.size() == ids.size()) : "Mapped data has the wrong size.";
+    this.ids = ids;
+    this.data = data;
+    this.name = name;
+    this.type = new VectorFieldTypeInformation<>(ColumnarNumberVectorRelation.FACTORY, data.getDimensionality(), labels, ColumnarNumberVectorRelation.FACTORY.getDefaultSerializer());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param data Mapped data, of size {@code ids.size()}
+   * @param otype Original vector type, to copy the column labels from
+   */
+  public MappedNumberVectorRelation(DBIDRange ids, MappedNumberVectorColumn data, VectorFieldTypeInformation<?> otype) {
+    this(ids, data, ColumnarNumberVectorRelation.getLabels(otype, data.getDimensionality()), null);
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return data.get(ids.getOffset(id));
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
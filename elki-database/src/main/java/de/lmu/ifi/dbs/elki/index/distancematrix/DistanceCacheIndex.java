@@ -0,0 +1,456 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DistanceIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Bounded cache of computed distances, for distance functions that are
+ * expensive to compute (see {@link DistanceFunction#isExpensive()}).
+ *
+ * Distances between pairs of database objects are stored in a lossy hash table
+ * with primitive <tt>long</tt> keys (the pair of object ids) and <tt>double</tt>
+ * values. The table is split into shards with separate locks, and each bucket
+ * holds two entries with least-recently-used replacement, so the memory use
+ * is fixed (16 bytes per entry) and the cache can be used concurrently.
+ *
+ * This index is automatically added by
+ * {@link de.lmu.ifi.dbs.elki.database.relation.AbstractRelation#getDistanceQuery}
+ * for queries with {@link DatabaseQuery#HINT_HEAVY_USE} on expensive
+ * distance functions. It does not serve queries with
+ * {@link DatabaseQuery#HINT_NO_CACHE}.
+ *
+ * Entries are keyed by object ids, and object ids may be reused after a
+ * deletion. Therefore, any insertion or deletion in the relation invalidates
+ * the entire cache.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has CachedDistanceQuery
+ *
+ * @param <O> Object type
+ */
+public class DistanceCacheIndex<O> implements DistanceIndex<O>, DynamicIndex {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(DistanceCacheIndex.class);
+
+  /**
+   * Default maximum number of cached distances.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+
+  /**
+   * Number of bits used for choosing a shard.
+   */
+  private static final int SHARD_BITS = 6;
+
+  /**
+   * Marker for empty entries. Pairs of identical objects are not cached, so
+   * this cannot be a valid key.
+   */
+  private static final long EMPTY = -1L;
+
+  /**
+   * Data relation.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function.
+   */
+  protected final DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Maximum number of cached distances.
+   */
+  protected final int capacity;
+
+  /**
+   * Uncached distance query.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Cache shards.
+   */
+  private Shard[] shards;
+
+  /**
+   * Flag to clear the cache on next use, after the relation was modified.
+   */
+  private volatile boolean stale = false;
+
+  /**
+   * Statistics.
+   */
+  private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param capacity Maximum number of cached distances
+   */
+  public DistanceCacheIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int capacity) {
+    super();
+    this.relation = relation;
+    this.distanceFunction = distanceFunction;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void initialize() {
+    distanceQuery = distanceFunction.instantiate(relation);
+    // Do not allocate more than the number of pairs:
+    final long size = relation.size();
+    final long pairs = distanceFunction.isSymmetric() ? (size * (size - 1)) >>> 1 : size * (size - 1);
+    final long cap = Math.min(capacity, pairs);
+    // Power of two number of buckets per shard, two entries per bucket:
+    int perShard = 2;
+    while(perShard < (cap >>> SHARD_BITS) && perShard < 0x40000000) {
+      perShard <<= 1;
+    }
+    shards = new Shard[1 << SHARD_BITS];
+    for(int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard(perShard);
+    }
+  }
+
+  /**
+   * Hash a pair key (finalizer of MurmurHash3).
+   *
+   * @param key Key
+   * @return Hash code
+   */
+  private static long mix(long key) {
+    key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+    key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return key ^ (key >>> 33);
+  }
+
+  /**
+   * Clear the cache, if the relation was modified.
+   */
+  private synchronized void clearIfStale() {
+    if(stale) {
+      for(Shard shard : shards) {
+        synchronized(shard) {
+          Arrays.fill(shard.keys, EMPTY);
+        }
+      }
+      stale = false;
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    stale = true;
+    return true;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    stale = true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    stale = true;
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    stale = true;
+  }
+
+  @Override
+  public void logStatistics() {
+    final String prefix = this.getClass().getName();
+    final long h = hits.sum(), m = misses.sum();
+    LOG.statistics(new LongStatistic(prefix + ".hits", h));
+    LOG.statistics(new LongStatistic(prefix + ".misses", m));
+    LOG.statistics(new DoubleStatistic(prefix + ".hitrate", h + m > 0 ? h / (double) (h + m) : 0.));
+  }
+
+  @Override
+  public String getLongName() {
+    return "Distance Cache";
+  }
+
+  @Override
+  public String getShortName() {
+    return "distance-cache";
+  }
+
+  @Override
+  public DistanceQuery<O> getDistanceQuery(DistanceFunction<? super O> distanceFunction, Object... hints) {
+    if(!this.distanceFunction.equals(distanceFunction)) {
+      return null;
+    }
+    for(Object hint : hints) {
+      // A cache does not avoid linear scans.
+      if(hint == DatabaseQuery.HINT_NO_CACHE || hint == DatabaseQuery.HINT_OPTIMIZED_ONLY) {
+        return null;
+      }
+    }
+    return new CachedDistanceQuery();
+  }
+
+  /**
+   * A single cache shard, to reduce lock contention.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Shard {
+    /**
+     * Keys, {@link #EMPTY} for unused entries.
+     */
+    final long[] keys;
+
+    /**
+     * Cached distances.
+     */
+    final double[] values;
+
+    /**
+     * Mask for the bucket position (even).
+     */
+    final int mask;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries (power of two)
+     */
+    Shard(int size) {
+      keys = new long[size];
+      Arrays.fill(keys, EMPTY);
+      values = new double[size];
+      mask = size - 2;
+    }
+  }
+
+  /**
+   * Distance query using the cache.
+   *
+   * @author Erich Schubert
+   */
+  public class CachedDistanceQuery implements DistanceQuery<O> {
+    /**
+     * Symmetric distance function.
+     */
+    private final boolean symmetric = distanceFunction.isSymmetric();
+
+    @Override
+    public double distance(DBIDRef id1, DBIDRef id2) {
+      if(stale) {
+        clearIfStale();
+      }
+      int a = DBIDUtil.asInteger(id1), b = DBIDUtil.asInteger(id2);
+      if(a == b) {
+        return distanceQuery.distance(id1, id2);
+      }
+      if(symmetric && a > b) {
+        final int t = a;
+        a = b;
+        b = t;
+      }
+      final long key = (((long) a) << 32) | (b & 0xFFFFFFFFL);
+      final long h = mix(key);
+      final Shard shard = shards[(int) (h >>> (64 - SHARD_BITS))];
+      final int pos = ((int) h) & shard.mask;
+      final long[] keys = shard.keys;
+      final double[] values = shard.values;
+      synchronized(shard) {
+        if(keys[pos] == key) {
+          hits.increment();
+          return values[pos];
+        }
+        if(keys[pos + 1] == key) {
+          // Move to front:
+          final double d = values[pos + 1];
+          keys[pos + 1] = keys[pos];
+          values[pos + 1] = values[pos];
+          keys[pos] = key;
+          values[pos] = d;
+          hits.increment();
+          return d;
+        }
+      }
+      misses.increment();
+      final double d = distanceQuery.distance(id1, id2);
+      synchronized(shard) {
+        if(keys[pos] != key) {
+          keys[pos + 1] = keys[pos];
+          values[pos + 1] = values[pos];
+          keys[pos] = key;
+          values[pos] = d;
+        }
+      }
+      return d;
+    }
+
+    @Override
+    public double distance(O o1, DBIDRef id2) {
+      return distanceQuery.distance(o1, id2);
+    }
+
+    @Override
+    public double distance(DBIDRef id1, O o2) {
+      return distanceQuery.distance(id1, o2);
+    }
+
+    @Override
+    public double distance(O o1, O o2) {
+      return distanceQuery.distance(o1, o2);
+    }
+
+    @Override
+    public DistanceFunction<? super O> getDistanceFunction() {
+      return distanceFunction;
+    }
+
+    @Override
+    public Relation<? extends O> getRelation() {
+      return relation;
+    }
+  }
+
+  /**
+   * Factory for the index.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has DistanceCacheIndex
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Nested distance function.
+     */
+    final protected DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Maximum number of cached distances.
+     */
+    final protected int capacity;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param capacity Maximum number of cached distances
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int capacity) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.capacity = capacity;
+    }
+
+    @Override
+    public DistanceCacheIndex<O> instantiate(Relation<O> relation) {
+      return new DistanceCacheIndex<>(relation, distanceFunction, capacity);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterizer.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Option parameter for the distance function.
+       */
+      public static final OptionID DISTANCE_ID = new OptionID("distancecache.distance", "Distance function to cache.");
+
+      /**
+       * Option parameter for the cache size.
+       */
+      public static final OptionID CAPACITY_ID = new OptionID("distancecache.size", "Maximum number of distances to cache (16 bytes each).");
+
+      /**
+       * Nested distance function.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Maximum number of cached distances.
+       */
+      protected int capacity;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceP = new ObjectParameter<>(DISTANCE_ID, DistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distanceFunction = distanceP.instantiateClass(config);
+        }
+        IntParameter capacityP = new IntParameter(CAPACITY_ID, DEFAULT_CAPACITY) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(capacityP)) {
+          capacity = capacityP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, capacity);
+      }
+    }
+  }
+}
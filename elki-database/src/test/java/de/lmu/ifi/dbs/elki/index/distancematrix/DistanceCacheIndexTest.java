@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries.DTWDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the distance cache, and its automatic use by the relation.
+ *
+ * @author Erich Schubert
+ */
+public class DistanceCacheIndexTest {
+  @Test
+  public void testCachedDistances() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DTWDistanceFunction dtw = new ELKIBuilder<>(DTWDistanceFunction.class).build();
+    DistanceQuery<DoubleVector> plain = db.getDistanceQuery(rel, dtw);
+    assertFalse("Cache used without heavy use hint.", plain instanceof DistanceCacheIndex.CachedDistanceQuery);
+    DistanceQuery<DoubleVector> nocache = db.getDistanceQuery(rel, dtw, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+    assertFalse("Cache used despite no cache hint.", nocache instanceof DistanceCacheIndex.CachedDistanceQuery);
+    DistanceQuery<DoubleVector> cheap = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC, DatabaseQuery.HINT_HEAVY_USE);
+    assertFalse("Cache used for a cheap distance.", cheap instanceof DistanceCacheIndex.CachedDistanceQuery);
+
+    DistanceQuery<DoubleVector> cached = db.getDistanceQuery(rel, dtw, DatabaseQuery.HINT_HEAVY_USE);
+    assertTrue("Cache not used.", cached instanceof DistanceCacheIndex.CachedDistanceQuery);
+    // Twice, to also check the values returned from the cache:
+    for(int r = 0; r < 2; r++) {
+      for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+        for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+          assertEquals("Cached distance does not match.", plain.distance(a, b), cached.distance(a, b), 0.);
+        }
+      }
+    }
+    // The cache is attached to the relation, and reused:
+    DistanceQuery<DoubleVector> again = db.getDistanceQuery(rel, dtw, DatabaseQuery.HINT_HEAVY_USE);
+    assertTrue("Cache not reused.", again instanceof DistanceCacheIndex.CachedDistanceQuery);
+    int caches = 0;
+    for(It<DistanceCacheIndex<?>> it = rel.getHierarchy().iterChildren(rel).filter(DistanceCacheIndex.class); it.valid(); it.advance()) {
+      caches++;
+    }
+    assertEquals("Cache not reused.", 1, caches);
+    assertFalse("Cache used despite no cache hint.", db.getDistanceQuery(rel, dtw, DatabaseQuery.HINT_NO_CACHE) instanceof DistanceCacheIndex.CachedDistanceQuery);
+  }
+
+  @Test
+  public void testModifications() {
+    UpdatableDatabase db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv")) {
+      ListParameterization params = new ListParameterization();
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new InputStreamDatabaseConnection(is, new ArrayList<>(), parser));
+      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+    }
+    catch(IOException e) {
+      fail("Test data not found.");
+      return;
+    }
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DTWDistanceFunction dtw = new ELKIBuilder<>(DTWDistanceFunction.class).build();
+    DistanceQuery<DoubleVector> cached = db.getDistanceQuery(rel, dtw, DatabaseQuery.HINT_HEAVY_USE);
+    assertTrue("Cache not used.", cached instanceof DistanceCacheIndex.CachedDistanceQuery);
+    DBIDIter it = rel.iterDBIDs();
+    final DBID a = DBIDUtil.deref(it);
+    final DBID b = DBIDUtil.deref(it.advance());
+    final double before = cached.distance(a, b);
+
+    // Replace the first object, reusing its DBID:
+    db.delete((DBIDRef) a);
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), Arrays.asList(new DoubleVector(new double[] { 100., 100. })));
+    bundle.setDBIDs(DBIDUtil.newArray(a));
+    db.insert(bundle);
+    final double after = cached.distance(a, b);
+    assertEquals("Stale distance returned.", dtw.distance(rel.get(a), rel.get(b)), after, 0.);
+    assertNotEquals("Distance did not change.", before, after, 0.);
+  }
+}
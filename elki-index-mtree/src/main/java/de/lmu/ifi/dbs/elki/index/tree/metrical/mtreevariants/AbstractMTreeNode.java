@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
@@ -182,4 +184,39 @@ public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>,
       throw new InconsistentDataException("pcr < pd + cr \n" + parentEntry.getCoveringRadius() + " < " + parentDistance + " + " + entry.getCoveringRadius() + "in node " + parent.getPageID() + " at index " + index + " (child " + entry + "):\n" + "dist(" + entry.getRoutingObjectID() + " - " + parentEntry.getRoutingObjectID() + ")" + " >  cr(" + entry + ")");
     }
   }
+
+  /**
+   * Write the node in the compact binary format: the node header and the
+   * fixed-size entries.
+   * <p>
+   * This requires entries of type {@link MTreeLeafEntry} respectively
+   * {@link MTreeDirectoryEntry}.
+   *
+   * @param buffer Buffer to write to
+   * @throws IOException on IO errors
+   */
+  public void writeToByteBuffer(ByteBuffer buffer) throws IOException {
+    writeNodeHeader(buffer);
+    for(int i = 0; i < numEntries; i++) {
+      if(isLeaf()) {
+        MTreeLeafEntry.SERIALIZER.toByteBuffer(buffer, (MTreeLeafEntry) entries[i]);
+      }
+      else {
+        MTreeDirectoryEntry.SERIALIZER.toByteBuffer(buffer, (MTreeDirectoryEntry) entries[i]);
+      }
+    }
+  }
+
+  /**
+   * Read the node in the compact binary format.
+   *
+   * @param buffer Buffer to read from
+   * @throws IOException on IO errors
+   */
+  public void readFromByteBuffer(ByteBuffer buffer) throws IOException {
+    readNodeHeader(buffer);
+    for(int i = 0; i < numEntries; i++) {
+      entries[i] = isLeaf() ? MTreeLeafEntry.SERIALIZER.fromByteBuffer(buffer) : MTreeDirectoryEntry.SERIALIZER.fromByteBuffer(buffer);
+    }
+  }
 }
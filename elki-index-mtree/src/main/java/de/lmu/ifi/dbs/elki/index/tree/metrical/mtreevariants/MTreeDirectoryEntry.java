@@ -23,11 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
 
 /**
  * Represents an entry in a directory node of an M-Tree. A MTreeDirectoryEntry
@@ -207,4 +210,45 @@ public class MTreeDirectoryEntry implements DirectoryEntry, MTreeEntry {
   public int hashCode() {
     return id;
   }
+
+  /**
+   * Fixed-size binary serializer: child page id, routing object id, parent
+   * distance and covering radius.
+   */
+  public static final FixedSizeByteBufferSerializer<MTreeDirectoryEntry> SERIALIZER = new Serializer();
+
+  /**
+   * Fixed-size binary serializer.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Serializer implements FixedSizeByteBufferSerializer<MTreeDirectoryEntry> {
+    @Override
+    public MTreeDirectoryEntry fromByteBuffer(ByteBuffer buffer) {
+      final int id = buffer.getInt();
+      DBID routingObjectID = DBIDUtil.importInteger(buffer.getInt());
+      final double parentDistance = buffer.getDouble();
+      return new MTreeDirectoryEntry(routingObjectID, parentDistance, id, buffer.getDouble());
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, MTreeDirectoryEntry entry) {
+      buffer.putInt(entry.id);
+      buffer.putInt(DBIDUtil.asInteger(entry.routingObjectID));
+      buffer.putDouble(entry.parentDistance);
+      buffer.putDouble(entry.coveringRadius);
+    }
+
+    @Override
+    public int getByteSize(MTreeDirectoryEntry entry) {
+      return getFixedByteSize();
+    }
+
+    @Override
+    public int getFixedByteSize() {
+      return 2 * ByteArrayUtil.SIZE_INT + 2 * ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
 }
@@ -23,10 +23,13 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
 
 /**
  * Represents an entry in a leaf node of an M-Tree. A MTreeLeafEntry consists of
@@ -173,4 +176,40 @@ public class MTreeLeafEntry implements LeafEntry, MTreeEntry {
   public int hashCode() {
     return id.hashCode();
   }
+
+  /**
+   * Fixed-size binary serializer: object id and parent distance.
+   */
+  public static final FixedSizeByteBufferSerializer<MTreeLeafEntry> SERIALIZER = new Serializer();
+
+  /**
+   * Fixed-size binary serializer.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Serializer implements FixedSizeByteBufferSerializer<MTreeLeafEntry> {
+    @Override
+    public MTreeLeafEntry fromByteBuffer(ByteBuffer buffer) {
+      DBID id = DBIDUtil.importInteger(buffer.getInt());
+      return new MTreeLeafEntry(id, buffer.getDouble());
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, MTreeLeafEntry entry) {
+      buffer.putInt(DBIDUtil.asInteger(entry.id));
+      buffer.putDouble(entry.parentDistance);
+    }
+
+    @Override
+    public int getByteSize(MTreeLeafEntry entry) {
+      return getFixedByteSize();
+    }
+
+    @Override
+    public int getFixedByteSize() {
+      return ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
 }
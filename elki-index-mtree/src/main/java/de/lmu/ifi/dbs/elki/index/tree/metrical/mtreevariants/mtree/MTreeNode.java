@@ -22,15 +22,19 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
 
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in an M-Tree.
+ * <p>
+ * Nodes are stored in the compact binary format of
+ * {@link AbstractMTreeNode#writeToByteBuffer}.
  * 
  * @author Elke Achtert
  * @since 0.2
  * @param <O> Object type
  */
-public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry> {
+public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry> implements ByteBufferPage {
   /**
    * Serial version
    */
@@ -35,8 +35,8 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -88,6 +88,11 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    */
   private double[] matrix = null;
 
+  /**
+   * Checksum of the matrix, see {@link TriangleMatrixPrecomputer}.
+   */
+  private long checksum;
+
   /**
    * DBID range.
    */
@@ -127,21 +132,10 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
 
     final int msize = triangleSize(size);
     matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
-    }
-    LOG.ensureCompleted(prog);
+    // y < x -- must match {@link #getOffset}!
+    checksum = new TriangleMatrixPrecomputer(ids, false, false).run(distanceQuery::distance, //
+        (x, y, values, len) -> System.arraycopy(values, 0, matrix, triangleSize(x) + y, len), //
+        "Precomputing distance matrix", LOG);
   }
 
   /**
@@ -169,6 +163,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
   public void logStatistics() {
     if(matrix != null) {
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new StringStatistic(this.getClass().getName() + ".checksum", Long.toHexString(checksum)));
     }
   }
 
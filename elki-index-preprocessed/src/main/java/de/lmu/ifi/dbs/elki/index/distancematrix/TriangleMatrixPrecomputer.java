@@ -0,0 +1,348 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Tiled, parallel computation of a symmetric pairwise matrix, such as a
+ * distance or similarity matrix.
+ *
+ * The lower triangle (i.e. entries \((x,y)\) with \(y&lt;x\), optionally
+ * including the diagonal) is split into blocks of rows with a similar number
+ * of entries, which are processed in parallel. Within each block, the columns
+ * are processed in tiles, such that the column objects remain in the CPU
+ * cache. Each output row segment is handed to an {@link Output}, which can
+ * write it directly into the target storage.
+ *
+ * In addition, a 64 bit checksum (FNV-1a over the stored values, in row-major
+ * order) is computed, which does not depend on the order of execution. It can
+ * be stored next to a matrix file with {@link #writeChecksum}.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses PairFunction
+ * @apiviz.uses Output
+ */
+public class TriangleMatrixPrecomputer {
+  /**
+   * Minimum number of matrix entries per parallel task.
+   */
+  private static final long BLOCKSIZE = 1L << 18;
+
+  /**
+   * Number of columns per tile.
+   */
+  private static final int TILE = 256;
+
+  /**
+   * FNV-1a offset basis.
+   */
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+  /**
+   * FNV-1a prime.
+   */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * File name suffix for checksum files.
+   */
+  public static final String CHECKSUM_SUFFIX = ".checksum";
+
+  /**
+   * Function to compute the matrix entries.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface PairFunction {
+    /**
+     * Compute the value for a pair of objects.
+     *
+     * @param a First object (row)
+     * @param b Second object (column)
+     * @return Value
+     */
+    double apply(DBIDRef a, DBIDRef b);
+  }
+
+  /**
+   * Output for the computed values. Implementations must allow concurrent
+   * writes to different rows.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface Output {
+    /**
+     * Store a consecutive part of a row, i.e. the entries {@code (x,y)} to
+     * {@code (x,y+len-1)}.
+     *
+     * @param x Row
+     * @param y First column
+     * @param values Values (will be reused after the call)
+     * @param len Number of values
+     */
+    void write(int x, int y, double[] values, int len);
+  }
+
+  /**
+   * Objects to process.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Include the diagonal.
+   */
+  private final boolean diagonal;
+
+  /**
+   * Round values to single precision.
+   */
+  private final boolean single;
+
+  /**
+   * Checksum of each row.
+   */
+  private long[] rowsums;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Objects to process
+   * @param diagonal Include the diagonal
+   * @param single Round values to single precision (before writing and
+   *        checksumming)
+   */
+  public TriangleMatrixPrecomputer(ArrayDBIDs ids, boolean diagonal, boolean single) {
+    this.ids = ids;
+    this.diagonal = diagonal;
+    this.single = single;
+  }
+
+  /**
+   * Compute the matrix, in parallel if possible.
+   *
+   * @param f Function to compute
+   * @param out Output for the values
+   * @param task Task name for progress logging
+   * @param log Logger for progress, may be {@code null}
+   * @return Checksum
+   */
+  public long run(PairFunction f, Output out, String task, Logging log) {
+    final boolean parallel = entries(ids.size()) >= (BLOCKSIZE << 1) && ParallelCore.getCore().getParallelism() > 1;
+    return run(f, out, task, log, parallel);
+  }
+
+  /**
+   * Compute the matrix.
+   *
+   * @param f Function to compute
+   * @param out Output for the values
+   * @param task Task name for progress logging
+   * @param log Logger for progress, may be {@code null}
+   * @param parallel Split the rows into parallel tasks
+   * @return Checksum
+   */
+  long run(PairFunction f, Output out, String task, Logging log, boolean parallel) {
+    final int size = ids.size();
+    rowsums = new long[size];
+    FiniteProgress prog = log != null && log.isVerbose() ? new FiniteProgress(task, size, log) : null;
+    if(parallel) {
+      ParallelCore.getCore().invoke(new Task(f, out, 0, size, prog, log));
+    }
+    else {
+      computeRows(f, out, 0, size, prog, log);
+    }
+    if(log != null) {
+      log.ensureCompleted(prog);
+    }
+    long sum = FNV_OFFSET;
+    for(long s : rowsums) {
+      sum = (sum ^ s) * FNV_PRIME;
+    }
+    rowsums = null;
+    return sum;
+  }
+
+  /**
+   * Store the checksum of a matrix file, in hexadecimal, in a file next to it
+   * (with suffix {@link #CHECKSUM_SUFFIX}). The matrix file format remains
+   * unchanged.
+   *
+   * @param matrix Matrix file
+   * @param checksum Checksum
+   * @throws IOException on write errors
+   */
+  public static void writeChecksum(File matrix, long checksum) throws IOException {
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(matrix.getPath() + CHECKSUM_SUFFIX), StandardCharsets.US_ASCII)) {
+      out.write(Long.toHexString(checksum));
+      out.write('\n');
+    }
+  }
+
+  /**
+   * Number of entries in the first x rows.
+   *
+   * @param x Number of rows
+   * @return Number of entries
+   */
+  private long entries(int x) {
+    return diagonal ? ((((long) x) * (x + 1)) >>> 1) : ((((long) x) * (x - 1)) >>> 1);
+  }
+
+  /**
+   * Compute a range of rows, tile by tile.
+   *
+   * @param f Function to compute
+   * @param out Output for the values
+   * @param start First row
+   * @param end End row (exclusive)
+   * @param prog Progress, may be {@code null}
+   * @param log Logger for progress, may be {@code null}
+   */
+  private void computeRows(PairFunction f, Output out, int start, int end, FiniteProgress prog, Logging log) {
+    // Use own iterators, for thread safety.
+    final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    final double[] buf = new double[TILE];
+    final long[] rowsums = this.rowsums;
+    final int ext = diagonal ? 1 : 0;
+    for(int x = start; x < end; x++) {
+      rowsums[x] = FNV_OFFSET;
+    }
+    for(int c0 = 0; c0 < end - 1 + ext; c0 += TILE) {
+      for(ix.seek(Math.max(start, c0)); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        final int len = Math.min(TILE, x + ext - c0);
+        if(len <= 0) {
+          continue;
+        }
+        long sum = rowsums[x];
+        iy.seek(c0);
+        for(int i = 0; i < len; i++, iy.advance()) {
+          double v = f.apply(ix, iy);
+          if(single) {
+            final float fv = (float) v;
+            sum = (sum ^ Float.floatToIntBits(fv)) * FNV_PRIME;
+            v = fv;
+          }
+          else {
+            sum = (sum ^ Double.doubleToLongBits(v)) * FNV_PRIME;
+          }
+          buf[i] = v;
+        }
+        rowsums[x] = sum;
+        out.write(x, c0, buf, len);
+      }
+    }
+    if(prog != null) {
+      for(int x = start; x < end; x++) {
+        prog.incrementProcessed(log);
+      }
+    }
+  }
+
+  /**
+   * Task to compute the matrix in parallel. Rows are split such that both
+   * halves contain a similar number of matrix entries.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Task extends RecursiveAction {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Function to compute.
+     */
+    private PairFunction f;
+
+    /**
+     * Output for the values.
+     */
+    private Output out;
+
+    /**
+     * Row range.
+     */
+    private int start, end;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Logger for progress, may be {@code null}.
+     */
+    private Logging log;
+
+    /**
+     * Constructor.
+     *
+     * @param f Function to compute
+     * @param out Output for the values
+     * @param start First row
+     * @param end End row (exclusive)
+     * @param prog Progress, may be {@code null}
+     * @param log Logger for progress, may be {@code null}
+     */
+    Task(PairFunction f, Output out, int start, int end, FiniteProgress prog, Logging log) {
+      this.f = f;
+      this.out = out;
+      this.start = start;
+      this.end = end;
+      this.prog = prog;
+      this.log = log;
+    }
+
+    @Override
+    protected void compute() {
+      final long ts = entries(start), te = entries(end);
+      if(te - ts <= BLOCKSIZE || end - start < 2) {
+        computeRows(f, out, start, end, prog, log);
+        return;
+      }
+      // Split at half of the matrix entries:
+      int mid = (int) Math.sqrt((ts + ((te - ts) >>> 1)) << 1);
+      mid = mid <= start ? start + 1 : mid >= end ? end - 1 : mid;
+      invokeAll(new Task(f, out, start, mid, prog, log), new Task(f, out, mid, end, prog, log));
+    }
+  }
+}
@@ -0,0 +1,943 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.NotImplementedException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Multi-threaded NN-descent, for approximate kNN graph construction on large
+ * data sets.
+ * <p>
+ * In contrast to {@link NNDescent}, all state is kept in flat primitive
+ * arrays indexed by an internal object number: the neighbor heaps (with a
+ * "new" flag for each entry), and the sampled new and old candidate lists,
+ * which combine forward and reverse neighbors chosen by random priority. The
+ * local joins run concurrently on the {@link ParallelCore}; heap updates are
+ * synchronized using lock striping.
+ * <p>
+ * Objects inserted later (e.g. through an
+ * {@link de.lmu.ifi.dbs.elki.database.UpdatableDatabase}) are buffered, and
+ * integrated into the existing graph before the next query, by starting from
+ * random neighbors for the new objects and running NN-descent iterations in
+ * which only their edges are flagged as new. Each iteration only joins the
+ * candidates of the objects with new edges and their neighbors, so the number
+ * of distance computations to integrate a few objects does not grow with the
+ * size of the graph.
+ * <p>
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br>
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br>
+ * In Proc. 20th international conference on World Wide Web WWW'11
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong and C. Moses and K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th international conference on World Wide Web WWW'11", //
+    url = "http://dx.doi.org/10.1145/1963405.1963487")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> implements DynamicIndex {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of lock stripes, must be a power of two.
+   */
+  private static final int LOCKS = 1 << 10;
+
+  /**
+   * Minimum number of objects per parallel task.
+   */
+  private static final int BLOCKSIZE = 1 << 10;
+
+  /**
+   * Log prefix.
+   */
+  private String prefix = getClass().getCanonicalName();
+
+  /**
+   * Random generator.
+   */
+  private final Random random;
+
+  /**
+   * Early termination parameter.
+   */
+  private final double delta;
+
+  /**
+   * Sample rate.
+   */
+  private final double rho;
+
+  /**
+   * Maximum number of iterations.
+   */
+  private final int iterations;
+
+  /**
+   * Number of neighbors stored per object (excluding the object itself).
+   */
+  private final int kk;
+
+  /**
+   * Objects in the graph, by internal number.
+   */
+  private ArrayModifiableDBIDs ids;
+
+  /**
+   * Neighbor heaps (max-heaps of size kk for each object).
+   */
+  private int[] nbrs;
+
+  /**
+   * Neighbor distances.
+   */
+  private double[] dists;
+
+  /**
+   * Flags for new neighbors.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Objects whose neighbors have changed.
+   */
+  private boolean[] changed;
+
+  /**
+   * Objects whose kNN lists need to be materialized.
+   */
+  private final IntArrayList modified = new IntArrayList();
+
+  /**
+   * Objects queued for the next iteration, because they have new neighbors.
+   */
+  private boolean[] queued;
+
+  /**
+   * Queue of objects with new neighbors.
+   */
+  private final IntArrayList queue = new IntArrayList();
+
+  /**
+   * Objects with new neighbors in the current iteration.
+   */
+  private int[] active;
+
+  /**
+   * Candidate list slot of each object, or -1.
+   */
+  private int[] slot;
+
+  /**
+   * Object of each candidate list slot.
+   */
+  private int[] owner = new int[0];
+
+  /**
+   * Number of candidate list slots in use.
+   */
+  private int nslots;
+
+  /**
+   * Lock stripes for the heaps and candidate lists.
+   */
+  private final Object[] locks = new Object[LOCKS];
+
+  /**
+   * Maximum size of a candidate list.
+   */
+  private int items;
+
+  /**
+   * Sampled new candidates, by slot.
+   */
+  private int[] newc;
+
+  /**
+   * Sampled old candidates.
+   */
+  private int[] oldc;
+
+  /**
+   * Priorities of the sampled candidates.
+   */
+  private double[] newp, oldp;
+
+  /**
+   * Sizes of the candidate lists, by slot.
+   */
+  private int[] newn, oldn;
+
+  /**
+   * Objects inserted, but not yet integrated into the graph.
+   */
+  private ArrayModifiableDBIDs pending = DBIDUtil.newArray();
+
+  /**
+   * Flag for pending insertions, checked without locking by queries, which
+   * may run concurrently.
+   */
+  private volatile boolean dirty = false;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors, including the object itself
+   * @param rnd Random generator
+   * @param delta Early termination parameter
+   * @param rho Sample rate
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, RandomFactory rnd, double delta, double rho, int iterations) {
+    super(relation, distanceFunction, k);
+    this.random = rnd.getSingleThreadedRandom();
+    this.delta = delta;
+    this.rho = rho;
+    this.iterations = iterations;
+    this.kk = k - 1;
+    for(int i = 0; i < LOCKS; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  @Override
+  protected void preprocess() {
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(prefix + ".construction-time.ms").begin() : null;
+    createStorage();
+    ids = DBIDUtil.newArray(relation.size());
+    nbrs = new int[0];
+    dists = new double[0];
+    isnew = new boolean[0];
+    changed = new boolean[0];
+    queued = new boolean[0];
+    slot = new int[0];
+    modified.clear();
+    queue.clear();
+    pending.clear();
+    dirty = false;
+    integrate(relation.getDBIDs());
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  @Override
+  public KNNList get(DBIDRef id) {
+    if(dirty) {
+      flush();
+    }
+    return super.get(id);
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    // Buffer single insertions, as databases insert one object at a time.
+    if(storage != null) {
+      synchronized(this) {
+        pending.add(id);
+        dirty = true;
+      }
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(storage == null) {
+      if(ids.size() > 0) {
+        preprocess();
+      }
+      return;
+    }
+    synchronized(this) {
+      pending.addDBIDs(ids);
+      dirty = true;
+    }
+    flush();
+  }
+
+  /**
+   * Integrate all pending insertions into the graph.
+   * <p>
+   * Concurrent queries wait here until the graph is consistent again; only
+   * the first one integrates the pending objects.
+   */
+  private synchronized void flush() {
+    if(pending.isEmpty()) {
+      return;
+    }
+    ArrayModifiableDBIDs add = pending;
+    pending = DBIDUtil.newArray();
+    integrate(add);
+    // Publish the updated graph to unsynchronized readers:
+    dirty = false;
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    throw new NotImplementedException();
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    throw new NotImplementedException();
+  }
+
+  /**
+   * Add objects to the graph, and run NN-descent until convergence.
+   *
+   * @param add Objects to add
+   */
+  private void integrate(DBIDs add) {
+    final int start = ids.size();
+    ids.addDBIDs(add);
+    final int size = ids.size();
+    ensureCapacity(size);
+    // Room for the sampled forward and reverse neighbors:
+    items = Math.max(1, (int) Math.ceil(rho * kk)) << 1;
+
+    // Random initial neighbors of the new objects:
+    long counter_all = run(Mode.INIT, start, size, random.nextLong());
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("NNDescent iteration", LOG) : null;
+    int iter = 0;
+    for(; iter < iterations && !queue.isEmpty(); iter++) {
+      activate();
+      run(Mode.SAMPLE, 0, size, random.nextLong());
+      run(Mode.MARK, 0, active.length, 0L);
+      final long counter = run(Mode.JOIN, 0, nslots, 0L);
+      releaseSlots();
+      counter_all += counter >>> 32;
+      final long updates = counter & 0xFFFFFFFFL;
+      final double rate = updates / (double) (kk * (long) Math.max(1, size - start));
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
+      }
+      LOG.incrementProcessed(progress);
+      if(rate < delta) {
+        LOG.verbose("NNDescent terminated because update rate got smaller than delta.");
+        break;
+      }
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("NNDescent terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all / (size * (size - 1L) * .5)));
+    }
+    // Objects still queued keep their new edges for the next insertion.
+    for(int x = 0, e = queue.size(); x < e; x++) {
+      markModified(queue.getInt(x));
+    }
+    active = null;
+    newc = oldc = null;
+    newp = oldp = null;
+    newn = oldn = null;
+    // Materialize the changed kNN lists:
+    DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+    for(int x = 0, e = modified.size(); x < e; x++) {
+      final int i = modified.getInt(x);
+      changed[i] = false;
+      it.seek(i);
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0., it);
+      for(int s = i * kk, e2 = s + kk; s < e2; s++) {
+        if(nbrs[s] >= 0) {
+          heap.insert(dists[s], it2.seek(nbrs[s]));
+        }
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    modified.clear();
+  }
+
+  /**
+   * Grow the per-object arrays geometrically, so that repeated small
+   * insertions do not copy the whole graph each time.
+   *
+   * @param size Required number of objects
+   */
+  private void ensureCapacity(int size) {
+    final int cap = changed.length;
+    if(size <= cap) {
+      return;
+    }
+    final int ncap = Math.max(size, cap + (cap >>> 1));
+    nbrs = Arrays.copyOf(nbrs, ncap * kk);
+    dists = Arrays.copyOf(dists, ncap * kk);
+    isnew = Arrays.copyOf(isnew, ncap * kk);
+    changed = Arrays.copyOf(changed, ncap);
+    queued = Arrays.copyOf(queued, ncap);
+    slot = Arrays.copyOf(slot, ncap);
+    Arrays.fill(nbrs, cap * kk, ncap * kk, -1);
+    Arrays.fill(dists, cap * kk, ncap * kk, Double.POSITIVE_INFINITY);
+    Arrays.fill(slot, cap, ncap, -1);
+  }
+
+  /**
+   * Start an iteration: take the queued objects as active objects, and assign
+   * candidate list slots to them and their neighbors.
+   */
+  private void activate() {
+    active = queue.toIntArray();
+    queue.clear();
+    for(int i : active) {
+      queued[i] = false;
+      markModified(i);
+      assignSlot(i);
+      for(int s = i * kk, e = s + kk; s < e; s++) {
+        if(nbrs[s] >= 0) {
+          assignSlot(nbrs[s]);
+        }
+      }
+    }
+    if(newn == null || newn.length < nslots) {
+      newc = new int[nslots * items];
+      oldc = new int[nslots * items];
+      newp = new double[nslots * items];
+      oldp = new double[nslots * items];
+      newn = new int[nslots];
+      oldn = new int[nslots];
+    }
+    else {
+      Arrays.fill(newn, 0, nslots, 0);
+      Arrays.fill(oldn, 0, nslots, 0);
+    }
+  }
+
+  /**
+   * Assign a candidate list slot to an object, if it does not have one yet.
+   *
+   * @param i Object
+   */
+  private void assignSlot(int i) {
+    if(slot[i] < 0) {
+      if(nslots == owner.length) {
+        owner = Arrays.copyOf(owner, Math.max(16, nslots << 1));
+      }
+      slot[i] = nslots;
+      owner[nslots++] = i;
+    }
+  }
+
+  /**
+   * Release all candidate list slots.
+   */
+  private void releaseSlots() {
+    for(int x = 0; x < nslots; x++) {
+      slot[owner[x]] = -1;
+    }
+    nslots = 0;
+  }
+
+  /**
+   * Remember that the kNN list of an object needs to be materialized.
+   *
+   * @param i Object
+   */
+  private void markModified(int i) {
+    if(!changed[i]) {
+      changed[i] = true;
+      modified.add(i);
+    }
+  }
+
+  /**
+   * Processing phases.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private enum Mode {
+    /** Random initial neighbors */
+    INIT,
+    /** Sample candidates */
+    SAMPLE,
+    /** Mark sampled candidates as old */
+    MARK,
+    /** Local join */
+    JOIN,
+  }
+
+  /**
+   * Run one phase, in parallel for large ranges.
+   *
+   * @param mode Phase
+   * @param start First object
+   * @param end End (exclusive)
+   * @param seed Random seed
+   * @return Distance computations (upper 32 bits) and updates (lower 32 bits)
+   */
+  private long run(Mode mode, int start, int end, long seed) {
+    if(end - start > BLOCKSIZE && ParallelCore.getCore().getParallelism() > 1) {
+      return ParallelCore.getCore().invoke(new Task(mode, start, end, seed));
+    }
+    return process(mode, start, end, seed);
+  }
+
+  /**
+   * Process a range of objects (for {@link Mode#INIT} and {@link Mode#SAMPLE}),
+   * candidate list slots (for {@link Mode#JOIN}), or active objects (for
+   * {@link Mode#MARK}).
+   *
+   * @param mode Phase
+   * @param start First index
+   * @param end End (exclusive)
+   * @param seed Random seed
+   * @return Distance computations (upper 32 bits) and updates (lower 32 bits)
+   */
+  private long process(Mode mode, int start, int end, long seed) {
+    final Random rnd = new Random(seed + start);
+    final DBIDArrayIter a = ids.iter(), b = ids.iter();
+    final IntArrayList requeue = new IntArrayList();
+    long dcount = 0, updates = 0;
+    switch(mode){
+    case INIT: {
+      final int size = ids.size();
+      for(int i = start; i < end; i++) {
+        a.seek(i);
+        for(int j = 0; j < kk && size > 1; j++) {
+          int c = rnd.nextInt(size - 1);
+          c = c < i ? c : c + 1;
+          updates += add(i, c, distanceQuery.distance(a, b.seek(c)), requeue) ? 1 : 0;
+          ++dcount;
+        }
+      }
+      break;
+    }
+    case SAMPLE:
+      // Objects without a slot have no new candidates, so their old
+      // candidates would never be joined. But they are reverse neighbors of
+      // the objects with a slot, which is how existing objects find the new.
+      for(int i = start; i < end; i++) {
+        final int x = slot[i];
+        for(int s = i * kk, e = s + kk; s < e; s++) {
+          final int j = nbrs[s];
+          if(j < 0 || (x < 0 && slot[j] < 0)) {
+            continue;
+          }
+          final double p = rnd.nextDouble();
+          if(isnew[s]) {
+            addCandidate(newc, newp, newn, x, j, p);
+            addCandidate(newc, newp, newn, slot[j], i, p);
+          }
+          else {
+            addCandidate(oldc, oldp, oldn, x, j, p);
+            addCandidate(oldc, oldp, oldn, slot[j], i, p);
+          }
+        }
+      }
+      break;
+    case MARK:
+      for(int x = start; x < end; x++) {
+        final int i = active[x], off = slot[i] * items, n = newn[slot[i]];
+        boolean remaining = false;
+        for(int s = i * kk, e = s + kk; s < e; s++) {
+          if(isnew[s]) {
+            for(int c = off; c < off + n; c++) {
+              if(newc[c] == nbrs[s]) {
+                isnew[s] = false;
+                break;
+              }
+            }
+            remaining |= isnew[s];
+          }
+        }
+        // Unsampled new neighbors are kept for the next iteration:
+        if(remaining) {
+          queued[i] = true;
+          requeue.add(i);
+        }
+      }
+      break;
+    case JOIN:
+      for(int sl = start; sl < end; sl++) {
+        final int noff = sl * items, nn = newn[sl];
+        final int ooff = sl * items, on = oldn[sl];
+        for(int x = noff, xe = noff + nn; x < xe; x++) {
+          final int u = newc[x];
+          a.seek(u);
+          // new x new, each pair once:
+          for(int y = x + 1; y < xe; y++) {
+            final int v = newc[y];
+            if(u != v) {
+              final double d = distanceQuery.distance(a, b.seek(v));
+              updates += (add(u, v, d, requeue) ? 1 : 0) + (add(v, u, d, requeue) ? 1 : 0);
+              ++dcount;
+            }
+          }
+          // new x old:
+          for(int y = ooff, ye = ooff + on; y < ye; y++) {
+            final int v = oldc[y];
+            if(u != v) {
+              final double d = distanceQuery.distance(a, b.seek(v));
+              updates += (add(u, v, d, requeue) ? 1 : 0) + (add(v, u, d, requeue) ? 1 : 0);
+              ++dcount;
+            }
+          }
+        }
+      }
+      break;
+    }
+    if(!requeue.isEmpty()) {
+      synchronized(queue) {
+        queue.addAll(requeue);
+      }
+    }
+    return (dcount << 32) | updates;
+  }
+
+  /**
+   * Add a candidate to the sampled candidates of an object, keeping those with
+   * the smallest priority.
+   *
+   * @param cand Candidate array
+   * @param prio Priority array
+   * @param num Candidate list sizes
+   * @param x Slot of the object, or -1
+   * @param j Candidate
+   * @param p Priority
+   */
+  private void addCandidate(int[] cand, double[] prio, int[] num, int x, int j, double p) {
+    if(x < 0) {
+      return;
+    }
+    final int off = x * items;
+    synchronized(locks[x & (LOCKS - 1)]) {
+      final int n = num[x];
+      int worst = -1;
+      double worstp = p;
+      for(int c = off; c < off + n; c++) {
+        if(cand[c] == j) {
+          return;
+        }
+        if(prio[c] > worstp) {
+          worstp = prio[c];
+          worst = c;
+        }
+      }
+      if(n < items) {
+        cand[off + n] = j;
+        prio[off + n] = p;
+        num[x] = n + 1;
+      }
+      else if(worst >= 0) {
+        cand[worst] = j;
+        prio[worst] = p;
+      }
+    }
+  }
+
+  /**
+   * Offer a neighbor candidate to the heap of object i.
+   *
+   * @param i Object
+   * @param j Neighbor candidate
+   * @param d Distance
+   * @param requeue Output list of objects queued for the next iteration
+   * @return {@code true} if the heap was updated
+   */
+  private boolean add(int i, int j, double d, IntArrayList requeue) {
+    final int off = i * kk;
+    if(d >= dists[off]) {
+      return false;
+    }
+    synchronized(locks[i & (LOCKS - 1)]) {
+      if(d >= dists[off]) {
+        return false;
+      }
+      for(int s = off, e = off + kk; s < e; s++) {
+        if(nbrs[s] == j) {
+          return false;
+        }
+      }
+      // Replace the top, and restore the heap order:
+      int pos = 0;
+      while(true) {
+        final int l = (pos << 1) + 1, r = l + 1;
+        if(l >= kk) {
+          break;
+        }
+        final int c = (r < kk && dists[off + r] > dists[off + l]) ? r : l;
+        if(dists[off + c] <= d) {
+          break;
+        }
+        nbrs[off + pos] = nbrs[off + c];
+        dists[off + pos] = dists[off + c];
+        isnew[off + pos] = isnew[off + c];
+        pos = c;
+      }
+      nbrs[off + pos] = j;
+      dists[off + pos] = d;
+      isnew[off + pos] = true;
+      if(!queued[i]) {
+        queued[i] = true;
+        requeue.add(i);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Task for parallel processing of a range of objects.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Task extends RecursiveTask<Long> {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Phase.
+     */
+    private Mode mode;
+
+    /**
+     * Index range.
+     */
+    private int start, end;
+
+    /**
+     * Random seed.
+     */
+    private long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param mode Phase
+     * @param start First index
+     * @param end End (exclusive)
+     * @param seed Random seed
+     */
+    Task(Mode mode, int start, int end, long seed) {
+      this.mode = mode;
+      this.start = start;
+      this.end = end;
+      this.seed = seed;
+    }
+
+    @Override
+    protected Long compute() {
+      if(end - start <= BLOCKSIZE) {
+        return process(mode, start, end, seed);
+      }
+      // Split into blocks of BLOCKSIZE, to keep the random seeds independent
+      // of the degree of parallelism.
+      final int mid = start + ((((end - start) >>> 1) + BLOCKSIZE - 1) / BLOCKSIZE) * BLOCKSIZE;
+      Task left = new Task(mode, start, mid, seed), right = new Task(mode, mid, end, seed);
+      invokeAll(left, right);
+      return left.join() + right.join();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    if(ids != null) {
+      LOG.statistics(new LongStatistic(prefix + ".size", ids.size()));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Parallel NNDescent kNN";
+  }
+
+  @Override
+  public String getShortName() {
+    return "parallel-nn-descent-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return super.getKNNQuery(distanceQuery, hints);
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has ParallelNNDescent
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of neighbors, including the object itself
+     * @param distanceFunction Distance function
+     * @param rnd Random generator
+     * @param delta Early termination parameter
+     * @param rho Sample rate
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, RandomFactory rnd, double delta, double rho, int iterations) {
+      super(k, distanceFunction);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.iterations = iterations;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distanceFunction, k, rnd, delta, rho, iterations);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        RandomParameter rndP = new RandomParameter(NNDescent.Factory.Parameterizer.SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.getValue();
+        }
+        DoubleParameter rhoP = new DoubleParameter(NNDescent.Factory.Parameterizer.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.getValue();
+        }
+        IntParameter iterP = new IntParameter(NNDescent.Factory.Parameterizer.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          iterations = iterP.getValue();
+        }
+      }
+
+      @Override
+      protected ParallelNNDescent.Factory<O> makeInstance() {
+        return new ParallelNNDescent.Factory<>(k, distanceFunction, rnd, delta, rho, iterations);
+      }
+    }
+  }
+}
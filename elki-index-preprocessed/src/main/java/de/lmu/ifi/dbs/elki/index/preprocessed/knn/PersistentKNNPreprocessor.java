@@ -0,0 +1,415 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Materialize the kNN graph, and keep a binary copy in a file.
+ *
+ * If the file exists and was computed for the same data, the same distance
+ * function, and at least k neighbors, it is loaded instead of recomputing the
+ * neighbors. Otherwise, the neighbors are computed as with
+ * {@link MaterializeKNNPreprocessor}, and the file is (re-)written.
+ *
+ * The distance function is identified by its class name and a fingerprint of
+ * its parameters (see {@link #fingerprint(DistanceFunction)}), as
+ * {@code toString()} usually includes the identity hash code.
+ *
+ * Neighbors are stored by their offset in the relation, so the file remains
+ * valid across runs. This requires the relation to use a {@link DBIDRange}; for
+ * other relations, the file is not used.
+ *
+ * @author Erich Schubert
+ *
+ * @param <O> Object type
+ */
+public class PersistentKNNPreprocessor<O> extends MaterializeKNNPreprocessor<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PersistentKNNPreprocessor.class);
+
+  /**
+   * Magic number of the file format.
+   */
+  public static final int KNN_GRAPH_MAGIC = 0xCAC4E0A2;
+
+  /**
+   * File to store the kNN graph in.
+   */
+  private File file;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors
+   * @param file File to store the kNN graph in
+   */
+  public PersistentKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, File file) {
+    super(relation, distanceFunction, k);
+    this.file = file;
+  }
+
+  @Override
+  protected void preprocess() {
+    final DBIDs ids = relation.getDBIDs();
+    if(!(ids instanceof DBIDRange)) {
+      LOG.warning("Relation does not use a DBID range, kNN graph cannot be stored.");
+      super.preprocess();
+      return;
+    }
+    final DBIDRange range = (DBIDRange) ids;
+    final long fingerprint = fingerprint(relation);
+    if(file.exists() && load(range, fingerprint)) {
+      return;
+    }
+    super.preprocess();
+    try {
+      save(range, fingerprint);
+    }
+    catch(IOException e) {
+      LOG.warning("Could not write kNN graph to " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Try to load the kNN graph from the file.
+   *
+   * @param range DBID range
+   * @param fingerprint Data fingerprint
+   * @return {@code true} if the file was usable
+   */
+  private boolean load(DBIDRange range, long fingerprint) {
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".load-time").begin() : null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if(in.readInt() != KNN_GRAPH_MAGIC) {
+        LOG.warning("Not a kNN graph file: " + file);
+        return false;
+      }
+      final int size = in.readInt(), fk = in.readInt();
+      final long fp = in.readLong();
+      final String dist = in.readUTF();
+      final long dfp = in.readLong();
+      if(size != range.size() || fp != fingerprint || fk < k //
+          || !dist.equals(distanceFunction.getClass().getName()) || dfp != fingerprint(distanceFunction)) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("kNN graph file " + file + " does not match the data, distance, or k. Recomputing.");
+        }
+        return false;
+      }
+      createStorage();
+      DBIDVar var = DBIDUtil.newVar();
+      for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+        final int nnsize = in.readInt();
+        // Truncate to k neighbors (plus ties), if the file has more.
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(int i = 0; i < nnsize; i++) {
+          final int off = in.readInt();
+          final double d = in.readDouble();
+          if(d <= heap.getKNNDistance()) {
+            heap.insert(d, range.assignVar(off, var));
+          }
+        }
+        storage.put(it, heap.toKNNList());
+      }
+    }
+    catch(IOException | IndexOutOfBoundsException e) {
+      LOG.warning("Could not read kNN graph from " + file + ": " + e.getMessage());
+      storage = null;
+      return false;
+    }
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+    return true;
+  }
+
+  /**
+   * Write the kNN graph to the file.
+   *
+   * @param range DBID range
+   * @param fingerprint Data fingerprint
+   * @throws IOException on write errors
+   */
+  private void save(DBIDRange range, long fingerprint) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(KNN_GRAPH_MAGIC);
+      out.writeInt(range.size());
+      out.writeInt(k);
+      out.writeLong(fingerprint);
+      out.writeUTF(distanceFunction.getClass().getName());
+      out.writeLong(fingerprint(distanceFunction));
+      for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+        KNNList nn = storage.get(it);
+        out.writeInt(nn.size());
+        for(DoubleDBIDListIter ni = nn.iter(); ni.valid(); ni.advance()) {
+          out.writeInt(range.getOffset(ni));
+          out.writeDouble(ni.doubleValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute a fingerprint of the relation contents, to detect stale files.
+   *
+   * @param relation Relation
+   * @return Fingerprint
+   */
+  protected static long fingerprint(Relation<?> relation) {
+    long h = 0xcbf29ce484222325L; // FNV-1a offset basis
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      Object o = relation.get(it);
+      if(o instanceof NumberVector) {
+        NumberVector v = (NumberVector) o;
+        final int dim = v.getDimensionality();
+        h = (h ^ dim) * 0x100000001b3L;
+        for(int d = 0; d < dim; d++) {
+          h = (h ^ Double.doubleToLongBits(v.doubleValue(d))) * 0x100000001b3L;
+        }
+      }
+      else {
+        h = (h ^ String.valueOf(o).hashCode()) * 0x100000001b3L;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Compute a fingerprint of a distance function, from its class name and its
+   * parameters. Other than {@code toString()}, this is stable across runs.
+   * <p>
+   * Parameters are the instance fields of simple types (primitives, strings,
+   * enums, classes, and arrays of these), and nested distance or similarity
+   * functions. Other fields, such as caches or index references, hold runtime
+   * state and are ignored, as are fields that cannot be accessed.
+   *
+   * @param distanceFunction Distance function
+   * @return Fingerprint
+   */
+  public static long fingerprint(DistanceFunction<?> distanceFunction) {
+    return fingerprint(0xcbf29ce484222325L, distanceFunction, 0);
+  }
+
+  /**
+   * Hash the class and the parameter fields of a function.
+   *
+   * @param h Hash so far
+   * @param o Distance or similarity function
+   * @param depth Nesting depth, to guard against cycles
+   * @return Updated hash
+   */
+  private static long fingerprint(long h, Object o, int depth) {
+    final Class<?> cls = o.getClass();
+    h = (h ^ cls.getName().hashCode()) * 0x100000001b3L;
+    for(Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+      Field[] fields = c.getDeclaredFields();
+      // The order of declared fields is not specified.
+      Arrays.sort(fields, Comparator.comparing(Field::getName));
+      for(Field f : fields) {
+        final int mod = f.getModifiers();
+        if(Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+          continue;
+        }
+        final Class<?> type = f.getType();
+        final boolean nested = DistanceFunction.class.isAssignableFrom(type) || SimilarityFunction.class.isAssignableFrom(type);
+        if(!nested && !isParameterType(type.isArray() ? type.getComponentType() : type)) {
+          continue;
+        }
+        final Object v;
+        try {
+          f.setAccessible(true);
+          v = f.get(o);
+        }
+        catch(IllegalAccessException | RuntimeException e) {
+          continue; // Not accessible, e.g., because of module restrictions.
+        }
+        h = (h ^ f.getName().hashCode()) * 0x100000001b3L;
+        h = v == null ? (h ^ 0x9e3779b97f4a7c15L) * 0x100000001b3L //
+            : !nested ? hashValue(h, v) //
+                : depth < 4 ? fingerprint(h, v, depth + 1) //
+                    : (h ^ v.getClass().getName().hashCode()) * 0x100000001b3L;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Test whether a field type can hold a parameter value.
+   *
+   * @param type Field type (component type for arrays)
+   * @return {@code true} for simple types
+   */
+  private static boolean isParameterType(Class<?> type) {
+    // Not all numbers: e.g., atomic counters are runtime state.
+    return type.isPrimitive() || type.isEnum() || type == String.class || type == Class.class //
+        || type == Boolean.class || type == Character.class || type == Double.class || type == Float.class //
+        || type == Long.class || type == Integer.class || type == Short.class || type == Byte.class;
+  }
+
+  /**
+   * Hash a parameter value, using only hash codes that are stable across runs.
+   *
+   * @param h Hash so far
+   * @param v Value of a simple type, or an array of these
+   * @return Updated hash
+   */
+  private static long hashValue(long h, Object v) {
+    if(v.getClass().isArray()) {
+      final int len = Array.getLength(v);
+      h = (h ^ len) * 0x100000001b3L;
+      for(int i = 0; i < len; i++) {
+        final Object e = Array.get(v, i);
+        h = e == null ? (h ^ 0x9e3779b97f4a7c15L) * 0x100000001b3L : hashValue(h, e);
+      }
+      return h;
+    }
+    if(v instanceof Double || v instanceof Float) {
+      return (h ^ Double.doubleToLongBits(((Number) v).doubleValue())) * 0x100000001b3L;
+    }
+    if(v instanceof Number) {
+      return (h ^ ((Number) v).longValue()) * 0x100000001b3L;
+    }
+    if(v instanceof Enum) {
+      return (h ^ ((Enum<?>) v).name().hashCode()) * 0x100000001b3L;
+    }
+    if(v instanceof Class) {
+      return (h ^ ((Class<?>) v).getName().hashCode()) * 0x100000001b3L;
+    }
+    // Strings, booleans and characters have specified hash codes.
+    return (h ^ v.hashCode()) * 0x100000001b3L;
+  }
+
+  @Override
+  public String getLongName() {
+    return "Persistent kNN Preprocessor";
+  }
+
+  @Override
+  public String getShortName() {
+    return "persistent-knn";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * The parameterizable factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.uses PersistentKNNPreprocessor oneway - - «create»
+   *
+   * @param <O> The object type
+   */
+  public static class Factory<O> extends MaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * File to store the kNN graph in.
+     */
+    private File file;
+
+    /**
+     * Index factory.
+     *
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param file File to store the kNN graph in
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, File file) {
+      super(k, distanceFunction);
+      this.file = file;
+    }
+
+    @Override
+    public PersistentKNNPreprocessor<O> instantiate(Relation<O> relation) {
+      return new PersistentKNNPreprocessor<>(relation, distanceFunction, k, file);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends MaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Option ID for the kNN graph file.
+       */
+      public static final OptionID FILE_ID = new OptionID("materialize.file", "File to store the kNN graph in, and to load it from in later runs.");
+
+      /**
+       * File to store the kNN graph in.
+       */
+      private File file;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        final FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(k, distanceFunction, file);
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Test the blocked batch kNN search against a naive linear scan.
+ *
+ * @author Erich Schubert
+ */
+public class EuclideanBlockedBatchKNNTest {
+  @Test
+  public void testBatchKNN() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    checkBatchKNN(rel, ids, 1, 10, 100);
+    // Odd number of queries:
+    checkBatchKNN(rel, ids.slice(0, 101), 1, 10);
+  }
+
+  /**
+   * Odd number of candidates.
+   */
+  @Test
+  public void testOddSize() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "quality-measure-test.csv", 7);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    checkBatchKNN(rel, DBIDUtil.ensureArray(rel.getDBIDs()), 1, 3, 7);
+  }
+
+  /**
+   * Compare the blocked search to a naive linear scan.
+   *
+   * @param rel Data relation
+   * @param ids Query ids
+   * @param ks Values of k to test
+   */
+  private void checkBatchKNN(Relation<DoubleVector> rel, ArrayDBIDs ids, int... ks) {
+    PrimitiveDistanceQuery<DoubleVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    LinearScanEuclideanDistanceKNNQuery<DoubleVector> blocked = new LinearScanEuclideanDistanceKNNQuery<>(dq);
+    LinearScanPrimitiveDistanceKNNQuery<DoubleVector> naive = new LinearScanPrimitiveDistanceKNNQuery<>(dq);
+    for(int k : ks) {
+      List<? extends KNNList> res = blocked.getKNNForBulkDBIDs(ids, k);
+      assertEquals("Wrong number of results.", ids.size(), res.size());
+      int i = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+        KNNList exp = naive.getKNNForDBID(it, k), got = res.get(i);
+        assertEquals("kNN sizes do not agree.", exp.size(), got.size());
+        for(int j = 0; j < exp.size(); j++) {
+          assertTrue("kNN do not match.", DBIDUtil.equal(exp.get(j), got.get(j)));
+          assertEquals("kNN distances do not match.", exp.get(j).doubleValue(), got.get(j).doubleValue(), 0.);
+        }
+      }
+    }
+  }
+}
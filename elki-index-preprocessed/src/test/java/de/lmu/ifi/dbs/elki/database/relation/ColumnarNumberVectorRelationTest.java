@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the column store relation.
+ *
+ * @author Erich Schubert
+ */
+public class ColumnarNumberVectorRelationTest {
+  @Test
+  public void testColumnar() {
+    final String file = AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv";
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(file, 330);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addFlag(StaticArrayDatabase.Parameterizer.COLUMNAR_ID);
+    Database cdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(file, 330, params);
+
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<NumberVector> crel = cdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a column store.", crel instanceof ColumnarNumberVectorRelation);
+    assertEquals("Sizes do not agree.", rel.size(), crel.size());
+    for(DBIDIter it = rel.iterDBIDs(), it2 = crel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      NumberVector v1 = rel.get(it), v2 = crel.get(it2);
+      assertEquals("Dimensionality does not agree.", v1.getDimensionality(), v2.getDimensionality());
+      for(int d = 0; d < v1.getDimensionality(); d++) {
+        assertEquals("Values do not agree.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+
+    // The batch kNN search has a fast path for column stores.
+    PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    PrimitiveDistanceQuery<NumberVector> cdq = new PrimitiveDistanceQuery<>(crel, EuclideanDistanceFunction.STATIC);
+    LinearScanPrimitiveDistanceKNNQuery<NumberVector> naive = new LinearScanPrimitiveDistanceKNNQuery<>(dq);
+    LinearScanEuclideanDistanceKNNQuery<NumberVector> blocked = new LinearScanEuclideanDistanceKNNQuery<>(cdq);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs()), cids = DBIDUtil.ensureArray(crel.getDBIDs());
+    List<? extends KNNList> res = blocked.getKNNForBulkDBIDs(cids, 10);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList exp = naive.getKNNForDBID(it, 10), got = res.get(i);
+      assertEquals("kNN sizes do not agree.", exp.size(), got.size());
+      for(int j = 0; j < exp.size(); j++) {
+        assertEquals("kNN distances do not match.", exp.get(j).doubleValue(), got.get(j).doubleValue(), 0.);
+      }
+    }
+  }
+
+  @Test
+  public void testLabels() {
+    String[] labels = { "x", "y" };
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 2, labels), //
+        Arrays.asList(DoubleVector.wrap(new double[] { 1, 2 }), DoubleVector.wrap(new double[] { 3, 4 })));
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(bundle), null, true);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a column store.", rel instanceof ColumnarNumberVectorRelation);
+    VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) rel.getDataTypeInformation();
+    for(int d = 0; d < labels.length; d++) {
+      assertEquals("Column label lost.", labels[d], type.getLabel(d));
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Test the tiled matrix computation against a naive nested loop.
+ *
+ * @author Erich Schubert
+ */
+public class TriangleMatrixPrecomputerTest {
+  @Test
+  public void testDistanceMatrix() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    PrimitiveDistanceQuery<DoubleVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    DBIDRange ids = DBIDUtil.assertRange(rel.getDBIDs());
+    final int size = ids.size();
+    for(boolean diagonal : new boolean[] { false, true }) {
+      final double[] matrix = new double[size * size];
+      final AtomicIntegerArray written = new AtomicIntegerArray(size * size);
+      long sum1 = compute(ids, dq, diagonal, false, matrix, written);
+      verify(ids, dq, diagonal, matrix, written);
+      long sum2 = new TriangleMatrixPrecomputer(ids, diagonal, false).run(dq::distance, (x, y, values, len) -> {
+      }, "Test", null);
+      assertEquals("Checksum not deterministic.", sum1, sum2);
+      long sum3 = new TriangleMatrixPrecomputer(ids, diagonal, true).run(dq::distance, (x, y, values, len) -> {
+      }, "Test", null);
+      assertNotEquals("Checksum does not depend on precision.", sum1, sum3);
+    }
+  }
+
+  /**
+   * Test with enough rows to split the matrix into parallel tasks, and compare
+   * to the serial computation.
+   */
+  @Test
+  public void testParallel() {
+    Random r = new Random(0L);
+    double[][] data = new double[1100][2];
+    for(double[] row : data) {
+      row[0] = r.nextDouble();
+      row[1] = r.nextDouble();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    PrimitiveDistanceQuery<DoubleVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    DBIDRange ids = DBIDUtil.assertRange(rel.getDBIDs());
+    final int size = ids.size();
+    for(boolean diagonal : new boolean[] { false, true }) {
+      final double[] serial = new double[size * size], parallel = new double[size * size];
+      final AtomicIntegerArray swritten = new AtomicIntegerArray(size * size);
+      final AtomicIntegerArray pwritten = new AtomicIntegerArray(size * size);
+      long ssum = compute(ids, dq, diagonal, false, serial, swritten);
+      long psum = compute(ids, dq, diagonal, true, parallel, pwritten);
+      verify(ids, dq, diagonal, serial, swritten);
+      verify(ids, dq, diagonal, parallel, pwritten);
+      assertArrayEquals("Parallel values differ.", serial, parallel, 0.);
+      assertEquals("Checksum depends on the processing order.", ssum, psum);
+      // Automatic choice of parallelism:
+      long asum = new TriangleMatrixPrecomputer(ids, diagonal, false).run(dq::distance, (x, y, values, len) -> {
+      }, "Test", null);
+      assertEquals("Checksum depends on the processing order.", ssum, asum);
+    }
+  }
+
+  /**
+   * Compute the matrix, recording how often each entry was written.
+   *
+   * @param ids Object IDs
+   * @param dq Distance query
+   * @param diagonal Include the diagonal
+   * @param parallel Use parallel tasks
+   * @param matrix Output matrix, row-major
+   * @param written Write counters, row-major
+   * @return Checksum
+   */
+  private static long compute(DBIDRange ids, PrimitiveDistanceQuery<DoubleVector> dq, boolean diagonal, boolean parallel, double[] matrix, AtomicIntegerArray written) {
+    final int size = ids.size();
+    return new TriangleMatrixPrecomputer(ids, diagonal, false).run(dq::distance, (x, y, values, len) -> {
+      // No assertions here, as this may run in worker threads.
+      for(int i = 0, off = x * size + y; i < len; i++, off++) {
+        matrix[off] = values[i];
+        written.incrementAndGet(off);
+      }
+    }, "Test", null, parallel);
+  }
+
+  /**
+   * Verify that each entry of the triangle was written exactly once, with the
+   * correct value, and no other entry was written.
+   *
+   * @param ids Object IDs
+   * @param dq Distance query
+   * @param diagonal Include the diagonal
+   * @param matrix Output matrix, row-major
+   * @param written Write counters, row-major
+   */
+  private static void verify(DBIDRange ids, PrimitiveDistanceQuery<DoubleVector> dq, boolean diagonal, double[] matrix, AtomicIntegerArray written) {
+    final int size = ids.size();
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(; ix.valid(); ix.advance()) {
+      final int x = ix.getOffset();
+      for(iy.seek(0); iy.valid(); iy.advance()) {
+        final int y = iy.getOffset(), off = x * size + y;
+        if(y < x || (diagonal && y == x)) {
+          assertEquals("Entry not written exactly once.", 1, written.get(off));
+          assertEquals("Distance does not match.", dq.distance(ix, iy), matrix[off], 0.);
+        }
+        else {
+          assertEquals("Entry outside of the triangle written.", 0, written.get(off));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.NNDescent;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.ParallelNNDescent;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for the parallel NNDescent, including incremental updates.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelNNDescentTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // the size of objects inserted
+  int updatesize = 12;
+
+  int seed = 5;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testPreprocessor() {
+    UpdatableDatabase db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      ListParameterization params = new ListParameterization();
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, new ArrayList<>(), parser);
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, dbc);
+      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+    }
+    catch(IOException e) {
+      fail("Test data " + dataset + " not found.");
+      return;
+    }
+
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertEquals("Data set size doesn't match parameters.", shoulds, rel.size());
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    // get linear queries
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    // get preprocessed queries
+    ListParameterization config = new ListParameterization();
+    config.addParameter(ParallelNNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistanceFunction());
+    config.addParameter(ParallelNNDescent.Factory.K_ID, k);
+    config.addParameter(NNDescent.Factory.Parameterizer.SEED_ID, 0);
+    config.addParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.1);
+    config.addParameter(NNDescent.Factory.Parameterizer.RHO_ID, 0.5);
+    ParallelNNDescent.Factory<DoubleVector> preprocf = ClassGenericsUtil.parameterizeOrAbort(ParallelNNDescent.Factory.class, config);
+    ParallelNNDescent<DoubleVector> preproc = preprocf.instantiate(rel);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    // add as index
+    db.getHierarchy().add(rel, preproc);
+    assertFalse("Preprocessor knn query class incorrect.", preproc_knn_query instanceof LinearScanDistanceKNNQuery);
+
+    // test queries
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .99);
+    // also test partial queries
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k / 2, .99);
+
+    // insert new objects
+    List<DoubleVector> insertions = new ArrayList<>();
+    int dim = RelationUtil.dimensionality(rel);
+    Random random = new Random(seed);
+    for(int i = 0; i < updatesize; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, dim, random));
+    }
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    assertEquals("Data set size doesn't match parameters.", shoulds + updatesize, rel.size());
+
+    // test queries again, including the new objects
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .99);
+  }
+
+  /**
+   * Test with more objects than the parallel block size, for the initial
+   * construction as well as for a large and a single insertion.
+   */
+  @Test
+  public void testLarge() {
+    Random random = new Random(seed);
+    double[][] data = new double[3000][4];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = random.nextDouble();
+      }
+    }
+    UpdatableDatabase db = new HashmapDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    ListParameterization config = new ListParameterization();
+    config.addParameter(ParallelNNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistanceFunction());
+    config.addParameter(ParallelNNDescent.Factory.K_ID, k);
+    config.addParameter(NNDescent.Factory.Parameterizer.SEED_ID, 0);
+    config.addParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.01);
+    config.addParameter(NNDescent.Factory.Parameterizer.RHO_ID, 0.5);
+    ParallelNNDescent.Factory<DoubleVector> preprocf = ClassGenericsUtil.parameterizeOrAbort(ParallelNNDescent.Factory.class, config);
+    ParallelNNDescent<DoubleVector> preproc = preprocf.instantiate(rel);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    db.getHierarchy().add(rel, preproc);
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .95);
+
+    // a large insertion, integrated on the next query
+    List<DoubleVector> insertions = new ArrayList<>();
+    for(int i = 0; i < 2000; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, 4, random));
+    }
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    assertEquals("Data set size doesn't match parameters.", 5000, rel.size());
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .95);
+
+    // a single insertion
+    insertions.clear();
+    insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, 4, random));
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .95);
+
+    // insertions, integrated by the first of many concurrent queries
+    insertions.clear();
+    for(int i = 0; i < 100; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, 4, random));
+    }
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, KNNList.class);
+    KNNProcessor<DoubleVector> knnm = new KNNProcessor<>(k, preproc_knn_query);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    WriteDataStoreProcessor<KNNList> storek = new WriteDataStoreProcessor<>(knns);
+    knnm.connectKNNOutput(knnv);
+    storek.connectInput(knnv);
+    ParallelExecutor.run(ids, knnm, storek);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      KNNList par = knns.get(it), seq = preproc_knn_query.getKNNForDBID(it, k);
+      assertEquals("kNN sizes do not agree.", seq.size(), par.size());
+      assertEquals("kNN distances do not agree.", seq.getKNNDistance(), par.getKNNDistance(), 0.);
+    }
+    testKNNQueries(rel, lin_knn_query, preproc_knn_query, k, .95);
+  }
+
+  private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k, double minrecall) {
+    ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
+    List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
+    List<? extends KNNList> preproc_knn_ids = preproc_knn_query.getKNNForBulkDBIDs(sample, k);
+    int hits = 0, total = 0;
+    for(int i = 0; i < rep.size(); i++) {
+      KNNList lin_knn = lin_knn_ids.get(i);
+      KNNList pre_knn = preproc_knn_ids.get(i);
+      assertEquals("kNN sizes do not agree.", lin_knn.size(), pre_knn.size());
+      // Compare by distance, to be robust to ties.
+      for(int j = 0, l = 0; j < lin_knn.size(); j++) {
+        final double d = pre_knn.get(j).doubleValue();
+        while(l < lin_knn.size() && lin_knn.get(l).doubleValue() < d) {
+          ++l;
+        }
+        hits += (l < lin_knn.size() && lin_knn.get(l).doubleValue() == d) ? 1 : 0;
+      }
+      total += lin_knn.size();
+    }
+    assertTrue("Recall too low: " + hits + " of " + total, hits >= minrecall * total);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.PersistentKNNPreprocessor;
+
+/**
+ * Regression test for storing and reloading the kNN graph.
+ *
+ * @author Erich Schubert
+ */
+public class PersistentKNNPreprocessorTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testStoreAndLoad() throws IOException {
+    File file = File.createTempFile("elki-knn", ".knn");
+    try {
+      assertTrue(file.delete());
+      Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      PersistentKNNPreprocessor<DoubleVector> preproc = new PersistentKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, k, file);
+      preproc.initialize();
+      assertTrue("kNN graph was not written.", file.exists());
+      final long length = file.length();
+      testKNNQueries(rel, preproc, k);
+
+      // Load into a fresh database, with a smaller k.
+      Database db2 = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+      Relation<DoubleVector> rel2 = db2.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      PersistentKNNPreprocessor<DoubleVector> preproc2 = new PersistentKNNPreprocessor<>(rel2, EuclideanDistanceFunction.STATIC, k / 2, file);
+      preproc2.initialize();
+      // Recomputing with the smaller k would have rewritten a shorter file.
+      assertEquals("kNN graph was not reused.", length, file.length());
+      testKNNQueries(rel2, preproc2, k / 2);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testDistanceFingerprint() throws IOException {
+    // Equal parameters must give the same fingerprint, for different instances.
+    assertEquals(PersistentKNNPreprocessor.fingerprint(new LPNormDistanceFunction(3.)), PersistentKNNPreprocessor.fingerprint(new LPNormDistanceFunction(3.)));
+    assertNotEquals(PersistentKNNPreprocessor.fingerprint(new LPNormDistanceFunction(3.)), PersistentKNNPreprocessor.fingerprint(new LPNormDistanceFunction(4.)));
+    assertNotEquals(PersistentKNNPreprocessor.fingerprint(EuclideanDistanceFunction.STATIC), PersistentKNNPreprocessor.fingerprint(ManhattanDistanceFunction.STATIC));
+    // Runtime state must not affect the fingerprint.
+    CountingLPNormDistanceFunction counting = new CountingLPNormDistanceFunction(3.);
+    final long before = PersistentKNNPreprocessor.fingerprint(counting);
+    counting.counter.incrementAndGet();
+    assertEquals(before, PersistentKNNPreprocessor.fingerprint(counting));
+    assertEquals(before, PersistentKNNPreprocessor.fingerprint(new CountingLPNormDistanceFunction(3.)));
+    assertNotEquals(before, PersistentKNNPreprocessor.fingerprint(new CountingLPNormDistanceFunction(4.)));
+
+    File file = File.createTempFile("elki-knn", ".knn");
+    try {
+      assertTrue(file.delete());
+      Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      new PersistentKNNPreprocessor<>(rel, new LPNormDistanceFunction(3.), k, file).initialize();
+      final long length = file.length();
+      // A different parameter must not reuse the file, but rewrite it.
+      new PersistentKNNPreprocessor<>(rel, new LPNormDistanceFunction(4.), k / 2, file).initialize();
+      assertNotEquals("kNN graph was reused for different parameters.", length, file.length());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private void testKNNQueries(Relation<DoubleVector> rel, PersistentKNNPreprocessor<DoubleVector> preproc, int k) {
+    DistanceQuery<DoubleVector> distanceQuery = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    assertNotNull("Preprocessor did not provide a kNN query.", preproc_knn_query);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList lin_knn = lin_knn_query.getKNNForDBID(it, k);
+      KNNList pre_knn = preproc_knn_query.getKNNForDBID(it, k);
+      assertEquals("kNN sizes do not agree.", lin_knn.size(), pre_knn.size());
+      DoubleDBIDListIter lin = lin_knn.iter(), pre = pre_knn.iter();
+      for(; lin.valid() && pre.valid(); lin.advance(), pre.advance()) {
+        assertEquals("Neighbor distances do not agree.", lin.doubleValue(), pre.doubleValue(), 0.);
+      }
+    }
+  }
+
+  /**
+   * Distance function with runtime state.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingLPNormDistanceFunction extends LPNormDistanceFunction {
+    /**
+     * Counter, not a parameter.
+     */
+    final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param p Exponent
+     */
+    CountingLPNormDistanceFunction(double p) {
+      super(p);
+    }
+  }
+}
@@ -23,10 +23,13 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
 
 /**
  * Represents an entry in a directory node of a spatial index.
@@ -173,4 +176,63 @@ public class SpatialDirectoryEntry implements DirectoryEntry, SpatialEntry {
   public int hashCode() {
     return id;
   }
+
+  /**
+   * Fixed-size binary serializer: the child page id followed by the minimum
+   * and the maximum coordinates of the bounding box.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Serializer implements FixedSizeByteBufferSerializer<SpatialDirectoryEntry> {
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param dim Dimensionality
+     */
+    public Serializer(int dim) {
+      this.dim = dim;
+    }
+
+    @Override
+    public SpatialDirectoryEntry fromByteBuffer(ByteBuffer buffer) {
+      final int id = buffer.getInt();
+      double[] min = new double[dim], max = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        min[d] = buffer.getDouble();
+      }
+      for(int d = 0; d < dim; d++) {
+        max[d] = buffer.getDouble();
+      }
+      return new SpatialDirectoryEntry(id, new ModifiableHyperBoundingBox(min, max));
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, SpatialDirectoryEntry entry) {
+      assert entry.getDimensionality() == dim;
+      buffer.putInt(entry.id);
+      for(int d = 0; d < dim; d++) {
+        buffer.putDouble(entry.mbr.getMin(d));
+      }
+      for(int d = 0; d < dim; d++) {
+        buffer.putDouble(entry.mbr.getMax(d));
+      }
+    }
+
+    @Override
+    public int getByteSize(SpatialDirectoryEntry entry) {
+      return getFixedByteSize();
+    }
+
+    @Override
+    public int getFixedByteSize() {
+      return ByteArrayUtil.SIZE_INT + 2 * dim * ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
 }
@@ -23,11 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
 
 /**
  * Represents an entry in a leaf node of a spatial index. A SpatialLeafEntry
@@ -125,7 +128,7 @@ public class SpatialPointLeafEntry implements LeafEntry, SpatialEntry, NumberVec
    */
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-    id = DBIDUtil.importInteger(in.read());
+    id = DBIDUtil.importInteger(in.readInt());
     values = new double[in.readInt()];
     for(int d = 0; d < values.length; d++) {
       values[d] = in.readDouble();
@@ -158,4 +161,56 @@ public class SpatialPointLeafEntry implements LeafEntry, SpatialEntry, NumberVec
   public int hashCode() {
     return id.hashCode();
   }
+
+  /**
+   * Fixed-size binary serializer: the object id followed by the coordinates.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Serializer implements FixedSizeByteBufferSerializer<SpatialPointLeafEntry> {
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param dim Dimensionality
+     */
+    public Serializer(int dim) {
+      this.dim = dim;
+    }
+
+    @Override
+    public SpatialPointLeafEntry fromByteBuffer(ByteBuffer buffer) {
+      DBID id = DBIDUtil.importInteger(buffer.getInt());
+      double[] values = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        values[d] = buffer.getDouble();
+      }
+      return new SpatialPointLeafEntry(id, values);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, SpatialPointLeafEntry entry) {
+      assert entry.values.length == dim;
+      buffer.putInt(DBIDUtil.asInteger(entry.id));
+      for(double v : entry.values) {
+        buffer.putDouble(v);
+      }
+    }
+
+    @Override
+    public int getByteSize(SpatialPointLeafEntry entry) {
+      return getFixedByteSize();
+    }
+
+    @Override
+    public int getFixedByteSize() {
+      return ByteArrayUtil.SIZE_INT + dim * ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
 }
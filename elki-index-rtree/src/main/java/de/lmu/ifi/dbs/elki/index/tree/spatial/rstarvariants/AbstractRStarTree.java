@@ -24,8 +24,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
@@ -45,6 +47,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapte
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -72,6 +76,16 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    */
   protected static final boolean EXTRA_INTEGRITY_CHECKS = false;
 
+  /**
+   * Minimum number of entries to build bulk-loaded nodes in parallel.
+   */
+  private static final int PARALLEL_BULK_THRESHOLD = 1 << 14;
+
+  /**
+   * Number of bulk-loaded nodes to process in a single task.
+   */
+  private static final int BULK_NODE_BLOCK = 64;
+
   /**
    * The height of this R*-Tree.
    */
@@ -253,40 +267,49 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
 
   @Override
   protected void initializeCapacities(E exampleLeaf) {
-    /* Simulate the creation of a leaf page to get the page capacity */
-    try {
-      int cap = 0;
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(baos);
-      SpatialPointLeafEntry sl = new SpatialPointLeafEntry(DBIDUtil.importInteger(0), new double[exampleLeaf.getDimensionality()]);
-      while(baos.size() <= getPageSize()) {
-        sl.writeExternal(oos);
-        oos.flush();
-        cap++;
-      }
-      // the last one caused the page to overflow.
-      leafCapacity = cap - 1;
-    }
-    catch(IOException e) {
-      throw new AbortException("Error determining page sizes.", e);
-    }
-
-    /* Simulate the creation of a directory page to get the capacity */
-    try {
-      int cap = 0;
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(baos);
-      ModifiableHyperBoundingBox hb = new ModifiableHyperBoundingBox(new double[exampleLeaf.getDimensionality()], new double[exampleLeaf.getDimensionality()]);
-      SpatialDirectoryEntry sl = new SpatialDirectoryEntry(0, hb);
-      while(baos.size() <= getPageSize()) {
-        sl.writeExternal(oos);
-        oos.flush();
-        cap++;
-      }
-      dirCapacity = cap - 1;
-    }
-    catch(IOException e) {
-      throw new AbortException("Error determining page sizes.", e);
+    if(createNewLeafNode() instanceof ByteBufferPage) {
+      /* Fixed-size binary layout, compute the capacities directly */
+      final int dim = exampleLeaf.getDimensionality();
+      final int avail = getPageSize() - ByteBufferPage.PAGE_OVERHEAD - AbstractRStarTreeNode.HEADER_SIZE;
+      leafCapacity = avail / new SpatialPointLeafEntry.Serializer(dim).getFixedByteSize();
+      dirCapacity = avail / new SpatialDirectoryEntry.Serializer(dim).getFixedByteSize();
+    }
+    else {
+      /* Simulate the creation of a leaf page to get the page capacity */
+      try {
+        int cap = 0;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        SpatialPointLeafEntry sl = new SpatialPointLeafEntry(DBIDUtil.importInteger(0), new double[exampleLeaf.getDimensionality()]);
+        while(baos.size() <= getPageSize()) {
+          sl.writeExternal(oos);
+          oos.flush();
+          cap++;
+        }
+        // the last one caused the page to overflow.
+        leafCapacity = cap - 1;
+      }
+      catch(IOException e) {
+        throw new AbortException("Error determining page sizes.", e);
+      }
+
+      /* Simulate the creation of a directory page to get the capacity */
+      try {
+        int cap = 0;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        ModifiableHyperBoundingBox hb = new ModifiableHyperBoundingBox(new double[exampleLeaf.getDimensionality()], new double[exampleLeaf.getDimensionality()]);
+        SpatialDirectoryEntry sl = new SpatialDirectoryEntry(0, hb);
+        while(baos.size() <= getPageSize()) {
+          sl.writeExternal(oos);
+          oos.flush();
+          cap++;
+        }
+        dirCapacity = cap - 1;
+      }
+      catch(IOException e) {
+        throw new AbortException("Error determining page sizes.", e);
+      }
     }
 
     if(dirCapacity <= 2) {
@@ -335,34 +358,163 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @return the array of leaf nodes containing the objects
    */
   protected List<E> createBulkLeafNodes(List<E> objects) {
-    int minEntries = leafMinimum;
-    int maxEntries = leafCapacity;
+    List<List<E>> partitions = settings.bulkSplitter.partition(objects, leafMinimum, leafCapacity);
+    List<E> result = createBulkNodes(partitions, objects.size(), true);
 
-    ArrayList<E> result = new ArrayList<>();
-    List<List<E>> partitions = settings.bulkSplitter.partition(objects, minEntries, maxEntries);
+    if(getLogger().isDebugging()) {
+      getLogger().debugFine("numDataPages = " + result.size());
+    }
+    return result;
+  }
 
-    for(List<E> partition : partitions) {
-      // create leaf node
-      N leafNode = createNewLeafNode();
+  /**
+   * Creates the nodes for bulk load, and writes them to the page file.
+   *
+   * For large inputs, the nodes are filled in parallel. The pages are always
+   * written sequentially in partition order, so the page file layout is the
+   * same as with a serial bulk load.
+   *
+   * @param partitions Partitions of the entries
+   * @param size Total number of entries
+   * @param leaf Flag to create leaf nodes, otherwise directory nodes
+   * @return Directory entries pointing to the new nodes
+   */
+  protected List<E> createBulkNodes(List<List<E>> partitions, int size, boolean leaf) {
+    final int num = partitions.size();
+    ArrayList<N> nodes = new ArrayList<>(Collections.<N> nCopies(num, null));
+    ArrayList<E> result = new ArrayList<>(Collections.<E> nCopies(num, null));
+    final boolean parallel = num > 1 && size >= PARALLEL_BULK_THRESHOLD && ParallelCore.getCore().getParallelism() > 1;
+    if(parallel) {
+      ParallelCore.getCore().invoke(new BulkNodeTask(partitions, nodes, null, 0, num, leaf));
+    }
+    else {
+      fillBulkNodes(partitions, nodes, 0, num, leaf);
+    }
+    // Page ids are assigned here, and must be sequential:
+    for(N node : nodes) {
+      writeNode(node);
+      if(getLogger().isDebuggingFiner()) {
+        getLogger().debugFiner((leaf ? "Created leaf page " : "Directory page no: ") + node.getPageID());
+      }
+    }
+    if(parallel) {
+      ParallelCore.getCore().invoke(new BulkNodeTask(partitions, nodes, result, 0, num, leaf));
+    }
+    else {
+      createBulkEntries(nodes, result, 0, num);
+    }
+    return result;
+  }
 
-      // insert data
-      for(E o : partition) {
-        leafNode.addLeafEntry(o);
+  /**
+   * Fill a range of bulk-loaded nodes.
+   *
+   * @param partitions Partitions
+   * @param nodes Output nodes
+   * @param start First partition
+   * @param end Last partition (exclusive)
+   * @param leaf Flag to create leaf nodes, otherwise directory nodes
+   */
+  private void fillBulkNodes(List<List<E>> partitions, List<N> nodes, int start, int end, boolean leaf) {
+    for(int i = start; i < end; i++) {
+      N node = leaf ? createNewLeafNode() : createNewDirectoryNode();
+      for(E o : partitions.get(i)) {
+        if(leaf) {
+          node.addLeafEntry(o);
+        }
+        else {
+          node.addDirectoryEntry(o);
+        }
       }
-      // write to file
-      writeNode(leafNode);
+      nodes.set(i, node);
+    }
+  }
 
-      result.add(createNewDirectoryEntry(leafNode));
+  /**
+   * Create the directory entries for a range of bulk-loaded nodes.
+   *
+   * @param nodes Nodes, already written
+   * @param result Output entries
+   * @param start First node
+   * @param end Last node (exclusive)
+   */
+  private void createBulkEntries(List<N> nodes, List<E> result, int start, int end) {
+    for(int i = start; i < end; i++) {
+      result.set(i, createNewDirectoryEntry(nodes.get(i)));
+    }
+  }
 
-      if(getLogger().isDebugging()) {
-        getLogger().debugFine("Created leaf page " + leafNode.getPageID());
-      }
+  /**
+   * Parallel task to fill bulk-loaded nodes, or to compute their directory
+   * entries (which requires the page ids to be assigned).
+   *
+   * @author Erich Schubert
+   */
+  private class BulkNodeTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Partitions.
+     */
+    private final List<List<E>> partitions;
+
+    /**
+     * Nodes.
+     */
+    private final List<N> nodes;
+
+    /**
+     * Output entries, {@code null} to fill the nodes instead.
+     */
+    private final List<E> result;
+
+    /**
+     * Range to process.
+     */
+    private final int start, end;
+
+    /**
+     * Flag to create leaf nodes.
+     */
+    private final boolean leaf;
+
+    /**
+     * Constructor.
+     *
+     * @param partitions Partitions
+     * @param nodes Nodes
+     * @param result Output entries, {@code null} to fill the nodes
+     * @param start First partition
+     * @param end Last partition (exclusive)
+     * @param leaf Flag to create leaf nodes
+     */
+    BulkNodeTask(List<List<E>> partitions, List<N> nodes, List<E> result, int start, int end, boolean leaf) {
+      this.partitions = partitions;
+      this.nodes = nodes;
+      this.result = result;
+      this.start = start;
+      this.end = end;
+      this.leaf = leaf;
     }
 
-    if(getLogger().isDebugging()) {
-      getLogger().debugFine("numDataPages = " + result.size());
+    @Override
+    protected void compute() {
+      if(end - start <= BULK_NODE_BLOCK) {
+        if(result == null) {
+          fillBulkNodes(partitions, nodes, start, end, leaf);
+        }
+        else {
+          createBulkEntries(nodes, result, start, end);
+        }
+        return;
+      }
+      final int mid = (start + end) >>> 1;
+      invokeAll(new BulkNodeTask(partitions, nodes, result, start, mid, leaf), //
+          new BulkNodeTask(partitions, nodes, result, mid, end, leaf));
     }
-    return result;
   }
 
   /**
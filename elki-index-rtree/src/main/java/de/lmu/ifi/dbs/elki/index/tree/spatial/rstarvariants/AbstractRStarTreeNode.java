@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
@@ -46,6 +47,11 @@ import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
  * @param <E> Entry type
  */
 public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E>, E extends SpatialEntry> extends AbstractNode<E> implements SpatialNode<N, E> {
+  /**
+   * Size of the binary header: node header and dimensionality.
+   */
+  public static final int HEADER_SIZE = NODE_HEADER_SIZE + 4;
+
   /**
    * Empty constructor for Externalizable interface.
    */
@@ -260,4 +266,55 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Write the node in the compact binary format: the node header, the
+   * dimensionality, and the fixed-size entries.
+   * <p>
+   * This requires entries of type {@link SpatialPointLeafEntry} respectively
+   * {@link SpatialDirectoryEntry}.
+   *
+   * @param buffer Buffer to write to
+   * @throws IOException on IO errors
+   */
+  public void writeToByteBuffer(ByteBuffer buffer) throws IOException {
+    writeNodeHeader(buffer);
+    final int dim = numEntries > 0 ? getEntry(0).getDimensionality() : 0;
+    buffer.putInt(dim);
+    if(isLeaf()) {
+      SpatialPointLeafEntry.Serializer ser = new SpatialPointLeafEntry.Serializer(dim);
+      for(int i = 0; i < numEntries; i++) {
+        ser.toByteBuffer(buffer, (SpatialPointLeafEntry) entries[i]);
+      }
+    }
+    else {
+      SpatialDirectoryEntry.Serializer ser = new SpatialDirectoryEntry.Serializer(dim);
+      for(int i = 0; i < numEntries; i++) {
+        ser.toByteBuffer(buffer, (SpatialDirectoryEntry) entries[i]);
+      }
+    }
+  }
+
+  /**
+   * Read the node in the compact binary format.
+   *
+   * @param buffer Buffer to read from
+   * @throws IOException on IO errors
+   */
+  public void readFromByteBuffer(ByteBuffer buffer) throws IOException {
+    readNodeHeader(buffer);
+    final int dim = buffer.getInt();
+    if(isLeaf()) {
+      SpatialPointLeafEntry.Serializer ser = new SpatialPointLeafEntry.Serializer(dim);
+      for(int i = 0; i < numEntries; i++) {
+        entries[i] = ser.fromByteBuffer(buffer);
+      }
+    }
+    else {
+      SpatialDirectoryEntry.Serializer ser = new SpatialDirectoryEntry.Serializer(dim);
+      for(int i = 0; i < numEntries; i++) {
+        entries[i] = ser.fromByteBuffer(buffer);
+      }
+    }
+  }
+}
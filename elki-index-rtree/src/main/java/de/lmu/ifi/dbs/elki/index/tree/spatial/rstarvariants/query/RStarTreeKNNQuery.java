@@ -20,21 +20,20 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
-import java.util.*;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
-import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
-import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -53,7 +52,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * 
  * @apiviz.uses AbstractRStarTree
  * @apiviz.uses SpatialPrimitiveDistanceFunction
- * @apiviz.uses DoubleDistanceSearchCandidate
+ * @apiviz.uses HilbertSpatialSorter
  */
 @Reference(authors = "G. R. Hjaltason, H. Samet", //
 title = "Ranking in spatial databases", //
@@ -75,6 +74,11 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
    */
   protected Relation<? extends O> relation;
 
+  /**
+   * Number of spatially close queries to process in one tree traversal.
+   */
+  protected static final int BATCH_SIZE = 32;
+
   /**
    * Constructor.
    * 
@@ -155,137 +159,201 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
   }
 
   /**
-   * Performs a batch knn query.
+   * Process a batch of spatially close queries with a single best-first tree
+   * traversal. Directory pages are ranked and pruned by their minimum distance
+   * to the bounding box of the batch, compared to the largest kNN distance of
+   * the batch; leaf pages are additionally pruned for each query.
    * 
-   * @param node the node for which the query should be performed
-   * @param knnLists a map containing the knn lists for each query objects
+   * @param batch Queries, in spatial order
+   * @param heaps Output heaps, indexed by the query offset
+   * @param k Number of neighbors
    */
-  protected void batchNN(AbstractRStarTreeNode<?, ?> node, Map<DBID, KNNHeap> knnLists) {
-    if(node.isLeaf()) {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialEntry p = node.getEntry(i);
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final DBID q = ent.getKey();
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
+  protected void batchKNN(List<QueryRef<O>> batch, KNNHeap[] heaps, int k) {
+    final int bsize = batch.size();
+    final KNNHeap[] bheaps = new KNNHeap[bsize];
+    final double[] kdists = new double[bsize];
+    final ModifiableHyperBoundingBox mbr = new ModifiableHyperBoundingBox(batch.get(0));
+    for(int j = 0; j < bsize; j++) {
+      final QueryRef<O> q = batch.get(j);
+      heaps[q.offset] = bheaps[j] = DBIDUtil.newHeap(k);
+      kdists[j] = Double.POSITIVE_INFINITY;
+      mbr.extend(q);
+    }
+    final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(21);
+    // Directory entries referenced by the queue:
+    final ArrayList<SpatialDirectoryEntry> pending = new ArrayList<>();
+
+    // expand root
+    double maxDist = expandBatch(batch, bheaps, kdists, mbr, pq, pending, Double.POSITIVE_INFINITY, tree.getRootID(), null);
 
-          DBID pid = ((LeafEntry) p).getDBID();
-          // FIXME: objects are NOT accessible by DBID in a plain R-tree
-          // context!
-          double dist_pq = distanceFunction.distance(relation.get(pid), relation.get(q));
+    // search in tree
+    while(!pq.isEmpty()) {
+      if(pq.peekKey() > maxDist) {
+        break;
+      }
+      SpatialDirectoryEntry entry = pending.get(pq.peekValue());
+      pq.poll(); // Remove from heap.
+      maxDist = expandBatch(batch, bheaps, kdists, mbr, pq, pending, maxDist, entry.getPageID(), entry);
+    }
+  }
+
+  /**
+   * Expand a node for a batch of queries.
+   * 
+   * @param batch Queries
+   * @param heaps kNN heaps of the batch
+   * @param kdists Current kNN distances of the batch
+   * @param mbr Bounding box of the batch
+   * @param pq Priority queue
+   * @param pending Directory entries referenced by the queue
+   * @param maxDist Largest kNN distance of the batch
+   * @param nodeID Node to expand
+   * @param nodembr Bounding box of the node, {@code null} for the root
+   * @return New largest kNN distance of the batch
+   */
+  private double expandBatch(List<QueryRef<O>> batch, KNNHeap[] heaps, double[] kdists, SpatialComparable mbr, DoubleIntegerMinHeap pq, List<SpatialDirectoryEntry> pending, double maxDist, int nodeID, SpatialComparable nodembr) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    // data node
+    if(node.isLeaf()) {
+      boolean changed = false;
+      for(int j = 0; j < kdists.length; j++) {
+        final O obj = batch.get(j).obj;
+        double kdist = kdists[j];
+        // Skip queries that cannot have neighbors on this page:
+        if(nodembr != null) {
+          tree.statistics.countDistanceCalculation();
+          if(minDist(nodembr, obj) > kdist) {
+            continue;
+          }
+        }
+        for(int i = 0; i < node.getNumEntries(); i++) {
+          SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+          double distance = minDist(entry, obj);
           tree.statistics.countDistanceCalculation();
-          if(dist_pq <= knn_q_maxDist) {
-            knns_q.insert(dist_pq, pid);
+          if(distance <= kdist) {
+            kdist = heaps[j].insert(distance, entry.getDBID());
           }
         }
+        if(kdist < kdists[j]) {
+          kdists[j] = kdist;
+          changed = true;
+        }
+      }
+      if(changed) {
+        maxDist = kdists[0];
+        for(int j = 1; j < kdists.length; j++) {
+          maxDist = Math.max(maxDist, kdists[j]);
+        }
       }
     }
+    // directory node
     else {
-      ModifiableDBIDs ids = DBIDUtil.newArray(knnLists.size());
-      for(DBID id : knnLists.keySet()) {
-        ids.add(id);
-      }
-      List<DoubleDistanceEntry> entries = getSortedEntries(node, ids);
-      for(DoubleDistanceEntry distEntry : entries) {
-        double minDist = distEntry.distance;
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
-
-          if(minDist <= knn_q_maxDist) {
-            SpatialEntry entry = distEntry.entry;
-            AbstractRStarTreeNode<?, ?> child = tree.getNode(((DirectoryEntry) entry).getPageID());
-            batchNN(child, knnLists);
-            break;
-          }
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+        double distance = minDist(entry, mbr);
+        tree.statistics.countDistanceCalculation();
+        if(distance <= maxDist) {
+          pq.add(distance, pending.size());
+          pending.add(entry);
         }
       }
     }
+    return maxDist;
   }
 
   /**
-   * Sorts the entries of the specified node according to their minimum distance
-   * to the specified objects.
+   * Minimum distance of two spatial objects, in the scale used by the heaps.
    * 
-   * @param node the node
-   * @param ids the id of the objects
-   * @return a list of the sorted entries
+   * @param a First object
+   * @param b Second object
+   * @return Minimum distance
    */
-  protected List<DoubleDistanceEntry> getSortedEntries(AbstractRStarTreeNode<?, ?> node, DBIDs ids) {
-    List<DoubleDistanceEntry> result = new ArrayList<>();
+  protected double minDist(SpatialComparable a, SpatialComparable b) {
+    return distanceFunction.minDist(a, b);
+  }
 
-    for(int i = 0; i < node.getNumEntries(); i++) {
-      SpatialEntry entry = node.getEntry(i);
-      double minMinDist = Double.MAX_VALUE;
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        double minDist = distanceFunction.minDist(entry, relation.get(iter));
-        tree.statistics.countDistanceCalculation();
-        minMinDist = Math.min(minDist, minMinDist);
-      }
-      result.add(new DoubleDistanceEntry(entry, minMinDist));
+  /**
+   * Convert a heap to the final kNN list.
+   * 
+   * @param heap Heap
+   * @return kNN list
+   */
+  protected KNNList toKNNList(KNNHeap heap) {
+    return heap.toKNNList();
+  }
+
+  @Override
+  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one enumeration has to be requested!");
+    }
+    final int size = ids.size();
+    List<QueryRef<O>> queries = new ArrayList<>(size);
+    int off = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off++) {
+      queries.add(new QueryRef<O>(relation.get(iter), off));
+    }
+    // Order queries along a Hilbert curve, so that batches are compact.
+    if(size > BATCH_SIZE) {
+      HilbertSpatialSorter.STATIC.sort(queries);
+    }
+    final KNNHeap[] heaps = new KNNHeap[size];
+    for(int start = 0; start < size; start += BATCH_SIZE) {
+      batchKNN(queries.subList(start, Math.min(start + BATCH_SIZE, size)), heaps, k);
     }
 
-    Collections.sort(result);
+    List<KNNList> result = new ArrayList<>(size);
+    for(KNNHeap heap : heaps) {
+      tree.statistics.countKNNQuery();
+      result.add(toKNNList(heap));
+    }
     return result;
   }
 
   /**
-   * Optimized double distance entry implementation.
+   * Query object, with its offset in the query list.
    * 
    * @author Erich Schubert
    * 
    * @apiviz.exclude
+   *
+   * @param <O> Object type
    */
-  static class DoubleDistanceEntry implements Comparable<DoubleDistanceEntry> {
+  protected static class QueryRef<O extends SpatialComparable> implements SpatialComparable {
     /**
-     * Referenced entry
+     * Query object.
      */
-    SpatialEntry entry;
+    final O obj;
 
     /**
-     * Distance value
+     * Offset in the query list.
      */
-    double distance;
+    final int offset;
 
     /**
      * Constructor.
      * 
-     * @param entry Entry
-     * @param distance Distance
+     * @param obj Query object
+     * @param offset Offset in the query list
      */
-    public DoubleDistanceEntry(SpatialEntry entry, double distance) {
-      this.entry = entry;
-      this.distance = distance;
+    QueryRef(O obj, int offset) {
+      this.obj = obj;
+      this.offset = offset;
     }
 
     @Override
-    public int compareTo(DoubleDistanceEntry o) {
-      return Double.compare(this.distance, o.distance);
-    }
-  }
-
-  @Override
-  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
-    if(k < 1) {
-      throw new IllegalArgumentException("At least one enumeration has to be requested!");
+    public int getDimensionality() {
+      return obj.getDimensionality();
     }
 
-    // While this works, it seems to be slow at least for large sets!
-    // TODO: use a DataStore instead of a map.
-    final Map<DBID, KNNHeap> knnLists = new HashMap<>(ids.size());
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      knnLists.put(id, DBIDUtil.newHeap(k));
+    @Override
+    public double getMin(int dimension) {
+      return obj.getMin(dimension);
     }
 
-    batchNN(tree.getRoot(), knnLists);
-
-    List<KNNList> result = new ArrayList<>();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      tree.statistics.countKNNQuery();
-      result.add(knnLists.get(id).toKNNList());
+    @Override
+    public double getMax(int dimension) {
+      return obj.getMax(dimension);
     }
-    return result;
   }
-}
\ No newline at end of file
+}
@@ -22,14 +22,18 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in an R*-Tree.
+ * <p>
+ * Nodes are stored in the compact binary format of
+ * {@link AbstractRStarTreeNode#writeToByteBuffer}.
  * 
  * @author Elke Achtert
  * @since 0.2
  */
-public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> {
+public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> implements ByteBufferPage {
   private static final long serialVersionUID = 1;
 
   /**
@@ -20,13 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import net.jafama.FastMath;
 
@@ -46,35 +44,14 @@ import net.jafama.FastMath;
  * @author Erich Schubert
  * @since 0.5.0
  */
-public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
+public class AdaptiveSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
   /**
    * Static instance.
    */
   public static final AdaptiveSortTileRecursiveBulkSplit STATIC = new AdaptiveSortTileRecursiveBulkSplit();
 
   @Override
-  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
-    final int dims = spatialObjects.get(0).getDimensionality();
-    final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
-    List<List<T>> ret = new ArrayList<>(p);
-    strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
-    return ret;
-  }
-
-  /**
-   * Recursively partition.
-   * 
-   * @param objs Object list
-   * @param start Subinterval start
-   * @param end Subinterval end
-   * @param depth Iteration depth (must be less than dimensionality!)
-   * @param dims Total number of dimensions
-   * @param maxEntries Maximum page size
-   * @param c Comparison helper
-   * @param ret Output list
-   * @param <T> data type
-   */
-  protected <T extends SpatialComparable> void strPartition(List<T> objs, int start, int end, int depth, int dims, int maxEntries, SpatialSingleMeanComparator c, List<List<T>> ret) {
+  protected <T extends SpatialComparable> int chooseSlabs(List<T> objs, int start, int end, int depth, int dims, int maxEntries, SpatialSingleMeanComparator c) {
     final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
 
     // Compute min and max:
@@ -108,31 +85,12 @@ public class AdaptiveSortTileRecursiveBulkSplit extends AbstractBulkSplit {
     for (int d = depth; d < exts.length; d++) {
       extsum += exts[d];
     }
+    c.setDimension(sdim);
     // Chose the number of partitions:
-    final int s;
     if (maxex > 0. && depth + 1 < dims) {
-      s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)) * (dims - depth) * maxex / extsum);
-    } else {
-      s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
-    }
-
-    final double len = end - start; // double intentional!
-    for (int i = 0; i < s; i++) {
-      // We don't completely sort, but only ensure the quantile is invariant.
-      int s2 = start + (int) ((i * len) / s);
-      int e2 = start + (int) (((i + 1) * len) / s);
-      // LoggingUtil.warning("STR " + dim + " s2:" + s2 + " e2:" + e2);
-      if (e2 < end) {
-        c.setDimension(sdim);
-        QuickSelect.quickSelect(objs, c, s2, end, e2);
-      }
-      if (depth + 1 == dims) {
-        ret.add(objs.subList(s2, e2));
-      } else {
-        // Descend
-        strPartition(objs, s2, e2, depth + 1, dims, maxEntries, c, ret);
-      }
+      return (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)) * (dims - depth) * maxex / extsum);
     }
+    return (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
   }
 
   /**
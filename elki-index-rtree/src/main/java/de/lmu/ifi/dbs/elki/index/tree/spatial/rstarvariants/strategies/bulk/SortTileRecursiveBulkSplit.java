@@ -22,9 +22,12 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -42,6 +45,11 @@ import net.jafama.FastMath;
  * In: Proc. 13th International Conference on Data Engineering, 1997
  * </p>
  * 
+ * Large inputs are partitioned in parallel: the slab boundaries are selected
+ * by divide-and-conquer, and the slabs are then partitioned independently.
+ * The resulting partitions are returned in the same order as in the serial
+ * version.
+ * 
  * @author Erich Schubert
  * @since 0.5.0
  */
@@ -53,12 +61,22 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
    */
   public static final SortTileRecursiveBulkSplit STATIC = new SortTileRecursiveBulkSplit();
 
+  /**
+   * Minimum number of objects to partition in a separate task.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 14;
+
   @Override
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
     final int dims = spatialObjects.get(0).getDimensionality();
-    final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
+    final int size = spatialObjects.size();
+    ParallelCore core = ParallelCore.getCore();
+    if(size >= PARALLEL_THRESHOLD && core.getParallelism() > 1) {
+      return core.invoke(new PartitionTask<>(this, spatialObjects, 0, size, 0, dims, maxEntries));
+    }
+    final int p = (int) FastMath.ceil(size / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
-    strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
+    strPartition(spatialObjects, 0, size, 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
     return ret;
   }
 
@@ -76,28 +94,228 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
    * @param <T> data type
    */
   protected <T extends SpatialComparable> void strPartition(List<T> objs, int start, int end, int depth, int dims, int maxEntries, SpatialSingleMeanComparator c, List<List<T>> ret) {
-    final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
-    final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+    final int s = chooseSlabs(objs, start, end, depth, dims, maxEntries, c);
+    selectSlabs(objs, c, start, end, s, 0, s);
 
     final double len = end - start; // double intentional!
-    for (int i = 0; i < s; i++) {
-      // We don't completely sort, but only ensure the quantile is invariant.
+    for(int i = 0; i < s; i++) {
       int s2 = start + (int) ((i * len) / s);
       int e2 = start + (int) (((i + 1) * len) / s);
-      // LoggingUtil.warning("STR " + dim + " s2:" + s2 + " e2:" + e2);
-      if (e2 < end) {
-        c.setDimension(depth);
-        QuickSelect.quickSelect(objs, c, s2, end, e2);
-      }
-      if (depth + 1 == dims) {
+      if(depth + 1 == dims) {
         ret.add(objs.subList(s2, e2));
-      } else {
+      }
+      else {
         // Descend
         strPartition(objs, s2, e2, depth + 1, dims, maxEntries, c, ret);
       }
     }
   }
 
+  /**
+   * Choose the number of slabs for the current recursion level, and set the
+   * dimension to split on in the comparator.
+   * 
+   * @param objs Object list
+   * @param start Subinterval start
+   * @param end Subinterval end
+   * @param depth Iteration depth (must be less than dimensionality!)
+   * @param dims Total number of dimensions
+   * @param maxEntries Maximum page size
+   * @param c Comparison helper, to be configured
+   * @param <T> data type
+   * @return Number of slabs
+   */
+  protected <T extends SpatialComparable> int chooseSlabs(List<T> objs, int start, int end, int depth, int dims, int maxEntries, SpatialSingleMeanComparator c) {
+    final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+    c.setDimension(depth);
+    return (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+  }
+
+  /**
+   * Move the objects into their slabs, by recursively selecting the middle
+   * slab boundary. This needs O(n log s) instead of O(n s) comparisons.
+   * 
+   * We don't completely sort, but only ensure the quantiles are invariant.
+   * 
+   * @param objs Object list
+   * @param c Comparator
+   * @param start Subinterval start
+   * @param end Subinterval end
+   * @param s Number of slabs
+   * @param first First slab to process
+   * @param last Last slab to process (exclusive)
+   * @param <T> data type
+   */
+  protected static <T extends SpatialComparable> void selectSlabs(List<T> objs, SpatialSingleMeanComparator c, int start, int end, int s, int first, int last) {
+    final double len = end - start; // double intentional!
+    while(last - first > 1) {
+      final int mid = (first + last) >>> 1;
+      final int from = start + (int) ((first * len) / s);
+      final int to = start + (int) ((last * len) / s);
+      QuickSelect.quickSelect(objs, c, from, to, start + (int) ((mid * len) / s));
+      selectSlabs(objs, c, start, end, s, first, mid);
+      first = mid;
+    }
+  }
+
+  /**
+   * Partition a subinterval in parallel, processing the slabs concurrently.
+   * 
+   * @author Erich Schubert
+   *
+   * @param <T> data type
+   */
+  private static class PartitionTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Split strategy.
+     */
+    private final SortTileRecursiveBulkSplit split;
+
+    /**
+     * Object list.
+     */
+    private final List<T> objs;
+
+    /**
+     * Subinterval.
+     */
+    private final int start, end;
+
+    /**
+     * Iteration depth, total dimensions, and page capacity.
+     */
+    private final int depth, dims, maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param split Split strategy
+     * @param objs Object list
+     * @param start Subinterval start
+     * @param end Subinterval end
+     * @param depth Iteration depth
+     * @param dims Total number of dimensions
+     * @param maxEntries Maximum page size
+     */
+    PartitionTask(SortTileRecursiveBulkSplit split, List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      this.split = split;
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      // The comparator is stateful, so every task uses its own.
+      SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(0);
+      List<List<T>> ret = new ArrayList<>((int) FastMath.ceil((end - start) / (double) maxEntries));
+      if(end - start < PARALLEL_THRESHOLD) {
+        split.strPartition(objs, start, end, depth, dims, maxEntries, c, ret);
+        return ret;
+      }
+      final int s = split.chooseSlabs(objs, start, end, depth, dims, maxEntries, c);
+      new SelectTask<>(objs, c, start, end, s, 0, s).invoke();
+      final double len = end - start; // double intentional!
+      if(depth + 1 == dims) {
+        for(int i = 0; i < s; i++) {
+          ret.add(objs.subList(start + (int) ((i * len) / s), start + (int) (((i + 1) * len) / s)));
+        }
+        return ret;
+      }
+      List<PartitionTask<T>> tasks = new ArrayList<>(s);
+      for(int i = 0; i < s; i++) {
+        tasks.add(new PartitionTask<>(split, objs, start + (int) ((i * len) / s), start + (int) (((i + 1) * len) / s), depth + 1, dims, maxEntries));
+      }
+      invokeAll(tasks);
+      // Concatenate in slab order, for a deterministic page order.
+      for(PartitionTask<T> task : tasks) {
+        ret.addAll(task.join());
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Select the slab boundaries in parallel.
+   * 
+   * @author Erich Schubert
+   *
+   * @param <T> data type
+   */
+  private static class SelectTask<T extends SpatialComparable> extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Object list.
+     */
+    private final List<T> objs;
+
+    /**
+     * Comparator, already configured.
+     */
+    private final SpatialSingleMeanComparator c;
+
+    /**
+     * Subinterval.
+     */
+    private final int start, end;
+
+    /**
+     * Number of slabs, and slab range to process.
+     */
+    private final int s, first, last;
+
+    /**
+     * Constructor.
+     *
+     * @param objs Object list
+     * @param c Comparator
+     * @param start Subinterval start
+     * @param end Subinterval end
+     * @param s Number of slabs
+     * @param first First slab to process
+     * @param last Last slab to process (exclusive)
+     */
+    SelectTask(List<T> objs, SpatialSingleMeanComparator c, int start, int end, int s, int first, int last) {
+      this.objs = objs;
+      this.c = c;
+      this.start = start;
+      this.end = end;
+      this.s = s;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if(last - first <= 1) {
+        return;
+      }
+      final double len = end - start; // double intentional!
+      final int from = start + (int) ((first * len) / s);
+      final int to = start + (int) ((last * len) / s);
+      if(to - from < PARALLEL_THRESHOLD) {
+        selectSlabs(objs, c, start, end, s, first, last);
+        return;
+      }
+      final int mid = (first + last) >>> 1;
+      QuickSelect.quickSelect(objs, c, from, to, start + (int) ((mid * len) / s));
+      invokeAll(new SelectTask<>(objs, c, start, end, s, first, mid), //
+          new SelectTask<>(objs, c, start, end, s, mid, last));
+    }
+  }
+
   /**
    * Parameterization class.
    * 
@@ -20,9 +20,31 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
@@ -282,4 +304,76 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
     testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test a large {@link RStarTree} bulk load, which uses the parallel code
+   * path, against a linear scan.
+   */
+  @Test
+  public void testParallelBulkLoad() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .build();
+    Relation<NumberVector> rel = randomRelation(40000, 3);
+    RStarTreeIndex<NumberVector> tree = factory.instantiate(rel);
+    tree.initialize();
+    DistanceQuery<NumberVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<NumberVector> knn = tree.getKNNQuery(dq, 10);
+    assertTrue("Not an R-tree query.", knn instanceof RStarTreeKNNQuery);
+    KNNQuery<NumberVector> scan = new LinearScanDistanceKNNQuery<>(dq);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 100; it.advance(), i++) {
+      KNNList expect = scan.getKNNForDBID(it, 10), got = knn.getKNNForDBID(it, 10);
+      assertEquals("kNN distance differs.", expect.getKNNDistance(), got.getKNNDistance(), 1e-15);
+    }
+  }
+
+  /**
+   * Test the batched bulk kNN queries against a linear scan.
+   */
+  @Test
+  public void testBulkKNN() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 500) //
+        .build();
+    Relation<NumberVector> rel = randomRelation(2000, 2);
+    RStarTreeIndex<NumberVector> tree = factory.instantiate(rel);
+    tree.initialize();
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    for(PrimitiveDistanceFunction<? super NumberVector> df : Arrays.asList(EuclideanDistanceFunction.STATIC, ManhattanDistanceFunction.STATIC)) {
+      DistanceQuery<NumberVector> dq = df.instantiate(rel);
+      KNNQuery<NumberVector> knn = tree.getKNNQuery(dq, 7);
+      assertTrue("Not an R-tree query.", knn instanceof RStarTreeKNNQuery);
+      List<? extends KNNList> bulk = knn.getKNNForBulkDBIDs(ids, 7);
+      KNNQuery<NumberVector> scan = new LinearScanDistanceKNNQuery<>(dq);
+      DBIDIter it = ids.iter();
+      for(KNNList got : bulk) {
+        KNNList expect = scan.getKNNForDBID(it, 7);
+        assertEquals("Result size differs.", expect.size(), got.size());
+        assertEquals("kNN distance differs.", expect.getKNNDistance(), got.getKNNDistance(), 1e-15);
+        it.advance();
+      }
+    }
+  }
+
+  /**
+   * Generate a random relation.
+   *
+   * @param size Size
+   * @param dim Dimensionality
+   * @return Relation
+   */
+  private static Relation<NumberVector> randomRelation(int size, int dim) {
+    Random r = new Random(0L);
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = r.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
 }
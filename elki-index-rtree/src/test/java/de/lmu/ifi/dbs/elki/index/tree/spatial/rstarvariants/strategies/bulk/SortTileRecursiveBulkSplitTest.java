@@ -0,0 +1,105 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+
+/**
+ * Test the (parallel) sort-tile-recursive bulk splits against the serial
+ * partitioning.
+ *
+ * @author Erich Schubert
+ */
+public class SortTileRecursiveBulkSplitTest {
+  /**
+   * Data size, large enough to use the parallel code path.
+   */
+  private static final int SIZE = 50000;
+
+  /**
+   * Page capacity.
+   */
+  private static final int CAPACITY = 50;
+
+  @Test
+  public void testSortTileRecursive() {
+    testSplit(SortTileRecursiveBulkSplit.STATIC, 3);
+  }
+
+  @Test
+  public void testAdaptiveSortTileRecursive() {
+    testSplit(AdaptiveSortTileRecursiveBulkSplit.STATIC, 3);
+  }
+
+  @Test
+  public void testMaxExtensionSortTileRecursive() {
+    testSplit(MaxExtensionSortTileRecursiveBulkSplit.STATIC, 2);
+  }
+
+  /**
+   * Compare the partitioning to the serial version.
+   *
+   * @param split Split strategy
+   * @param dim Dimensionality
+   */
+  private void testSplit(SortTileRecursiveBulkSplit split, int dim) {
+    Random r = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>(SIZE);
+    for(int i = 0; i < SIZE; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = r.nextDouble() * (d + 1);
+      }
+      data.add(DoubleVector.wrap(v));
+    }
+    List<List<DoubleVector>> par = split.partition(new ArrayList<>(data), CAPACITY / 2, CAPACITY);
+    List<List<DoubleVector>> ser = new ArrayList<>();
+    split.strPartition(new ArrayList<>(data), 0, SIZE, 0, dim, CAPACITY, new SpatialSingleMeanComparator(0), ser);
+
+    assertEquals("Number of partitions differs.", ser.size(), par.size());
+    IdentityHashMap<DoubleVector, Integer> assignment = new IdentityHashMap<>(SIZE);
+    for(int i = 0; i < ser.size(); i++) {
+      for(DoubleVector v : ser.get(i)) {
+        assignment.put(v, i);
+      }
+    }
+    assertEquals("Serial partitioning lost objects.", SIZE, assignment.size());
+    for(int i = 0; i < par.size(); i++) {
+      List<DoubleVector> p = par.get(i);
+      assertTrue("Partition too large.", p.size() <= CAPACITY);
+      assertEquals("Partition size differs.", ser.get(i).size(), p.size());
+      for(DoubleVector v : p) {
+        assertEquals("Object assigned to a different partition.", Integer.valueOf(i), assignment.get(v));
+      }
+    }
+  }
+}
@@ -0,0 +1,804 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.hnsw;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.NotImplementedException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.jafama.FastMath;
+
+/**
+ * Hierarchical navigable small world (HNSW) graph index, for approximate
+ * nearest neighbor search with arbitrary distance functions.
+ * <p>
+ * Every object is assigned a random top layer, with exponentially decreasing
+ * probability. Queries descend greedily through the sparse upper layers, then
+ * perform a best-first search with a candidate list of size efSearch on the
+ * bottom layer, which contains all objects.
+ * <p>
+ * Adjacency lists are stored as primitive int arrays of internal node numbers.
+ * Bulk insertions run concurrently on the {@link ParallelCore}, locking only
+ * the adjacency lists that are being modified.
+ * <p>
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br>
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br>
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has HNSWKNNQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence", //
+    url = "https://doi.org/10.1109/TPAMI.2018.2889473")
+public class HNSW<O> extends AbstractIndex<O> implements KNNIndex<O>, DynamicIndex {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSW.class);
+
+  /**
+   * Number of nodes to insert sequentially, before using parallel insertion.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+  /**
+   * Distance function.
+   */
+  private DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Distance query.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Maximum number of neighbors on the upper layers.
+   */
+  private int m;
+
+  /**
+   * Maximum number of neighbors on the bottom layer.
+   */
+  private int m0;
+
+  /**
+   * Normalization factor for the layer assignment.
+   */
+  private double ml;
+
+  /**
+   * Candidate list size during construction.
+   */
+  private int efConstruction;
+
+  /**
+   * Candidate list size during search.
+   */
+  private int efSearch;
+
+  /**
+   * Random generator for the layer assignment.
+   */
+  private Random random;
+
+  /**
+   * Object ids of the graph nodes.
+   */
+  private ArrayModifiableDBIDs nodes;
+
+  /**
+   * Adjacency lists, indexed by node and layer. The first entry of each array
+   * is the number of neighbors.
+   */
+  private int[][][] links;
+
+  /**
+   * Entry point of the search. Only access together with {@link #maxlevel},
+   * while synchronized on this index.
+   */
+  private int entry = -1;
+
+  /**
+   * Top layer of the entry point.
+   */
+  private int maxlevel = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param m Maximum number of neighbors on the upper layers
+   * @param efConstruction Candidate list size during construction
+   * @param efSearch Candidate list size during search
+   * @param rnd Random generator
+   */
+  public HNSW(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.m = m;
+    this.m0 = m << 1;
+    this.ml = 1. / FastMath.log(m);
+    this.efConstruction = efConstruction;
+    this.efSearch = efSearch;
+    this.random = rnd.getSingleThreadedRandom();
+  }
+
+  @Override
+  public void initialize() {
+    distanceQuery = distanceFunction.instantiate(relation);
+    nodes = DBIDUtil.newArray(relation.size());
+    links = new int[relation.size()][][];
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".construction-time.ms").begin() : null;
+    insertAll(relation.getDBIDs());
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    insertAll(DBIDUtil.deref(id));
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    final int start = nodes.size(), end = start + ids.size();
+    nodes.addDBIDs(ids);
+    if(links.length < end) {
+      links = Arrays.copyOf(links, Math.max(end, links.length + (links.length >>> 1)));
+    }
+    for(int i = start; i < end; i++) {
+      final int level = (int) (-FastMath.log(1. - random.nextDouble()) * ml);
+      final int[][] adj = links[i] = new int[level + 1][];
+      for(int l = 0; l <= level; l++) {
+        adj[l] = new int[(l == 0 ? m0 : m) + 1];
+      }
+    }
+    int i = start;
+    synchronized(this) {
+      if(entry < 0 && i < end) {
+        entry = i;
+        maxlevel = links[i].length - 1;
+        ++i;
+      }
+    }
+    // Insert sequentially until the graph is large enough:
+    SearchState state = new SearchState();
+    for(; i < end && (i < PARALLEL_THRESHOLD || ParallelCore.getCore().getParallelism() <= 1); i++) {
+      insertNode(i, state);
+    }
+    if(i < end) {
+      ParallelCore.getCore().invoke(new InsertTask(i, end));
+    }
+  }
+
+  /**
+   * Insert a single node into the graph.
+   *
+   * @param q Node number
+   * @param state Search state
+   */
+  private void insertNode(int q, SearchState state) {
+    final O obj = relation.get(nodes.assignVar(q, state.var));
+    final int level = links[q].length - 1;
+    int ep, top;
+    synchronized(this) {
+      ep = entry;
+      top = maxlevel;
+    }
+    double epdist = distance(obj, ep, state);
+    for(int l = top; l > level; l--) {
+      ep = greedySearch(obj, ep, epdist, l, state);
+      epdist = state.dist;
+    }
+    for(int l = level < top ? level : top; l >= 0; l--) {
+      DoubleIntegerMaxHeap results = searchLayer(obj, ep, epdist, efConstruction, l, state);
+      // Sort the results by distance:
+      final int size = results.size();
+      double[] dists = new double[size];
+      int[] cands = new int[size];
+      for(int j = size - 1; j >= 0; j--) {
+        dists[j] = results.peekKey();
+        cands[j] = results.peekValue();
+        results.poll();
+      }
+      ep = cands[0];
+      epdist = dists[0];
+      final int[] adj = links[q][l], selected;
+      synchronized(links[q]) {
+        adj[0] = selectNeighbors(dists, cands, size, m, adj, state);
+        selected = Arrays.copyOf(adj, adj[0] + 1);
+      }
+      for(int j = 1; j < selected.length; j++) {
+        connect(selected[j], q, l, state);
+      }
+    }
+    if(level > top) {
+      synchronized(this) {
+        if(level > maxlevel) {
+          maxlevel = level;
+          entry = q;
+        }
+      }
+    }
+  }
+
+  /**
+   * Add a link from node e to node q, pruning the neighbors of e if necessary.
+   *
+   * @param e Node to update
+   * @param q New neighbor
+   * @param l Layer
+   * @param state Search state
+   */
+  private void connect(int e, int q, int l, SearchState state) {
+    synchronized(links[e]) {
+      final int[] adj = links[e][l];
+      final int count = adj[0];
+      if(count + 1 < adj.length) {
+        adj[++adj[0]] = q;
+        return;
+      }
+      // Prune using the neighbor heuristic:
+      final O obj = relation.get(nodes.assignVar(e, state.var));
+      double[] dists = new double[count + 1];
+      int[] cands = new int[count + 1];
+      for(int j = 0; j < count; j++) {
+        cands[j] = adj[j + 1];
+        dists[j] = distance(obj, cands[j], state);
+      }
+      cands[count] = q;
+      dists[count] = distance(obj, q, state);
+      sort(dists, cands, count + 1);
+      adj[0] = selectNeighbors(dists, cands, count + 1, adj.length - 1, adj, state);
+    }
+  }
+
+  /**
+   * Neighbor selection heuristic: a candidate is only chosen if it is closer to
+   * the query than to any neighbor chosen before, which keeps links to distant
+   * regions of the graph.
+   *
+   * @param dists Candidate distances, ascending
+   * @param cands Candidate nodes
+   * @param size Number of candidates
+   * @param max Maximum number of neighbors
+   * @param adj Output adjacency list (starting at offset 1)
+   * @param state Search state
+   * @return Number of neighbors selected
+   */
+  private int selectNeighbors(double[] dists, int[] cands, int size, int max, int[] adj, SearchState state) {
+    final DBIDVar v1 = state.var, v2 = state.var2;
+    int num = 0;
+    for(int i = 0; i < size && num < max; i++) {
+      final int c = cands[i];
+      nodes.assignVar(c, v1);
+      boolean good = true;
+      for(int j = 1; j <= num; j++) {
+        if(distanceQuery.distance(v1, nodes.assignVar(adj[j], v2)) < dists[i]) {
+          good = false;
+          break;
+        }
+      }
+      if(good) {
+        adj[++num] = c;
+      }
+    }
+    return num;
+  }
+
+  /**
+   * Greedy search on an upper layer.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epdist Distance to the entry point
+   * @param l Layer
+   * @param state Search state, receives the distance of the result
+   * @return Closest node found
+   */
+  private int greedySearch(O obj, int ep, double epdist, int l, SearchState state) {
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+      final int[] buf = neighbors(ep, l, state);
+      for(int j = 1, e = buf[0]; j <= e; j++) {
+        final int c = buf[j];
+        final double d = distance(obj, c, state);
+        if(d < epdist) {
+          epdist = d;
+          ep = c;
+          changed = true;
+        }
+      }
+    }
+    state.dist = epdist;
+    return ep;
+  }
+
+  /**
+   * Best-first search on a single layer.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epdist Distance to the entry point
+   * @param ef Candidate list size
+   * @param l Layer
+   * @param state Search state
+   * @return Heap of the closest nodes found
+   */
+  private DoubleIntegerMaxHeap searchLayer(O obj, int ep, double epdist, int ef, int l, SearchState state) {
+    final IntOpenHashSet visited = state.visited;
+    final DoubleIntegerMinHeap candidates = state.candidates;
+    final DoubleIntegerMaxHeap results = state.results;
+    visited.clear();
+    candidates.clear();
+    results.clear();
+    visited.add(ep);
+    candidates.add(epdist, ep);
+    results.add(epdist, ep);
+    while(!candidates.isEmpty()) {
+      if(candidates.peekKey() > results.peekKey()) {
+        break;
+      }
+      final int[] buf = neighbors(candidates.peekValue(), l, state);
+      candidates.poll();
+      for(int j = 1, e = buf[0]; j <= e; j++) {
+        final int c = buf[j];
+        if(!visited.add(c)) {
+          continue;
+        }
+        final double d = distance(obj, c, state);
+        if(results.size() < ef || d < results.peekKey()) {
+          candidates.add(d, c);
+          results.add(d, c, ef);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Copy the neighbors of a node into the search state buffer.
+   *
+   * @param c Node
+   * @param l Layer
+   * @param state Search state
+   * @return Buffer, with the number of neighbors in the first entry
+   */
+  private int[] neighbors(int c, int l, SearchState state) {
+    final int[] buf = state.buf;
+    synchronized(links[c]) {
+      final int[] adj = links[c][l];
+      System.arraycopy(adj, 0, buf, 0, adj[0] + 1);
+    }
+    return buf;
+  }
+
+  /**
+   * Distance of the query object to a node.
+   *
+   * @param obj Query object
+   * @param c Node
+   * @param state Search state
+   * @return Distance
+   */
+  private double distance(O obj, int c, SearchState state) {
+    return distanceQuery.distance(obj, nodes.assignVar(c, state.var2));
+  }
+
+  /**
+   * Sort candidates by ascending distance (insertion sort, the lists are
+   * short).
+   *
+   * @param dists Distances
+   * @param cands Candidates
+   * @param size Number of candidates
+   */
+  private static void sort(double[] dists, int[] cands, int size) {
+    for(int i = 1; i < size; i++) {
+      final double d = dists[i];
+      final int c = cands[i];
+      int j = i - 1;
+      for(; j >= 0 && dists[j] > d; j--) {
+        dists[j + 1] = dists[j];
+        cands[j + 1] = cands[j];
+      }
+      dists[j + 1] = d;
+      cands[j + 1] = c;
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    throw new NotImplementedException();
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    throw new NotImplementedException();
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", nodes != null ? nodes.size() : 0));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".layers", maxlevel + 1));
+  }
+
+  @Override
+  public String getLongName() {
+    return "HNSW graph index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "hnsw";
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> df = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.distanceFunction.equals(df)) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    return new HNSWKNNQuery(distanceQuery);
+  }
+
+  /**
+   * Per-thread search state.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class SearchState {
+    /**
+     * Visited nodes.
+     */
+    IntOpenHashSet visited = new IntOpenHashSet();
+
+    /**
+     * Candidate queue.
+     */
+    DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap();
+
+    /**
+     * Current results.
+     */
+    DoubleIntegerMaxHeap results = new DoubleIntegerMaxHeap();
+
+    /**
+     * Neighbor buffer.
+     */
+    int[] buf = new int[m0 + 1];
+
+    /**
+     * Variables for object ids.
+     */
+    DBIDVar var = DBIDUtil.newVar(), var2 = DBIDUtil.newVar();
+
+    /**
+     * Distance of the last greedy search result.
+     */
+    double dist;
+  }
+
+  /**
+   * Task for parallel insertion of a range of nodes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class InsertTask extends RecursiveAction {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Range of nodes to insert.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param start First node
+     * @param end End of range (exclusive)
+     */
+    InsertTask(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > PARALLEL_THRESHOLD) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new InsertTask(start, mid), new InsertTask(mid, end));
+        return;
+      }
+      SearchState state = new SearchState();
+      for(int i = start; i < end; i++) {
+        insertNode(i, state);
+      }
+    }
+  }
+
+  /**
+   * Approximate kNN query for this index.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      int ep, top;
+      // Consistent with concurrent insertions:
+      synchronized(HNSW.this) {
+        ep = entry;
+        top = maxlevel;
+      }
+      if(ep < 0) {
+        return heap.toKNNList();
+      }
+      SearchState state = new SearchState();
+      double epdist = distance(obj, ep, state);
+      for(int l = top; l > 0; l--) {
+        ep = greedySearch(obj, ep, epdist, l, state);
+        epdist = state.dist;
+      }
+      DoubleIntegerMaxHeap results = searchLayer(obj, ep, epdist, efSearch > k ? efSearch : k, 0, state);
+      for(DoubleIntegerHeap.UnsortedIter it = results.unsortedIter(); it.valid(); it.advance()) {
+        heap.insert(it.getKey(), nodes.assignVar(it.getValue(), state.var));
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has HNSW
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Maximum number of neighbors on the upper layers.
+     */
+    int m;
+
+    /**
+     * Candidate list size during construction.
+     */
+    int efConstruction;
+
+    /**
+     * Candidate list size during search.
+     */
+    int efSearch;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param m Maximum number of neighbors on the upper layers
+     * @param efConstruction Candidate list size during construction
+     * @param efSearch Candidate list size during search
+     * @param rnd Random generator
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.efSearch = efSearch;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public HNSW<O> instantiate(Relation<O> relation) {
+      return new HNSW<>(relation, distanceFunction, m, efConstruction, efSearch, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function to use.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distancefunction", "Distance function to determine the distance between objects.");
+
+      /**
+       * Maximum number of neighbors.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of neighbors on the upper layers (twice as many on the bottom layer).");
+
+      /**
+       * Candidate list size during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Candidate list size during construction.");
+
+      /**
+       * Candidate list size during search.
+       */
+      public static final OptionID EF_SEARCH_ID = new OptionID("hnsw.efsearch", "Candidate list size during search. Larger values increase recall and query time.");
+
+      /**
+       * Random generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the layer assignment.");
+
+      /**
+       * Distance function.
+       */
+      DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Maximum number of neighbors on the upper layers.
+       */
+      int m;
+
+      /**
+       * Candidate list size during construction.
+       */
+      int efConstruction;
+
+      /**
+       * Candidate list size during search.
+       */
+      int efSearch;
+
+      /**
+       * Random generator.
+       */
+      RandomFactory rnd;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distanceFunctionP)) {
+          distanceFunction = distanceFunctionP.instantiateClass(config);
+        }
+        IntParameter mP = new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        if(config.grab(mP)) {
+          m = mP.intValue();
+        }
+        IntParameter efConstructionP = new IntParameter(EF_CONSTRUCTION_ID, 200) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efConstructionP)) {
+          efConstruction = efConstructionP.intValue();
+        }
+        IntParameter efSearchP = new IntParameter(EF_SEARCH_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efSearchP)) {
+          efSearch = efSearchP.intValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, m, efConstruction, efSearch, rnd);
+      }
+    }
+  }
+}
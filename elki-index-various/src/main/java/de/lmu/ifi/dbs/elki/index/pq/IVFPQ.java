@@ -0,0 +1,756 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.pq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ModelUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ChainedParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Parameter;
+import net.jafama.FastMath;
+
+/**
+ * Inverted file index with product quantization (IVF-PQ), for approximate
+ * nearest neighbor search with Euclidean distance.
+ * <p>
+ * A coarse quantizer (k-means) partitions the data into inverted lists. The
+ * residuals to the list centroids are split into subspaces, and each subspace
+ * is quantized with a small codebook (again obtained with k-means), so every
+ * object is encoded with one byte per subspace. For a query, the closest lists
+ * are probed, and distances to the encoded objects are estimated with
+ * asymmetric distance computation using a lookup table per list. The best
+ * candidates are then refined with the exact distance function.
+ * <p>
+ * Range queries use the maximum quantization error of each list to prune
+ * lists and candidates, and hence are exact.
+ * <p>
+ * Reference:
+ * <p>
+ * H. Jégou, M. Douze, C. Schmid<br>
+ * Product Quantization for Nearest Neighbor Search<br>
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence 33(1)
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses KMeans
+ * @apiviz.has IVFPQKNNQuery
+ * @apiviz.has IVFPQRangeQuery
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Jégou, M. Douze, C. Schmid", //
+    title = "Product Quantization for Nearest Neighbor Search", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence 33(1)", //
+    url = "https://doi.org/10.1109/TPAMI.2010.57")
+public class IVFPQ<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(IVFPQ.class);
+
+  /**
+   * k-means variant, used for both the coarse and the product quantizers.
+   */
+  private Class<?> kmeans;
+
+  /**
+   * Parameters of the k-means variant, except k.
+   */
+  private ListParameterization kmeansParameters;
+
+  /**
+   * Number of inverted lists.
+   */
+  private int numlists;
+
+  /**
+   * Number of subspaces.
+   */
+  private int numsub;
+
+  /**
+   * Codebook size for each subspace.
+   */
+  private int codebooksize;
+
+  /**
+   * Number of lists to probe for kNN queries.
+   */
+  private int nprobe;
+
+  /**
+   * Number of candidates to refine, as multiple of k.
+   */
+  private int rerank;
+
+  /**
+   * Centroids of the inverted lists.
+   */
+  private double[][] centroids;
+
+  /**
+   * Members of the inverted lists.
+   */
+  private ArrayDBIDs[] lists;
+
+  /**
+   * Product codes of the list members, one byte per subspace.
+   */
+  private byte[][] codes;
+
+  /**
+   * Maximum distance of a list member to its centroid.
+   */
+  private double[] radius;
+
+  /**
+   * Maximum quantization error within each list.
+   */
+  private double[] maxerr;
+
+  /**
+   * Subspace boundaries.
+   */
+  private int[] bounds;
+
+  /**
+   * Codebooks, indexed by subspace, codeword, and dimension.
+   */
+  private double[][][] codebooks;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param kmeans k-means variant
+   * @param kmeansParameters Parameters of the k-means variant, except k
+   * @param numlists Number of inverted lists
+   * @param numsub Number of subspaces
+   * @param codebooksize Codebook size for each subspace
+   * @param nprobe Number of lists to probe
+   * @param rerank Number of candidates to refine, as multiple of k
+   */
+  public IVFPQ(Relation<V> relation, Class<?> kmeans, ListParameterization kmeansParameters, int numlists, int numsub, int codebooksize, int nprobe, int rerank) {
+    super(relation);
+    this.kmeans = kmeans;
+    this.kmeansParameters = kmeansParameters;
+    this.numlists = numlists;
+    this.numsub = numsub;
+    this.codebooksize = codebooksize;
+    this.nprobe = nprobe;
+    this.rerank = rerank;
+  }
+
+  @Override
+  public void initialize() {
+    final int dim = RelationUtil.dimensionality(relation);
+    final int n = relation.size();
+    final int m = numsub < dim ? numsub : dim;
+    bounds = new int[m + 1];
+    for(int j = 0; j <= m; j++) {
+      bounds[j] = j * dim / m;
+    }
+    // Coarse quantizer, skipping empty clusters:
+    List<double[]> cents = new ArrayList<>();
+    List<ArrayDBIDs> members = new ArrayList<>();
+    for(Cluster<?> clus : runKMeans(relation, numlists < n ? numlists : n).getAllClusters()) {
+      if(clus.size() > 0) {
+        cents.add(ModelUtil.getPrototypeOrCentroid(clus.getModel(), relation, clus.getIDs()).toArray());
+        members.add(DBIDUtil.newArray(clus.getIDs()));
+      }
+    }
+    centroids = cents.toArray(new double[cents.size()][]);
+    lists = members.toArray(new ArrayDBIDs[members.size()]);
+    // Residuals, in list order:
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(n);
+    double[][] residuals = new double[n][];
+    radius = new double[lists.length];
+    for(int c = 0, i = 0; c < lists.length; c++) {
+      ids.addDBIDs(lists[c]);
+      double r = 0.;
+      for(DBIDIter it = lists[c].iter(); it.valid(); it.advance(), i++) {
+        final double[] res = VMath.minusEquals(relation.get(it).toArray(), centroids[c]);
+        final double len = VMath.euclideanLength(res);
+        r = len > r ? len : r;
+        residuals[i] = res;
+      }
+      radius[c] = r;
+    }
+    // Product quantizers, trained on the residuals keyed by the original
+    // DBIDs, so we do not need to allocate new DBIDs on each run:
+    codebooks = new double[m][][];
+    for(int j = 0; j < m; j++) {
+      codebooks[j] = trainCodebook(ids, residuals, bounds[j], bounds[j + 1]);
+    }
+    // Encode the residuals:
+    codes = new byte[lists.length][];
+    maxerr = new double[lists.length];
+    for(int c = 0, i = 0; c < lists.length; c++) {
+      final int size = lists[c].size();
+      final byte[] code = codes[c] = new byte[size * m];
+      double maxe = 0.;
+      for(int p = 0, off = 0; p < size; p++, i++) {
+        final double[] res = residuals[i];
+        double err = 0.;
+        for(int j = 0; j < m; j++, off++) {
+          final double[][] book = codebooks[j];
+          int best = 0;
+          double bestd = Double.POSITIVE_INFINITY;
+          for(int s = 0; s < book.length; s++) {
+            final double d = squaredDistance(res, book[s], bounds[j], bounds[j + 1]);
+            if(d < bestd) {
+              bestd = d;
+              best = s;
+            }
+          }
+          code[off] = (byte) best;
+          err += bestd;
+        }
+        maxe = err > maxe ? err : maxe;
+      }
+      maxerr[c] = FastMath.sqrt(maxe);
+    }
+  }
+
+  /**
+   * Train the codebook for a single subspace.
+   *
+   * @param ids DBIDs of the residuals
+   * @param residuals Residual vectors, in the same order
+   * @param start First dimension of the subspace
+   * @param end Subspace end (exclusive)
+   * @return Codebook
+   */
+  private double[][] trainCodebook(ArrayDBIDs ids, double[][] residuals, int start, int end) {
+    WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleVector.class);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      store.put(it, DoubleVector.wrap(Arrays.copyOfRange(residuals[i], start, end)));
+    }
+    Relation<DoubleVector> rel = new MaterializedRelation<>("residuals", "residuals", new VectorFieldTypeInformation<>(DoubleVector.FACTORY, end - start), store, ids);
+    List<? extends Cluster<?>> clusters = runKMeans(rel, codebooksize < ids.size() ? codebooksize : ids.size()).getAllClusters();
+    double[][] book = new double[clusters.size()][];
+    int s = 0;
+    for(Cluster<?> clus : clusters) {
+      book[s++] = ModelUtil.getPrototypeOrCentroid(clus.getModel(), rel, clus.getIDs()).toArray();
+    }
+    return book;
+  }
+
+  /**
+   * Run k-means on a relation, using a new k-means instance each time.
+   *
+   * @param rel Relation
+   * @param k Number of clusters
+   * @return Clustering
+   */
+  @SuppressWarnings("unchecked")
+  private Clustering<?> runKMeans(Relation<? extends NumberVector> rel, int k) {
+    ListParameterization params = new ListParameterization(kmeansParameters.getRemainingParameters());
+    params.addParameter(KMeans.K_ID, k);
+    // Ugly cast, sorry: the residuals are not of type V.
+    KMeans<NumberVector, ?> km = ClassGenericsUtil.parameterizeOrAbort(kmeans, params);
+    return km.run(new ProxyDatabase(rel.getDBIDs(), rel), (Relation<NumberVector>) rel);
+  }
+
+  /**
+   * Squared Euclidean distance of a residual subvector to a codeword.
+   *
+   * @param res Residual vector
+   * @param codeword Codeword
+   * @param start Subspace start
+   * @param end Subspace end (exclusive)
+   * @return Squared distance
+   */
+  private static double squaredDistance(double[] res, double[] codeword, int start, int end) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double delta = res[d] - codeword[d - start];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Compute the distance lookup table for the query residual of one list.
+   *
+   * @param q Query vector
+   * @param cent List centroid
+   * @param lut Lookup table to fill
+   */
+  private void lookupTable(double[] q, double[] cent, double[][] lut) {
+    for(int j = 0; j < codebooks.length; j++) {
+      final double[][] book = codebooks[j];
+      final int start = bounds[j], end = bounds[j + 1];
+      for(int s = 0; s < book.length; s++) {
+        final double[] cw = book[s];
+        double agg = 0.;
+        for(int d = start; d < end; d++) {
+          final double delta = q[d] - cent[d] - cw[d - start];
+          agg += delta * delta;
+        }
+        lut[j][s] = agg;
+      }
+    }
+  }
+
+  /**
+   * Allocate a lookup table.
+   *
+   * @return Lookup table
+   */
+  private double[][] newLookupTable() {
+    double[][] lut = new double[codebooks.length][];
+    for(int j = 0; j < lut.length; j++) {
+      lut[j] = new double[codebooks[j].length];
+    }
+    return lut;
+  }
+
+  /**
+   * Asymmetric (squared) distance of the query to an encoded object.
+   *
+   * @param lut Lookup table
+   * @param code Codes
+   * @param off Offset in the codes array
+   * @return Estimated squared distance
+   */
+  private static double asymmetricDistance(double[][] lut, byte[] code, int off) {
+    double agg = 0.;
+    for(int j = 0; j < lut.length; j++) {
+      agg += lut[j][code[off + j] & 0xFF];
+    }
+    return agg;
+  }
+
+  @Override
+  public Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(lists != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".lists", lists.length));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "IVF-PQ index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "ivfpq";
+  }
+
+  @Override
+  public KNNQuery<V> getKNNQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction || df instanceof SquaredEuclideanDistanceFunction) {
+      return new IVFPQKNNQuery(distanceQuery);
+    }
+    // Not supported.
+    return null;
+  }
+
+  @Override
+  public RangeQuery<V> getRangeQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+    DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction || df instanceof SquaredEuclideanDistanceFunction) {
+      return new IVFPQRangeQuery(distanceQuery, df instanceof SquaredEuclideanDistanceFunction);
+    }
+    // Not supported.
+    return null;
+  }
+
+  /**
+   * Approximate kNN query for this index.
+   *
+   * @author Erich Schubert
+   */
+  public class IVFPQKNNQuery extends AbstractRefiningIndex<V>.AbstractKNNQuery {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query object
+     */
+    public IVFPQKNNQuery(DistanceQuery<V> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(V obj, int k) {
+      final double[] q = obj.toArray();
+      final int numc = centroids.length, m = codebooks.length;
+      // Find the closest lists:
+      double[] cdist = new double[numc];
+      int[] order = new int[numc];
+      for(int c = 0; c < numc; c++) {
+        cdist[c] = VMath.squareSum(VMath.minus(q, centroids[c]));
+        order[c] = c;
+      }
+      DoubleIntegerArrayQuickSort.sort(cdist, order, numc);
+      // Approximation step, using asymmetric distances:
+      KNNHeap candidates = DBIDUtil.newHeap(k * rerank);
+      final double[][] lut = newLookupTable();
+      for(int p = 0, probes = nprobe < numc ? nprobe : numc; p < probes; p++) {
+        final int c = order[p];
+        final byte[] code = codes[c];
+        lookupTable(q, centroids[c], lut);
+        for(DBIDArrayIter it = lists[c].iter(); it.valid(); it.advance()) {
+          candidates.insert(asymmetricDistance(lut, code, it.getOffset() * m), it);
+        }
+      }
+      // Refinement step:
+      KNNHeap result = DBIDUtil.newHeap(k);
+      for(DoubleDBIDListIter it = candidates.unorderedIterator(); it.valid(); it.advance()) {
+        result.insert(refine(it, obj), it);
+      }
+      return result.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for this index.
+   *
+   * @author Erich Schubert
+   */
+  public class IVFPQRangeQuery extends AbstractRefiningIndex<V>.AbstractRangeQuery {
+    /**
+     * Flag for squared Euclidean distance.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query object
+     * @param squared Distances are squared
+     */
+    public IVFPQRangeQuery(DistanceQuery<V> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
+      final double[] q = obj.toArray();
+      final double r = squared ? FastMath.sqrt(range) : range;
+      final int m = codebooks.length;
+      final double[][] lut = newLookupTable();
+      for(int c = 0; c < centroids.length; c++) {
+        // Triangle inequality, using the list radius:
+        if(VMath.euclideanLength(VMath.minus(q, centroids[c])) - radius[c] > r) {
+          continue;
+        }
+        final byte[] code = codes[c];
+        lookupTable(q, centroids[c], lut);
+        // Triangle inequality, using the quantization error:
+        final double bound = r + maxerr[c], threshold = bound * bound;
+        for(DBIDArrayIter it = lists[c].iter(); it.valid(); it.advance()) {
+          if(asymmetricDistance(lut, code, it.getOffset() * m) > threshold) {
+            continue;
+          }
+          final double dist = refine(it, obj);
+          if(dist <= range) {
+            result.add(dist, it);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has IVFPQ
+   *
+   * @param <V> Vector type
+   */
+  public static class Factory<V extends NumberVector> implements IndexFactory<V> {
+    /**
+     * k-means variant used for the quantizers.
+     */
+    Class<?> kmeans;
+
+    /**
+     * Parameters of the k-means variant, except k.
+     */
+    ListParameterization kmeansParameters;
+
+    /**
+     * Number of inverted lists.
+     */
+    int numlists;
+
+    /**
+     * Number of subspaces.
+     */
+    int numsub;
+
+    /**
+     * Codebook size for each subspace.
+     */
+    int codebooksize;
+
+    /**
+     * Number of lists to probe.
+     */
+    int nprobe;
+
+    /**
+     * Number of candidates to refine, as multiple of k.
+     */
+    int rerank;
+
+    /**
+     * Constructor.
+     *
+     * @param kmeans k-means variant, instantiated for every run
+     * @param kmeansParameters Parameters of the k-means variant, except k
+     * @param numlists Number of inverted lists
+     * @param numsub Number of subspaces
+     * @param codebooksize Codebook size for each subspace
+     * @param nprobe Number of lists to probe
+     * @param rerank Number of candidates to refine, as multiple of k
+     */
+    public Factory(Class<?> kmeans, ListParameterization kmeansParameters, int numlists, int numsub, int codebooksize, int nprobe, int rerank) {
+      super();
+      this.kmeans = kmeans;
+      this.kmeansParameters = kmeansParameters;
+      this.numlists = numlists;
+      this.numsub = numsub;
+      this.codebooksize = codebooksize;
+      this.nprobe = nprobe;
+      this.rerank = rerank;
+    }
+
+    @Override
+    public IVFPQ<V> instantiate(Relation<V> relation) {
+      return new IVFPQ<>(relation, kmeans, kmeansParameters, numlists, numsub, codebooksize, nprobe, rerank);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <V> Vector type
+     */
+    public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+      /**
+       * k-means variant to use for the coarse and product quantizers.
+       */
+      public static final OptionID KMEANS_ID = new OptionID("ivfpq.kmeans", "k-means variant used to train the coarse and product quantizers.");
+
+      /**
+       * Number of inverted lists.
+       */
+      public static final OptionID LISTS_ID = new OptionID("ivfpq.lists", "Number of inverted lists (coarse quantizer size).");
+
+      /**
+       * Number of subspaces.
+       */
+      public static final OptionID SUBSPACES_ID = new OptionID("ivfpq.subspaces", "Number of subspaces for product quantization.");
+
+      /**
+       * Codebook size.
+       */
+      public static final OptionID CODEBOOK_ID = new OptionID("ivfpq.codebook", "Number of codewords in each subspace (at most 256).");
+
+      /**
+       * Number of lists to probe.
+       */
+      public static final OptionID NPROBE_ID = new OptionID("ivfpq.nprobe", "Number of inverted lists to probe for kNN queries.");
+
+      /**
+       * Number of candidates to refine.
+       */
+      public static final OptionID RERANK_ID = new OptionID("ivfpq.rerank", "Number of candidates to refine with the exact distance, as multiple of k.");
+
+      /**
+       * k-means variant used for the quantizers.
+       */
+      Class<?> kmeans;
+
+      /**
+       * Parameters of the k-means variant, except k.
+       */
+      ListParameterization kmeansParameters;
+
+      /**
+       * Number of inverted lists.
+       */
+      int numlists;
+
+      /**
+       * Number of subspaces.
+       */
+      int numsub;
+
+      /**
+       * Codebook size for each subspace.
+       */
+      int codebooksize;
+
+      /**
+       * Number of lists to probe.
+       */
+      int nprobe;
+
+      /**
+       * Number of candidates to refine, as multiple of k.
+       */
+      int rerank;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<KMeans<V, ?>> kmeansP = new ObjectParameter<>(KMEANS_ID, KMeans.class, KMeansLloyd.class);
+        if(config.grab(kmeansP)) {
+          ListParameterization defaults = new ListParameterization();
+          // We will always invoke this with k as needed:
+          defaults.addParameter(KMeans.K_ID, 2);
+          defaults.addParameter(KMeans.DISTANCE_FUNCTION_ID, SquaredEuclideanDistanceFunction.class);
+          ChainedParameterization combinedConfig = new ChainedParameterization(defaults, config);
+          combinedConfig.errorsTo(config);
+          // Validate the parameters once, and record them, because every run
+          // needs its own instance with a different k:
+          TrackParameters track = new TrackParameters(combinedConfig);
+          if(kmeansP.instantiateClass(track) != null) {
+            kmeans = kmeansP.getValue();
+            kmeansParameters = new ListParameterization();
+            for(TrackedParameter tracked : track.getAllParameters()) {
+              Parameter<?> par = tracked.getParameter();
+              if(par.isDefined() && !KMeans.K_ID.equals(par.getOptionID())) {
+                kmeansParameters.addParameter(par.getOptionID(), par.getValue());
+              }
+            }
+          }
+        }
+        IntParameter listsP = new IntParameter(LISTS_ID) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(listsP)) {
+          numlists = listsP.intValue();
+        }
+        IntParameter subspacesP = new IntParameter(SUBSPACES_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(subspacesP)) {
+          numsub = subspacesP.intValue();
+        }
+        IntParameter codebookP = new IntParameter(CODEBOOK_ID, 256) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .addConstraint(new LessEqualConstraint(256));
+        if(config.grab(codebookP)) {
+          codebooksize = codebookP.intValue();
+        }
+        IntParameter nprobeP = new IntParameter(NPROBE_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(nprobeP)) {
+          nprobe = nprobeP.intValue();
+        }
+        IntParameter rerankP = new IntParameter(RERANK_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(rerankP)) {
+          rerank = rerankP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<V> makeInstance() {
+        return new Factory<>(kmeans, kmeansParameters, numlists, numsub, codebooksize, nprobe, rerank);
+      }
+    }
+  }
+}
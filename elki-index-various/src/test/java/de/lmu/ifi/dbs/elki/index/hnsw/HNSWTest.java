@@ -0,0 +1,134 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.hnsw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the HNSW index.
+ *
+ * @author Erich Schubert
+ */
+public class HNSWTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link HNSW} using a file based database connection.
+   */
+  @Test
+  public void testHNSW() {
+    HNSW.Factory<?> factory = new ELKIBuilder<>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.M_ID, 8) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0L).build();
+    testExactEuclidean(factory, HNSW.HNSWKNNQuery.class, null);
+    testSinglePoint(factory, HNSW.HNSWKNNQuery.class, null);
+  }
+
+  /**
+   * Test {@link HNSW} with cosine distance.
+   */
+  @Test
+  public void testHNSWCosine() {
+    HNSW.Factory<?> factory = new ELKIBuilder<>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.DISTANCE_FUNCTION_ID, CosineDistanceFunction.class) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0L).build();
+    testExactCosine(factory, HNSW.HNSWKNNQuery.class, null);
+  }
+
+  /**
+   * Test {@link HNSW} above the parallel insertion threshold, and compare the
+   * recall to incremental insertion via a modifiable database.
+   */
+  @Test
+  public void testParallelInsert() {
+    Random r = new Random(0L);
+    double[][] data = new double[10000][8];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = r.nextDouble();
+      }
+    }
+    // Small parameters, so that the recall is not trivially perfect:
+    HNSW.Factory<DoubleVector> factory = new ELKIBuilder<HNSW.Factory<DoubleVector>>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.M_ID, 4) //
+        .with(HNSW.Factory.Parameterizer.EF_CONSTRUCTION_ID, 20) //
+        .with(HNSW.Factory.Parameterizer.EF_SEARCH_ID, 10) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0L).build();
+    // Bulk insertion, in parallel if possible:
+    Database bulk = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), Arrays.<IndexFactory<?>> asList(factory));
+    bulk.initialize();
+    // Insertion of one object at a time:
+    Database incremental = new HashmapDatabase(new ArrayAdapterDatabaseConnection(data), Arrays.<IndexFactory<?>> asList(factory));
+    incremental.initialize();
+    final double rbulk = recall(bulk, 10), rincr = recall(incremental, 10);
+    assertTrue("Recall of bulk insertion too low: " + rbulk, rbulk > .85);
+    assertTrue("Recall of incremental insertion too low: " + rincr, rincr > .85);
+    assertEquals("Recall differs.", rincr, rbulk, .03);
+  }
+
+  /**
+   * Compute the recall of the HNSW index, on a sample of queries.
+   *
+   * @param db Database
+   * @param k Number of neighbors
+   * @return Recall
+   */
+  private static double recall(Database db, int k) {
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, k);
+    assertTrue("Index not used.", knnq instanceof HNSW.HNSWKNNQuery);
+    KNNQuery<DoubleVector> exact = new LinearScanDistanceKNNQuery<>(dq);
+    DBIDs sample = DBIDUtil.randomSample(rel.getDBIDs(), 200, 0L);
+    int found = 0, total = 0;
+    for(DBIDIter it = sample.iter(); it.valid(); it.advance()) {
+      DBIDs approx = DBIDUtil.newHashSet(knnq.getKNNForDBID(it, k));
+      for(DBIDIter nn = exact.getKNNForDBID(it, k).iter(); nn.valid(); nn.advance()) {
+        found += approx.contains(nn) ? 1 : 0;
+        ++total;
+      }
+    }
+    return found / (double) total;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.pq;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the IVF-PQ index.
+ *
+ * @author Erich Schubert
+ */
+public class IVFPQTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link IVFPQ} using a file based database connection.
+   * <p>
+   * Range queries are exact, kNN queries are approximate and are tested by
+   * their recall instead.
+   */
+  @Test
+  public void testIVFPQ() {
+    IVFPQ.Factory<?> factory = makeFactory();
+    testExactEuclidean(factory, null, IVFPQ.IVFPQRangeQuery.class);
+    testSinglePoint(factory, IVFPQ.IVFPQKNNQuery.class, IVFPQ.IVFPQRangeQuery.class);
+  }
+
+  /**
+   * Test the recall of {@link IVFPQ} kNN queries against a linear scan.
+   */
+  @Test
+  public void testRecall() {
+    ListParameterization params = new ListParameterization() //
+        .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, makeFactory());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600, params);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, 10);
+    assertTrue("Index not used.", knnq instanceof IVFPQ.IVFPQKNNQuery);
+    KNNQuery<DoubleVector> exact = new LinearScanDistanceKNNQuery<>(dist);
+    int hits = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList approx = knnq.getKNNForDBID(it, 10);
+      final double kdist = exact.getKNNForDBID(it, 10).getKNNDistance();
+      // Compare by distance, to be robust to ties.
+      for(DoubleDBIDListIter nn = approx.iter(); nn.valid(); nn.advance()) {
+        hits += nn.doubleValue() <= kdist ? 1 : 0;
+      }
+      total += 10;
+    }
+    assertTrue("Recall too low: " + hits + " of " + total, hits >= .9 * total);
+  }
+
+  /**
+   * Build the index factory used by the tests.
+   *
+   * @return Factory
+   */
+  private static IVFPQ.Factory<?> makeFactory() {
+    return new ELKIBuilder<>(IVFPQ.Factory.class) //
+        .with(IVFPQ.Factory.Parameterizer.LISTS_ID, 5) //
+        .with(IVFPQ.Factory.Parameterizer.SUBSPACES_ID, 3) //
+        .with(IVFPQ.Factory.Parameterizer.CODEBOOK_ID, 16) //
+        .with(IVFPQ.Factory.Parameterizer.NPROBE_ID, 3).build();
+  }
+}
@@ -37,8 +37,8 @@ import de.lmu.ifi.dbs.elki.index.SimilarityIndex;
 import de.lmu.ifi.dbs.elki.index.SimilarityRangeIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -84,6 +84,11 @@ public class PrecomputedSimilarityMatrix<O> extends AbstractIndex<O> implements
    */
   private double[] matrix = null;
 
+  /**
+   * Checksum of the matrix, see {@link TriangleMatrixPrecomputer}.
+   */
+  private long checksum;
+
   /**
    * DBID range.
    */
@@ -123,23 +128,12 @@ public class PrecomputedSimilarityMatrix<O> extends AbstractIndex<O> implements
 
     similarityQuery = similarityFunction.instantiate(relation);
 
-    int msize = triangleSize(size);
+    final int msize = triangleSize(size);
     matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing similarity matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = similarityQuery.similarity(ix, iy);
-        pos++;
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
-    }
-    LOG.ensureCompleted(prog);
+    // y < x -- must match {@link #getOffset}!
+    checksum = new TriangleMatrixPrecomputer(ids, false, false).run(similarityQuery::similarity, //
+        (x, y, values, len) -> System.arraycopy(values, 0, matrix, triangleSize(x) + y, len), //
+        "Precomputing similarity matrix", LOG);
   }
 
   /**
@@ -167,6 +161,7 @@ public class PrecomputedSimilarityMatrix<O> extends AbstractIndex<O> implements
   public void logStatistics() {
     if(matrix != null) {
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new StringStatistic(this.getClass().getName() + ".checksum", Long.toHexString(checksum)));
     }
   }
 
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -39,6 +40,12 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * @param <E> the type of Entry used in the index
  */
 public abstract class AbstractNode<E extends Entry> extends AbstractExternalizablePage implements Node<E> {
+  /**
+   * Size of the binary node header: page id, leaf flag, number of entries,
+   * capacity.
+   */
+  public static final int NODE_HEADER_SIZE = 4 + 1 + 4 + 4;
+
   /**
    * The number of entries in this node.
    */
@@ -143,6 +150,30 @@ public abstract class AbstractNode<E extends Entry> extends AbstractExternalizab
     // Entries will be read in subclasses
   }
 
+  /**
+   * Write the binary node header (see {@link #NODE_HEADER_SIZE}).
+   *
+   * @param buffer Buffer to write to
+   */
+  protected void writeNodeHeader(ByteBuffer buffer) {
+    buffer.putInt(getPageID());
+    buffer.put((byte) (isLeaf ? 1 : 0));
+    buffer.putInt(numEntries);
+    buffer.putInt(entries.length);
+  }
+
+  /**
+   * Read the binary node header, and allocate the entries array.
+   *
+   * @param buffer Buffer to read from
+   */
+  protected void readNodeHeader(ByteBuffer buffer) {
+    setPageID(buffer.getInt());
+    isLeaf = buffer.get() != 0;
+    numEntries = buffer.getInt();
+    entries = new Entry[buffer.getInt()];
+  }
+
   /**
    * Returns a string representation of this node.
    *
@@ -0,0 +1,54 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pages with a compact binary representation, that page files can read and
+ * write directly from and to byte buffers without Java serialization.
+ *
+ * @author Erich Schubert
+ */
+public interface ByteBufferPage extends ExternalizablePage {
+  /**
+   * Bytes used by page files in front of every page (page type marker).
+   */
+  int PAGE_OVERHEAD = 4;
+
+  /**
+   * Write the page to the buffer, starting at the current position.
+   *
+   * @param buffer Buffer to write to
+   * @throws IOException on IO errors
+   * @throws java.nio.BufferOverflowException if the page is too large
+   */
+  void writeToByteBuffer(ByteBuffer buffer) throws IOException;
+
+  /**
+   * Read the page from the buffer, starting at the current position.
+   *
+   * @param buffer Buffer to read from
+   * @throws IOException on IO errors
+   */
+  void readFromByteBuffer(ByteBuffer buffer) throws IOException;
+}
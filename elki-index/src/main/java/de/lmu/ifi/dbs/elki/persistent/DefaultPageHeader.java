@@ -40,8 +40,10 @@ public class DefaultPageHeader implements PageHeader {
 
   /**
    * Version number of this header (magic number).
+   * <p>
+   * Incremented for the binary page format of {@link ByteBufferPage}.
    */
-  private static final int FILE_VERSION = 841150978;
+  private static final int FILE_VERSION = 841150979;
 
   /**
    * The size of a page in bytes.
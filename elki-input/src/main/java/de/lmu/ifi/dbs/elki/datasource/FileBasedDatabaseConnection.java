@@ -25,12 +25,20 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.ArffParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -38,6 +46,7 @@ import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * File based database connection based on the parser to be set.
@@ -50,6 +59,21 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
 @Alias("de.lmu.ifi.dbs.elki.database.connection.FileBasedDatabaseConnection")
 @Priority(Priority.IMPORTANT)
 public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(FileBasedDatabaseConnection.class);
+
+  /**
+   * Input file, for parallel parsing.
+   */
+  private File infile;
+
+  /**
+   * Parse the input file in parallel.
+   */
+  private boolean parallel;
+
   /**
    * Constructor.
    * 
@@ -58,7 +82,22 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
    * @param infile File to load the data from
    */
   public FileBasedDatabaseConnection(List<ObjectFilter> filters, Parser parser, File infile) {
+    this(filters, parser, infile, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param filters Filters, can be null
+   * @param parser the parser to provide a database
+   * @param infile File to load the data from
+   * @param parallel Parse the input file in parallel, if supported by the
+   *        parser
+   */
+  public FileBasedDatabaseConnection(List<ObjectFilter> filters, Parser parser, File infile, boolean parallel) {
     super(null, filters, parser);
+    this.infile = infile;
+    this.parallel = parallel;
     try {
       this.in = new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(infile)));
     }
@@ -95,6 +134,64 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
     super(in, filters, parser);
   }
 
+  @Override
+  public MultipleObjectsBundle loadData() {
+    if(parallel && infile != null && parser instanceof NumberVectorLabelParser && ParallelCore.getCore().getParallelism() > 1) {
+      MultipleObjectsBundle bundle = loadParallel((NumberVectorLabelParser<?>) parser);
+      if(bundle != null) {
+        return bundle;
+      }
+      LOG.verbose("Parallel parsing is not possible for this input, using a single thread.");
+    }
+    return super.loadData();
+  }
+
+  /**
+   * Parse the input file in parallel.
+   *
+   * @param nvparser Parser
+   * @return Bundle, or {@code null} if parallel parsing is not possible.
+   */
+  private MultipleObjectsBundle loadParallel(NumberVectorLabelParser<?> nvparser) {
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".parse").begin() : null;
+    MultipleObjectsBundle parsingResult;
+    try (FileInputStream fis = new FileInputStream(infile); //
+        FileChannel channel = fis.getChannel()) {
+      // Compressed input cannot be split into chunks.
+      ByteBuffer magic = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+      if(channel.read(magic, 0) == 2 && magic.getShort(0) == (short) GZIPInputStream.GZIP_MAGIC) {
+        return null;
+      }
+      parsingResult = nvparser.parseParallel(channel);
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not load input file: " + infile, e);
+    }
+    if(parsingResult == null) {
+      return null;
+    }
+    try {
+      in.close();
+    }
+    catch(IOException e) {
+      LOG.exception(e);
+    }
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+    Duration fduration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".filter").begin() : null;
+    MultipleObjectsBundle objects = invokeBundleFilters(parsingResult);
+    if(fduration != null) {
+      LOG.statistics(fduration.end());
+    }
+    return objects;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
   /**
    * Parameterization class.
    * 
@@ -111,11 +208,24 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
      */
     public static final OptionID INPUT_ID = new OptionID("dbc.in", "The name of the input file to be parsed.");
 
+    /**
+     * Flag to parse the input file on multiple threads.
+     * <p>
+     * Key: {@code -dbc.parallel}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("dbc.parallel", "Parse the input file on multiple threads, split into chunks at line boundaries. Only supported by the number vector label parser, and not for compressed files.");
+
     /**
      * Input stream to process.
      */
     protected File infile;
 
+    /**
+     * Parse the input file in parallel.
+     */
+    protected boolean parallel = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       Class<? extends Parser> defaultParser = NumberVectorLabelParser.class;
@@ -130,11 +240,15 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
       }
       configParser(config, Parser.class, defaultParser);
       configFilters(config);
+      Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF)) {
+        parallel = parallelF.isTrue();
+      }
     }
 
     @Override
     protected FileBasedDatabaseConnection makeInstance() {
-      return new FileBasedDatabaseConnection(filters, parser, infile);
+      return new FileBasedDatabaseConnection(filters, parser, infile, parallel);
     }
   }
 }
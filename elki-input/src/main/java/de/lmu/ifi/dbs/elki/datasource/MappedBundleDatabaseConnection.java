@@ -0,0 +1,306 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Load a database from a bundle file, without copying the vectors onto the
+ * heap.
+ * <p>
+ * The bundle file is memory-mapped, and columns of fixed-dimensional dense
+ * {@link DoubleVector}s and {@link FloatVector}s are exposed as
+ * {@link MappedNumberVectorColumn}s, reading the values directly from the
+ * mapped file. {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase} uses
+ * such columns as relation storage, so loading a bundle only needs to map the
+ * file. If all columns are mapped, the file is not even read during loading;
+ * otherwise it is scanned once to decode the other columns (e.g. labels).
+ * <p>
+ * Bundles containing DBIDs are loaded into memory as with
+ * {@link BundleDatabaseConnection}, and filters will usually copy the data.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.composedOf MappedNumberVectorColumn
+ */
+public class MappedBundleDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedBundleDatabaseConnection.class);
+
+  /**
+   * Minimum number of bytes to keep mapped ahead when scanning the file.
+   */
+  private static final int SCAN_RESERVE = 1 << 20;
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public MappedBundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    super(filters);
+    this.infile = infile;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try (FileInputStream fis = new FileInputStream(infile); //
+        FileChannel channel = fis.getChannel()) {
+      // Mappings remain valid after closing the channel.
+      return invokeBundleFilters(load(channel));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading bundle", e);
+    }
+  }
+
+  /**
+   * Map the bundle file.
+   *
+   * @param channel Input channel
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  protected MultipleObjectsBundle load(FileChannel channel) throws IOException {
+    final long size = channel.size();
+    ByteBuffer window = channel.map(MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+    if(window.getInt() != BundleReader.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int nummeta = window.getInt();
+    SimpleTypeInformation<?>[] types = new SimpleTypeInformation<?>[nummeta];
+    // Header bytes of each vector, -1 for columns that are not mapped.
+    int[] skip = new int[nummeta];
+    boolean allmapped = true;
+    long maxrecord = 0;
+    for(int i = 0; i < nummeta; i++) {
+      types[i] = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(window);
+      if(i == 0 && DBID.class.isAssignableFrom(types[i].getRestrictionClass())) {
+        LOG.verbose("Bundle contains DBIDs, loading it into memory.");
+        return new BundleReader(channel).asMultipleObjectsBundle();
+      }
+      skip[i] = vectorHeaderSize(types[i]);
+      if(skip[i] < 0) {
+        allmapped = false;
+        continue;
+      }
+      maxrecord += skip[i] + MappedNumberVectorColumn.vectorBytes(dimensionality(types[i]), isSingle(types[i]));
+    }
+    final long headerend = window.position();
+    // Overlap segments by one record, so each vector is in a single segment.
+    ByteBuffer[] segments = mapSegments(channel, size, maxrecord);
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    if(allmapped) {
+      // Fixed size records: no need to read the data.
+      if(maxrecord == 0 || (size - headerend) % maxrecord != 0) {
+        throw new AbortException("Bundle size does not match the record size.");
+      }
+      final long n = (size - headerend) / maxrecord;
+      if(n > Integer.MAX_VALUE) {
+        throw new AbortException("Too many objects in bundle: " + n);
+      }
+      long start = headerend;
+      for(int i = 0; i < nummeta; i++) {
+        final int dim = dimensionality(types[i]);
+        final boolean single = isSingle(types[i]);
+        bundle.appendColumn(types[i], new MappedNumberVectorColumn(segments, (int) n, dim, single, start + skip[i], maxrecord));
+        start += skip[i] + MappedNumberVectorColumn.vectorBytes(dim, single);
+      }
+      return bundle;
+    }
+    // Scan the file once, to locate the vectors and decode other columns.
+    long[][] positions = new long[nummeta][];
+    List<List<Object>> data = new ArrayList<>(nummeta);
+    for(int i = 0; i < nummeta; i++) {
+      positions[i] = skip[i] >= 0 ? new long[1024] : null;
+      data.add(skip[i] >= 0 ? null : new ArrayList<>());
+    }
+    long wstart = 0;
+    int n = 0;
+    try {
+      while(wstart + window.position() < size) {
+        if(window.remaining() < SCAN_RESERVE && wstart + window.limit() < size) {
+          wstart += window.position();
+          window = channel.map(MapMode.READ_ONLY, wstart, Math.min(size - wstart, Integer.MAX_VALUE));
+        }
+        for(int i = 0; i < nummeta; i++) {
+          if(skip[i] < 0) {
+            data.get(i).add(types[i].getSerializer().fromByteBuffer(window));
+            continue;
+          }
+          if(n == positions[i].length) {
+            positions[i] = Arrays.copyOf(positions[i], n + (n >>> 1));
+          }
+          positions[i][n] = wstart + window.position() + skip[i];
+          window.position(window.position() + skip[i] + (int) MappedNumberVectorColumn.vectorBytes(dimensionality(types[i]), isSingle(types[i])));
+        }
+        ++n;
+      }
+    }
+    catch(BufferUnderflowException | IllegalArgumentException e) {
+      throw new AbortException("Truncated or corrupt bundle, or an object too large to scan.", e);
+    }
+    for(int i = 0; i < nummeta; i++) {
+      bundle.appendColumn(types[i], skip[i] < 0 ? data.get(i) : //
+          new MappedNumberVectorColumn(segments, n, dimensionality(types[i]), isSingle(types[i]), positions[i]));
+    }
+    return bundle;
+  }
+
+  /**
+   * Map the file in overlapping segments.
+   *
+   * @param channel Input channel
+   * @param size File size
+   * @param overlap Overlap of segments
+   * @return Mapped segments
+   * @throws IOException on IO errors
+   */
+  private static ByteBuffer[] mapSegments(FileChannel channel, long size, long overlap) throws IOException {
+    final long segsize = 1L << MappedNumberVectorColumn.SEGMENT_BITS;
+    if(segsize + overlap > Integer.MAX_VALUE) {
+      throw new AbortException("Records too large to be mapped.");
+    }
+    ByteBuffer[] segments = new ByteBuffer[(int) ((size + segsize - 1) / segsize)];
+    for(int i = 0; i < segments.length; i++) {
+      final long start = i * segsize;
+      segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(size - start, segsize + overlap));
+    }
+    return segments;
+  }
+
+  /**
+   * Get the size of the header of a serialized vector, if the column can be
+   * mapped.
+   *
+   * @param type Column type
+   * @return Header size, or -1 if the column cannot be mapped.
+   */
+  private static int vectorHeaderSize(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return -1;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    if(vtype.mindim() != vtype.maxdim()) {
+      return -1;
+    }
+    ByteBufferSerializer<?> ser = type.getSerializer();
+    if(ser instanceof DoubleVector.VariableSerializer || ser instanceof FloatVector.VariableSerializer) {
+      return ByteArrayUtil.getUnsignedVarintSize(vtype.mindim());
+    }
+    if(ser instanceof DoubleVector.ShortSerializer || ser instanceof FloatVector.ShortSerializer) {
+      return ByteArrayUtil.SIZE_SHORT;
+    }
+    if(ser instanceof DoubleVector.SmallSerializer || ser instanceof FloatVector.SmallSerializer) {
+      return ByteArrayUtil.SIZE_BYTE;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the dimensionality of a mapped column.
+   *
+   * @param type Column type
+   * @return Dimensionality
+   */
+  private static int dimensionality(SimpleTypeInformation<?> type) {
+    return ((VectorFieldTypeInformation<?>) type).mindim();
+  }
+
+  /**
+   * Test whether a mapped column uses single precision.
+   *
+   * @param type Column type
+   * @return {@code true} for float vectors
+   */
+  private static boolean isSingle(SimpleTypeInformation<?> type) {
+    ByteBufferSerializer<?> ser = type.getSerializer();
+    return ser instanceof FloatVector.VariableSerializer || ser instanceof FloatVector.ShortSerializer || ser instanceof FloatVector.SmallSerializer;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(BundleDatabaseConnection.Parameterizer.BUNDLE_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+    }
+
+    @Override
+    protected MappedBundleDatabaseConnection makeInstance() {
+      return new MappedBundleDatabaseConnection(filters, infile);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+
+/**
+ * Bundle column of fixed-dimensional number vectors, that are not copied onto
+ * the heap, but read on demand from a memory-mapped bundle file.
+ * <p>
+ * Because a single mapped buffer is limited to 2 GB, the file is mapped in
+ * segments of {@code 1 << SEGMENT_BITS} bytes. Each segment overlaps the next
+ * by one record, so every vector is contained in a single segment.
+ * <p>
+ * {@link #get} returns lightweight views onto the mapped buffer. The buffers
+ * are mapped read-only, so several processes loading the same file share the
+ * operating system page cache.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.has View
+ */
+public class MappedNumberVectorColumn extends AbstractList<NumberVector> {
+  /**
+   * Number of bits of the segment size.
+   */
+  public static final int SEGMENT_BITS = 30;
+
+  /**
+   * Mapped segments.
+   */
+  private final ByteBuffer[] segments;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Store single precision values.
+   */
+  private final boolean single;
+
+  /**
+   * Position of the first vector, and distance of consecutive vectors.
+   */
+  private final long start, stride;
+
+  /**
+   * Positions of the vectors, or {@code null} for a constant stride.
+   */
+  private final long[] positions;
+
+  /**
+   * Constructor for vectors with a constant stride.
+   *
+   * @param segments Mapped segments
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param single Values are stored as {@code float}
+   * @param start File position of the first value of the first vector
+   * @param stride Distance of consecutive vectors, in bytes
+   */
+  public MappedNumberVectorColumn(ByteBuffer[] segments, int size, int dim, boolean single, long start, long stride) {
+    super();
+    this.segments = segments;
+    this.size = size;
+    this.dim = dim;
+    this.single = single;
+    this.start = start;
+    this.stride = stride;
+    this.positions = null;
+  }
+
+  /**
+   * Constructor for vectors at arbitrary positions.
+   *
+   * @param segments Mapped segments
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param single Values are stored as {@code float}
+   * @param positions File positions of the first value of each vector
+   */
+  public MappedNumberVectorColumn(ByteBuffer[] segments, int size, int dim, boolean single, long[] positions) {
+    super();
+    this.segments = segments;
+    this.size = size;
+    this.dim = dim;
+    this.single = single;
+    this.start = 0;
+    this.stride = 0;
+    this.positions = positions;
+  }
+
+  /**
+   * Size of a single stored vector, in bytes.
+   *
+   * @param dim Dimensionality
+   * @param single Values are stored as {@code float}
+   * @return Size in bytes
+   */
+  public static long vectorBytes(int dim, boolean single) {
+    return dim * (single ? 4L : 8L);
+  }
+
+  @Override
+  public NumberVector get(int index) {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + " size: " + size);
+    }
+    final long pos = positions != null ? positions[index] : start + index * stride;
+    final ByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+    final int off = (int) (pos & ((1L << SEGMENT_BITS) - 1));
+    return single ? new FloatView(segment, off, dim) : new DoubleView(segment, off, dim);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Abstract base class for views onto a mapped vector.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class View implements NumberVector {
+    /**
+     * Mapped segment.
+     */
+    protected final ByteBuffer buffer;
+
+    /**
+     * Offset of the first value in the segment.
+     */
+    protected final int offset;
+
+    /**
+     * Dimensionality.
+     */
+    protected final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped segment
+     * @param offset Offset of the first value
+     * @param dim Dimensionality
+     */
+    protected View(ByteBuffer buffer, int offset, int dim) {
+      super();
+      this.buffer = buffer;
+      this.offset = offset;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] values = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        values[d] = doubleValue(d);
+      }
+      return values;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int i = 0; i < dim; i++) {
+        featureLine.append(doubleValue(i));
+        if(i + 1 < dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * View onto a mapped vector of {@code double} values.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleView extends View {
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped segment
+     * @param offset Offset of the first value
+     * @param dim Dimensionality
+     */
+    DoubleView(ByteBuffer buffer, int offset, int dim) {
+      super(buffer, offset, dim);
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return buffer.getDouble(offset + (dimension << 3));
+    }
+  }
+
+  /**
+   * View onto a mapped vector of {@code float} values.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatView extends View {
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped segment
+     * @param offset Offset of the first value
+     * @param dim Dimensionality
+     */
+    FloatView(ByteBuffer buffer, int offset, int dim) {
+      super(buffer, offset, dim);
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return buffer.getFloat(offset + (dimension << 2));
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      assert (dimension < dim) : "Dimension out of range.";
+      return buffer.getFloat(offset + (dimension << 2));
+    }
+  }
+}
@@ -20,10 +20,17 @@
  */
 package de.lmu.ifi.dbs.elki.datasource.parser;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -35,7 +42,9 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.VectorTypeInformation;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
@@ -75,6 +84,21 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    */
   private static final Logging LOG = Logging.getLogger(NumberVectorLabelParser.class);
 
+  /**
+   * Minimum number of bytes per chunk, for parallel parsing.
+   */
+  private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+  /**
+   * Maximum number of bytes per chunk, for parallel parsing.
+   */
+  private static final long MAX_CHUNK_SIZE = 1L << 24;
+
+  /**
+   * Input format.
+   */
+  private CSVReaderFormat format;
+
   /**
    * Keeps the indices of the attributes to be treated as a string label.
    */
@@ -130,6 +154,12 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    */
   ObjectOpenHashSet<String> unique = new ObjectOpenHashSet<>();
 
+  /**
+   * For String unification across the chunks of parallel parsing, or
+   * {@code null}.
+   */
+  ConcurrentMap<String, String> sharedunique = null;
+
   /**
    * Event to report next.
    */
@@ -140,6 +170,12 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    */
   boolean warnedPrecision = false;
 
+  /**
+   * Whether the input begins at the start of the file, so that a row without
+   * numerical values may be the header row.
+   */
+  boolean fileStart = true;
+
   /**
    * Constructor.
    *
@@ -149,6 +185,7 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    */
   public NumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, Factory<V> factory) {
     super(format);
+    this.format = format;
     this.labelIndices = labelIndices;
     this.factory = factory;
   }
@@ -294,12 +331,11 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
       String lbl = tokenizer.getStrippedSubstring();
       if(lbl.length() > 0) {
         haslabels = true;
-        lbl = unique.addOrGet(lbl);
-        labels.add(lbl);
+        labels.add(intern(lbl));
       }
     }
     // Maybe a label row?
-    if(curvec == null && attributes.size == 0) {
+    if(curvec == null && attributes.size == 0 && fileStart) {
       columnnames = new ArrayList<>(labels);
       haslabels = false;
       curvec = null;
@@ -315,6 +351,24 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
     return true;
   }
 
+  /**
+   * Unify label strings, so that repeated labels share the same object.
+   *
+   * @param lbl Label
+   * @return Unified label
+   */
+  private String intern(String lbl) {
+    if(sharedunique == null) {
+      return unique.addOrGet(lbl);
+    }
+    // Try a lock-free lookup first, as most labels repeat:
+    String prev = sharedunique.get(lbl);
+    if(prev == null) {
+      prev = sharedunique.putIfAbsent(lbl, lbl);
+    }
+    return prev != null ? prev : lbl;
+  }
+
   /**
    * Creates a database object of type V.
    *
@@ -324,6 +378,256 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
     return factory.newNumberVector(attributes, attributes);
   }
 
+  /**
+   * Parse an uncompressed file in parallel.
+   * <p>
+   * The file is split into chunks at line boundaries, which are parsed
+   * independently and merged in order. Because quotes cannot span multiple
+   * lines, this yields the same result as sequential parsing. A header row is
+   * only recognized in the first chunk; if the first chunk does not contain
+   * any data, parallel parsing is not possible.
+   * <p>
+   * This is only supported by this class, not by subclasses, which may keep
+   * additional parser state.
+   *
+   * @param channel File to read
+   * @return Parsed data, or {@code null} if parallel parsing is not possible.
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle parseParallel(FileChannel channel) throws IOException {
+    if(getClass() != NumberVectorLabelParser.class) {
+      return null;
+    }
+    final long size = channel.size();
+    ParallelCore core = ParallelCore.getCore();
+    final long n = Math.max(1, Math.min(size / MIN_CHUNK_SIZE, //
+        Math.max(core.getParallelism() << 2, size / MAX_CHUNK_SIZE)));
+    long[] bounds = new long[(int) n + 1];
+    for(int i = 1; i < n; i++) {
+      bounds[i] = nextLine(channel, Math.max(bounds[i - 1], (long) (size * (i / (double) n))));
+    }
+    bounds[(int) n] = size;
+    columnnames = null;
+    List<Chunk<V>> chunks = new ArrayList<>(Collections.nCopies((int) n, (Chunk<V>) null));
+    // Labels are unified across all chunks:
+    ConcurrentMap<String, String> labels = new ConcurrentHashMap<>();
+    core.invoke(new ParseTask<>(this, channel, bounds, labels, chunks, 0, (int) n));
+    if(chunks.get(0).vectors.isEmpty()) {
+      return null; // Header not necessarily in the first chunk.
+    }
+    // Merge the chunks, in order.
+    int total = 0;
+    mindim = Integer.MAX_VALUE;
+    maxdim = 0;
+    boolean labeled = false;
+    for(Chunk<V> chunk : chunks) {
+      total += chunk.vectors.size();
+      mindim = chunk.mindim < mindim ? chunk.mindim : mindim;
+      maxdim = chunk.maxdim > maxdim ? chunk.maxdim : maxdim;
+      labeled |= chunk.haslabels;
+    }
+    if(maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    List<V> vectors = new ArrayList<>(total);
+    List<LabelList> lbls = labeled ? new ArrayList<LabelList>(total) : null;
+    for(int i = 0; i < chunks.size(); i++) {
+      vectors.addAll(chunks.get(i).vectors);
+      if(lbls != null) {
+        lbls.addAll(chunks.get(i).labels);
+      }
+      chunks.set(i, null);
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(getTypeInformation(mindim, maxdim), vectors);
+    if(lbls != null) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    return bundle;
+  }
+
+  /**
+   * Find the beginning of the next line.
+   *
+   * @param channel File to read
+   * @param pos Starting position
+   * @return Position after the next line feed, or the file size.
+   * @throws IOException on IO errors
+   */
+  private static long nextLine(FileChannel channel, long pos) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    while(true) {
+      buf.clear();
+      final int read = channel.read(buf, pos);
+      if(read <= 0) {
+        return channel.size();
+      }
+      for(int i = 0; i < read; i++) {
+        if(buf.get(i) == '\n') {
+          return pos + i + 1;
+        }
+      }
+      pos += read;
+    }
+  }
+
+  /**
+   * Parse a single chunk.
+   *
+   * @param channel File to read
+   * @param start First byte
+   * @param end End of chunk
+   * @param labels Shared label unification map
+   * @return Parsed chunk
+   * @throws IOException on IO errors
+   */
+  private Chunk<V> parseChunk(FileChannel channel, long start, long end, ConcurrentMap<String, String> labels) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+    while(buf.hasRemaining()) {
+      if(channel.read(buf, start + buf.position()) < 0) {
+        throw new IOException("Unexpected end of file.");
+      }
+    }
+    NumberVectorLabelParser<V> parser = new NumberVectorLabelParser<>(format, labelIndices, factory);
+    parser.fileStart = start == 0;
+    parser.sharedunique = labels;
+    parser.initStream(new ByteArrayInputStream(buf.array()));
+    Chunk<V> chunk = new Chunk<>();
+    try {
+      while(parser.reader.nextLineExceptComments()) {
+        if(parser.parseLineInternal()) {
+          final int curdim = parser.curvec.getDimensionality();
+          chunk.mindim = (curdim < chunk.mindim) ? curdim : chunk.mindim;
+          chunk.maxdim = (curdim > chunk.maxdim) ? curdim : chunk.maxdim;
+          chunk.vectors.add(parser.curvec);
+          chunk.labels.add(parser.curlbl);
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error while parsing line " + parser.reader.getLineNumber() + " of the chunk starting at byte " + start + ".");
+    }
+    finally {
+      parser.cleanup();
+    }
+    chunk.haslabels = parser.haslabels;
+    if(start == 0) {
+      this.columnnames = parser.columnnames;
+    }
+    return chunk;
+  }
+
+  /**
+   * Parsed chunk of the input.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  private static class Chunk<V> {
+    /**
+     * Parsed vectors.
+     */
+    List<V> vectors = new ArrayList<>();
+
+    /**
+     * Labels of the vectors.
+     */
+    List<LabelList> labels = new ArrayList<>();
+
+    /**
+     * Dimensionality observed.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Whether labels were found.
+     */
+    boolean haslabels = false;
+  }
+
+  /**
+   * Task to parse a range of chunks.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  private static class ParseTask<V extends NumberVector> extends RecursiveAction {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Parser with the configuration to use.
+     */
+    private NumberVectorLabelParser<V> parser;
+
+    /**
+     * File to read.
+     */
+    private FileChannel channel;
+
+    /**
+     * Chunk boundaries.
+     */
+    private long[] bounds;
+
+    /**
+     * Shared label unification map.
+     */
+    private ConcurrentMap<String, String> labels;
+
+    /**
+     * Output list.
+     */
+    private List<Chunk<V>> chunks;
+
+    /**
+     * Range of chunks to process.
+     */
+    private int begin, end;
+
+    /**
+     * Constructor.
+     *
+     * @param parser Parser with the configuration to use
+     * @param channel File to read
+     * @param bounds Chunk boundaries
+     * @param labels Shared label unification map
+     * @param chunks Output list
+     * @param begin First chunk
+     * @param end End of chunk range
+     */
+    ParseTask(NumberVectorLabelParser<V> parser, FileChannel channel, long[] bounds, ConcurrentMap<String, String> labels, List<Chunk<V>> chunks, int begin, int end) {
+      this.parser = parser;
+      this.channel = channel;
+      this.bounds = bounds;
+      this.labels = labels;
+      this.chunks = chunks;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - begin > 1) {
+        final int mid = (begin + end) >>> 1;
+        invokeAll(new ParseTask<>(parser, channel, bounds, labels, chunks, begin, mid), //
+            new ParseTask<>(parser, channel, bounds, labels, chunks, mid, end));
+        return;
+      }
+      try {
+        // Setting distinct elements of a list of fixed size is thread-safe.
+        chunks.set(begin, parser.parseChunk(channel, bounds[begin], bounds[end], labels));
+      }
+      catch(IOException e) {
+        throw new AbortException("IO error while parsing.", e);
+      }
+    }
+  }
+
   /**
    * Get a prototype object for the given dimensionality.
    *
@@ -0,0 +1,121 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedNumberVectorColumn;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+
+/**
+ * Test loading memory-mapped bundles.
+ *
+ * @author Erich Schubert
+ */
+public class MappedBundleDatabaseConnectionTest extends AbstractDataSourceTest {
+  /**
+   * Test with vectors and labels, which requires scanning the file.
+   */
+  @Test
+  public void testWithLabels() throws IOException {
+    MultipleObjectsBundle orig = readBundle(UNITTEST + "external-id-test-1.csv");
+    assertEquals("Test file not as expected", 2, orig.metaLength());
+    MultipleObjectsBundle bundle = roundtrip(orig);
+    assertTrue("Vectors not mapped", bundle.getColumn(0) instanceof MappedNumberVectorColumn);
+    for(int i = 0; i < orig.dataLength(); i++) {
+      assertEquals("Labels not as expected", orig.data(i, 1).toString(), bundle.data(i, 1).toString());
+    }
+    assertVectorsEqual(orig.getColumn(0), bundle.getColumn(0));
+  }
+
+  /**
+   * Test with double and float vectors only, which uses a constant stride.
+   */
+  @Test
+  public void testVectorsOnly() throws IOException {
+    MultipleObjectsBundle vecs = readBundle(UNITTEST + "transformation-test-1.csv");
+    final int dim = ((VectorFieldTypeInformation<?>) vecs.meta(0)).getDimensionality();
+    List<FloatVector> fvecs = new ArrayList<>(vecs.dataLength());
+    for(Object o : vecs.getColumn(0)) {
+      fvecs.add(FloatVector.FACTORY.newNumberVector((NumberVector) o));
+    }
+    MultipleObjectsBundle orig = new MultipleObjectsBundle();
+    orig.appendColumn(vecs.meta(0), vecs.getColumn(0));
+    orig.appendColumn(new VectorFieldTypeInformation<>(FloatVector.FACTORY, dim), fvecs);
+    MultipleObjectsBundle bundle = roundtrip(orig);
+    assertEquals("Size not as expected", orig.dataLength(), bundle.dataLength());
+    assertVectorsEqual(orig.getColumn(0), bundle.getColumn(0));
+    assertVectorsEqual(orig.getColumn(1), bundle.getColumn(1));
+  }
+
+  /**
+   * Write a bundle to a temporary file, and map it again.
+   *
+   * @param orig Bundle to write
+   * @return Mapped bundle
+   */
+  private static MultipleObjectsBundle roundtrip(MultipleObjectsBundle orig) throws IOException {
+    File file = File.createTempFile("elki-bundle", ".bundle");
+    try {
+      try (FileOutputStream fos = new FileOutputStream(file); //
+          FileChannel channel = fos.getChannel()) {
+        new BundleWriter().writeBundleStream(orig.asStream(), channel);
+      }
+      return new MappedBundleDatabaseConnection(Collections.<ObjectFilter> emptyList(), file).loadData();
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Compare two vector columns.
+   *
+   * @param expected Expected vectors
+   * @param actual Actual vectors
+   */
+  private static void assertVectorsEqual(List<?> expected, List<?> actual) {
+    assertEquals("Size not as expected", expected.size(), actual.size());
+    for(int i = 0; i < expected.size(); i++) {
+      NumberVector e = (NumberVector) expected.get(i), a = (NumberVector) actual.get(i);
+      assertEquals("Dimensionality not as expected", e.getDimensionality(), a.getDimensionality());
+      for(int d = 0; d < e.getDimensionality(); d++) {
+        assertEquals("Value not as expected", e.doubleValue(d), a.doubleValue(d), 0.);
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test the number vector label parser.
+ *
+ * @author Erich Schubert
+ */
+public class NumberVectorLabelParserTest extends AbstractDataSourceTest {
+  /**
+   * Test that parallel parsing yields the same result as sequential parsing.
+   */
+  @Test
+  public void testParallel() throws IOException {
+    File file = File.createTempFile("elki-parser", ".csv");
+    try {
+      Random r = new Random(0L);
+      try (PrintStream out = new PrintStream(file)) {
+        out.println("# Comment before the header");
+        out.println("a,b,c,label");
+        // More than 3 MB, to get multiple chunks.
+        for(int i = 0; i < 60000; i++) {
+          out.println(r.nextDouble() + "," + r.nextGaussian() + "," + i + ",'label " + (i % 7) + "'");
+          if(i % 1000 == 0) {
+            out.println("# Comment");
+          }
+        }
+      }
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      MultipleObjectsBundle expected;
+      try (InputStream is = new FileInputStream(file)) {
+        expected = parser.parse(is);
+      }
+      parser.cleanup();
+      MultipleObjectsBundle actual;
+      try (FileInputStream fis = new FileInputStream(file); //
+          FileChannel channel = fis.getChannel()) {
+        actual = parser.parseParallel(channel);
+      }
+      assertNotNull("Parallel parsing not possible.", actual);
+      assertEquals("Columns do not agree.", expected.metaLength(), actual.metaLength());
+      assertEquals("Sizes do not agree.", expected.dataLength(), actual.dataLength());
+      VectorFieldTypeInformation<?> etype = (VectorFieldTypeInformation<?>) expected.meta(0);
+      VectorFieldTypeInformation<?> atype = (VectorFieldTypeInformation<?>) actual.meta(0);
+      assertEquals("Dimensionality does not agree.", etype.getDimensionality(), atype.getDimensionality());
+      assertEquals("Column names do not agree.", etype.getLabel(2), atype.getLabel(2));
+      for(int i = 0; i < expected.dataLength(); i++) {
+        NumberVector e = (NumberVector) expected.data(i, 0), a = (NumberVector) actual.data(i, 0);
+        for(int d = 0; d < etype.getDimensionality(); d++) {
+          assertEquals("Values do not agree.", e.doubleValue(d), a.doubleValue(d), 0.);
+        }
+        assertEquals("Labels do not agree.", expected.data(i, 1).toString(), actual.data(i, 1).toString());
+        // Labels must be unified across chunks, too:
+        assertSame("Labels not unified.", ((LabelList) actual.data(i % 7, 1)).get(0), ((LabelList) actual.data(i, 1)).get(0));
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+}
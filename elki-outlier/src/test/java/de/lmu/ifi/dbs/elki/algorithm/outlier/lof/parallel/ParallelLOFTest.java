@@ -26,6 +26,7 @@ import de.lmu.ifi.dbs.elki.algorithm.outlier.AbstractOutlierAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -44,4 +45,21 @@ public class ParallelLOFTest extends AbstractOutlierAlgorithmTest {
     testSingleScore(result, 1293, 1.1945314199156365);
     testAUC(db, "Noise", result, 0.8921680672268908);
   }
+
+  @Test
+  public void testParallelLOFWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    ParallelCore core = ParallelCore.getCore();
+    boolean prev = core.isWorkStealing();
+    try {
+      core.setWorkStealing(true);
+      OutlierResult result = new ELKIBuilder<ParallelLOF<DoubleVector>>(ParallelLOF.class) //
+          .with(LOF.Parameterizer.K_ID, 10).build().run(db);
+      testSingleScore(result, 1293, 1.1945314199156365);
+      testAUC(db, "Noise", result, 0.8921680672268908);
+    }
+    finally {
+      core.setWorkStealing(prev);
+    }
+  }
 }
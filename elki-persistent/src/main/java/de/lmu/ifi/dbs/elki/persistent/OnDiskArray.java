@@ -37,13 +37,15 @@ import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
  * structures. The file format is designed to have a fixed-size header followed
  * by the actual data.
  * 
+ * Files larger than 2 GB are mapped in multiple, overlapping segments. If a
+ * file has more than {@link Integer#MAX_VALUE} records, the header stores -1
+ * as number of records, and the number is derived from the file size instead.
+ * 
  * @author Erich Schubert
  * @since 0.2
  * 
  * @apiviz.composedOf RandomAccessFile
  */
-// TODO: ensure file doesn't become to big - check for overflows in recordsize *
-// numrecs + headersize
 public class OnDiskArray implements AutoCloseable {
   /**
    * Serial version.
@@ -73,7 +75,7 @@ public class OnDiskArray implements AutoCloseable {
   /**
    * Number of records in the file.
    */
-  private int numrecs;
+  private long numrecs;
 
   /**
    * File name.
@@ -96,9 +98,17 @@ public class OnDiskArray implements AutoCloseable {
   private boolean writable;
 
   /**
-   * The memory mapped buffer.
+   * The memory mapped buffers. Segment i starts at byte
+   * {@code i << SEGMENT_BITS} of the data, and overlaps with the next segment,
+   * such that every range of up to {@code 1 << SEGMENT_BITS} bytes is
+   * contained in a single buffer.
+   */
+  private MappedByteBuffer[] maps;
+
+  /**
+   * Segment stride for mapping large files (1 GB).
    */
-  private MappedByteBuffer map;
+  private static final int SEGMENT_BITS = 30;
 
   /**
    * Size of the classes header size.
@@ -120,7 +130,7 @@ public class OnDiskArray implements AutoCloseable {
    * @param initialsize Initial file size (in records)
    * @throws IOException on IO errors
    */
-  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, int initialsize) throws IOException {
+  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, long initialsize) throws IOException {
     this.magic = mixMagic((int) serialVersionUID, magicseed);
     this.headersize = extraheadersize + INTERNAL_HEADER_SIZE;
     this.recordsize = recordsize;
@@ -152,7 +162,7 @@ public class OnDiskArray implements AutoCloseable {
       // TODO: more appropriate exception class?
       throw new IOException("File position doesn't match when writing file size.");
     }
-    file.writeInt(initialsize);
+    file.writeInt(headerSize(initialsize));
 
     // we should have written the complete internal header now.
     if (file.getFilePointer() != INTERNAL_HEADER_SIZE) {
@@ -232,12 +242,39 @@ public class OnDiskArray implements AutoCloseable {
    * @throws IOException on mapping error.
    */
   private synchronized void mapArray() throws IOException {
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    unmapArray();
     MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
-    map = file.getChannel().map(mode, headersize, recordsize * numrecs);
+    final long datasize = recordsize * numrecs;
+    final int nseg = datasize <= Integer.MAX_VALUE ? 1 : (int) ((datasize + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+    final long maxlen = nseg == 1 ? datasize : (2L << SEGMENT_BITS) - 1;
+    MappedByteBuffer[] maps = new MappedByteBuffer[nseg];
+    for(int i = 0; i < nseg; i++) {
+      final long start = ((long) i) << SEGMENT_BITS;
+      maps[i] = file.getChannel().map(mode, headersize + start, Math.min(datasize - start, maxlen));
+    }
+    this.maps = maps;
+  }
+
+  /**
+   * Unmap the data array.
+   */
+  private synchronized void unmapArray() {
+    if(maps != null) {
+      for(MappedByteBuffer map : maps) {
+        ByteArrayUtil.unmapByteBuffer(map);
+      }
+      maps = null;
+    }
+  }
+
+  /**
+   * Number of records to store in the header.
+   *
+   * @param numrecs Number of records
+   * @return Header value, -1 if too large
+   */
+  private static int headerSize(long numrecs) {
+    return numrecs <= Integer.MAX_VALUE ? (int) numrecs : -1;
   }
 
   /**
@@ -277,8 +314,10 @@ public class OnDiskArray implements AutoCloseable {
     if (file.getFilePointer() != HEADER_POS_SIZE) {
       throw new IOException("Incorrect file position when reading header.");
     }
-    this.numrecs = file.readInt();
-    if (numrecs < 0 || file.length() != indexToFileposition(numrecs)) {
+    final int hnumrecs = file.readInt();
+    // Large files do not store the number of records.
+    this.numrecs = hnumrecs >= 0 ? hnumrecs : (file.length() - headersize) / recordsize;
+    if (hnumrecs < -1 || (hnumrecs == -1 && numrecs <= Integer.MAX_VALUE) || file.length() != indexToFileposition(numrecs)) {
       throw new IOException("File size and number of records do not agree.");
     }
     // yet another sanity check. We should have read all of our internal header
@@ -321,14 +360,14 @@ public class OnDiskArray implements AutoCloseable {
    * @param newsize New file size.
    * @throws IOException on IO errors
    */
-  public synchronized void resizeFile(int newsize) throws IOException {
+  public synchronized void resizeFile(long newsize) throws IOException {
     if (!writable) {
       throw new IOException("File is not writeable!");
     }
     // update the number of records
     this.numrecs = newsize;
     file.seek(HEADER_POS_SIZE);
-    file.writeInt(numrecs);
+    file.writeInt(headerSize(numrecs));
 
     // resize file
     file.setLength(indexToFileposition(numrecs));
@@ -342,16 +381,52 @@ public class OnDiskArray implements AutoCloseable {
    * @return Byte buffer for the record
    * @throws IOException on IO errors
    */
-  public synchronized ByteBuffer getRecordBuffer(int index) throws IOException {
+  public synchronized ByteBuffer getRecordBuffer(long index) throws IOException {
     if (index < 0 || index >= numrecs) {
       throw new IOException("Access beyond end of file.");
     }
-    // Adjust buffer view
-    synchronized (map) {
-      map.limit(recordsize * (index + 1));
-      map.position(recordsize * index);
-      return map.slice();
+    return view(index * recordsize, recordsize);
+  }
+
+  /**
+   * Get a buffer for a consecutive range of records.
+   *
+   * Unlike {@link #getRecordBuffer(long)}, this method is not synchronized,
+   * so multiple threads can write disjoint ranges concurrently. For files
+   * larger than 2 GB, the range must not exceed 1 GB.
+   *
+   * @param index First record index
+   * @param count Number of records
+   * @return Byte buffer for the records
+   * @throws IOException on IO errors
+   */
+  public ByteBuffer getRecordBuffer(long index, int count) throws IOException {
+    if(index < 0 || count < 0 || index + count > numrecs) {
+      throw new IOException("Access beyond end of file.");
+    }
+    final long len = count * (long) recordsize;
+    if(len > (maps.length == 1 ? Integer.MAX_VALUE : 1L << SEGMENT_BITS)) {
+      throw new IOException("Record range too large.");
     }
+    return view(index * recordsize, (int) len);
+  }
+
+  /**
+   * Get a view of a byte range of the data. The shared buffers are never
+   * repositioned, so this is safe to use concurrently.
+   *
+   * @param pos Start position, relative to the header
+   * @param len Length in bytes
+   * @return Byte buffer view
+   */
+  private ByteBuffer view(long pos, int len) {
+    final MappedByteBuffer[] maps = this.maps;
+    final int seg = (int) Math.min(pos >>> SEGMENT_BITS, maps.length - 1);
+    final int off = (int) (pos - (((long) seg) << SEGMENT_BITS));
+    final ByteBuffer view = maps[seg].duplicate();
+    view.limit(off + len);
+    view.position(off);
+    return view.slice();
   }
 
   /**
@@ -410,10 +485,7 @@ public class OnDiskArray implements AutoCloseable {
    */
   public synchronized void close() throws IOException {
     writable = false;
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    unmapArray();
     if (lock != null) {
       lock.release();
       lock = null;
@@ -426,7 +498,7 @@ public class OnDiskArray implements AutoCloseable {
    * 
    * @return Number of records in the file.
    */
-  public int getNumRecords() {
+  public long getNumRecords() {
     return numrecs;
   }
 
@@ -436,7 +508,7 @@ public class OnDiskArray implements AutoCloseable {
    * @param size Size
    * @throws IOException
    */
-  public void ensureSize(int size) throws IOException {
+  public void ensureSize(long size) throws IOException {
     if (size > getNumRecords()) {
       resizeFile(size);
     }
@@ -84,9 +84,6 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, int matrixsize) throws IOException {
-    if(matrixsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
     this.matrixsize = matrixsize;
     array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, arraysize(matrixsize));
     ByteBuffer header = array.getExtraHeader();
@@ -100,9 +97,6 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public synchronized void resizeMatrix(int newsize) throws IOException {
-    if(newsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
     if(!array.isWritable()) {
       throw new IOException("Can't resize a read-only array.");
     }
@@ -118,8 +112,8 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param matrixsize size of the matrix
    * @return size of the array
    */
-  private static int arraysize(int matrixsize) {
-    return (matrixsize * (matrixsize + 1)) >> 1;
+  private static long arraysize(int matrixsize) {
+    return (matrixsize * (long) (matrixsize + 1)) >> 1;
   }
 
   /**
@@ -129,11 +123,11 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param y Second coordinate
    * @return Linear offset
    */
-  private int computeOffset(int x, int y) {
+  private long computeOffset(int x, int y) {
     if(y > x) {
       return computeOffset(y, x);
     }
-    return ((x * (x + 1)) >> 1) + y;
+    return ((x * (long) (x + 1)) >> 1) + y;
   }
 
   /**
@@ -151,6 +145,26 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
     return array.getRecordBuffer(computeOffset(x, y));
   }
   
+  /**
+   * Get a buffer for a consecutive part of a row, i.e. the records
+   * {@code (x,y)} to {@code (x,y+count-1)}, where {@code y+count-1 <= x}.
+   * 
+   * This method is not synchronized, and intended for filling the matrix from
+   * multiple threads, each writing different records.
+   * 
+   * @param x Row
+   * @param y First column
+   * @param count Number of records
+   * @return Byte buffer for the records
+   * @throws IOException on IO errors
+   */
+  public ByteBuffer getRowBuffer(int x, int y, int count) throws IOException {
+    if(x >= matrixsize || y < 0 || count < 0 || y + count > x + 1) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return array.getRecordBuffer(computeOffset(x, y), count);
+  }
+
   /**
    * Close the matrix file.
    * 
@@ -92,4 +92,48 @@ public class OnDiskArrayTest {
     file.delete(); // Note: probably fails on Windows.
     // We cannot reliably delete mmaped files on Windows, apparently.
   }
+
+  /**
+   * Test a sparse file larger than 2 GB, with more than
+   * {@link Integer#MAX_VALUE} records, which needs multiple mappings.
+   *
+   * @throws IOException on errors.
+   */
+  @Test
+  public void testLargeFile() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete(); // Must be empty
+
+    final int recsize = 3;
+    final long numrec = (1L << 31) + 7;
+    // Records at the start, across segment boundaries, and at the end:
+    final long[] idx = { 0, (1L << 30) / recsize, (1L << 31) / recsize, (3L << 30) / recsize + 1, numrec - 1 };
+    byte[] record = { 31, 41, 59 };
+    OnDiskArray array = new OnDiskArray(file, 1, 0, recsize, numrec);
+    for(long i : idx) {
+      array.getRecordBuffer(i).put(record);
+    }
+    // Range across a segment boundary:
+    ByteBuffer range = array.getRecordBuffer(idx[2] - 1, 3);
+    range.put(record).position(2 * recsize);
+    range.put(record);
+    array.close();
+    assertEquals("File size doesn't match.", 4 * 4 + recsize * numrec, file.length());
+
+    OnDiskArray roarray = new OnDiskArray(file, 1, 0, recsize, false);
+    assertEquals("Number of records incorrect.", numrec, roarray.getNumRecords());
+    byte[] buf = new byte[recsize];
+    for(long i : idx) {
+      roarray.getRecordBuffer(i).get(buf);
+      assertArrayEquals("Record " + i + " doesn't match.", record, buf);
+    }
+    roarray.getRecordBuffer(idx[2] - 1).get(buf);
+    assertArrayEquals("Record doesn't match.", record, buf);
+    roarray.getRecordBuffer(idx[2] + 1).get(buf);
+    assertArrayEquals("Record doesn't match.", record, buf);
+    roarray.close();
+
+    file.delete();
+  }
 }
@@ -22,19 +22,20 @@ package de.lmu.ifi.dbs.elki.application.cache;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.application.AbstractApplication;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangleMatrixPrecomputer;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
@@ -46,10 +47,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Precompute an on-disk distance matrix, using double precision.
  * 
+ * A checksum of the stored values is written next to the matrix file, see
+ * {@link TriangleMatrixPrecomputer#writeChecksum}.
+ * 
  * @author Erich Schubert
  * @since 0.2
  * 
  * @apiviz.has OnDiskUpperTriangleMatrix
+ * @apiviz.uses TriangleMatrixPrecomputer
  * @apiviz.has DistanceFunction
  * 
  * @param <O> Object type
@@ -103,36 +108,40 @@ public class CacheDoubleDistanceInOnDiskMatrix<O> extends AbstractApplication {
     DBIDRange ids = DBIDUtil.assertRange(relation.getDBIDs());
     int size = ids.size();
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distances", (int) (((size + 1) * (long) size) >>> 1), LOG) : null;
+    long checksum;
     try (OnDiskUpperTriangleMatrix matrix = //
         new OnDiskUpperTriangleMatrix(out, DiskCacheBasedDoubleDistanceFunction.DOUBLE_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_DOUBLE, size)) {
-
-      DBIDArrayIter id1 = ids.iter(), id2 = ids.iter();
-      for(; id1.valid(); id1.advance()) {
-        for(id2.seek(id1.getOffset()); id2.valid(); id2.advance()) {
-          double d = distanceQuery.distance(id1, id2);
-          if(debugExtraCheckSymmetry) {
-            double d2 = distanceQuery.distance(id2, id1);
-            if(Math.abs(d - d2) > 0.0000001) {
-              LOG.warning("Distance function doesn't appear to be symmetric!");
-            }
+      checksum = new TriangleMatrixPrecomputer(ids, true, false).run((id1, id2) -> {
+        double d = distanceQuery.distance(id1, id2);
+        if(debugExtraCheckSymmetry) {
+          double d2 = distanceQuery.distance(id2, id1);
+          if(Math.abs(d - d2) > 0.0000001) {
+            LOG.warning("Distance function doesn't appear to be symmetric!");
           }
-          try {
-            matrix.getRecordBuffer(id1.getOffset(), id2.getOffset()).putDouble(d);
-          }
-          catch(IOException e) {
-            throw new AbortException("Error writing distance record " + DBIDUtil.toString(id1) + "," + DBIDUtil.toString(id2) + " to matrix.", e);
+        }
+        return d;
+      }, (x, y, values, len) -> {
+        try {
+          ByteBuffer buf = matrix.getRowBuffer(x, y, len);
+          for(int i = 0; i < len; i++) {
+            buf.putDouble(values[i]);
           }
         }
-        if(prog != null) {
-          prog.setProcessed(prog.getProcessed() + (size - id1.getOffset()), LOG);
+        catch(IOException e) {
+          throw new AbortException("Error writing distance records of row " + x + " to matrix.", e);
         }
-      }
+      }, "Precomputing distances", LOG);
     }
     catch(IOException e) {
       throw new AbortException("Error precomputing distance matrix.", e);
     }
-    LOG.ensureCompleted(prog);
+    LOG.statistics(new StringStatistic(CacheDoubleDistanceInOnDiskMatrix.class.getName() + ".checksum", Long.toHexString(checksum)));
+    try {
+      TriangleMatrixPrecomputer.writeChecksum(out, checksum);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing the checksum of the distance matrix.", e);
+    }
   }
 
   /**
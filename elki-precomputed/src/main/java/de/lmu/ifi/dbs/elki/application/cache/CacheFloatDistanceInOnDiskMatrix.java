@@ -22,19 +22,20 @@ package de.lmu.ifi.dbs.elki.application.cache;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.application.AbstractApplication;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedFloatDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangleMatrixPrecomputer;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
@@ -45,10 +46,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Precompute an on-disk distance matrix, using float precision.
  * 
+ * A checksum of the stored values is written next to the matrix file, see
+ * {@link TriangleMatrixPrecomputer#writeChecksum}.
+ * 
  * @author Erich Schubert
  * @since 0.2
  * 
  * @apiviz.has OnDiskUpperTriangleMatrix
+ * @apiviz.uses TriangleMatrixPrecomputer
  * @apiviz.has DistanceFunction
  * 
  * @param <O> Object type
@@ -102,35 +107,40 @@ public class CacheFloatDistanceInOnDiskMatrix<O> extends AbstractApplication {
     DBIDRange ids = DBIDUtil.assertRange(relation.getDBIDs());
     int size = ids.size();
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distances", (int) (((size + 1) * (long) size) >>> 1), LOG) : null;
+    long checksum;
     try (OnDiskUpperTriangleMatrix matrix = //
         new OnDiskUpperTriangleMatrix(out, DiskCacheBasedFloatDistanceFunction.FLOAT_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_FLOAT, size)) {
-      DBIDArrayIter id1 = ids.iter(), id2 = ids.iter();
-      for(; id1.valid(); id1.advance()) {
-        for(id2.seek(id1.getOffset()); id2.valid(); id2.advance()) {
-          float d = (float) distanceQuery.distance(id1, id2);
-          if(debugExtraCheckSymmetry) {
-            float d2 = (float) distanceQuery.distance(id2, id1);
-            if(Math.abs(d - d2) > 0.0000001) {
-              LOG.warning("Distance function doesn't appear to be symmetric!");
-            }
-          }
-          try {
-            matrix.getRecordBuffer(id1.getOffset(), id2.getOffset()).putFloat(d);
+      checksum = new TriangleMatrixPrecomputer(ids, true, true).run((id1, id2) -> {
+        double d = distanceQuery.distance(id1, id2);
+        if(debugExtraCheckSymmetry) {
+          double d2 = distanceQuery.distance(id2, id1);
+          if(Math.abs(d - d2) > 0.0000001) {
+            LOG.warning("Distance function doesn't appear to be symmetric!");
           }
-          catch(IOException e) {
-            throw new AbortException("Error writing distance record " + DBIDUtil.toString(id1) + "," + DBIDUtil.toString(id2) + " to matrix.", e);
+        }
+        return d;
+      }, (x, y, values, len) -> {
+        try {
+          ByteBuffer buf = matrix.getRowBuffer(x, y, len);
+          for(int i = 0; i < len; i++) {
+            buf.putFloat((float) values[i]);
           }
         }
-        if(prog != null) {
-          prog.setProcessed(prog.getProcessed() + (size - id1.getOffset()), LOG);
+        catch(IOException e) {
+          throw new AbortException("Error writing distance records of row " + x + " to matrix.", e);
         }
-      }
+      }, "Precomputing distances", LOG);
     }
     catch(IOException e) {
       throw new AbortException("Error precomputing distance matrix.", e);
     }
-    prog.ensureCompleted(LOG);
+    LOG.statistics(new StringStatistic(CacheFloatDistanceInOnDiskMatrix.class.getName() + ".checksum", Long.toHexString(checksum)));
+    try {
+      TriangleMatrixPrecomputer.writeChecksum(out, checksum);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing the checksum of the distance matrix.", e);
+    }
   }
 
   /**
@@ -22,6 +22,9 @@ package de.lmu.ifi.dbs.elki.algorithm.projection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -38,7 +41,9 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
@@ -121,7 +126,7 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
 
   public Relation<DoubleVector> run(Database database, Relation<O> relation) {
     AffinityMatrix neighbors = affinity.computeAffinityMatrix(relation, EARLY_EXAGGERATION);
-    double[][] solution = randomInitialSolution(neighbors.size(), dim, random.getSingleThreadedRandom());
+    double[] solution = flatInitialSolution(neighbors.size(), dim, random.getSingleThreadedRandom());
     projectedDistances.setLong(0L);
     optimizetSNE(neighbors, solution);
     LOG.statistics(projectedDistances);
@@ -133,18 +138,38 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     WritableDataStore<DoubleVector> proj = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_SORTED, DoubleVector.class);
     VectorFieldTypeInformation<DoubleVector> otype = new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim);
     for(DBIDArrayIter it = neighbors.iterDBIDs(); it.valid(); it.advance()) {
-      proj.put(it, DoubleVector.wrap(solution[it.getOffset()]));
+      final int off = it.getOffset() * dim;
+      proj.put(it, DoubleVector.wrap(Arrays.copyOfRange(solution, off, off + dim)));
     }
     return new MaterializedRelation<>("tSNE", "t-SNE", otype, proj, ids);
   }
 
+  /**
+   * Generate a random initial solution, in a flat array.
+   *
+   * @param size Data set size
+   * @param dim Output dimensionality
+   * @param random Random generator
+   * @return Initial solution, {@code size * dim} values
+   */
+  protected static double[] flatInitialSolution(final int size, final int dim, Random random) {
+    if(size * (long) dim > 0x7FFF_FFFAL) {
+      throw new AbortException("Memory exceeds Java array size limit.");
+    }
+    double[] sol = new double[size * dim];
+    for(int i = 0; i < sol.length; i++) {
+      sol[i] = random.nextGaussian() * INITIAL_SOLUTION_SCALE;
+    }
+    return sol;
+  }
+
   /**
    * Perform the actual tSNE optimization.
    * 
    * @param pij Sparse initial affinity matrix
    * @param sol Solution output array (preinitialized)
    */
-  protected void optimizetSNE(AffinityMatrix pij, double[][] sol) {
+  protected void optimizetSNE(AffinityMatrix pij, double[] sol) {
     final int size = pij.size();
     if(size * 3L * dim > 0x7FFF_FFFAL) {
       throw new AbortException("Memory exceeds Java array size limit.");
@@ -175,88 +200,82 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
   }
 
-  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
-    final int dim3 = 3 * dim;
-    // Reset gradient / forces
-    for(int off = 0; off < grad.length; off += dim3) {
-      Arrays.fill(grad, off, off + dim, 0.);
-    }
+  /**
+   * Compute the gradients, using the worker threads.
+   *
+   * @param pij Sparse affinity matrix
+   * @param solution Current solution
+   * @param grad Metadata array, gradient output
+   */
+  private void computeGradient(AffinityMatrix pij, double[] solution, double[] grad) {
     // Compute repulsive forces first:
     QuadTree tree = QuadTree.build(dim, solution);
-    double z = 0.;
-    for(int i = 0, off = 0; i < solution.length; i++, off += dim3) {
-      z -= computeRepulsiveForces(grad, off, solution[i], tree);
-    }
-    // Normalize repulsive forces:
-    double s = 1 / z; // Scaling factor
-    for(int off = 0; off < grad.length; off += dim3) {
-      for(int j = 0; j < dim; j++) {
-        grad[off + j] *= s;
-      }
-    }
-    // Compute attractive forces second
-    computeAttractiveForces(grad, pij, solution);
+    GradientTask rep = new GradientTask(pij, solution, grad, tree, 0, pij.size());
+    runTask(rep);
+    // Normalize repulsive forces, and add attractive forces:
+    GradientTask attr = new GradientTask(pij, solution, grad, null, 0, pij.size());
+    attr.scale = -1. / rep.z;
+    runTask(attr);
+    projectedDistances.increment(rep.distances + attr.distances);
   }
 
-  private void computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol) {
-    final int dim3 = 3 * dim;
-    for(int i = 0, off = 0; off < attr.length; i++, off += dim3) {
-      final double[] sol_i = sol[i];
-      for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
-        final double[] sol_j = sol[pij.iterDim(i, offj)];
-        final double pij_ij = pij.iterValue(i, offj);
-        final double a = pij_ij / (1. + sqDist(sol_i, sol_j));
-        for(int k = 0; k < dim; k++) {
-          attr[off + k] += a * (sol_i[k] - sol_j[k]);
-        }
-      }
+  /**
+   * Run a gradient task, in parallel if large enough.
+   *
+   * The split into blocks only depends on the data size, so the result does
+   * not depend on the number of threads.
+   *
+   * @param task Task to run
+   */
+  private void runTask(GradientTask task) {
+    if(task.end - task.begin > GradientTask.BLOCKSIZE) {
+      ParallelCore.getCore().invoke(task);
+    }
+    else {
+      task.process();
     }
   }
 
   /**
-   * Compute the repulsive forces for a single point
+   * Update the current solution on iteration.
    * 
-   * @param rep_i Repulsive forces array
-   * @param off Point offset
-   * @param sol_i Solution vector
-   * @param node Quad tree
-   * @return force strength
+   * @param sol Solution array
+   * @param meta Metadata array (gradient, momentum, learning rate)
+   * @param it Iteration number, to choose momentum factor.
    */
-  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
-    final double[] center = node.center;
-    double dist = sqDist(sol_i, center);
-    // Barnes-Hut approximation:
-    if(node.weight == 1 || node.squareSize / dist < sqtheta) {
-      double u = 1. / (1. + dist);
-      double z = node.weight * u;
-      double a = z * u;
+  protected void updateSolution(double[] sol, double[] meta, int it) {
+    final double mom = (it < momentumSwitch && initialMomentum < finalMomentum) ? initialMomentum : finalMomentum;
+    final int dim3 = dim * 3;
+    for(int i = 0, off = 0; i < sol.length; i += dim, off += dim3) {
       for(int k = 0; k < dim; k++) {
-        // TODO: van der Maaten avoids computing this difference twice (also
-        // done in sqDist) - we should also use this optimization.
-        rep_i[off + k] += a * (sol_i[k] - center[k]);
-      }
-      return z;
-    }
-    double z = 0.;
-    // Aggregate points in this node:
-    if(node.points != null) {
-      for(double[] point : node.points) {
-        double pdist = sqDist(sol_i, point);
-        double pz = 1. / (1. + pdist);
-        double a = pz * pz;
-        for(int k = 0; k < dim; k++) {
-          rep_i[off + k] += a * (sol_i[k] - point[k]);
-        }
-        z += pz;
+        // Indexes in meta array
+        final int gradk = off + k, movk = gradk + dim, gaink = movk + dim;
+        // Adjust learning rate:
+        meta[gaink] = MathUtil.max(((meta[gradk] > 0) != (meta[movk] > 0)) ? (meta[gaink] + 0.2) : (meta[gaink] * 0.8), MIN_GAIN);
+        meta[movk] *= mom; // Dampening the previous momentum
+        meta[movk] -= learningRate * meta[gradk] * meta[gaink]; // Learn
+        sol[i + k] += meta[movk];
       }
     }
-    // Recurse into subtrees:
-    if(node.children != null) {
-      for(QuadTree child : node.children) {
-        z += computeRepulsiveForces(rep_i, off, sol_i, child);
-      }
+  }
+
+  /**
+   * Squared distance, in projection space.
+   *
+   * @param v1 First array
+   * @param o1 First offset
+   * @param v2 Second array
+   * @param o2 Second offset
+   * @param dim Dimensionality
+   * @return Squared distance
+   */
+  private static double sqDist(double[] v1, int o1, double[] v2, int o2, int dim) {
+    double sum = 0;
+    for(int k = 0; k < dim; k++) {
+      final double diff = v1[o1 + k] - v2[o2 + k];
+      sum += diff * diff;
     }
-    return z;
+    return sum;
   }
 
   @Override
@@ -269,24 +288,221 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     return LOG;
   }
 
+  /**
+   * Task to compute the forces for a block of points.
+   *
+   * With a tree, this computes the (unnormalized) repulsive forces and their
+   * sum z, overwriting the previous gradient. Without a tree, the gradient is
+   * scaled, and the attractive forces are added.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class GradientTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of points per leaf task.
+     */
+    static final int BLOCKSIZE = 1024;
+
+    /**
+     * Affinity matrix.
+     */
+    private AffinityMatrix pij;
+
+    /**
+     * Current solution.
+     */
+    private double[] sol;
+
+    /**
+     * Gradient output, in metadata array.
+     */
+    private double[] grad;
+
+    /**
+     * Quad tree, or {@code null} for attractive forces.
+     */
+    private QuadTree tree;
+
+    /**
+     * Range of points.
+     */
+    private int begin, end;
+
+    /**
+     * Scaling factor for the repulsive forces.
+     */
+    double scale;
+
+    /**
+     * Sum of repulsive forces (output).
+     */
+    double z;
+
+    /**
+     * Number of distance computations (output).
+     */
+    long distances;
+
+    /**
+     * Constructor.
+     *
+     * @param pij Affinity matrix
+     * @param sol Current solution
+     * @param grad Gradient output
+     * @param tree Quad tree, or {@code null} for attractive forces
+     * @param begin First point
+     * @param end End point (exclusive)
+     */
+    GradientTask(AffinityMatrix pij, double[] sol, double[] grad, QuadTree tree, int begin, int end) {
+      this.pij = pij;
+      this.sol = sol;
+      this.grad = grad;
+      this.tree = tree;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - begin <= BLOCKSIZE) {
+        process();
+        return;
+      }
+      final int mid = (begin + end) >>> 1;
+      GradientTask left = new GradientTask(pij, sol, grad, tree, begin, mid);
+      GradientTask right = new GradientTask(pij, sol, grad, tree, mid, end);
+      left.scale = right.scale = scale;
+      invokeAll(left, right);
+      z = left.z + right.z;
+      distances = left.distances + right.distances;
+    }
+
+    /**
+     * Process the block sequentially.
+     */
+    void process() {
+      final int dim3 = 3 * dim;
+      for(int i = begin, off = begin * dim3; i < end; i++, off += dim3) {
+        if(tree != null) {
+          Arrays.fill(grad, off, off + dim, 0.);
+          z += computeRepulsiveForces(grad, off, sol, i * dim, tree);
+        }
+        else {
+          for(int k = 0; k < dim; k++) {
+            grad[off + k] *= scale;
+          }
+          computeAttractiveForces(grad, off, i);
+        }
+      }
+    }
+
+    /**
+     * Compute the attractive forces for a single point.
+     *
+     * @param attr Gradient array
+     * @param off Gradient offset
+     * @param i Point index
+     */
+    private void computeAttractiveForces(double[] attr, int off, int i) {
+      final int offi = i * dim;
+      for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
+        final int offs = pij.iterDim(i, offj) * dim;
+        final double pij_ij = pij.iterValue(i, offj);
+        final double a = pij_ij / (1. + sqDist(sol, offi, sol, offs, dim));
+        for(int k = 0; k < dim; k++) {
+          attr[off + k] += a * (sol[offi + k] - sol[offs + k]);
+        }
+        ++distances;
+      }
+    }
+
+    /**
+     * Compute the repulsive forces for a single point
+     * 
+     * @param rep_i Repulsive forces array
+     * @param off Point offset
+     * @param sol Solution array
+     * @param offi Offset of the point in the solution
+     * @param node Quad tree
+     * @return force strength
+     */
+    private double computeRepulsiveForces(double[] rep_i, int off, double[] sol, int offi, QuadTree node) {
+      final double[] center = node.center;
+      double dist = sqDist(sol, offi, center, 0, dim);
+      ++distances;
+      // Barnes-Hut approximation:
+      if(node.weight == 1 || node.squareSize / dist < sqtheta) {
+        double u = 1. / (1. + dist);
+        double z = node.weight * u;
+        double a = z * u;
+        for(int k = 0; k < dim; k++) {
+          // TODO: van der Maaten avoids computing this difference twice (also
+          // done in sqDist) - we should also use this optimization.
+          rep_i[off + k] += a * (sol[offi + k] - center[k]);
+        }
+        return z;
+      }
+      double z = 0.;
+      // Aggregate points in this node:
+      if(node.points != null) {
+        final double[] data = node.data;
+        for(int point : node.points) {
+          double pdist = sqDist(sol, offi, data, point, dim);
+          ++distances;
+          double pz = 1. / (1. + pdist);
+          double a = pz * pz;
+          for(int k = 0; k < dim; k++) {
+            rep_i[off + k] += a * (sol[offi + k] - data[point + k]);
+          }
+          z += pz;
+        }
+      }
+      // Recurse into subtrees:
+      if(node.children != null) {
+        for(QuadTree child : node.children) {
+          z += computeRepulsiveForces(rep_i, off, sol, offi, child);
+        }
+      }
+      return z;
+    }
+  }
+
   /**
    * Quad Tree for use in a Barnes-Hut approximation.
    * 
    * This tree stores in every node the number of points contained, the center
-   * of mass, and the diagonal of the cell.
+   * of mass, and the diagonal of the cell. Points are referenced by their
+   * offset in the flat solution array. Large subtrees are built in parallel.
    * 
    * @author Erich Schubert
    */
   protected static class QuadTree {
+    /**
+     * Minimum number of points to build subtrees in parallel.
+     */
+    private static final int PARALLEL_BUILD = 1 << 14;
+
     /**
      * Center of mass (NOT center of bounding box)
      */
     public double[] center;
 
     /**
-     * Points stored in this node.
+     * Data array (for points).
      */
-    public double[][] points;
+    public double[] data;
+
+    /**
+     * Offsets of points stored in this node.
+     */
+    public int[] points;
 
     /**
      * Square size of this node, for Barnes-Hut approximation.
@@ -306,15 +522,17 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     /**
      * Constructor.
      *
-     * @param data Data points
+     * @param data Data array
+     * @param points Point offsets
      * @param children Child nodes
      * @param mid Center of mass
      * @param weight Node weight
      * @param squareSize Square size of the node
      */
-    private QuadTree(double[][] data, QuadTree[] children, double[] mid, int weight, double squareSize) {
+    private QuadTree(double[] data, int[] points, QuadTree[] children, double[] mid, int weight, double squareSize) {
       this.center = mid;
-      this.points = data;
+      this.data = data;
+      this.points = points;
       this.weight = weight;
       this.squareSize = squareSize;
       this.children = children;
@@ -324,122 +542,201 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * Construct the quad tree approximation.
      * 
      * @param dim Dimensionality
-     * @param data Data set (will be modified!)
+     * @param data Data set, flat array (will not be modified)
      * @return Quad tree
      */
-    public static QuadTree build(int dim, double[][] data) {
-      return build(dim, data.clone(), 0, data.length);
+    public static QuadTree build(int dim, double[] data) {
+      final int size = data.length / dim;
+      int[] idx = new int[size];
+      for(int i = 0, off = 0; i < size; i++, off += dim) {
+        idx[i] = off;
+      }
+      BuildTask task = new BuildTask(dim, data, idx, 0, size);
+      if(size >= PARALLEL_BUILD && ParallelCore.getCore().getParallelism() > 1) {
+        return ParallelCore.getCore().invoke(task);
+      }
+      return task.build();
     }
 
     /**
-     * Recursive build function.
-     * 
-     * @param dim Dimensionality
-     * @param data Input data (WILL BE MODIFIED)
-     * @param begin Subset begin
-     * @param end Subset end
-     * @return Subtree
+     * Task to build a subtree; children of large subtrees are built in
+     * parallel.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
      */
-    private static QuadTree build(int dim, double[][] data, int begin, int end) {
-      double[] minmax = computeExtend(dim, data, begin, end);
-      double squareSize = computeSquareSize(minmax);
-      double[] mid = computeCenterofMass(dim, data, begin, end);
-      // Leaf:
-      final int size = end - begin;
-      if(squareSize <= QUADTREE_MIN_RESOLUION) {
-        data = Arrays.copyOfRange(data, begin, end);
-        return new QuadTree(data, null, mid, size, squareSize);
+    private static class BuildTask extends RecursiveTask<QuadTree> {
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Dimensionality.
+       */
+      private int dim;
+
+      /**
+       * Data array.
+       */
+      private double[] data;
+
+      /**
+       * Point offsets (WILL BE MODIFIED).
+       */
+      private int[] idx;
+
+      /**
+       * Subset.
+       */
+      private int begin, end;
+
+      /**
+       * Constructor.
+       *
+       * @param dim Dimensionality
+       * @param data Data array
+       * @param idx Point offsets (will be modified)
+       * @param begin Subset begin
+       * @param end Subset end
+       */
+      BuildTask(int dim, double[] data, int[] idx, int begin, int end) {
+        this.dim = dim;
+        this.data = data;
+        this.idx = idx;
+        this.begin = begin;
+        this.end = end;
       }
 
-      ArrayList<double[]> singletons = new ArrayList<>();
-      ArrayList<QuadTree> children = new ArrayList<>();
-      splitRecursively(data, begin, end, 0, dim, minmax, singletons, children);
+      @Override
+      protected QuadTree compute() {
+        return build();
+      }
 
-      double[][] sing = singletons.size() > 0 ? singletons.toArray(new double[singletons.size()][]) : null;
-      QuadTree[] chil = children.size() > 0 ? children.toArray(new QuadTree[children.size()]) : null;
-      return new QuadTree(sing, chil, mid, size, squareSize);
-    }
+      /**
+       * Build the subtree, forking for large children when running on the
+       * fork-join pool.
+       *
+       * @return Subtree
+       */
+      QuadTree build() {
+        double[] minmax = computeExtend(dim, data, idx, begin, end);
+        double squareSize = computeSquareSize(minmax);
+        double[] mid = computeCenterofMass(dim, data, idx, begin, end);
+        // Leaf:
+        final int size = end - begin;
+        if(squareSize <= QUADTREE_MIN_RESOLUION) {
+          return new QuadTree(data, Arrays.copyOfRange(idx, begin, end), null, mid, size, squareSize);
+        }
 
-    /**
-     * Build the quadtree by recursive splitting.
-     * 
-     * @param data Input data
-     * @param begin Subset begin
-     * @param end Subset end
-     * @param initdim Current dimension
-     * @param dims Data dimensionality
-     * @param minmax Bounding box
-     * @param singletons Output for singletons
-     * @param children Output for child nodes
-     */
-    private static void splitRecursively(double[][] data, int begin, int end, int initdim, int dims, double[] minmax, ArrayList<double[]> singletons, ArrayList<QuadTree> children) {
-      final int len = end - begin;
-      if(len <= 1) {
-        if(len == 1) {
-          singletons.add(data[begin]);
+        IntegerArray singletons = new IntegerArray();
+        ArrayList<BuildTask> children = new ArrayList<>();
+        splitRecursively(begin, end, 0, minmax, singletons, children);
+
+        QuadTree[] chil = null;
+        if(children.size() > 0) {
+          chil = new QuadTree[children.size()];
+          final boolean fork = size >= PARALLEL_BUILD && inForkJoinPool();
+          for(int i = 0; i < chil.length; i++) {
+            BuildTask child = children.get(i);
+            if(fork && child.end - child.begin >= PARALLEL_BUILD) {
+              child.fork();
+            }
+            else {
+              chil[i] = child.build();
+            }
+          }
+          if(fork) {
+            for(int i = 0; i < chil.length; i++) {
+              if(chil[i] == null) {
+                chil[i] = children.get(i).join();
+              }
+            }
+          }
         }
-        return;
+        int[] sing = singletons.size() > 0 ? singletons.toArray() : null;
+        return new QuadTree(data, sing, chil, mid, size, squareSize);
       }
-      double mid = Double.NaN;
-      // Find next non-zero dimension:
-      int cur = initdim;
-      while(true) {
-        int dim2 = cur << 1;
-        double min = minmax[dim2], max = minmax[dim2 + 1];
-        mid = .5 * (min + max);
-        if(min < mid) {
-          break; // Non-constant dimension found.
-        }
-        ++cur; // Try next dimension
-        // All remaining dimensions were constant?
-        if(cur == dims) {
-          LOG.warning("Should not be reached", new Throwable());
-          assert (initdim != 0) : "All dimensions constant?";
-          LOG.warning("Unexpected all-constant split.");
-          double[] center = computeCenterofMass(dims, data, begin, end);
-          data = Arrays.copyOfRange(data, begin, end);
-          children.add(new QuadTree(data, null, center, len, 0.));
+
+      /**
+       * Build the quadtree by recursive splitting.
+       * 
+       * @param begin Subset begin
+       * @param end Subset end
+       * @param initdim Current dimension
+       * @param minmax Bounding box
+       * @param singletons Output for singletons
+       * @param children Output for child nodes
+       */
+      private void splitRecursively(int begin, int end, int initdim, double[] minmax, IntegerArray singletons, ArrayList<BuildTask> children) {
+        final int len = end - begin;
+        if(len <= 1) {
+          if(len == 1) {
+            singletons.add(idx[begin]);
+          }
           return;
         }
-      }
-      // Pivotize
-      int l = begin, r = end - 1;
-      while(l <= r) {
-        while(l <= r && data[l][cur] <= mid) {
-          ++l;
+        double mid = Double.NaN;
+        // Find next non-zero dimension:
+        int cur = initdim;
+        while(true) {
+          int dim2 = cur << 1;
+          double min = minmax[dim2], max = minmax[dim2 + 1];
+          mid = .5 * (min + max);
+          if(min < mid) {
+            break; // Non-constant dimension found.
+          }
+          ++cur; // Try next dimension
+          // All remaining dimensions were constant?
+          if(cur == dim) {
+            LOG.warning("Should not be reached", new Throwable());
+            assert (initdim != 0) : "All dimensions constant?";
+            LOG.warning("Unexpected all-constant split.");
+            // Becomes a leaf, as the extend will be zero.
+            children.add(new BuildTask(dim, data, idx, begin, end));
+            return;
+          }
         }
-        while(l <= r && data[r][cur] >= mid) {
-          --r;
+        // Pivotize
+        int l = begin, r = end - 1;
+        while(l <= r) {
+          while(l <= r && data[idx[l] + cur] <= mid) {
+            ++l;
+          }
+          while(l <= r && data[idx[r] + cur] >= mid) {
+            --r;
+          }
+          if(l < r) {
+            assert (data[idx[l] + cur] > mid);
+            assert (data[idx[r] + cur] < mid);
+            int tmp = idx[r];
+            idx[r] = idx[l];
+            idx[l] = tmp;
+            ++l;
+            --r;
+          }
         }
-        if(l < r) {
-          assert (data[l][cur] > mid);
-          assert (data[r][cur] < mid);
-          double[] tmp = data[r];
-          data[r] = data[l];
-          data[l] = tmp;
-          ++l;
-          --r;
+        assert (l == end || data[idx[l] + cur] >= mid);
+        assert (l == begin || data[idx[l - 1] + cur] <= mid);
+        ++cur;
+        // Recursion into next dimension:
+        if(cur < dim) {
+          if(begin < l) {
+            splitRecursively(begin, l, cur, minmax, singletons, children);
+          }
+          if(l < end) {
+            splitRecursively(l, end, cur, minmax, singletons, children);
+          }
+          return;
         }
-      }
-      assert (l == end || data[l][cur] >= mid);
-      assert (l == begin || data[l - 1][cur] <= mid);
-      ++cur;
-      // Recursion into next dimension:
-      if(cur < dims) {
+        // Recurse into next depth:
         if(begin < l) {
-          splitRecursively(data, begin, l, cur, dims, minmax, singletons, children);
+          children.add(new BuildTask(dim, data, idx, begin, l));
         }
         if(l < end) {
-          splitRecursively(data, l, end, cur, dims, minmax, singletons, children);
+          children.add(new BuildTask(dim, data, idx, l, end));
         }
-        return;
-      }
-      // Recurse into next depth:
-      if(begin < l) {
-        children.add(build(dims, data, begin, l));
-      }
-      if(l < end) {
-        children.add(build(dims, data, l, end));
       }
     }
 
@@ -448,20 +745,21 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * 
      * @param dim Dimensionality
      * @param data Data set
+     * @param idx Point offsets
      * @param begin Begin of subset
      * @param end End of subset
      * @return Center of mass
      */
-    private static double[] computeCenterofMass(int dim, double[][] data, int begin, int end) {
+    private static double[] computeCenterofMass(int dim, double[] data, int[] idx, int begin, int end) {
       final int size = end - begin;
       if(size == 1) {
-        return data[begin];
+        return Arrays.copyOfRange(data, idx[begin], idx[begin] + dim);
       }
       double[] center = new double[dim];
       for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+        final int off = idx[i];
         for(int d = 0; d < dim; d++) {
-          center[d] += row[d];
+          center[d] += data[off + d];
         }
       }
       double norm = 1. / size;
@@ -476,20 +774,21 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * 
      * @param dim Dimensionality
      * @param data Data set
+     * @param idx Point offsets
      * @param begin Begin of subset
      * @param end End of subset
      * @return Bounding box
      */
-    private static double[] computeExtend(int dim, double[][] data, int begin, int end) {
+    private static double[] computeExtend(int dim, double[] data, int[] idx, int begin, int end) {
       double[] minmax = new double[dim << 1];
       for(int d = 0; d < minmax.length;) {
         minmax[d++] = Double.POSITIVE_INFINITY;
         minmax[d++] = Double.NEGATIVE_INFINITY;
       }
       for(int i = begin; i < end; i++) {
-        double[] row = data[i];
+        final int off = idx[i];
         for(int d = 0, d2 = 0; d < dim; d++) {
-          final double v = row[d];
+          final double v = data[off + d];
           minmax[d2] = MathUtil.min(minmax[d2], v);
           ++d2;
           minmax[d2] = MathUtil.max(minmax[d2], v);
@@ -522,7 +821,7 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
 
     @Override
     public String toString() {
-      return "QuadTree[center=" + FormatUtil.format(center) + ", weight=" + weight + ", points=" + points.length + ", children=" + children.length + ", sqSize=" + squareSize + "]";
+      return "QuadTree[center=" + FormatUtil.format(center) + ", weight=" + weight + ", points=" + (points != null ? points.length : 0) + ", children=" + (children != null ? children.length : 0) + ", sqSize=" + squareSize + "]";
     }
   }
 
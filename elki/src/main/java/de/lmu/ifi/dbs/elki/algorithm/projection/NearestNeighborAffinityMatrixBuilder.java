@@ -32,6 +32,11 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -128,26 +133,15 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    */
   protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
-    final double logPerp = FastMath.log(perplexity);
-    // Scratch arrays, resizable
-    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
-    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
-    // Compute nearest-neighbor sparse affinity matrix
+    // Compute nearest-neighbor sparse affinity matrix, in parallel
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
     MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
-      dists.clear();
-      inds.clear();
-      KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
-      convertNeighbors(ids, ix, square, neighbours, dists, inds);
-      double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
-          pij[ix.getOffset()] = new double[dists.size()]);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
-      }
-      indices[ix.getOffset()] = inds.toArray();
-      LOG.incrementProcessed(prog);
-    }
+    KNNProcessor<?> knnm = new KNNProcessor<>(numberOfNeighbours + 1, knnq);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    AffinityProcessor affm = new AffinityProcessor(this, ids, square, numberOfNeighbours, pij, indices, mv, prog);
+    affm.connectKNNInput(knnv);
+    ParallelExecutor.run(ids, knnm, affm);
     LOG.ensureCompleted(prog);
     // Sum of the sparse affinity matrix:
     double sum = 0.;
@@ -288,6 +282,173 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
     return -1;
   }
 
+  /**
+   * Processor to compute the affinities of each object from its nearest
+   * neighbors.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class AffinityProcessor implements Processor {
+    /**
+     * Affinity matrix builder.
+     */
+    private NearestNeighborAffinityMatrixBuilder<?> builder;
+
+    /**
+     * Object ids.
+     */
+    private DBIDRange ids;
+
+    /**
+     * Use squared distances.
+     */
+    private boolean square;
+
+    /**
+     * Number of neighbors.
+     */
+    private int numberOfNeighbours;
+
+    /**
+     * Output arrays.
+     */
+    private double[][] pij;
+
+    /**
+     * Output indexes.
+     */
+    private int[][] indices;
+
+    /**
+     * Sigma statistics, may be {@code null}.
+     */
+    private MeanVariance mv;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * kNN input.
+     */
+    private SharedObject<KNNList> input;
+
+    /**
+     * Constructor.
+     *
+     * @param builder Affinity matrix builder
+     * @param ids Object ids
+     * @param square Use squared distances
+     * @param numberOfNeighbours Number of neighbors
+     * @param pij Output of affinities
+     * @param indices Output of indexes
+     * @param mv Sigma statistics, may be {@code null}
+     * @param prog Progress, may be {@code null}
+     */
+    AffinityProcessor(NearestNeighborAffinityMatrixBuilder<?> builder, DBIDRange ids, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, MeanVariance mv, FiniteProgress prog) {
+      this.builder = builder;
+      this.ids = ids;
+      this.square = square;
+      this.numberOfNeighbours = numberOfNeighbours;
+      this.pij = pij;
+      this.indices = indices;
+      this.mv = mv;
+      this.prog = prog;
+    }
+
+    /**
+     * Connect the kNN input.
+     *
+     * @param input kNN input
+     */
+    void connectKNNInput(SharedObject<KNNList> input) {
+      this.input = input;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance(this, executor.getInstance(input));
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      if(mv != null) {
+        synchronized(mv) {
+          mv.put(((Instance) inst).mv);
+        }
+      }
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private static class Instance implements Processor.Instance {
+      /**
+       * Processor.
+       */
+      private AffinityProcessor proc;
+
+      /**
+       * kNN input.
+       */
+      private SharedObject.Instance<KNNList> input;
+
+      /**
+       * Scratch arrays, resizable.
+       */
+      private DoubleArray dists;
+
+      /**
+       * Scratch arrays, resizable.
+       */
+      private IntegerArray inds;
+
+      /**
+       * Local sigma statistics.
+       */
+      private MeanVariance mv = new MeanVariance();
+
+      /**
+       * Log of the desired perplexity.
+       */
+      private final double logPerp;
+
+      /**
+       * Constructor.
+       *
+       * @param proc Processor
+       * @param input kNN input
+       */
+      Instance(AffinityProcessor proc, SharedObject.Instance<KNNList> input) {
+        this.proc = proc;
+        this.input = input;
+        this.dists = new DoubleArray(proc.numberOfNeighbours + 10);
+        this.inds = new IntegerArray(proc.numberOfNeighbours + 10);
+        this.logPerp = FastMath.log(proc.builder.perplexity);
+      }
+
+      @Override
+      public void map(DBIDRef ix) {
+        dists.clear();
+        inds.clear();
+        proc.builder.convertNeighbors(proc.ids, ix, proc.square, input.get(), dists, inds);
+        final int off = proc.ids.getOffset(ix);
+        double beta = computeSigma(off, dists, proc.builder.perplexity, logPerp, //
+            proc.pij[off] = new double[dists.size()]);
+        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+        proc.indices[off] = inds.toArray();
+        LOG.incrementProcessed(proc.prog);
+      }
+    }
+  }
+
   /**
    * Parameterization class.
    *
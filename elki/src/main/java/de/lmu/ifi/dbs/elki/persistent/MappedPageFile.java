@@ -0,0 +1,681 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page file that maps the index file into memory using
+ * {@link FileChannel#map}, and reads and writes pages in place in the mapped
+ * buffers. In contrast to {@link PersistentPageFile}, no per-page byte arrays
+ * are used; the operating system takes care of caching. Pages implementing
+ * {@link ByteBufferPage} are stored in their binary format, other pages are
+ * written via their {@link java.io.Externalizable} methods, but without
+ * object stream overhead.
+ * <p>
+ * The file is mapped in segments of at most {@link #SEGMENT_SIZE} bytes, so
+ * files larger than 2 GB are supported. The last segment is grown
+ * geometrically as pages are added.
+ * <p>
+ * Note: the page encoding differs from {@link PersistentPageFile}, files
+ * written by one can not be read by the other.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf FileChannel
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Maximum size of a mapped segment.
+   */
+  public static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Minimum number of pages to map initially.
+   */
+  private static final int INITIAL_PAGES = 64;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * File channel, for mapping.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Mapped segments.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Number of pages per segment.
+   */
+  private int pagesPerSegment;
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param fileName File name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+  }
+
+  /**
+   * Get a buffer positioned at the given page, limited to the page size.
+   *
+   * @param pageID Page number
+   * @return Buffer view of the page
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final long page = (long) header.getReservedPages() + pageID;
+    final int seg = (int) (page / pagesPerSegment);
+    final int off = (int) (page - seg * (long) pagesPerSegment) * pageSize;
+    MappedByteBuffer[] segs = segments;
+    MappedByteBuffer buf = seg < segs.length ? segs[seg] : null;
+    if(buf == null || buf.capacity() < off + pageSize) {
+      buf = map(seg, off + pageSize);
+    }
+    ByteBuffer view = buf.duplicate();
+    view.limit(off + pageSize).position(off);
+    return view;
+  }
+
+  /**
+   * Map (or remap) a segment to be at least the given size.
+   *
+   * @param seg Segment number
+   * @param minsize Minimum size required
+   * @return Mapped segment
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer map(int seg, int minsize) throws IOException {
+    MappedByteBuffer[] segs = segments;
+    if(seg < segs.length && segs[seg] != null && segs[seg].capacity() >= minsize) {
+      return segs[seg]; // Mapped concurrently.
+    }
+    final int maxsize = pagesPerSegment * pageSize;
+    final long start = seg * (long) maxsize;
+    // Do not shrink below the current file size, grow geometrically.
+    long size = Math.max(minsize, Math.min(file.length() - start, maxsize));
+    if(seg < segs.length && segs[seg] != null) {
+      size = Math.max(size, segs[seg].capacity() * 2L);
+    }
+    size = Math.min(maxsize, Math.max(size, INITIAL_PAGES * (long) pageSize));
+    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+    if(seg >= segs.length) {
+      segs = Arrays.copyOf(segs, seg + 1);
+    }
+    else {
+      segs = segs.clone();
+    }
+    segs[seg] = buf;
+    segments = segs;
+    return buf;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      ByteBuffer buf = pageBuffer(pageID);
+      int type = buf.getInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      if(page instanceof ByteBufferPage) {
+        ((ByteBufferPage) page).readFromByteBuffer(buf);
+      }
+      else {
+        page.readExternal(new PageInput(buf));
+      }
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException | BufferUnderflowException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    try {
+      super.deletePage(pageID);
+      countWrite();
+      pageBuffer(pageID).putInt(EMPTY_PAGE);
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      ByteBuffer buf = pageBuffer(pageID);
+      buf.putInt(FILLED_PAGE);
+      if(page instanceof ByteBufferPage) {
+        ((ByteBufferPage) page).writeToByteBuffer(buf);
+      }
+      else {
+        page.writeExternal(new PageOutput(buf));
+      }
+      page.setDirty(false);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize, e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      for(MappedByteBuffer buf : segments) {
+        if(buf != null) {
+          buf.force();
+        }
+      }
+      segments = new MappedByteBuffer[0];
+      // Drop the unused tail of the mapping, but keep the pages.
+      file.setLength((header.getReservedPages() + (long) nextPageID) * pageSize);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // write the list of empty pages to the end of the file
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      segments = new MappedByteBuffer[0];
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   *
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Set the next page id to the given value. If this means that any page ids
+   * stored in <code>emptyPages</code> are smaller than
+   * <code>next_page_id</code>, they are removed from this file's observation
+   * stack.
+   *
+   * @param next_page_id the id of the next page to be inserted (if there are no
+   *        more empty pages to be filled)
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      this.header = header;
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        this.pageSize = header.getPageSize();
+        this.pagesPerSegment = Math.max(1, SEGMENT_SIZE / pageSize);
+
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+        }
+        else { // must scan complete file
+          final long numpages = file.length() / pageSize - header.getReservedPages();
+          for(int i = 0; i < numpages; i++) {
+            int type = pageBuffer(i).getInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        this.pageSize = header.getPageSize();
+        this.pagesPerSegment = Math.max(1, SEGMENT_SIZE / pageSize);
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Read a page in place from a byte buffer.
+   * <p>
+   * Nested objects (rarely used by pages) are serialized with Java
+   * serialization, and prefixed with their length.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class PageInput implements ObjectInput {
+    /**
+     * Buffer to read from.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer, positioned at the page data.
+     */
+    PageInput(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+      readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+      if(len > buf.remaining()) {
+        throw new EOFException();
+      }
+      buf.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+      n = Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + n);
+      return n;
+    }
+
+    @Override
+    public boolean readBoolean() {
+      return buf.get() != 0;
+    }
+
+    @Override
+    public byte readByte() {
+      return buf.get();
+    }
+
+    @Override
+    public int readUnsignedByte() {
+      return buf.get() & 0xFF;
+    }
+
+    @Override
+    public short readShort() {
+      return buf.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() {
+      return buf.getShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() {
+      return buf.getChar();
+    }
+
+    @Override
+    public int readInt() {
+      return buf.getInt();
+    }
+
+    @Override
+    public long readLong() {
+      return buf.getLong();
+    }
+
+    @Override
+    public float readFloat() {
+      return buf.getFloat();
+    }
+
+    @Override
+    public double readDouble() {
+      return buf.getDouble();
+    }
+
+    /**
+     * Read a line of bytes, as {@link java.io.DataInputStream#readLine}: each
+     * byte is converted to a character, and the line ends at a line feed, a
+     * carriage return (optionally followed by a line feed), or the end of the
+     * page.
+     *
+     * @return Line, or {@code null} at the end of the page
+     */
+    @Override
+    public String readLine() {
+      if(!buf.hasRemaining()) {
+        return null;
+      }
+      StringBuilder line = new StringBuilder();
+      while(buf.hasRemaining()) {
+        final int c = buf.get() & 0xFF;
+        if(c == '\n') {
+          break;
+        }
+        if(c == '\r') {
+          if(buf.hasRemaining() && buf.get(buf.position()) == '\n') {
+            buf.get();
+          }
+          break;
+        }
+        line.append((char) c);
+      }
+      return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+      byte[] b = new byte[readUnsignedShort()];
+      readFully(b);
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object readObject() throws ClassNotFoundException, IOException {
+      byte[] b = new byte[readInt()];
+      readFully(b);
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+        return ois.readObject();
+      }
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b) {
+      return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      final int maxread = Math.min(len, buf.remaining());
+      buf.get(b, off, maxread);
+      return maxread == 0 && len > 0 ? -1 : maxread;
+    }
+
+    @Override
+    public long skip(long n) {
+      return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Write a page in place into a byte buffer.
+   * <p>
+   * Nested objects (rarely used by pages) are serialized with Java
+   * serialization, and prefixed with their length.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class PageOutput implements ObjectOutput {
+    /**
+     * Buffer to write to.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Buffer, positioned at the page data.
+     */
+    PageOutput(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public void write(int b) {
+      buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+      buf.put(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buf.put(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+      buf.put((byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v) {
+      buf.put((byte) v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+      buf.putShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+      buf.putChar((char) v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+      buf.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+      buf.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+      buf.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) {
+      buf.putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) {
+      for(int i = 0; i < s.length(); i++) {
+        buf.put((byte) s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeChars(String s) {
+      for(int i = 0; i < s.length(); i++) {
+        buf.putChar(s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      if(b.length > 0xFFFF) {
+        throw new IOException("String too long for writeUTF.");
+      }
+      buf.putShort((short) b.length);
+      buf.put(b);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        oos.writeObject(obj);
+      }
+      buf.putInt(baos.size());
+      buf.put(baos.toByteArray());
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to do.
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+}
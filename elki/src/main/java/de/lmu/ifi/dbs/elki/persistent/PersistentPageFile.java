@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -81,6 +83,11 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private boolean existed;
 
+  /**
+   * Whether pages use the binary format of {@link ByteBufferPage}.
+   */
+  private final boolean binary;
+
   /**
    * Creates a new PersistentPageFile from an existing file.
    * 
@@ -90,6 +97,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   public PersistentPageFile(int pageSize, String fileName, Class<P> pageclass) {
     super(pageSize);
     this.pageclass = pageclass;
+    this.binary = ByteBufferPage.class.isAssignableFrom(pageclass);
     // init the file
     File f = new File(fileName);
 
@@ -209,6 +217,9 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    * @return a serialized object from the specified byte array
    */
   private P byteArrayToPage(byte[] array) {
+    if(binary) {
+      return binaryToPage(array);
+    }
     try {
       ByteArrayInputStream bais = new ByteArrayInputStream(array);
       ObjectInputStream ois = new ObjectInputStream(bais);
@@ -243,6 +254,9 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    * @return the byte array
    */
   private byte[] pageToByteArray(P page) {
+    if(binary) {
+      return pageToBinary(page);
+    }
     try {
       if(page == null) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -282,6 +296,60 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     }
   }
 
+  /**
+   * Reconstruct a page from its binary representation.
+   * 
+   * @param array Page data
+   * @return Page, or {@code null} for empty pages
+   */
+  private P binaryToPage(byte[] array) {
+    ByteBuffer buffer = ByteBuffer.wrap(array);
+    int type = buffer.getInt();
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    try {
+      P page = pageclass.newInstance();
+      ((ByteBufferPage) page).readFromByteBuffer(buffer);
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error in page file", e);
+    }
+  }
+
+  /**
+   * Serialize a page into its binary representation.
+   * 
+   * @param page Page, or {@code null} for an empty page
+   * @return Page data
+   */
+  private byte[] pageToBinary(P page) {
+    byte[] array = new byte[pageSize];
+    ByteBuffer buffer = ByteBuffer.wrap(array);
+    if(page == null) {
+      buffer.putInt(EMPTY_PAGE);
+      return array;
+    }
+    buffer.putInt(FILLED_PAGE);
+    try {
+      ((ByteBufferPage) page).writeToByteBuffer(buffer);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize, e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred! ", e);
+    }
+    return array;
+  }
+
   /** @return the random access file storing the pages. */
   public RandomAccessFile getFile() {
     return file;
@@ -342,9 +410,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
             file.seek(offset);
             file.read(buffer);
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            int type = ois.readInt();
+            int type = binary ? ByteBuffer.wrap(buffer).getInt() : new ObjectInputStream(new ByteArrayInputStream(buffer)).readInt();
             if(type == EMPTY_PAGE) {
               emptyPages.push(i);
             }
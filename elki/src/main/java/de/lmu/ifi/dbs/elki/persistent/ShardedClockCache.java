@@ -0,0 +1,447 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * A concurrent page cache, using lock striping and CLOCK replacement.
+ * <p>
+ * Pages are distributed onto a number of independent shards by their page id.
+ * Each shard has its own lock, so concurrent readers only contend when they
+ * access the same shard. Within a shard, the CLOCK ("second chance")
+ * algorithm approximates LRU without reordering entries on every hit.
+ * <p>
+ * Pages missing from the cache are loaded from the backing file without
+ * holding the shard lock. Access to the backing file is guarded by a
+ * read-write lock: only a {@link MappedPageFile} is read concurrently, other
+ * page files are accessed by one thread at a time. Writes (e.g., from
+ * evictions in different shards) are always exclusive.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses PageFile
+ *
+ * @param <P> Page type
+ */
+public class ShardedClockCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ShardedClockCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Number of shards.
+   */
+  protected int numshards;
+
+  /**
+   * The underlying file of this cache.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache shards.
+   */
+  private Shard<P>[] shards;
+
+  /**
+   * Lock for the underlying file.
+   */
+  private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+  /**
+   * Lock to use for reading from the underlying file.
+   */
+  private final Lock readLock;
+
+  /**
+   * Statistics counters.
+   */
+  private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+      evictions = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numshards Number of shards (will be rounded to a power of 2)
+   * @param file the underlying file of this cache
+   */
+  public ShardedClockCache(int cacheSizeBytes, int numshards, PageFile<P> file) {
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.numshards = numshards > 1 ? Integer.highestOneBit(numshards - 1) << 1 : 1;
+    // Only memory-mapped files support concurrent reads.
+    this.readLock = file instanceof MappedPageFile ? fileLock.readLock() : fileLock.writeLock();
+  }
+
+  /**
+   * Choose the shard of a page.
+   *
+   * @param pageID Page id
+   * @return Shard
+   */
+  private Shard<P> shard(int pageID) {
+    // Fibonacci hashing, so that consecutive pages go to different shards.
+    return shards[((pageID * 0x9E3779B9) >>> 16) & (shards.length - 1)];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final Shard<P> shard = shard(pageID);
+    P page = shard.get(pageID);
+    if(page != null) {
+      hits.increment();
+      return page;
+    }
+    misses.increment();
+    // Load without holding the shard lock.
+    readLock.lock();
+    try {
+      page = file.readPage(pageID);
+    }
+    finally {
+      readLock.unlock();
+    }
+    return page != null ? shard.putIfAbsent(pageID, page) : null;
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    shard(pageID).put(pageID, page);
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    shard(pageID).remove(pageID);
+    fileLock.writeLock().lock();
+    try {
+      file.deletePage(pageID);
+    }
+    finally {
+      fileLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      fileLock.writeLock().lock();
+      try {
+        file.writePage(page);
+      }
+      finally {
+        fileLock.writeLock().unlock();
+      }
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    fileLock.writeLock().lock();
+    try {
+      return file.setPageID(page);
+    }
+    finally {
+      fileLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Do not use more shards than pages.
+    while(numshards > 1 && numshards > cacheSize) {
+      numshards >>>= 1;
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("Cache size is " + cacheSize + " pages in " + numshards + " shards.");
+    }
+    shards = (Shard<P>[]) new Shard<?>[numshards];
+    for(int i = 0; i < numshards; i++) {
+      // Distribute the remainder onto the first shards.
+      shards[i] = new Shard<>(this, cacheSize / numshards + (i < cacheSize % numshards ? 1 : 0));
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Shard<P> shard : shards) {
+      shard.flush();
+    }
+  }
+
+  @Override
+  public void clear() {
+    for(Shard<P> shard : shards) {
+      shard.clear();
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".hits", hits.sum()));
+      LOG.statistics(new LongStatistic(prefix + ".misses", misses.sum()));
+      LOG.statistics(new LongStatistic(prefix + ".evictions", evictions.sum()));
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single cache shard, using CLOCK replacement.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <P> Page type
+   */
+  private static class Shard<P extends Page> {
+    /**
+     * Owning cache.
+     */
+    private final ShardedClockCache<P> cache;
+
+    /**
+     * Map from page id to slot.
+     */
+    private final Int2IntOpenHashMap map;
+
+    /**
+     * Page ids, by slot.
+     */
+    private final int[] ids;
+
+    /**
+     * Pages, by slot.
+     */
+    private final Page[] pages;
+
+    /**
+     * Reference bits, by slot.
+     */
+    private final boolean[] referenced;
+
+    /**
+     * Number of slots in use, and position of the clock hand.
+     */
+    private int used = 0, hand = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param cache Owning cache
+     * @param capacity Capacity
+     */
+    Shard(ShardedClockCache<P> cache, int capacity) {
+      this.cache = cache;
+      this.map = new Int2IntOpenHashMap(capacity);
+      this.map.defaultReturnValue(-1);
+      this.ids = new int[capacity];
+      this.pages = new Page[capacity];
+      this.referenced = new boolean[capacity];
+    }
+
+    /**
+     * Get a page, if cached.
+     *
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    synchronized P get(int pageID) {
+      final int slot = map.get(pageID);
+      if(slot < 0) {
+        return null;
+      }
+      referenced[slot] = true;
+      return (P) pages[slot];
+    }
+
+    /**
+     * Add a page, unless it was added concurrently.
+     *
+     * @param pageID Page id
+     * @param page Page
+     * @return Cached page
+     */
+    @SuppressWarnings("unchecked")
+    synchronized P putIfAbsent(int pageID, P page) {
+      final int slot = map.get(pageID);
+      if(slot >= 0) {
+        referenced[slot] = true;
+        return (P) pages[slot];
+      }
+      insert(pageID, page);
+      return page;
+    }
+
+    /**
+     * Add or replace a page.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    synchronized void put(int pageID, P page) {
+      final int slot = map.get(pageID);
+      if(slot >= 0) {
+        pages[slot] = page;
+        referenced[slot] = true;
+        return;
+      }
+      insert(pageID, page);
+    }
+
+    /**
+     * Insert a new page, evicting another page if necessary.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    @SuppressWarnings("unchecked")
+    private void insert(int pageID, P page) {
+      int slot;
+      if(used < pages.length) {
+        slot = used++;
+      }
+      else {
+        // Advance the clock hand to the first unreferenced page.
+        while(referenced[hand]) {
+          referenced[hand] = false;
+          hand = (hand + 1) % pages.length;
+        }
+        slot = hand;
+        hand = (hand + 1) % pages.length;
+        map.remove(ids[slot]);
+        cache.evictions.increment();
+        cache.expirePage((P) pages[slot]);
+      }
+      ids[slot] = pageID;
+      pages[slot] = page;
+      referenced[slot] = false;
+      map.put(pageID, slot);
+    }
+
+    /**
+     * Remove a page from the cache, without writing it.
+     *
+     * @param pageID Page id
+     */
+    synchronized void remove(int pageID) {
+      final int slot = map.remove(pageID);
+      if(slot < 0) {
+        return;
+      }
+      // Move the last used slot into the gap.
+      final int last = --used;
+      if(slot != last) {
+        ids[slot] = ids[last];
+        pages[slot] = pages[last];
+        referenced[slot] = referenced[last];
+        map.put(ids[slot], slot);
+      }
+      pages[last] = null;
+      referenced[last] = false;
+      hand = hand >= used ? 0 : hand;
+    }
+
+    /**
+     * Write all dirty pages and empty the shard.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void flush() {
+      for(int i = 0; i < used; i++) {
+        cache.expirePage((P) pages[i]);
+      }
+      clear();
+    }
+
+    /**
+     * Empty the shard, without writing.
+     */
+    synchronized void clear() {
+      map.clear();
+      for(int i = 0; i < used; i++) {
+        pages[i] = null;
+        referenced[i] = false;
+      }
+      used = hand = 0;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Regression test for {@link BarnesHutTSNE}.
+ *
+ * @author Erich Schubert
+ */
+public class BarnesHutTSNETest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testBarnesHutTSNE() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> res = runTSNE(db, 10, 100);
+    checkResult(res, new double[][] { //
+        { 3.741005842450629, 4.348698081476706 }, //
+        { -16.939911851634008, 9.944241812101161 }, //
+        { -17.793952855493444, -2.302219508242755 } }, 58921.91537944652, 1e-8);
+  }
+
+  /**
+   * Larger data set, to use the parallel gradient and tree construction.
+   */
+  @Test
+  public void testParallel() {
+    Random r = new Random(0L);
+    double[][] data = new double[17000][];
+    for(int i = 0; i < data.length; i++) {
+      final int c = r.nextInt(3);
+      data[i] = new double[] { c + r.nextGaussian() * .3, (c & 1) + r.nextGaussian() * .3 };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> res = runTSNE(db, 3, 20);
+    checkResult(res, new double[][] { //
+        { 3.168063158987918E-5, 0.003966397109949803 }, //
+        { -5.640082437309511E-4, 0.003258377225262135 }, //
+        { 2.5081895629979416E-4, -0.0012639575203050755 } }, 0.10739777938063044, 1e-12);
+  }
+
+  /**
+   * Run Barnes-Hut t-SNE with a fixed seed.
+   *
+   * @param db Database
+   * @param perplexity Perplexity
+   * @param iterations Number of iterations
+   * @return Projected data
+   */
+  private Relation<DoubleVector> runTSNE(Database db, double perplexity, int iterations) {
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    return new BarnesHutTSNE<>(new NearestNeighborAffinityMatrixBuilder<NumberVector>(SquaredEuclideanDistanceFunction.STATIC, perplexity), //
+        2, .8, 200, iterations, new RandomFactory(0L), true, .5).run(db, rel);
+  }
+
+  /**
+   * Compare the first vectors, and the sum of squares of the result.
+   *
+   * @param res Result
+   * @param first Expected first vectors
+   * @param sqsum Expected sum of squares
+   * @param eps Tolerance
+   */
+  private void checkResult(Relation<DoubleVector> res, double[][] first, double sqsum, double eps) {
+    int k = 0;
+    double s = 0.;
+    for(DBIDIter it = res.iterDBIDs(); it.valid(); it.advance(), k++) {
+      double[] v = res.get(it).toArray();
+      if(k < first.length) {
+        assertArrayEquals("Projection differs.", first[k], v, eps);
+      }
+      for(double x : v) {
+        s += x * x;
+      }
+    }
+    assertEquals("Sum of squares differs.", sqsum, s, eps * res.size());
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Test the binary page format of R*-tree and M-tree nodes.
+ *
+ * @author Erich Schubert
+ */
+public class ByteBufferPageTest {
+  /**
+   * Page size.
+   */
+  private static final int PAGESIZE = 1024;
+
+  @Test
+  public void testRStarTreeNodes() throws IOException {
+    for(boolean mapped : new boolean[] { false, true }) {
+      File f = File.createTempFile("elki-binary", ".idx");
+      f.delete(); // Must not exist yet.
+      try {
+        PageFile<RStarTreeNode> file = open(f, RStarTreeNode.class, mapped);
+        RStarTreeNode leaf = new RStarTreeNode(10, true);
+        RStarTreeNode dir = new RStarTreeNode(10, false);
+        for(int i = 0; i < 10; i++) {
+          leaf.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), new double[] { i, .5 * i, -i }));
+          dir.addDirectoryEntry(new SpatialDirectoryEntry(i, new ModifiableHyperBoundingBox(new double[] { -i, 0, 1 }, new double[] { i, 1, 2 + i })));
+        }
+        assertEquals(0, file.writePage(leaf));
+        assertEquals(1, file.writePage(dir));
+        if(mapped) {
+          // Reopen, PersistentPageFile does not keep the pages on close.
+          file.close();
+          file = open(f, RStarTreeNode.class, mapped);
+        }
+        RStarTreeNode leaf2 = file.readPage(0), dir2 = file.readPage(1);
+        assertTrue(leaf2.isLeaf());
+        assertTrue(!dir2.isLeaf());
+        assertEquals(10, leaf2.getCapacity());
+        assertEquals(10, leaf2.getNumEntries());
+        assertEquals(10, dir2.getNumEntries());
+        for(int i = 0; i < 10; i++) {
+          SpatialPointLeafEntry l = (SpatialPointLeafEntry) leaf2.getEntry(i);
+          assertEquals(i, DBIDUtil.asInteger(l.getDBID()));
+          assertEquals(.5 * i, l.doubleValue(1), 0.);
+          SpatialEntry d = dir2.getEntry(i);
+          assertEquals(i, ((SpatialDirectoryEntry) d).getPageID());
+          assertEquals(-i, d.getMin(0), 0.);
+          assertEquals(2 + i, d.getMax(2), 0.);
+        }
+      }
+      finally {
+        f.delete();
+      }
+    }
+  }
+
+  @Test
+  public void testMTreeNodes() throws IOException {
+    for(boolean mapped : new boolean[] { false, true }) {
+      File f = File.createTempFile("elki-binary", ".idx");
+      f.delete(); // Must not exist yet.
+      try {
+        @SuppressWarnings("unchecked")
+        Class<MTreeNode<Object>> cls = (Class<MTreeNode<Object>>) (Class<?>) MTreeNode.class;
+        PageFile<MTreeNode<Object>> file = open(f, cls, mapped);
+        MTreeNode<Object> leaf = new MTreeNode<>(10, true);
+        MTreeNode<Object> dir = new MTreeNode<>(10, false);
+        for(int i = 0; i < 10; i++) {
+          leaf.addLeafEntry(new MTreeLeafEntry(DBIDUtil.importInteger(i), .5 * i));
+          dir.addDirectoryEntry(new MTreeDirectoryEntry(DBIDUtil.importInteger(i + 100), i, i + 1, 2. * i));
+        }
+        assertEquals(0, file.writePage(leaf));
+        assertEquals(1, file.writePage(dir));
+        if(mapped) {
+          // Reopen, PersistentPageFile does not keep the pages on close.
+          file.close();
+          file = open(f, cls, mapped);
+        }
+        MTreeNode<Object> leaf2 = file.readPage(0), dir2 = file.readPage(1);
+        assertTrue(leaf2.isLeaf());
+        assertEquals(10, leaf2.getNumEntries());
+        assertEquals(10, dir2.getNumEntries());
+        for(int i = 0; i < 10; i++) {
+          MTreeEntry l = leaf2.getEntry(i), d = dir2.getEntry(i);
+          assertEquals(i, DBIDUtil.asInteger(l.getRoutingObjectID()));
+          assertEquals(.5 * i, l.getParentDistance(), 0.);
+          assertEquals(i + 100, DBIDUtil.asInteger(d.getRoutingObjectID()));
+          assertEquals(i + 1, ((MTreeDirectoryEntry) d).getPageID());
+          assertEquals(i, d.getParentDistance(), 0.);
+          assertEquals(2. * i, d.getCoveringRadius(), 0.);
+        }
+      }
+      finally {
+        f.delete();
+      }
+    }
+  }
+
+  /**
+   * Open a page file.
+   *
+   * @param f File
+   * @param cls Page class
+   * @param mapped Use a mapped page file
+   * @return Page file
+   */
+  private static <P extends ExternalizablePage> PageFile<P> open(File f, Class<P> cls, boolean mapped) {
+    PageFile<P> file = mapped ? new MappedPageFile<>(PAGESIZE, f.getPath(), cls) : new PersistentPageFile<>(PAGESIZE, f.getPath(), cls);
+    file.initialize(new DefaultPageHeader(PAGESIZE));
+    return file;
+  }
+}
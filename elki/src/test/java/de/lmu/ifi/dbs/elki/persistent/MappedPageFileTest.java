@@ -0,0 +1,175 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the memory-mapped page file.
+ *
+ * @author Erich Schubert
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Test an R*-tree stored in a mapped page file.
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    File f = File.createTempFile("elki-mapped", ".idx");
+    f.delete(); // Must not exist yet.
+    try {
+      RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+          .with(PersistentPageFileFactory.Parameterizer.FILE_ID, f) //
+          .build();
+      testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    }
+    finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Write pages, close the file, and read them back.
+   */
+  @Test
+  public void testReopen() throws IOException {
+    File f = File.createTempFile("elki-mapped", ".idx");
+    f.delete(); // Must not exist yet.
+    try {
+      final int pagesize = 256, numpages = 1000;
+      MappedPageFile<TestPage> file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+      assertFalse("File should be new.", file.initialize(new DefaultPageHeader(pagesize)));
+      for(int i = 0; i < numpages; i++) {
+        assertEquals("Page id", i, file.writePage(new TestPage(i)));
+      }
+      file.deletePage(7);
+      file.close();
+
+      file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+      assertTrue("File should exist.", file.initialize(new DefaultPageHeader(pagesize)));
+      assertEquals("Next page id", numpages, file.getNextPageID());
+      assertNull("Page was deleted.", file.readPage(7));
+      for(int i = 0; i < numpages; i++) {
+        if(i != 7) {
+          TestPage page = file.readPage(i);
+          assertEquals("Value", i, page.value, 0.);
+          assertEquals("Label", "page " + i, page.label);
+          assertEquals("Line", "line " + i, page.line);
+          assertEquals("Nested object", Integer.valueOf(i), page.obj);
+        }
+      }
+      file.close();
+    }
+    finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Trivial page class for testing.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Payload.
+     */
+    double value;
+
+    /**
+     * Label.
+     */
+    String label;
+
+    /**
+     * Nested object.
+     */
+    Object obj;
+
+    /**
+     * Line of text, for {@link ObjectInput#readLine}.
+     */
+    String line;
+
+    /**
+     * Empty constructor for Externalizable interface.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param i Value
+     */
+    public TestPage(int i) {
+      super();
+      this.value = i;
+      this.label = "page " + i;
+      this.obj = Integer.valueOf(i);
+      this.line = "line " + i;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeDouble(value);
+      out.writeUTF(label);
+      out.writeObject(obj);
+      out.writeBytes(line + "\r\n");
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readDouble();
+      label = in.readUTF();
+      obj = in.readObject();
+      line = in.readLine();
+    }
+  }
+}
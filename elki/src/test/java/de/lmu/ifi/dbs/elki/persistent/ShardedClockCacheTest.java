@@ -0,0 +1,147 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.MappedPageFileTest.TestPage;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the sharded page cache.
+ *
+ * @author Erich Schubert
+ */
+public class ShardedClockCacheTest extends AbstractIndexStructureTest {
+  /**
+   * Test an R*-tree with a small cache on a mapped page file.
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    File f = File.createTempFile("elki-cache", ".idx");
+    f.delete(); // Must not exist yet.
+    try {
+      RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ShardedClockCachePageFileFactory.class) //
+          .with(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 3000) //
+          .with(ShardedClockCachePageFileFactory.Parameterizer.SHARDS_ID, 4) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+          .with(PersistentPageFileFactory.Parameterizer.FILE_ID, f) //
+          .build();
+      testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    }
+    finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Concurrently read pages through a cache much smaller than the file.
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    final int pagesize = 256;
+    ShardedClockCache<TestPage> cache = new ShardedClockCache<>(pagesize * 50, 8, new MemoryPageFile<TestPage>(pagesize));
+    cache.initialize(new DefaultPageHeader(pagesize));
+    concurrentAccess(cache, 1000, false);
+    cache.close();
+  }
+
+  /**
+   * Concurrently read and modify pages of a persistent page file, which
+   * itself does not support concurrent access.
+   */
+  @Test
+  public void testConcurrentPersistent() throws Exception {
+    final int pagesize = 256;
+    File f = File.createTempFile("elki-cache", ".idx");
+    f.delete(); // Must not exist yet.
+    try {
+      ShardedClockCache<TestPage> cache = new ShardedClockCache<>(pagesize * 50, 8, new PersistentPageFile<>(pagesize, f.getPath(), TestPage.class));
+      // Persistent page files expect a tree index header.
+      cache.initialize(new TreeIndexHeader(pagesize, 0, 0, 0, 0));
+      concurrentAccess(cache, 1000, true);
+      cache.close();
+    }
+    finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Fill the cache, then access pages from multiple threads.
+   *
+   * @param cache Cache to test
+   * @param numpages Number of pages
+   * @param dirty Mark pages as dirty, to force writes on eviction
+   */
+  private void concurrentAccess(final ShardedClockCache<TestPage> cache, final int numpages, final boolean dirty) throws Exception {
+    for(int i = 0; i < numpages; i++) {
+      assertEquals("Page id", i, cache.writePage(new TestPage(i)));
+    }
+    cache.deletePage(7);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for(int t = 0; t < 4; t++) {
+        final int seed = t;
+        futures.add(pool.submit(() -> {
+          for(int j = 0; j < 10 * numpages; j++) {
+            final int i = (j * 7919 + seed * 104729) % numpages;
+            TestPage page = cache.readPage(i);
+            if(i == 7) {
+              assertNull("Page was deleted.", page);
+              continue;
+            }
+            assertEquals("Value", i, page.value, 0.);
+            if(dirty) {
+              page.setDirty(true);
+            }
+          }
+        }));
+      }
+      for(Future<?> fut : futures) {
+        fut.get(); // Rethrows assertion errors.
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+}